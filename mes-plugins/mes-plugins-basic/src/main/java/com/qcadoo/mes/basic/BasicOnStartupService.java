@@ -53,6 +53,9 @@ public class BasicOnStartupService extends Module {
     @Autowired
     private ColorLoader colorLoader;
 
+    @Autowired
+    private LookupIndexesLoader lookupIndexesLoader;
+
     @Autowired
     private ExchangeRatesUpdateService exchangeRatesUpdateService;
 
@@ -66,6 +69,7 @@ public class BasicOnStartupService extends Module {
         defaultFaultTypesLoader.loadDefaultFaultTypes();
         addressTypeLoader.loadAddressTypes();
         colorLoader.loadColors();
+        lookupIndexesLoader.loadLookupIndexes();
 
         exchangeRatesUpdateService.update();
     }
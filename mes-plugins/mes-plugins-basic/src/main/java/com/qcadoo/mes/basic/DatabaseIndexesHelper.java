@@ -0,0 +1,78 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Collections;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates indexes not described by the model on startup. Index names have to fit in 63 characters, longer ones are truncated by
+ * PostgreSQL and wouldn't be found by IF NOT EXISTS.
+ */
+@Component
+public class DatabaseIndexesHelper {
+
+    // CREATE INDEX IF NOT EXISTS is available since PostgreSQL 9.5
+    private static final int MIN_SERVER_VERSION = 90500;
+
+    private static final int MAX_INDEX_NAME_LENGTH = 63;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public boolean indexesCanBeCreated() {
+        String query = "SELECT current_setting('server_version_num')::integer >= :minServerVersion";
+
+        return jdbcTemplate.queryForObject(query, Collections.singletonMap("minServerVersion", MIN_SERVER_VERSION),
+                Boolean.class);
+    }
+
+    public boolean isExtensionInstalled(final String extensionName) {
+        String query = "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = :extensionName)";
+
+        return jdbcTemplate.queryForObject(query, Collections.singletonMap("extensionName", extensionName), Boolean.class);
+    }
+
+    /**
+     * @param indexName
+     *            name of the index, up to 63 characters
+     * @param tableName
+     *            name of the indexed table
+     * @param definition
+     *            part of the statement following the table name, e.g. "(product_id)" or "USING gin (number gin_trgm_ops)"
+     */
+    public void createIndexIfNotExists(final String indexName, final String tableName, final String definition) {
+        if (indexName.length() > MAX_INDEX_NAME_LENGTH) {
+            throw new IllegalArgumentException(String.format("Index name %s is longer than %d characters", indexName,
+                    MAX_INDEX_NAME_LENGTH));
+        }
+
+        jdbcTemplate.update(String.format("CREATE INDEX IF NOT EXISTS %s ON %s %s", indexName, tableName, definition),
+                Collections.emptyMap());
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates trigram indexes used by the lookups (products, additional codes, pallet numbers), so that "ilike '%query%'" searches
+ * don't scan whole tables. Indexes are created only if the pg_trgm extension has been installed in the database.
+ */
+@Component
+public class LookupIndexesLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LookupIndexesLoader.class);
+
+    private static final String[][] TRIGRAM_INDEXES = { { "basic_product_number_trgm_idx", "basic_product", "number" },
+            { "basic_additionalcode_code_trgm_idx", "basic_additionalcode", "code" },
+            { "basic_palletnumber_number_trgm_idx", "basic_palletnumber", "number" } };
+
+    @Autowired
+    private DatabaseIndexesHelper databaseIndexesHelper;
+
+    public void loadLookupIndexes() {
+        if (!databaseIndexesHelper.indexesCanBeCreated() || !databaseIndexesHelper.isExtensionInstalled("pg_trgm")) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("pg_trgm extension is not available, lookup indexes won't be created");
+            }
+
+            return;
+        }
+
+        for (String[] index : TRIGRAM_INDEXES) {
+            databaseIndexesHelper.createIndexIfNotExists(index[0], index[1],
+                    String.format("USING gin (%s gin_trgm_ops)", index[2]));
+        }
+    }
+
+}
@@ -46,6 +46,19 @@ public interface ShiftsService {
 
     Date findDateToForOrder(final Date dateFrom, final long seconds);
 
+    long getWorkingSecondsBetween(final Date dateFrom, final Date dateTo);
+
+    /**
+     * Drops the cached working time calendar, has to be called whenever shifts or their timetable exceptions change.
+     */
+    void invalidateWorkingTimeCalendar();
+
+    /**
+     * Drops working intervals materialized for given shift, has to be called whenever the shift or its timetable exceptions
+     * change.
+     */
+    void invalidateShiftHours(final Long shiftId);
+
     List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo);
 
     Entity getShiftFromDateWithTime(final Date date);
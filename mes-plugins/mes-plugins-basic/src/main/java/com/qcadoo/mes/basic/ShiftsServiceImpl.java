@@ -32,7 +32,9 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
@@ -43,21 +45,27 @@ import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftsFactory;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -99,9 +107,27 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     private static final long MIN_TIMESTAMP = new DateTime(2000, 1, 1, 0, 0, 0, 0).toDate().getTime();
 
+    private static final long WORKING_TIME_CALENDAR_SPAN = 26 * STEP;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ShiftsFactory shiftsFactory;
+
+    private final Object workingTimeCalendarLock = new Object();
+
+    private WorkingTimeCalendar workingTimeCalendar;
+
+    private long workingTimeCalendarVersion;
+
+    private Boolean shiftsExist;
+
+    // saved shifts with their timetable exceptions, so that hours of a shift are expanded without loading it again
+    private final Map<Long, StoredShift> storedShifts = new ConcurrentHashMap<Long, StoredShift>();
+
+    private long storedShiftsVersion;
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -326,7 +352,7 @@ public class ShiftsServiceImpl implements ShiftsService {
 
             @Override
             public Shift apply(final Entity shiftEntity) {
-                return new Shift(shiftEntity);
+                return shiftsFactory.buildFrom(shiftEntity);
             }
         }).toList();
     }
@@ -403,55 +429,155 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForOrder(final Date dateFrom, final long seconds) {
-        if (dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
-                .getTotalNumberOfEntities() == 0) {
+        if (!shiftsExist()) {
             return null;
         }
         long start = dateFrom.getTime();
-        long remaining = seconds;
-        while (remaining >= 0) {
-            List<ShiftsServiceImpl.ShiftHour> hours = getHoursForAllShifts(new Date(start), new Date(start + STEP));
-            for (ShiftsServiceImpl.ShiftHour hour : hours) {
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
-                if (diff >= remaining) {
-                    return new Date(hour.getDateFrom().getTime() + (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
+        long span = WORKING_TIME_CALENDAR_SPAN;
+        while (true) {
+            long stop = Math.min(start + span, Math.max(MAX_TIMESTAMP, start + STEP));
+            Optional<Date> dateTo = getWorkingTimeCalendar(start, stop).findDateAfter(dateFrom, seconds);
+            if (dateTo.isPresent()) {
+                return dateTo.get();
             }
-            start += STEP;
-            if (start > MAX_TIMESTAMP) {
+            if (stop >= MAX_TIMESTAMP) {
                 return null;
             }
+            span *= 2;
         }
-        return null;
     }
 
     @Override
     public Date findDateFromForOrder(final Date dateTo, final long seconds) {
-        if (dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
-                .getTotalNumberOfEntities() == 0) {
+        if (!shiftsExist()) {
             return null;
         }
         long stop = dateTo.getTime();
-        long remaining = seconds;
-        while (remaining >= 0) {
-            List<ShiftsServiceImpl.ShiftHour> hours = getHoursForAllShifts(new Date(stop - STEP), new Date(stop));
-            for (int i = hours.size() - 1; i >= 0; i--) {
-                ShiftsServiceImpl.ShiftHour hour = hours.get(i);
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
-                if (diff >= remaining) {
-                    return new Date(hour.getDateTo().getTime() - (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
+        long span = WORKING_TIME_CALENDAR_SPAN;
+        while (true) {
+            long start = Math.max(stop - span, Math.min(MIN_TIMESTAMP, stop - STEP));
+            Optional<Date> dateFrom = getWorkingTimeCalendar(start, stop).findDateBefore(dateTo, seconds);
+            if (dateFrom.isPresent()) {
+                return dateFrom.get();
             }
-            stop -= STEP;
-            if (stop < MIN_TIMESTAMP) {
+            if (start <= MIN_TIMESTAMP) {
                 return null;
             }
+            span *= 2;
         }
-        return null;
+    }
+
+    @Override
+    public long getWorkingSecondsBetween(final Date dateFrom, final Date dateTo) {
+        if (!dateFrom.before(dateTo)) {
+            return 0L;
+        }
+        return getWorkingTimeCalendar(dateFrom.getTime(), dateTo.getTime()).getWorkingSecondsBetween(dateFrom, dateTo);
+    }
+
+    @Override
+    public void invalidateWorkingTimeCalendar() {
+        clearWorkingTimeCalendar();
+        runAfterCommit(this::clearWorkingTimeCalendar);
+    }
+
+    private void clearWorkingTimeCalendar() {
+        synchronized (workingTimeCalendarLock) {
+            workingTimeCalendarVersion++;
+            workingTimeCalendar = null;
+            shiftsExist = null;
+        }
+    }
+
+    // calendar could be rebuilt from not yet committed data in the meantime, so it's dropped once again after commit
+    private void runAfterCommit(final Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+
+            });
+        }
+    }
+
+    private boolean shiftsExist() {
+        Boolean exist;
+        long version;
+        synchronized (workingTimeCalendarLock) {
+            exist = shiftsExist;
+            version = workingTimeCalendarVersion;
+        }
+        if (exist != null) {
+            return exist;
+        }
+
+        exist = !dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find()
+                .setMaxResults(1).list().getEntities().isEmpty();
+
+        synchronized (workingTimeCalendarLock) {
+            if (version == workingTimeCalendarVersion) {
+                shiftsExist = exist;
+            }
+        }
+        return exist;
+    }
+
+    // cached range is joined only when it lies close to the requested one, so the calendar doesn't grow without bound
+    private DateRange getCalendarRange(final WorkingTimeCalendar calendar, final long dateFrom, final long dateTo) {
+        if (calendar != null) {
+            long unionFrom = Math.min(dateFrom, calendar.getRangeFrom().getTime());
+            long unionTo = Math.max(dateTo, calendar.getRangeTo().getTime());
+            if (unionTo - unionFrom <= dateTo - dateFrom + WORKING_TIME_CALENDAR_SPAN) {
+                return new DateRange(new Date(unionFrom), new Date(unionTo));
+            }
+        }
+        return new DateRange(new Date(dateFrom), new Date(dateTo));
+    }
+
+    @Override
+    public void invalidateShiftHours(final Long shiftId) {
+        if (shiftId == null) {
+            return;
+        }
+        clearShiftHours(shiftId);
+        runAfterCommit(() -> clearShiftHours(shiftId));
+    }
+
+    private void clearShiftHours(final Long shiftId) {
+        synchronized (workingTimeCalendarLock) {
+            storedShiftsVersion++;
+            storedShifts.remove(shiftId);
+        }
+    }
+
+    private WorkingTimeCalendar getWorkingTimeCalendar(final long dateFrom, final long dateTo) {
+        WorkingTimeCalendar calendar;
+        long version;
+        synchronized (workingTimeCalendarLock) {
+            calendar = workingTimeCalendar;
+            version = workingTimeCalendarVersion;
+        }
+        if (calendar != null && calendar.covers(new Date(dateFrom), new Date(dateTo))) {
+            return calendar;
+        }
+
+        DateRange range = getCalendarRange(calendar, dateFrom, dateTo);
+
+        // shifts started on the previous day may still be working at the beginning of the range
+        List<DateRange> workingHours = getHoursForAllShifts(
+                new Date(range.getFrom().getTime() - DateTimeConstants.MILLIS_PER_DAY), range.getTo()).stream()
+                .map(hour -> new DateRange(hour.getDateFrom(), hour.getDateTo())).collect(Collectors.toList());
+        calendar = new WorkingTimeCalendar(range.getFrom(), range.getTo(), workingHours);
+
+        synchronized (workingTimeCalendarLock) {
+            if (version == workingTimeCalendarVersion) {
+                workingTimeCalendar = calendar;
+            }
+        }
+        return calendar;
     }
 
     @Override
@@ -472,6 +598,47 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo) {
+        if (shift.getId() != null) {
+            StoredShift storedShift = getStoredShift(shift.getId());
+
+            // passed entity could hold not yet saved changes, those are expanded without the stored shift
+            if (storedShift != null && storedShift.isSameAs(shift)) {
+                return expandHoursForShift(storedShift.getShift(), storedShift.getTimetableExceptions(), dateFrom, dateTo);
+            }
+        }
+
+        return expandHoursForShift(shift, shift.getHasManyField(TIMETABLE_EXCEPTIONS_FIELD), dateFrom, dateTo);
+    }
+
+    private StoredShift getStoredShift(final Long shiftId) {
+        StoredShift storedShift;
+        long version;
+        synchronized (workingTimeCalendarLock) {
+            storedShift = storedShifts.get(shiftId);
+            version = storedShiftsVersion;
+        }
+        if (storedShift != null) {
+            return storedShift;
+        }
+
+        Entity shift = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).get(shiftId);
+        if (shift == null) {
+            return null;
+        }
+
+        storedShift = new StoredShift(shift, Lists.newArrayList(shift.getHasManyField(TIMETABLE_EXCEPTIONS_FIELD)));
+
+        synchronized (workingTimeCalendarLock) {
+            if (version == storedShiftsVersion) {
+                storedShifts.put(shiftId, storedShift);
+            }
+        }
+        return storedShift;
+    }
+
+    // hours are expanded for the requested range on every call, so boundaries are exactly the same as for not stored shifts
+    private List<ShiftHour> expandHoursForShift(final Entity shift, final List<Entity> exceptions, final Date dateFrom,
+            final Date dateTo) {
         List<ShiftHour> hours = new ArrayList<ShiftHour>();
         hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_MONDAY, 1));
         hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_TUESDAY, 2));
@@ -481,8 +648,6 @@ public class ShiftsServiceImpl implements ShiftsService {
         hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_SATURDAY, 6));
         hours.addAll(getHourForDay(shift, dateFrom, dateTo, L_SUNDAY, 7));
 
-        List<Entity> exceptions = shift.getHasManyField(TIMETABLE_EXCEPTIONS_FIELD);
-
         addWorkTimeExceptions(hours, exceptions);
         removeFreeTimeExceptions(hours, exceptions);
 
@@ -673,6 +838,43 @@ public class ShiftsServiceImpl implements ShiftsService {
         }
     }
 
+    private static final class StoredShift {
+
+        private final Entity shift;
+
+        private final List<Entity> timetableExceptions;
+
+        private StoredShift(final Entity shift, final List<Entity> timetableExceptions) {
+            this.shift = shift;
+            this.timetableExceptions = timetableExceptions;
+        }
+
+        private Entity getShift() {
+            return shift;
+        }
+
+        private List<Entity> getTimetableExceptions() {
+            return timetableExceptions;
+        }
+
+        private boolean isSameAs(final Entity otherShift) {
+            Object otherTimetableExceptions = otherShift.getField(TIMETABLE_EXCEPTIONS_FIELD);
+            if (otherTimetableExceptions instanceof List && !(otherTimetableExceptions instanceof EntityList)) {
+                return false;
+            }
+
+            for (String day : WEEK_DAYS) {
+                if (!Objects.equals(shift.getField(day + WORKING_LITERAL), otherShift.getField(day + WORKING_LITERAL))
+                        || !Objects.equals(shift.getStringField(day + HOURS_LITERAL),
+                                otherShift.getStringField(day + HOURS_LITERAL))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
     public static class ShiftHoursComparator implements Comparator<ShiftHour>, Serializable {
 
         /**
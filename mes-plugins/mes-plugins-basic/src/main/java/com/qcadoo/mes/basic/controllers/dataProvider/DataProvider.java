@@ -1,17 +1,23 @@
 package com.qcadoo.mes.basic.controllers.dataProvider;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
@@ -32,21 +38,28 @@ public class DataProvider {
     @Autowired
     private DictionaryService dictionaryService;
 
+    @Autowired
+    private LookupCache lookupCache;
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataProvider.class);
+
     private static final int MAX_RESULTS = 20;
 
+    private static final Pattern PLAN_ROWS_PATTERN = Pattern.compile("\"Plan Rows\"\\s*:\\s*(\\d+)");
+
     private String prepareProductsQuery() {
         return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
                 + "FROM basic_product product WHERE product.active = true AND product.number ilike :query ;";
     }
 
-    private String prepareProductsQueryWithLimit(int limit) {
+    private String prepareProductsQueryWithLimit(final String condition) {
         return "SELECT product.id AS id, product.number AS code, product.number AS number, product.name AS name "
-                + "FROM basic_product product WHERE product.active = true AND product.number ilike :query LIMIT " + limit + ";";
+                + "FROM basic_product product WHERE product.active = true AND " + condition
+                + " ORDER BY product.number LIMIT :limit;";
     }
 
     private String prepareAdditionalCodeQuery(final String productnumber) {
-        String productNumberCondition = Strings.isNullOrEmpty(productnumber) ? ""
-                : "AND product.number = '" + productnumber + "'";
+        String productNumberCondition = Strings.isNullOrEmpty(productnumber) ? "" : "AND product.number = :productnumber";
 
         return "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
                 + "FROM basic_additionalcode additionalcode "
@@ -54,11 +67,12 @@ public class DataProvider {
                 + "WHERE additionalcode.code ilike :query;";
     }
 
-    private String prepareAdditionalCodeQueryWithLimit(int limit) {
+    private String prepareAdditionalCodeQueryWithLimit(final String condition) {
         return "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
                 + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id AND (product.number = :productnumber OR COALESCE(:productnumber,'')='' ))"
-                + "WHERE additionalcode.code ilike :query LIMIT " + limit + ";";
+                + "JOIN basic_product product ON (additionalcode.product_id = product.id "
+                + "AND (product.number = :productnumber OR COALESCE(:productnumber,'')='' ))"
+                + "WHERE " + condition + " ORDER BY additionalcode.code LIMIT :limit;";
     }
 
     private String preparePalletNumbersQuery() {
@@ -66,10 +80,10 @@ public class DataProvider {
                 + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND palletnumber.number ilike :query;";
     }
 
-    private String preparePalletNumbersQueryWithLimit(int limit) {
+    private String preparePalletNumbersQueryWithLimit(final String condition) {
         return "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND palletnumber.number ilike :query LIMIT "
-                + limit + ";";
+                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true AND " + condition
+                + " ORDER BY palletnumber.number LIMIT :limit;";
     }
 
     private int countQueryResults(final String preparedQuery, final String query, final Map<String, Object> paramMap) {
@@ -80,109 +94,147 @@ public class DataProvider {
         return jdbcTemplate.queryForObject(countQuery, paramMap, Integer.class);
     }
 
-    public DataResponse getProductsResponseByQuery(final String query) {
-        return getDataResponse(query, prepareProductsQuery(), getProductsByQuery(query), Maps.newHashMap());
-    }
+    /**
+     * Counts results only up to the point where they wouldn't be shown anyway. Above that the planner's row estimate is returned,
+     * so typing in an autocomplete doesn't scan the whole table on each keystroke.
+     */
+    private int countQueryResultsApproximately(final String preparedQuery, final String query,
+            final Map<String, Object> paramMap) {
+        String limitedQuery = preparedQuery.replace(";", "");
+        String countQuery = "SELECT count(*) AS cnt FROM (" + limitedQuery + " LIMIT " + (MAX_RESULTS + 1) + ") sq;";
 
-    public DataResponse getAdditionalCodesResponseByQuery(final String query, final String productnumber) {
-        return getDataResponse(query, prepareAdditionalCodeQuery(productnumber), getAdditionalCodesByQuery(query, productnumber),
-                Maps.newHashMap());
-    }
+        paramMap.put("query", "%" + query + "%");
 
-    public DataResponse getPalletNumbersResponseByQuery(final String query) {
-        return getDataResponse(query, preparePalletNumbersQuery(), getPalletNumbersByQuery(query), Maps.newHashMap());
-    }
+        int numberOfResults = jdbcTemplate.queryForObject(countQuery, paramMap, Integer.class);
 
-    public DataResponse getDataResponse(final String query, final String preparedQuery, final List<AbstractDTO> entities,
-            final Map<String, Object> paramMap) {
-        return getDataResponse(query, preparedQuery, entities, paramMap, true);
-    }
+        if (numberOfResults > MAX_RESULTS) {
+            return Math.max(numberOfResults, estimateQueryResults(limitedQuery, paramMap));
+        }
 
-    public DataResponse getDataResponse(final String query, final String preparedQuery, final List<AbstractDTO> entities,
-            Map<String, Object> paramMap, boolean shouldCheckMaxResults) {
-        int numberOfResults = countQueryResults(preparedQuery, query, paramMap);
+        return numberOfResults;
+    }
 
-        if (shouldCheckMaxResults && (numberOfResults > MAX_RESULTS)) {
-            return new DataResponse(Lists.newArrayList(), numberOfResults);
+    /**
+     * Runs in its own transaction, so that a failing EXPLAIN can't abort the transaction of the caller.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    private int estimateQueryResults(final String preparedQuery, final Map<String, Object> paramMap) {
+        try {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + preparedQuery, paramMap, String.class);
+
+            Matcher matcher = PLAN_ROWS_PATTERN.matcher(Strings.nullToEmpty(plan));
+
+            if (matcher.find()) {
+                return (int) Math.min(Integer.MAX_VALUE, Long.parseLong(matcher.group(1)));
+            }
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to estimate number of lookup results", e);
         }
 
-        return new DataResponse(entities, numberOfResults);
+        return 0;
     }
 
-    public List<ProductDTO> getAllProducts(final String sidx, final String sord) {
-        // TODO sort
-        String _query = "SELECT product.id, product.number AS code, product.number, product.name, product.ean, product.globaltypeofmaterial, product.category "
-                + "FROM basic_product product WHERE product.active = true;";
+    private Map<String, Object> prepareLookupParameters(final String query) {
+        Map<String, Object> parameters = Maps.newHashMap();
 
-        List<ProductDTO> products = jdbcTemplate.query(_query, new MapSqlParameterSource(Collections.EMPTY_MAP),
-                new BeanPropertyRowMapper(ProductDTO.class));
+        parameters.put("query", "%" + query + "%");
+        parameters.put("prefix", query + "%");
 
-        return products;
+        return parameters;
     }
 
-    public List<AbstractDTO> getProductsByQuery(final String query) {
-        String _query = prepareProductsQueryWithLimit(MAX_RESULTS);
+    /**
+     * Returns matches starting with the typed text first and fills up to MAX_RESULTS with the remaining matches. Each part is a
+     * plain query ordered by the searched column, so the database can stop after the limit instead of sorting all matches by a
+     * computed key.
+     */
+    private List<AbstractDTO> queryPrefixMatchesFirst(final Function<String, String> queryWithCondition, final String column,
+            final Map<String, Object> parameters, final Class<? extends AbstractDTO> dtoClass) {
+        parameters.put("limit", MAX_RESULTS);
 
-        Map<String, Object> parameters = Maps.newHashMap();
+        List<AbstractDTO> results = Lists.newArrayList(jdbcTemplate.query(queryWithCondition.apply(column + " ilike :prefix"),
+                parameters, new BeanPropertyRowMapper(dtoClass)));
 
-        parameters.put("query", "%" + query + "%");
+        if (results.size() < MAX_RESULTS) {
+            parameters.put("limit", MAX_RESULTS - results.size());
 
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
+            results.addAll(jdbcTemplate.query(
+                    queryWithCondition.apply(column + " ilike :query AND " + column + " NOT ilike :prefix"), parameters,
+                    new BeanPropertyRowMapper(dtoClass)));
+        }
 
-        List<AbstractDTO> products = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(ProductDTO.class));
+        return results;
+    }
 
-        return products;
+    public DataResponse getProductsResponseByQuery(final String query) {
+        return lookupCache.get("products:" + query,
+                () -> getApproximateDataResponse(query, prepareProductsQuery(), () -> getProductsByQuery(query),
+                        Maps.newHashMap()));
     }
 
-    public List<AdditionalCodeDTO> getAllAdditionalCodes(final String sidx, final String sord) {
-        // TODO sort
-        String _query = "SELECT additionalcode.id AS id, additionalcode.code AS code, product.number AS productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id);";
+    public DataResponse getAdditionalCodesResponseByQuery(final String query, final String productnumber) {
+        return lookupCache.get("additionalCodes:" + Strings.nullToEmpty(productnumber) + ":" + query, () -> {
+            Map<String, Object> paramMap = Maps.newHashMap();
 
-        List<AdditionalCodeDTO> codes = jdbcTemplate.query(_query, new MapSqlParameterSource(Collections.EMPTY_MAP),
-                new BeanPropertyRowMapper(AdditionalCodeDTO.class));
+            paramMap.put("productnumber", productnumber);
 
-        return codes;
+            return getApproximateDataResponse(query, prepareAdditionalCodeQuery(productnumber),
+                    () -> getAdditionalCodesByQuery(query, productnumber), paramMap);
+        });
     }
 
-    public List<AbstractDTO> getAdditionalCodesByQuery(final String query, final String productnumber) {
-        String _query = prepareAdditionalCodeQueryWithLimit(MAX_RESULTS);
+    public DataResponse getPalletNumbersResponseByQuery(final String query) {
+        return lookupCache.get("palletNumbers:" + query, () -> getApproximateDataResponse(query, preparePalletNumbersQuery(),
+                () -> getPalletNumbersByQuery(query), Maps.newHashMap()));
+    }
 
-        Map<String, Object> parameters = Maps.newHashMap();
+    /**
+     * Counts first and loads the entities only if they will be shown.
+     */
+    private DataResponse getApproximateDataResponse(final String query, final String preparedQuery,
+            final Supplier<List<AbstractDTO>> entities, final Map<String, Object> paramMap) {
+        int numberOfResults = countQueryResultsApproximately(preparedQuery, query, paramMap);
 
-        parameters.put("query", "%" + query + "%");
-        parameters.put("productnumber", productnumber);
-
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
+        if (numberOfResults > MAX_RESULTS) {
+            return new DataResponse(Lists.newArrayList(), numberOfResults);
+        }
 
-        List<AbstractDTO> codes = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(AdditionalCodeDTO.class));
+        return new DataResponse(entities.get(), numberOfResults);
+    }
 
-        return codes;
+    public DataResponse getDataResponse(final String query, final String preparedQuery, final List<AbstractDTO> entities,
+            final Map<String, Object> paramMap) {
+        return getDataResponse(query, preparedQuery, entities, paramMap, true);
     }
 
-    public List<PalletNumberDTO> getAllPalletNumbers(final String sidx, final String sord) {
-        String _query = "SELECT palletnumber.id AS id, palletnumber.number AS code, palletnumber.number AS number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true;";
+    public DataResponse getDataResponse(final String query, final String preparedQuery, final List<AbstractDTO> entities,
+            Map<String, Object> paramMap, boolean shouldCheckMaxResults) {
+        if (shouldCheckMaxResults) {
+            return getApproximateDataResponse(query, preparedQuery, () -> entities, paramMap);
+        }
 
-        List<PalletNumberDTO> pallets = jdbcTemplate.query(_query, new MapSqlParameterSource(Collections.EMPTY_MAP),
-                new BeanPropertyRowMapper(PalletNumberDTO.class));
+        int numberOfResults = countQueryResults(preparedQuery, query, paramMap);
 
-        return pallets;
+        return new DataResponse(entities, numberOfResults);
     }
 
-    public List<AbstractDTO> getPalletNumbersByQuery(final String query) {
-        String _query = preparePalletNumbersQueryWithLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = Maps.newHashMap();
+    public List<AbstractDTO> getProductsByQuery(final String query) {
+        return queryPrefixMatchesFirst(this::prepareProductsQueryWithLimit, "product.number", prepareLookupParameters(query),
+                ProductDTO.class);
+    }
 
-        parameters.put("query", "%" + query + "%");
+    public List<AbstractDTO> getAdditionalCodesByQuery(final String query, final String productnumber) {
+        Map<String, Object> parameters = prepareLookupParameters(query);
 
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
+        parameters.put("productnumber", productnumber);
 
-        List<AbstractDTO> pallets = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(PalletNumberDTO.class));
+        return queryPrefixMatchesFirst(this::prepareAdditionalCodeQueryWithLimit, "additionalcode.code", parameters,
+                AdditionalCodeDTO.class);
+    }
 
-        return pallets;
+    public List<AbstractDTO> getPalletNumbersByQuery(final String query) {
+        return queryPrefixMatchesFirst(this::preparePalletNumbersQueryWithLimit, "palletnumber.number",
+                prepareLookupParameters(query), PalletNumberDTO.class);
     }
 
     public List<Map<String, String>> getUnits() {
@@ -0,0 +1,85 @@
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+/**
+ * Keeps recent lookup responses of the current user session, so that retyping or deleting characters in an autocomplete doesn't
+ * hit the database again. Entries expire after a short time and are dropped as soon as any looked up record is saved or
+ * deleted, see {@link LookupCacheInvalidator}.
+ */
+@Component
+@Scope(value = WebApplicationContext.SCOPE_SESSION, proxyMode = ScopedProxyMode.TARGET_CLASS)
+public class LookupCache {
+
+    private static final long TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int MAX_ENTRIES = 100;
+
+    @Autowired
+    private LookupCacheInvalidator lookupCacheInvalidator;
+
+    private final Map<String, CachedResponse> responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedResponse> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public DataResponse get(final String key, final Supplier<DataResponse> loader) {
+        long now = System.currentTimeMillis();
+        long version = lookupCacheInvalidator.getVersion();
+
+        synchronized (responses) {
+            CachedResponse cachedResponse = responses.get(key);
+
+            if (cachedResponse != null && cachedResponse.expiresAt > now && cachedResponse.version == version) {
+                return cachedResponse.response;
+            }
+        }
+
+        DataResponse response = loader.get();
+
+        synchronized (responses) {
+            responses.put(key, new CachedResponse(response, now + TIME_TO_LIVE, version));
+        }
+
+        return response;
+    }
+
+    public void clear() {
+        synchronized (responses) {
+            responses.clear();
+        }
+    }
+
+    private static class CachedResponse {
+
+        private final DataResponse response;
+
+        private final long expiresAt;
+
+        private final long version;
+
+        CachedResponse(final DataResponse response, final long expiresAt, final long version) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.version = version;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Invalidates lookup responses cached in all user sessions when products, additional codes or pallet numbers change. Each
+ * {@link LookupCache} entry remembers the version it was loaded in and isn't used once the version has been bumped.
+ */
+@Service
+public class LookupCacheInvalidator {
+
+    private final AtomicLong version = new AtomicLong();
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public void onSave(final DataDefinition dataDefinition, final Entity entity) {
+        invalidate();
+    }
+
+    public void onDelete(final DataDefinition dataDefinition, final Entity entity) {
+        invalidate();
+    }
+
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+
+}
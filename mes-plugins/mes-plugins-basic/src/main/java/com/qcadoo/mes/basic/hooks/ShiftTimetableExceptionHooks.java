@@ -0,0 +1,73 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.shift.ShiftsDataProvider;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ShiftTimetableExceptionHooks {
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private ShiftsDataProvider shiftsDataProvider;
+
+    public void onSave(final DataDefinition shiftTimetableExceptionDD, final Entity shiftTimetableException) {
+        shiftsService.invalidateWorkingTimeCalendar();
+        invalidateShiftHours(shiftTimetableException);
+        if (shiftTimetableException.getId() != null) {
+            // exception could be moved to another shift
+            invalidateShiftHours(shiftTimetableExceptionDD.get(shiftTimetableException.getId()));
+        }
+        shiftsDataProvider.invalidate();
+    }
+
+    public boolean onDelete(final DataDefinition shiftTimetableExceptionDD, final Entity shiftTimetableException) {
+        shiftsService.invalidateWorkingTimeCalendar();
+        invalidateShiftHours(shiftTimetableException);
+        shiftsDataProvider.invalidate();
+        return true;
+    }
+
+    private void invalidateShiftHours(final Entity shiftTimetableException) {
+        if (shiftTimetableException == null) {
+            return;
+        }
+
+        Entity shift = shiftTimetableException.getBelongsToField(ShiftTimetableExceptionFields.SHIFT);
+
+        if (shift != null) {
+            shiftsService.invalidateShiftHours(shift.getId());
+        }
+    }
+
+}
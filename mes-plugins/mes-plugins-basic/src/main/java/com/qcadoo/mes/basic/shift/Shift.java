@@ -38,6 +38,9 @@ import org.joda.time.LocalTime;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -46,6 +49,7 @@ import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.commons.functional.BiFunction;
 import com.qcadoo.commons.functional.Fold;
+import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.model.api.Entity;
 
@@ -66,7 +70,10 @@ public class Shift {
 
     private final Multimap<Integer, WorkingHours> workingHoursPerDay;
 
-    private final ShiftTimetableExceptions timetableExceptions;
+    // timetable exceptions are loaded on first use only, copies of this shift share them
+    private final Supplier<ShiftTimetableExceptions> timetableExceptions;
+
+    private final Supplier<List<Entity>> timetableExceptionEntities;
 
     private DateTime shiftStartDate;
 
@@ -78,7 +85,8 @@ public class Shift {
         this.shift = shiftEntityCopy;
         this.shiftId = shiftEntityCopy.getId();
         this.workingHoursPerDay = getWorkingHoursPerDay(shiftEntityCopy, true);
-        this.timetableExceptions = new ShiftTimetableExceptions(shiftEntityCopy);
+        this.timetableExceptionEntities = Suppliers.memoize(() -> getTimetableExceptionEntities(shiftEntityCopy));
+        this.timetableExceptions = Suppliers.memoize(() -> new ShiftTimetableExceptions(timetableExceptionEntities.get()));
     }
 
     public Shift(final Entity shiftEntity, final DateTime day) {
@@ -87,7 +95,8 @@ public class Shift {
         this.shift = shiftEntityCopy;
         this.shiftId = shiftEntityCopy.getId();
         this.workingHoursPerDay = getWorkingHoursPerDay(shiftEntityCopy, true);
-        this.timetableExceptions = new ShiftTimetableExceptions(shiftEntityCopy);
+        this.timetableExceptionEntities = Suppliers.memoize(() -> getTimetableExceptionEntities(shiftEntityCopy));
+        this.timetableExceptions = Suppliers.memoize(() -> new ShiftTimetableExceptions(timetableExceptionEntities.get()));
 
         getShiftDates(day);
     }
@@ -98,11 +107,32 @@ public class Shift {
         this.shift = shiftEntityCopy;
         this.shiftId = shiftEntityCopy.getId();
         this.workingHoursPerDay = getWorkingHoursPerDay(shiftEntityCopy, checkWorking);
-        this.timetableExceptions = new ShiftTimetableExceptions(shiftEntityCopy);
+        this.timetableExceptionEntities = Suppliers.memoize(() -> getTimetableExceptionEntities(shiftEntityCopy));
+        this.timetableExceptions = Suppliers.memoize(() -> new ShiftTimetableExceptions(timetableExceptionEntities.get()));
 
         getShiftDates(day);
     }
 
+    private Shift(final Shift shift) {
+        this.shift = shift.shift;
+        this.shiftId = shift.shiftId;
+        this.workingHoursPerDay = shift.workingHoursPerDay;
+        this.timetableExceptions = shift.timetableExceptions;
+        this.timetableExceptionEntities = shift.timetableExceptionEntities;
+        this.shiftStartDate = shift.shiftStartDate;
+        this.shiftEndDate = shift.shiftEndDate;
+    }
+
+    /**
+     * Returns a copy of this shift. Parsed working hours and timetable exceptions, which are never modified, are shared with this
+     * instance, so they don't have to be parsed again.
+     * 
+     * @return copy of this shift
+     */
+    Shift copy() {
+        return new Shift(this);
+    }
+
     private void getShiftDates(DateTime day) {
         DateTime dateTime = day.withTimeAtStartOfDay();
 
@@ -127,6 +157,10 @@ public class Shift {
         }
     }
 
+    private List<Entity> getTimetableExceptionEntities(final Entity shiftEntity) {
+        return ImmutableList.copyOf(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS).iterator());
+    }
+
     private Multimap<Integer, WorkingHours> getWorkingHoursPerDay(final Entity shiftEntity, final boolean checkWorking) {
         ImmutableSetMultimap.Builder<Integer, WorkingHours> builder = ImmutableSetMultimap.builder();
 
@@ -199,8 +233,8 @@ public class Shift {
     @Deprecated
     public boolean worksAt(final Date date) {
         DateTime dateTime = new DateTime(date);
-        return (worksAt(dateTime.getDayOfWeek(), dateTime.toLocalTime()) && !timetableExceptions.hasFreeTimeAt(date))
-                || timetableExceptions.hasWorkTimeAt(date);
+        return (worksAt(dateTime.getDayOfWeek(), dateTime.toLocalTime()) && !timetableExceptions.get().hasFreeTimeAt(date))
+                || timetableExceptions.get().hasWorkTimeAt(date);
     }
 
     /**
@@ -216,7 +250,7 @@ public class Shift {
      * @return
      */
     public Optional<DateRange> findWorkTimeAt(final Date date) {
-        if (timetableExceptions.hasFreeTimeAt(date)) {
+        if (timetableExceptions.get().hasFreeTimeAt(date)) {
             return Optional.absent();
         }
         DateTime dateTime = new DateTime(date);
@@ -224,7 +258,7 @@ public class Shift {
         for (TimeRange timeRangeFromPlan : maybeTimeRangeFromPlan.asSet()) {
             return Optional.of(buildDateRangeFrom(timeRangeFromPlan, date));
         }
-        return timetableExceptions.findDateRangeFor(TimetableExceptionType.WORK_TIME, date);
+        return timetableExceptions.get().findDateRangeFor(TimetableExceptionType.WORK_TIME, date);
     }
 
     private DateRange buildDateRangeFrom(final TimeRange timeRange, final Date date) {
@@ -305,6 +339,15 @@ public class Shift {
         return shift.copy();
     }
 
+    /**
+     * Returns copies of shift's timetable exceptions, which are loaded on first use.
+     * 
+     * @return unmodifiable list of shift's timetable exceptions
+     */
+    public List<Entity> getTimetableExceptions() {
+        return Lists.transform(timetableExceptionEntities.get(), Entity::copy);
+    }
+
     /**
      * Returns shift's identifier
      * 
@@ -332,7 +375,7 @@ public class Shift {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(shiftId).append(timetableExceptions).append(workingHoursPerDay).toHashCode();
+        return new HashCodeBuilder().append(shiftId).append(timetableExceptions.get()).append(workingHoursPerDay).toHashCode();
     }
 
     @Override
@@ -347,8 +390,8 @@ public class Shift {
 
         Shift other = (Shift) obj;
 
-        return new EqualsBuilder().append(shiftId, other.shiftId).append(timetableExceptions, other.timetableExceptions)
-                .append(workingHoursPerDay, other.workingHoursPerDay).isEquals();
+        return new EqualsBuilder().append(shiftId, other.shiftId)
+                .append(timetableExceptions.get(), other.timetableExceptions.get()).append(workingHoursPerDay, other.workingHoursPerDay).isEquals();
     }
 
     private static final class Constants {
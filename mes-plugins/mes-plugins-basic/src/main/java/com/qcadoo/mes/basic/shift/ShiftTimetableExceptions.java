@@ -64,11 +64,14 @@ public class ShiftTimetableExceptions {
     private final ImmutableMultimap<TimetableExceptionType, DateRange> exceptions;
 
     public ShiftTimetableExceptions(final Entity shift) {
-        this.exceptions = getExceptions(shift);
+        this(shift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS));
     }
 
-    private ImmutableMultimap<TimetableExceptionType, DateRange> getExceptions(final Entity shift) {
-        List<Entity> timetableExceptionEntities = shift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+    public ShiftTimetableExceptions(final List<Entity> timetableExceptionEntities) {
+        this.exceptions = getExceptions(timetableExceptionEntities);
+    }
+
+    private ImmutableMultimap<TimetableExceptionType, DateRange> getExceptions(final List<Entity> timetableExceptionEntities) {
         return ImmutableMultimap.copyOf(Multimaps.transformValues(Multimaps.index(timetableExceptionEntities, EXTRACT_TYPE),
                 EXTRACT_DATE_RANGE));
     }
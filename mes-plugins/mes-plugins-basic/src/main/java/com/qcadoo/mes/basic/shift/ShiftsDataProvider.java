@@ -25,8 +25,18 @@ package com.qcadoo.mes.basic.shift;
 
 import java.util.List;
 
+import com.google.common.base.Optional;
+
+/**
+ * Provides shifts with already parsed working hours and timetable exceptions. Shifts are loaded once and kept in memory until
+ * {@link #invalidate()} is called by the shift and timetable exception model hooks. Each call returns copies of the kept shifts.
+ */
 public interface ShiftsDataProvider {
 
     List<Shift> findAll();
 
+    Optional<Shift> findById(final Long shiftId);
+
+    void invalidate();
+
 }
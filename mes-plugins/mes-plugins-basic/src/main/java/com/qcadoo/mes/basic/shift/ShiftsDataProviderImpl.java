@@ -24,16 +24,21 @@
 package com.qcadoo.mes.basic.shift;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import com.google.common.base.Function;
-import com.google.common.collect.FluentIterable;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
 
 @Service
 public final class ShiftsDataProviderImpl implements ShiftsDataProvider {
@@ -41,19 +46,81 @@ public final class ShiftsDataProviderImpl implements ShiftsDataProvider {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    private final Object lock = new Object();
+
+    private long version;
+
+    private ImmutableMap<Long, Shift> shifts;
+
     @Override
     public List<Shift> findAll() {
-        return FluentIterable.from(getAllShifts()).transform(new Function<Entity, Shift>() {
+        return getShifts().values().stream().map(Shift::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Shift> findById(final Long shiftId) {
+        if (shiftId == null) {
+            return Optional.absent();
+        }
+        Shift shift = getShifts().get(shiftId);
+        if (shift == null) {
+            return Optional.absent();
+        }
+        return Optional.of(shift.copy());
+    }
+
+    @Override
+    public void invalidate() {
+        clearShifts();
+
+        // shifts could be loaded again before the change is committed, so they are dropped once again after commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    clearShifts();
+                }
+
+            });
+        }
+    }
+
+    private void clearShifts() {
+        synchronized (lock) {
+            version++;
+            shifts = null;
+        }
+    }
+
+    private ImmutableMap<Long, Shift> getShifts() {
+        ImmutableMap<Long, Shift> loadedShifts;
+        long loadedVersion;
+        synchronized (lock) {
+            loadedShifts = shifts;
+            loadedVersion = version;
+        }
+        if (loadedShifts != null) {
+            return loadedShifts;
+        }
+
+        ImmutableMap.Builder<Long, Shift> builder = ImmutableMap.builder();
+        for (Entity shiftEntity : getAllShifts()) {
+            builder.put(shiftEntity.getId(), new Shift(shiftEntity));
+        }
+        loadedShifts = builder.build();
 
-            @Override
-            public Shift apply(final Entity shiftEntity) {
-                return new Shift(shiftEntity);
+        synchronized (lock) {
+            // shifts could be modified while they were being loaded, such snapshot mustn't be cached
+            if (loadedVersion == version) {
+                shifts = loadedShifts;
             }
-        }).toList();
+        }
+        return loadedShifts;
     }
 
     private List<Entity> getAllShifts() {
-        return getShiftDataDefinition().find().list().getEntities();
+        return ImmutableList.copyOf(getShiftDataDefinition().find().addOrder(SearchOrders.asc("id")).list().getEntities());
     }
 
     private DataDefinition getShiftDataDefinition() {
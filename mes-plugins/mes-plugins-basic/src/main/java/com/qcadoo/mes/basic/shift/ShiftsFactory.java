@@ -23,15 +23,36 @@
  */
 package com.qcadoo.mes.basic.shift;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.base.Optional;
 import com.qcadoo.model.api.Entity;
 
 @Component
 public class ShiftsFactory {
 
+    @Autowired
+    private ShiftsDataProvider shiftsDataProvider;
+
     public Shift buildFrom(final Entity shiftEntity) {
         return new Shift(shiftEntity);
     }
 
+    /**
+     * Returns shift as it's stored, taken from {@link ShiftsDataProvider} so it's not parsed again. Changes of the given entity
+     * which aren't saved yet are not taken into account, use {@link #buildFrom(Entity)} for such entities.
+     * 
+     * @param shiftEntity
+     *            shift entity loaded from the database
+     * @return stored shift
+     */
+    public Shift buildFromStored(final Entity shiftEntity) {
+        Optional<Shift> shift = shiftsDataProvider.findById(shiftEntity.getId());
+        if (shift.isPresent()) {
+            return shift.get();
+        }
+        return new Shift(shiftEntity);
+    }
+
 }
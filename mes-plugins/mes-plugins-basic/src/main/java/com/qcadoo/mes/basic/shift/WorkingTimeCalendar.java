@@ -0,0 +1,239 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import com.qcadoo.commons.dateTime.DateRange;
+
+/**
+ * Immutable index of working time within a bounded range. Holds sorted, disjoint working intervals together with the prefix
+ * sums of their lengths, so both "date after N working seconds" and "working seconds between two dates" are answered with a
+ * binary search instead of walking the shifts week by week.
+ */
+public class WorkingTimeCalendar {
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private final long rangeFrom;
+
+    private final long rangeTo;
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    // workedBefore[i] = working millis of all intervals preceding the i-th one
+    private final long[] workedBefore;
+
+    /**
+     * @param rangeFrom
+     *            beginning of the range covered by this calendar
+     * @param rangeTo
+     *            end of the range covered by this calendar
+     * @param workingHours
+     *            working intervals sorted by their beginning and not overlapping each other, intervals exceeding the range are
+     *            trimmed
+     */
+    public WorkingTimeCalendar(final Date rangeFrom, final Date rangeTo, final List<DateRange> workingHours) {
+        this.rangeFrom = rangeFrom.getTime();
+        this.rangeTo = rangeTo.getTime();
+
+        long[] starts = new long[workingHours.size()];
+        long[] ends = new long[workingHours.size()];
+        long[] workedBefore = new long[workingHours.size() + 1];
+
+        int size = 0;
+
+        for (DateRange workingHour : workingHours) {
+            long start = Math.max(workingHour.getFrom().getTime(), this.rangeFrom);
+            long end = Math.min(workingHour.getTo().getTime(), this.rangeTo);
+
+            if (end <= start) {
+                continue;
+            }
+            if (size > 0 && start < ends[size - 1]) {
+                throw new IllegalArgumentException("Working hours have to be sorted and must not overlap");
+            }
+
+            starts[size] = start;
+            ends[size] = end;
+            workedBefore[size + 1] = workedBefore[size] + (end - start);
+            size++;
+        }
+
+        this.starts = Arrays.copyOf(starts, size);
+        this.ends = Arrays.copyOf(ends, size);
+        this.workedBefore = Arrays.copyOf(workedBefore, size + 1);
+    }
+
+    public Date getRangeFrom() {
+        return new Date(rangeFrom);
+    }
+
+    public Date getRangeTo() {
+        return new Date(rangeTo);
+    }
+
+    public boolean covers(final Date dateFrom, final Date dateTo) {
+        return rangeFrom <= dateFrom.getTime() && dateTo.getTime() <= rangeTo;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    /**
+     * Finds the date at which the given amount of working time, counted from dateFrom, elapses.
+     * 
+     * @return the date or absent if the working time within this calendar's range is insufficient
+     */
+    public Optional<Date> findDateAfter(final Date dateFrom, final long seconds) {
+        long from = dateFrom.getTime();
+
+        int first = firstIntervalEndingAfter(from);
+
+        if (first == starts.length) {
+            return Optional.empty();
+        }
+
+        long target = workedBefore[first] + Math.max(0L, from - starts[first]) + seconds * MILLIS_PER_SECOND;
+
+        if (target > workedBefore[starts.length]) {
+            return Optional.empty();
+        }
+
+        // first interval, not ending before dateFrom, in which the target is reached
+        int low = first;
+        int high = starts.length - 1;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (workedBefore[middle + 1] >= target) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return Optional.of(new Date(starts[low] + (target - workedBefore[low])));
+    }
+
+    /**
+     * Finds the date from which the given amount of working time elapses exactly at dateTo.
+     * 
+     * @return the date or absent if the working time within this calendar's range is insufficient
+     */
+    public Optional<Date> findDateBefore(final Date dateTo, final long seconds) {
+        long to = dateTo.getTime();
+
+        int last = lastIntervalStartingBefore(to);
+
+        if (last < 0) {
+            return Optional.empty();
+        }
+
+        long target = workedBefore[last] + (Math.min(ends[last], to) - starts[last]) - seconds * MILLIS_PER_SECOND;
+
+        if (target < 0) {
+            return Optional.empty();
+        }
+
+        // last interval, not starting after dateTo, in which the target is reached
+        int low = 0;
+        int high = last;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (workedBefore[middle] <= target) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return Optional.of(new Date(starts[low] + (target - workedBefore[low])));
+    }
+
+    /**
+     * Counts working time between given dates, both dates are trimmed to this calendar's range.
+     */
+    public long getWorkingSecondsBetween(final Date dateFrom, final Date dateTo) {
+        if (!dateFrom.before(dateTo)) {
+            return 0L;
+        }
+
+        return (getWorkedUntil(dateTo.getTime()) - getWorkedUntil(dateFrom.getTime())) / MILLIS_PER_SECOND;
+    }
+
+    private long getWorkedUntil(final long date) {
+        int last = lastIntervalStartingBefore(date);
+
+        if (last < 0) {
+            return 0L;
+        }
+
+        return workedBefore[last] + (Math.min(ends[last], date) - starts[last]);
+    }
+
+    private int firstIntervalEndingAfter(final long date) {
+        int low = 0;
+        int high = ends.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (ends[middle] > date) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    private int lastIntervalStartingBefore(final long date) {
+        int low = -1;
+        int high = starts.length - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (starts[middle] < date) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+}
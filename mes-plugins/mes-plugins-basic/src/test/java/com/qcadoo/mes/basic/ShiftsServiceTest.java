@@ -33,12 +33,15 @@ import java.util.List;
 
 import junit.framework.Assert;
 
+import org.joda.time.DateTime;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -162,6 +165,7 @@ public class ShiftsServiceTest {
         SearchResult result = mock(SearchResult.class);
         when(dataDefinitionService.get("basic", "shift")).thenReturn(dataDefinition);
         when(dataDefinition.find()).thenReturn(builder);
+        when(builder.setMaxResults(1)).thenReturn(builder);
         when(builder.list()).thenReturn(result);
         when(result.getTotalNumberOfEntities()).thenReturn(0);
         // when
@@ -182,6 +186,7 @@ public class ShiftsServiceTest {
         SearchResult result = mock(SearchResult.class);
         when(dataDefinitionService.get("basic", "shift")).thenReturn(dataDefinition);
         when(dataDefinition.find()).thenReturn(builder);
+        when(builder.setMaxResults(1)).thenReturn(builder);
         when(builder.list()).thenReturn(result);
         when(result.getTotalNumberOfEntities()).thenReturn(1);
         when(result.getEntities()).thenReturn(shifts);
@@ -206,4 +211,56 @@ public class ShiftsServiceTest {
         shiftsService.findDateFromForOrder(dateTo, 123L);
         // then
     }
+
+    @Test
+    public void shouldNotReturnHoursOfNightShiftStartedDayBeforeDateFrom() throws Exception {
+        // given
+        Date dateFrom = new DateTime(2017, 1, 3, 2, 0).toDate();
+        Date dateTo = new DateTime(2017, 1, 4, 2, 0).toDate();
+        String hours = "22:00-06:00";
+        when(dataDefinitionService.get("basic", "shift")).thenReturn(dataDefinition);
+        when(dataDefinition.get(1L)).thenReturn(shift);
+        when(shift.getId()).thenReturn(1L);
+
+        for (String day : new String[] { "monday", "tuesday", "wensday", "thursday", "friday", "saturday", "sunday" }) {
+            when(shift.getField(day + "Working")).thenReturn(true);
+            when(shift.getStringField(day + "Hours")).thenReturn(hours);
+        }
+
+        EntityList timetableExceptions = mockEntityList(new ArrayList<Entity>());
+        when(shift.getHasManyField("timetableExceptions")).thenReturn(timetableExceptions);
+        // when
+        List<ShiftHour> shiftHours = shiftsService.getHoursForShift(shift, dateFrom, dateTo);
+        // then
+        assertEquals(Lists.newArrayList(new ShiftHour(new DateTime(2017, 1, 3, 22, 0).toDate(),
+                new DateTime(2017, 1, 3, 6, 0).toDate())), shiftHours);
+    }
+
+    @Test
+    public void shouldReturnHoursOfModifiedShiftInsteadOfStoredOne() throws Exception {
+        // given
+        Date dateFrom = new DateTime(2017, 1, 3, 0, 0).toDate();
+        Date dateTo = new DateTime(2017, 1, 4, 0, 0).toDate();
+        Entity storedShift = mock(Entity.class);
+        when(dataDefinitionService.get("basic", "shift")).thenReturn(dataDefinition);
+        when(dataDefinition.get(1L)).thenReturn(storedShift);
+        when(shift.getId()).thenReturn(1L);
+
+        for (String day : new String[] { "monday", "tuesday", "wensday", "thursday", "friday", "saturday", "sunday" }) {
+            when(storedShift.getField(day + "Working")).thenReturn(true);
+            when(storedShift.getStringField(day + "Hours")).thenReturn("06:00-14:00");
+            when(shift.getField(day + "Working")).thenReturn(true);
+            when(shift.getStringField(day + "Hours")).thenReturn("08:00-16:00");
+        }
+
+        EntityList storedTimetableExceptions = mockEntityList(new ArrayList<Entity>());
+        EntityList timetableExceptions = mockEntityList(new ArrayList<Entity>());
+        when(storedShift.getHasManyField("timetableExceptions")).thenReturn(storedTimetableExceptions);
+        when(shift.getHasManyField("timetableExceptions")).thenReturn(timetableExceptions);
+        // when
+        List<ShiftHour> shiftHours = shiftsService.getHoursForShift(shift, dateFrom, dateTo);
+        // then
+        assertEquals(Lists.newArrayList(new ShiftHour(new DateTime(2017, 1, 3, 8, 0).toDate(),
+                new DateTime(2017, 1, 3, 16, 0).toDate())), shiftHours);
+    }
 }
@@ -0,0 +1,148 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.ProductDTO;
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+public class DataProviderTest {
+
+    private static final String L_QUERY = "abc";
+
+    private DataProvider dataProvider;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private LookupCacheInvalidator lookupCacheInvalidator;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        LookupCache lookupCache = new LookupCache();
+
+        ReflectionTestUtils.setField(lookupCache, "lookupCacheInvalidator", lookupCacheInvalidator);
+
+        dataProvider = new DataProvider();
+
+        ReflectionTestUtils.setField(dataProvider, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(dataProvider, "lookupCache", lookupCache);
+    }
+
+    @Test
+    public final void shouldNotLoadProductsIfThereAreTooManyResults() {
+        // given
+        given(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), anyMap(), eq(Integer.class))).willReturn(21);
+        given(jdbcTemplate.queryForObject(startsWith("EXPLAIN"), anyMap(), eq(String.class))).willReturn(
+                "[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Plan Rows\": 3500}}]");
+
+        // when
+        DataResponse dataResponse = dataProvider.getProductsResponseByQuery(L_QUERY);
+
+        // then
+        assertTrue(dataResponse.getEntities().isEmpty());
+        assertEquals(3500, dataResponse.getNumberOfResults());
+
+        verify(jdbcTemplate, never()).query(anyString(), anyMap(), any(RowMapper.class));
+    }
+
+    @Test
+    public final void shouldReturnCountedResultsIfEstimationIsLower() {
+        // given
+        given(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), anyMap(), eq(Integer.class))).willReturn(21);
+        given(jdbcTemplate.queryForObject(startsWith("EXPLAIN"), anyMap(), eq(String.class))).willReturn(
+                "[{\"Plan\": {\"Plan Rows\": 5}}]");
+
+        // when
+        DataResponse dataResponse = dataProvider.getProductsResponseByQuery(L_QUERY);
+
+        // then
+        assertEquals(21, dataResponse.getNumberOfResults());
+    }
+
+    @Test
+    public final void shouldLoadProductsIfTheyFitInLimit() {
+        // given
+        List<AbstractDTO> products = Lists.newArrayList(new ProductDTO());
+
+        given(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), anyMap(), eq(Integer.class))).willReturn(1);
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(products);
+        given(jdbcTemplate.query(contains("NOT ilike"), anyMap(), any(RowMapper.class))).willReturn(Lists.newArrayList());
+
+        // when
+        DataResponse dataResponse = dataProvider.getProductsResponseByQuery(L_QUERY);
+
+        // then
+        assertEquals(1, dataResponse.getNumberOfResults());
+        assertEquals(1, dataResponse.getEntities().size());
+
+        verify(jdbcTemplate, never()).queryForObject(startsWith("EXPLAIN"), anyMap(), eq(String.class));
+    }
+
+    @Test
+    public final void shouldReuseCachedResponseUntilLookupCacheIsInvalidated() {
+        // given
+        given(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), anyMap(), eq(Integer.class))).willReturn(0);
+        given(lookupCacheInvalidator.getVersion()).willReturn(1L);
+
+        // when
+        dataProvider.getProductsResponseByQuery(L_QUERY);
+        dataProvider.getProductsResponseByQuery(L_QUERY);
+
+        given(lookupCacheInvalidator.getVersion()).willReturn(2L);
+
+        dataProvider.getProductsResponseByQuery(L_QUERY);
+
+        // then
+        verify(jdbcTemplate, times(2)).queryForObject(startsWith("SELECT count(*)"), anyMap(), eq(Integer.class));
+    }
+
+}
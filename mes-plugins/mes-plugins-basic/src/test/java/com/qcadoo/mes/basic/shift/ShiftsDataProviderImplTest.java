@@ -0,0 +1,135 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrder;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class ShiftsDataProviderImplTest {
+
+    private ShiftsDataProviderImpl shiftsDataProvider;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition shiftDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity firstShiftEntity, secondShiftEntity;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        shiftsDataProvider = new ShiftsDataProviderImpl();
+        ReflectionTestUtils.setField(shiftsDataProvider, "dataDefinitionService", dataDefinitionService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT)).willReturn(shiftDD);
+        given(shiftDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.addOrder(any(SearchOrder.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+
+        stubShiftEntity(firstShiftEntity, 1L);
+        stubShiftEntity(secondShiftEntity, 2L);
+
+        List<Entity> shiftEntities = Lists.newArrayList(firstShiftEntity, secondShiftEntity);
+        given(searchResult.getEntities()).willReturn(shiftEntities);
+    }
+
+    private void stubShiftEntity(final Entity shiftEntity, final Long id) {
+        given(shiftEntity.getId()).willReturn(id);
+        given(shiftEntity.copy()).willReturn(shiftEntity);
+        given(shiftEntity.getHasManyField(Mockito.anyString())).willAnswer(
+                invocation -> mockEntityList(Lists.<Entity> newArrayList()));
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+        given(entityList.iterator()).willReturn(entities.iterator());
+        given(entityList.isEmpty()).willReturn(entities.isEmpty());
+        return entityList;
+    }
+
+    @Test
+    public final void shouldLoadShiftsOnlyOnce() {
+        // when
+        List<Shift> shifts = shiftsDataProvider.findAll();
+        Shift secondShift = shiftsDataProvider.findById(2L).get();
+
+        // then
+        assertEquals(2, shifts.size());
+        assertEquals(Long.valueOf(1L), shifts.get(0).getId());
+        assertEquals(shifts.get(1), secondShift);
+        assertNotSame(shifts.get(1), secondShift);
+        assertFalse(shiftsDataProvider.findById(3L).isPresent());
+        verify(searchCriteriaBuilder, times(1)).list();
+    }
+
+    @Test
+    public final void shouldReloadShiftsAfterInvalidation() {
+        // given
+        Shift shift = shiftsDataProvider.findById(1L).get();
+
+        // when
+        shiftsDataProvider.invalidate();
+        Shift reloadedShift = shiftsDataProvider.findById(1L).get();
+
+        // then
+        assertEquals(shift, reloadedShift);
+        verify(searchCriteriaBuilder, times(2)).list();
+    }
+
+}
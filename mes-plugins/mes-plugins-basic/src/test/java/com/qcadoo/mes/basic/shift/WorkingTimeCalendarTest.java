@@ -0,0 +1,142 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.commons.dateTime.DateRange;
+
+public class WorkingTimeCalendarTest {
+
+    private static final long HOUR = 3600L;
+
+    private DateTime mondayMidnight;
+
+    private WorkingTimeCalendar calendar;
+
+    @Before
+    public final void init() {
+        mondayMidnight = new DateTime(2017, 3, 6, 0, 0, 0, 0);
+
+        List<DateRange> workingHours = Lists.newArrayList(range(6, 14), range(16, 20), range(30, 38));
+        calendar = new WorkingTimeCalendar(mondayMidnight.toDate(), mondayMidnight.plusDays(7).toDate(), workingHours);
+    }
+
+    private DateRange range(final int fromHour, final int toHour) {
+        return new DateRange(hour(fromHour), hour(toHour));
+    }
+
+    private Date hour(final int hour) {
+        return mondayMidnight.plusHours(hour).toDate();
+    }
+
+    @Test
+    public final void shouldFindDateAfterWithinSingleInterval() {
+        // when
+        Date dateTo = calendar.findDateAfter(hour(7), 2 * HOUR).get();
+
+        // then
+        assertEquals(hour(9), dateTo);
+    }
+
+    @Test
+    public final void shouldFindDateAfterSpanningSeveralIntervals() {
+        // when
+        Date dateTo = calendar.findDateAfter(hour(10), 10 * HOUR).get();
+
+        // then
+        assertEquals(hour(32), dateTo);
+    }
+
+    @Test
+    public final void shouldFindDateAfterStartingInFreeTime() {
+        // when
+        Date dateTo = calendar.findDateAfter(hour(15), 0L).get();
+
+        // then
+        assertEquals(hour(16), dateTo);
+    }
+
+    @Test
+    public final void shouldReturnEndOfIntervalWhenWorkingTimeIsExactlyConsumed() {
+        // when
+        Date dateTo = calendar.findDateAfter(hour(6), 8 * HOUR).get();
+
+        // then
+        assertEquals(hour(14), dateTo);
+    }
+
+    @Test
+    public final void shouldReturnAbsentWhenWorkingTimeIsInsufficient() {
+        // when & then
+        assertFalse(calendar.findDateAfter(hour(6), 21 * HOUR).isPresent());
+        assertFalse(calendar.findDateBefore(hour(38), 21 * HOUR).isPresent());
+    }
+
+    @Test
+    public final void shouldFindDateBeforeSpanningSeveralIntervals() {
+        // when
+        Date dateFrom = calendar.findDateBefore(hour(32), 10 * HOUR).get();
+
+        // then
+        assertEquals(hour(10), dateFrom);
+    }
+
+    @Test
+    public final void shouldFindDateBeforeEndingInFreeTime() {
+        // when
+        Date dateFrom = calendar.findDateBefore(hour(25), 0L).get();
+
+        // then
+        assertEquals(hour(20), dateFrom);
+    }
+
+    @Test
+    public final void shouldCountWorkingSecondsBetweenDates() {
+        // when & then
+        assertEquals(10 * HOUR, calendar.getWorkingSecondsBetween(hour(10), hour(32)));
+        assertEquals(20 * HOUR, calendar.getWorkingSecondsBetween(hour(0), hour(48)));
+        assertEquals(0L, calendar.getWorkingSecondsBetween(hour(14), hour(16)));
+    }
+
+    @Test
+    public final void shouldTrimWorkingHoursToCalendarRange() {
+        // given
+        List<DateRange> workingHours = Lists.newArrayList(range(-2, 2), range(6, 14));
+        WorkingTimeCalendar trimmedCalendar = new WorkingTimeCalendar(mondayMidnight.toDate(), hour(10), workingHours);
+
+        // when & then
+        assertEquals(6 * HOUR, trimmedCalendar.getWorkingSecondsBetween(hour(-5), hour(20)));
+    }
+
+}
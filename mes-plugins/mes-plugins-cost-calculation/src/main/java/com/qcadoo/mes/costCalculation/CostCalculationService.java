@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costCalculation;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import com.qcadoo.model.api.Entity;
 
@@ -39,6 +40,16 @@ public interface CostCalculationService {
      */
     Entity calculateTotalCost(final Entity entity);
 
+    /**
+     * Calculates total costs and sell prices for many cost calculations at once, loading product costs in bulk
+     * 
+     * @param entities
+     *            entities
+     * 
+     * @return saved entities
+     */
+    List<Entity> calculateTotalCostsForAll(final List<Entity> entities);
+
     /**
      * Calculates operations and products costs
      * 
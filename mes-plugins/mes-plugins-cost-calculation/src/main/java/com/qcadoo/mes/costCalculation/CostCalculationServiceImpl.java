@@ -35,6 +35,7 @@ import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
 import com.qcadoo.mes.costNormsForMaterials.ProductsCostCalculationService;
@@ -76,8 +77,41 @@ public class CostCalculationServiceImpl implements CostCalculationService {
         return entity.getDataDefinition().save(entity);
     }
 
+    @Override
+    public List<Entity> calculateTotalCostsForAll(final List<Entity> entities) {
+        for (Entity entity : entities) {
+            entity.setField(CostCalculationFields.DATE, new Date());
+            calculateOperationsCosts(entity);
+        }
+
+        productsCostCalculationService.calculateTotalProductsCosts(entities);
+
+        List<Entity> savedEntities = Lists.newArrayListWithCapacity(entities.size());
+        for (Entity entity : entities) {
+            final BigDecimal productionCosts = calculateProductionCost(entity);
+            calculateMarginsAndOverheads(entity, productionCosts);
+            final BigDecimal effectiveQuantity = getEffectiveQuantity(entity);
+
+            calculateTotalCosts(entity, productionCosts, effectiveQuantity);
+            calculateSellPriceOverhead(entity);
+            calculateSellPrice(entity);
+
+            savedEntities.add(entity.getDataDefinition().save(entity));
+        }
+
+        return savedEntities;
+    }
+
     @Override
     public void calculateOperationsAndProductsCosts(final Entity entity) {
+        calculateOperationsCosts(entity);
+
+        final String sourceOfMaterialCosts = entity.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS);
+
+        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts);
+    }
+
+    private void calculateOperationsCosts(final Entity entity) {
         boolean hourlyCostFromOperation = true;
         String sourceOfOperationCosts = entity.getStringField("sourceOfOperationCosts");
         if (sourceOfOperationCosts != null
@@ -85,10 +119,6 @@ public class CostCalculationServiceImpl implements CostCalculationService {
             hourlyCostFromOperation = false;
         }
         operationsCostCalculationService.calculateOperationsCost(entity, hourlyCostFromOperation);
-
-        final String sourceOfMaterialCosts = entity.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS);
-
-        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts);
     }
 
     @Override
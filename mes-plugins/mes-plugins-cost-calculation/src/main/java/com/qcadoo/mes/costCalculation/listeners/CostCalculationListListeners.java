@@ -0,0 +1,90 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.listeners;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.costCalculation.CostCalculationService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class CostCalculationListListeners {
+
+    private static final String L_GRID = "grid";
+
+    private static final String L_ID = "id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private CostCalculationService costCalculationService;
+
+    public void recalculateCostCalculations(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        GridComponent grid = (GridComponent) view.getComponentByReference(L_GRID);
+
+        Set<Long> costCalculationIds = grid.getSelectedEntitiesIds();
+
+        if (costCalculationIds.isEmpty()) {
+            return;
+        }
+
+        List<Entity> costCalculations = dataDefinitionService
+                .get(CostCalculationConstants.PLUGIN_IDENTIFIER, CostCalculationConstants.MODEL_COST_CALCULATION).find()
+                .add(SearchRestrictions.in(L_ID, costCalculationIds)).list().getEntities();
+
+        List<Entity> costCalculationsToRecalculate = costCalculations.stream()
+                .filter(costCalculation -> StringUtils.isBlank(costCalculation.getStringField(CostCalculationFields.FILE_NAME)))
+                .collect(Collectors.toList());
+
+        if (costCalculationsToRecalculate.size() < costCalculations.size()) {
+            view.addMessage("costCalculation.costCalculationList.message.generatedCostCalculationsSkipped", MessageType.INFO,
+                    false, String.valueOf(costCalculations.size() - costCalculationsToRecalculate.size()));
+        }
+
+        if (costCalculationsToRecalculate.isEmpty()) {
+            return;
+        }
+
+        costCalculationService.calculateTotalCostsForAll(costCalculationsToRecalculate);
+
+        view.addMessage("costCalculation.costCalculationList.message.costCalculationsRecalculated", MessageType.SUCCESS,
+                String.valueOf(costCalculationsToRecalculate.size()));
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costNormsForMaterials;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 import com.qcadoo.model.api.Entity;
@@ -32,6 +33,8 @@ public interface ProductsCostCalculationService {
 
     void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts);
 
+    void calculateTotalProductsCosts(final List<Entity> costCalculations);
+
     BigDecimal calculateProductCostForGivenQuantity(final Entity product, final BigDecimal quantity,
             final String calculateMaterialCostsMode);
 
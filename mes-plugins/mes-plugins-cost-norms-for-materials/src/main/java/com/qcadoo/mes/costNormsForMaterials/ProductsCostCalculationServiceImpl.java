@@ -30,13 +30,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
@@ -49,12 +53,21 @@ import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
 import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class ProductsCostCalculationServiceImpl implements ProductsCostCalculationService {
 
+    private static final String L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT = "01currentGlobalDefinitionsInProduct";
+
+    private static final int PRODUCTS_BATCH_SIZE = 1000;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
     @Autowired
     private ProductQuantitiesService productQuantitiesService;
 
@@ -77,6 +90,71 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         entity.setField("totalMaterialCosts", numberService.setScale(result));
     }
 
+    @Override
+    public void calculateTotalProductsCosts(final List<Entity> costCalculations) {
+        List<Map<Long, BigDecimal>> neededProductQuantitiesList = Lists.newArrayList();
+        Set<Long> productIds = Sets.newHashSet();
+
+        for (Entity costCalculation : costCalculations) {
+            String sourceOfMaterialCosts = costCalculation.getStringField("sourceOfMaterialCosts");
+
+            if (L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT.equals(sourceOfMaterialCosts)) {
+                checkArgument(costCalculation.getStringField("calculateMaterialCostsMode") != null,
+                        "calculateMaterialCostsMode is null!");
+
+                BigDecimal quantity = BigDecimalUtils.convertNullToZero(costCalculation.getDecimalField("quantity"));
+                Entity technology = costCalculation.getBelongsToField("technology");
+
+                Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(costCalculation, technology,
+                        quantity, MrpAlgorithm.ONLY_COMPONENTS);
+
+                neededProductQuantitiesList.add(neededProductQuantities);
+                productIds.addAll(neededProductQuantities.keySet());
+            } else {
+                calculateTotalProductsCost(costCalculation, sourceOfMaterialCosts);
+
+                neededProductQuantitiesList.add(null);
+            }
+        }
+
+        Map<Long, Entity> productsById = getProductsByIds(productIds);
+
+        for (int i = 0; i < costCalculations.size(); i++) {
+            Map<Long, BigDecimal> neededProductQuantities = neededProductQuantitiesList.get(i);
+
+            if (neededProductQuantities == null) {
+                continue;
+            }
+
+            Entity costCalculation = costCalculations.get(i);
+            String calculateMaterialCostsMode = costCalculation.getStringField("calculateMaterialCostsMode");
+
+            BigDecimal result = BigDecimal.ZERO;
+            for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
+                Entity product = productsById.get(productQuantity.getKey());
+                BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(product, productQuantity.getValue(),
+                        calculateMaterialCostsMode);
+                result = result.add(thisProductsCost, numberService.getMathContext());
+            }
+            costCalculation.setField("totalMaterialCosts", numberService.setScale(result));
+        }
+    }
+
+    private Map<Long, Entity> getProductsByIds(final Set<Long> productIds) {
+        Map<Long, Entity> productsById = Maps.newHashMap();
+
+        for (List<Long> ids : Lists.partition(Lists.newArrayList(productIds), PRODUCTS_BATCH_SIZE)) {
+            List<Entity> products = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)
+                    .find().add(SearchRestrictions.in("id", ids)).list().getEntities();
+
+            for (Entity product : products) {
+                productsById.put(product.getId(), product);
+            }
+        }
+
+        return productsById;
+    }
+
     private Map<Entity, BigDecimal> calculateListProductsCostForPlannedQuantity(final Entity entity,
             final String sourceOfMaterialCosts) {
         checkArgument(entity != null);
@@ -92,7 +170,7 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
 
         if ("02fromOrdersMaterialCosts".equals(sourceOfMaterialCosts)) {
             return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order);
-        } else if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
+        } else if (L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT.equals(sourceOfMaterialCosts)) {
             return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode);
         }
 
@@ -183,7 +261,7 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
 
     @Override
     public Entity getAppropriateCostNormForProduct(final Entity product, final Entity order, final String sourceOfMaterialCosts) {
-        if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
+        if (L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT.equals(sourceOfMaterialCosts)) {
             return product;
         }
         for (Entity orderMaterialCosts : findOrderMaterialCosts(order, product).asSet()) {
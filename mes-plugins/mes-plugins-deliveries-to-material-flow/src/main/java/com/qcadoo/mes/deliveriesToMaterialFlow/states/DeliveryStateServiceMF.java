@@ -33,6 +33,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.CurrencyFields;
@@ -89,10 +91,11 @@ public class DeliveryStateServiceMF {
         if (location == null) {
             return;
         }
-        Entity currency = currency(delivery);
-
         List<Entity> deliveredProducts = delivery.getHasManyField(DeliveryFields.DELIVERED_PRODUCTS);
 
+        // currency is needed only to price delivered products, delivery without any priced one may have none
+        Supplier<BigDecimal> exRate = exRateSupplier(delivery);
+
         DocumentBuilder documentBuilder = documentManagementService.getDocumentBuilder();
         documentBuilder.receipt(location);
         documentBuilder.setField(DocumentFieldsDTMF.DELIVERY, delivery);
@@ -111,7 +114,7 @@ public class DeliveryStateServiceMF {
                 BigDecimal conversion = deliveredProduct.getDecimalField(DeliveredProductFields.CONVERSION);
 
                 documentBuilder.addPosition(product, positionQuantity, numberService.setScale(givenQuantity), additionalUnit,
-                        conversion, price(deliveredProduct, currency), batch(deliveredProduct), productionDate(deliveredProduct),
+                        conversion, price(deliveredProduct, exRate), batch(deliveredProduct), productionDate(deliveredProduct),
                         expirationDate(deliveredProduct), null, storageLocation(deliveredProduct),
                         palletNumber(deliveredProduct), typeOfPallet(deliveredProduct), additionalCode(deliveredProduct),
                         isWaste(deliveredProduct));
@@ -145,13 +148,21 @@ public class DeliveryStateServiceMF {
         return delivery.getBelongsToField(DeliveryFields.LOCATION);
     }
 
-    private BigDecimal price(Entity deliveredProduct, Entity currency) {
-        BigDecimal exRate = currency.getDecimalField(CurrencyFields.EXCHANGE_RATE);
+    private Supplier<BigDecimal> exRateSupplier(final Entity delivery) {
+        return Suppliers.memoize(() -> exRate(currency(delivery)));
+    }
+
+    private BigDecimal exRate(Entity currency) {
+        return currency.getDecimalField(CurrencyFields.EXCHANGE_RATE);
+    }
+
+    private BigDecimal price(Entity deliveredProduct, Supplier<BigDecimal> exRateSupplier) {
         Optional<BigDecimal> pricePerUnit = Optional.fromNullable(deliveredProduct
                 .getDecimalField(DeliveredProductFields.PRICE_PER_UNIT));
         if (!pricePerUnit.isPresent()) {
             return null;
         }
+        BigDecimal exRate = exRateSupplier.get();
         return exRateExists(exRate) ? numberService.setScale(pricePerUnit.get().multiply(exRate, numberService.getMathContext()))
                 : pricePerUnit.get();
     }
@@ -231,6 +242,7 @@ public class DeliveryStateServiceMF {
             List<String> missingProductionDate = Lists.newArrayList();
             List<String> missingExpirationDate = Lists.newArrayList();
             List<String> missingPrice = Lists.newArrayList();
+            Supplier<BigDecimal> exRate = exRateSupplier(delivery);
             for (Entity deliveredProduct : deliveredProducts) {
                 String productName = productName(deliveredProduct);
                 if (isBatchRequired && (batch(deliveredProduct) == null || batch(deliveredProduct).isEmpty())) {
@@ -242,7 +254,7 @@ public class DeliveryStateServiceMF {
                 if (isExpirationDateRequired && expirationDate(deliveredProduct) == null) {
                     missingExpirationDate.add(productName);
                 }
-                if (isPriceRequired && price(deliveredProduct, currency(delivery)) == null) {
+                if (isPriceRequired && price(deliveredProduct, exRate) == null) {
                     missingPrice.add(productName);
                 }
             }
@@ -37,23 +37,30 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.deliveries.DeliveriesService;
 import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
 import com.qcadoo.mes.deliveries.print.DeliveryColumnFiller;
 import com.qcadoo.mes.deliveries.print.DeliveryProduct;
 import com.qcadoo.mes.deliveries.print.OrderColumnFiller;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Component
 public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumnFiller {
 
+    private static final int IDS_BATCH_SIZE = 1000;
+
     @Autowired
     private DeliveriesService deliveriesService;
 
@@ -64,6 +71,22 @@ public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumn
     public Map<DeliveryProduct, Map<String, String>> getDeliveryProductsColumnValues(final List<DeliveryProduct> deliveryProducts) {
         Map<DeliveryProduct, Map<String, String>> values = new HashMap<>();
 
+        Set<Long> orderedProductIds = Sets.newHashSet();
+        Set<Long> deliveredProductIds = Sets.newHashSet();
+
+        for (DeliveryProduct deliveryProduct : deliveryProducts) {
+            if (deliveryProduct.getOrderedProductId() != null) {
+                orderedProductIds.add(deliveryProduct.getOrderedProductId());
+            }
+            if (deliveryProduct.getDeliveredProductId() != null) {
+                deliveredProductIds.add(deliveryProduct.getDeliveredProductId());
+            }
+        }
+
+        Map<Long, Entity> orderedProducts = getEntitiesByIds(deliveriesService.getOrderedProductDD(), orderedProductIds);
+        Map<Long, Entity> deliveredProducts = getEntitiesByIds(deliveriesService.getDeliveredProductDD(), deliveredProductIds);
+        Map<Long, String> currencies = new HashMap<>();
+
         Integer succession = 0;
         for (DeliveryProduct deliveryProduct : deliveryProducts) {
             succession++;
@@ -71,24 +94,103 @@ public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumn
                 values.put(deliveryProduct, new HashMap<>());
             }
 
-            fillProductNumber(values, deliveryProduct);
-            fillProductName(values, deliveryProduct);
-            fillProductUnit(values, deliveryProduct);
+            Entity orderedProduct = getEntity(orderedProducts, deliveryProduct.getOrderedProductId());
+            Entity deliveredProduct = getEntity(deliveredProducts, deliveryProduct.getDeliveredProductId());
+            Entity product = getProduct(deliveryProduct, orderedProduct, deliveredProduct);
+
+            Map<String, String> rowValues = values.get(deliveryProduct);
 
-            fillSuccession(values, deliveryProduct, succession);
+            rowValues.put("productNumber", product.getStringField(NUMBER));
+            rowValues.put("productName", product.getStringField(NAME));
+            rowValues.put("productUnit", product.getStringField(UNIT));
 
-            fillOrderedQuantity(values, deliveryProduct);
-            fillDeliveredQuantity(values, deliveryProduct);
-            fillDamagedQuantity(values, deliveryProduct);
+            rowValues.put("succession", succession.toString());
 
-            fillPricePerUnit(values, deliveryProduct);
-            fillTotalPrice(values, deliveryProduct);
-            fillCurrency(values, deliveryProduct);
+            fillOrderedProductValues(rowValues, orderedProduct);
+            fillDeliveredProductValues(rowValues, deliveredProduct, currencies);
         }
 
         return values;
     }
 
+    private Map<Long, Entity> getEntitiesByIds(final DataDefinition dataDefinition, final Set<Long> ids) {
+        Map<Long, Entity> entities = new HashMap<>();
+
+        for (List<Long> idsBatch : Lists.partition(Lists.newArrayList(ids), IDS_BATCH_SIZE)) {
+            for (Entity entity : dataDefinition.find().add(SearchRestrictions.in("id", idsBatch)).list().getEntities()) {
+                entities.put(entity.getId(), entity);
+            }
+        }
+
+        return entities;
+    }
+
+    private Entity getEntity(final Map<Long, Entity> entities, final Long id) {
+        if (id == null) {
+            return null;
+        }
+
+        return entities.get(id);
+    }
+
+    private Entity getProduct(final DeliveryProduct deliveryProduct, final Entity orderedProduct, final Entity deliveredProduct) {
+        if (deliveryProduct.getOrderedProductId() == null) {
+            return deliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT);
+        } else {
+            return orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT);
+        }
+    }
+
+    private void fillOrderedProductValues(final Map<String, String> rowValues, final Entity orderedProduct) {
+        BigDecimal orderedQuantity = null;
+
+        if (orderedProduct != null) {
+            orderedQuantity = orderedProduct.getDecimalField(ORDERED_QUANTITY);
+        }
+
+        rowValues.put("orderedQuantity", numberService.format(orderedQuantity));
+    }
+
+    private void fillDeliveredProductValues(final Map<String, String> rowValues, final Entity deliveredProduct,
+            final Map<Long, String> currencies) {
+        BigDecimal deliveredQuantity = null;
+        BigDecimal damagedQuantity = null;
+        BigDecimal pricePerUnit = null;
+        BigDecimal totalPrice = null;
+
+        if (deliveredProduct != null) {
+            deliveredQuantity = deliveredProduct.getDecimalField(DELIVERED_QUANTITY);
+            damagedQuantity = deliveredProduct.getDecimalField(DAMAGED_QUANTITY);
+            pricePerUnit = deliveredProduct.getDecimalField(DeliveredProductFields.PRICE_PER_UNIT);
+            totalPrice = deliveredProduct.getDecimalField(DeliveredProductFields.TOTAL_PRICE);
+        }
+
+        rowValues.put("deliveredQuantity", numberService.format(deliveredQuantity));
+        rowValues.put("damagedQuantity", numberService.format(damagedQuantity));
+        rowValues.put(DeliveredProductFields.PRICE_PER_UNIT, pricePerUnit == null ? "" : numberService.format(pricePerUnit));
+        rowValues.put(DeliveredProductFields.TOTAL_PRICE, totalPrice == null ? "" : numberService.format(totalPrice));
+
+        if (deliveredProduct != null) {
+            rowValues.put("currency", pricePerUnit == null ? "" : getCurrency(delivery(deliveredProduct), currencies));
+        }
+    }
+
+    private String getCurrency(final Entity delivery, final Map<Long, String> currencies) {
+        if (delivery == null) {
+            return deliveriesService.getCurrency(null);
+        }
+
+        String currency = currencies.get(delivery.getId());
+
+        if (currency == null) {
+            currency = deliveriesService.getCurrency(delivery);
+
+            currencies.put(delivery.getId(), currency);
+        }
+
+        return currency;
+    }
+
     @Override
     public Map<Entity, Map<String, String>> getOrderedProductsColumnValues(final List<Entity> orderedProducts) {
         Map<Entity, Map<String, String>> values = new HashMap<>();
@@ -128,34 +230,6 @@ public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumn
         values.get(orderedProduct).put("productNumber", productNumber);
     }
 
-    private void fillProductNumber(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        String productNumber = null;
-
-        if (deliveryProduct == null) {
-            productNumber = "";
-        } else {
-            Entity product = deliveriesService.getProduct(deliveryProduct);
-
-            productNumber = product.getStringField(NUMBER);
-        }
-
-        values.get(deliveryProduct).put("productNumber", productNumber);
-    }
-
-    private void fillProductName(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        String productName = null;
-
-        if (deliveryProduct == null) {
-            productName = "";
-        } else {
-            Entity product = deliveriesService.getProduct(deliveryProduct);
-
-            productName = product.getStringField(NAME);
-        }
-
-        values.get(deliveryProduct).put("productName", productName);
-    }
-
     private void fillProductName(final Map<Entity, Map<String, String>> values, final Entity orderedProduct) {
         String productName = null;
 
@@ -174,61 +248,6 @@ public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumn
         values.get(orderedProduct).put("productUnit", orderedProduct == null ? "" : orderedProduct.getBelongsToField(PRODUCT).getStringField(UNIT));
     }
 
-    private void fillProductUnit(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        values.get(deliveryProduct).put("productUnit", deliveryProduct == null ? "" : deliveriesService.getProduct(deliveryProduct).getStringField(UNIT));
-    }
-
-    private void fillSuccession(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct,
-            final Integer succession) {
-
-        values.get(deliveryProduct).put("succession", succession.toString());
-    }
-
-    private void fillOrderedQuantity(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        BigDecimal orderedQuantity = null;
-
-        if (deliveryProduct.getOrderedProductId() == null) {
-            orderedQuantity = null;
-        } else {
-            Entity orderedProduct = deliveriesService.getOrderedProduct(deliveryProduct.getOrderedProductId());
-
-            if (orderedProduct != null) {
-                orderedQuantity = orderedProduct.getDecimalField(ORDERED_QUANTITY);
-            }
-        }
-
-        values.get(deliveryProduct).put("orderedQuantity", numberService.format(orderedQuantity));
-    }
-
-    private void fillDeliveredQuantity(final Map<DeliveryProduct, Map<String, String>> values,
-            final DeliveryProduct deliveryProduct) {
-        BigDecimal deliveredQuantity = null;
-
-        if (deliveryProduct.getDeliveredProductId() != null) {
-            Entity deliveredProduct = deliveriesService.getDeliveredProduct(deliveryProduct.getDeliveredProductId());
-
-            if (deliveredProduct != null) {
-                deliveredQuantity = deliveredProduct.getDecimalField(DELIVERED_QUANTITY);
-            }
-        }
-
-        values.get(deliveryProduct).put("deliveredQuantity", numberService.format(deliveredQuantity));
-    }
-
-    private void fillDamagedQuantity(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        BigDecimal damagedQuantity = null;
-
-        if (deliveryProduct.getDeliveredProductId() != null) {
-            Entity deliveredProduct = deliveriesService.getDeliveredProduct(deliveryProduct.getDeliveredProductId());
-
-            if (deliveredProduct != null) {
-                damagedQuantity = deliveredProduct.getDecimalField(DAMAGED_QUANTITY);
-            }
-        }
-
-        values.get(deliveryProduct).put("damagedQuantity", numberService.format(damagedQuantity));
-    }
-
     private void fillOrderedQuantity(final Map<Entity, Map<String, String>> values, final Entity orderedProduct) {
         BigDecimal orderedQuantity = null;
 
@@ -277,24 +296,6 @@ public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumn
         }
     }
 
-    private void fillPricePerUnit(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        BigDecimal pricePerUnit = null;
-
-        if (deliveryProduct.getDeliveredProductId() != null) {
-            Entity deliveredProduct = deliveriesService.getDeliveredProduct(deliveryProduct.getDeliveredProductId());
-
-            if (deliveredProduct != null) {
-                pricePerUnit = deliveredProduct.getDecimalField(DeliveredProductFields.PRICE_PER_UNIT);
-            }
-        }
-
-        if (pricePerUnit == null) {
-            values.get(deliveryProduct).put(DeliveredProductFields.PRICE_PER_UNIT, "");
-        } else {
-            values.get(deliveryProduct).put(DeliveredProductFields.PRICE_PER_UNIT, numberService.format(pricePerUnit));
-        }
-    }
-
     private void fillTotalPrice(final Map<Entity, Map<String, String>> values, final Entity orderedProduct) {
         BigDecimal totalPrice = null;
 
@@ -309,42 +310,13 @@ public class DeliveriesColumnFiller implements DeliveryColumnFiller, OrderColumn
         }
     }
 
-    private void fillTotalPrice(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        BigDecimal totalPrice = null;
-
-        if (deliveryProduct.getDeliveredProductId() != null) {
-            Entity deliveredProduct = deliveriesService.getDeliveredProduct(deliveryProduct.getDeliveredProductId());
-
-            if (deliveredProduct != null) {
-                totalPrice = deliveredProduct.getDecimalField(DeliveredProductFields.TOTAL_PRICE);
-            }
-        }
-
-        if (totalPrice == null) {
-            values.get(deliveryProduct).put(DeliveredProductFields.TOTAL_PRICE, "");
-        } else {
-            values.get(deliveryProduct).put(DeliveredProductFields.TOTAL_PRICE, numberService.format(totalPrice));
-        }
-    }
-
     private void fillCurrency(final Map<Entity, Map<String, String>> values, final Entity orderedProduct) {
         Entity delivery = orderedProduct.getBelongsToField(OrderedProductFields.DELIVERY);
         String currency = deliveriesService.getCurrency(delivery);
         values.get(orderedProduct).put("currency", currency);
     }
 
-    private void fillCurrency(final Map<DeliveryProduct, Map<String, String>> values, final DeliveryProduct deliveryProduct) {
-        if(deliveryProduct.getDeliveredProductId() != null) {
-            Entity deliveredProduct = deliveriesService.getDeliveredProduct(deliveryProduct.getDeliveredProductId());
-            values.get(deliveryProduct).put("currency", pricePerUnit(deliveredProduct) == null ? "" : deliveriesService.getCurrency(delivery(deliveredProduct)));
-        }
-    }
-
     private Entity delivery(Entity deliveredProduct) {
         return deliveredProduct.getBelongsToField(DeliveredProductFields.DELIVERY);
     }
-
-    private BigDecimal pricePerUnit(Entity delivery) {
-        return delivery.getDecimalField(DeliveredProductFields.PRICE_PER_UNIT);
-    }
 }
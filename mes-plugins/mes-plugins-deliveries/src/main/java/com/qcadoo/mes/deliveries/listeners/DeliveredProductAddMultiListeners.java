@@ -138,13 +138,17 @@ public class DeliveredProductAddMultiListeners {
     public void trySaveDeliveredProducts(final Entity deliveredProductMulti, final List<Entity> deliveredProductMultiPositions) {
         Entity delivery = deliveredProductMulti.getBelongsToField(DeliveredProductMultiFields.DELIVERY);
 
+        DataDefinition deliveredProductDD = getDeliveredProductDD();
+
+        boolean isValid = true;
+
         for (Entity position : deliveredProductMultiPositions) {
-            Entity deliveredProduct = createDeliveredProduct(position, getDeliveredProductDD());
+            Entity deliveredProduct = createDeliveredProduct(position, deliveredProductDD);
 
             setStorageLocationFields(deliveredProduct, deliveredProductMulti);
 
             deliveredProduct.setField(DeliveredProductFields.DELIVERY, delivery);
-            deliveredProduct = deliveredProduct.getDataDefinition().save(deliveredProduct);
+            deliveredProduct = deliveredProductDD.save(deliveredProduct);
 
             if (!deliveredProduct.isValid()) {
                 for (Map.Entry<String, ErrorMessage> entry : deliveredProduct.getErrors().entrySet()) {
@@ -155,11 +159,15 @@ public class DeliveredProductAddMultiListeners {
                     }
                 }
 
-                deliveredProductMulti.addGlobalError("deliveries.deliveredProductMulti.error.invalid");
-
-                throw new IllegalStateException("Undone saved delivered product");
+                isValid = false;
             }
         }
+
+        if (!isValid) {
+            deliveredProductMulti.addGlobalError("deliveries.deliveredProductMulti.error.invalid");
+
+            throw new IllegalStateException("Undone saved delivered product");
+        }
     }
 
     private void setStorageLocationFields(Entity deliveredProduct, Entity deliveredProductMulti) {
@@ -314,86 +322,90 @@ public class DeliveredProductAddMultiListeners {
     }
 
     public void additionalCodeChanged(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        Entity delivery = extractDeliveryEntityFromView(view);
+        Optional<FormComponent> mayBeDeliveredProductMultiPositionsFormComponent = findChangedPositionFormComponent(view, state,
+                DeliveredProductMultiPositionFields.ADDITIONAL_CODE);
 
-        AwesomeDynamicListComponent deliveredProductMultiPositions = (AwesomeDynamicListComponent) view
-                .getComponentByReference(DeliveredProductMultiFields.DELIVERED_PRODUCT_MULTI_POSITIONS);
+        if (mayBeDeliveredProductMultiPositionsFormComponent.isPresent()) {
+            FormComponent deliveredProductMultiPositionsFormComponent = mayBeDeliveredProductMultiPositionsFormComponent.get();
 
-        List<FormComponent> deliveredProductMultiPositionsFormComponents = deliveredProductMultiPositions.getFormComponents();
-        for (FormComponent deliveredProductMultiPositionsFormComponent : deliveredProductMultiPositionsFormComponents) {
             Entity deliveredProductMultiPosition = deliveredProductMultiPositionsFormComponent.getEntity();
 
-            LookupComponent additionalCodeComponent = (LookupComponent) deliveredProductMultiPositionsFormComponent
-                    .findFieldComponentByName(DeliveredProductMultiPositionFields.ADDITIONAL_CODE);
+            recalculateQuantities(extractDeliveryEntityFromView(view), deliveredProductMultiPosition);
 
-            if (additionalCodeComponent.getUuid().equals(state.getUuid())) {
-                recalculateQuantities(delivery, deliveredProductMultiPosition);
-
-                FieldComponent quantityComponent = deliveredProductMultiPositionsFormComponent
-                        .findFieldComponentByName(DeliveredProductMultiPositionFields.QUANTITY);
-                quantityComponent.setFieldValue(numberService.formatWithMinimumFractionDigits(
-                        deliveredProductMultiPosition.getField(DeliveredProductMultiPositionFields.QUANTITY), 0));
-                quantityComponent.requestComponentUpdateState();
-
-                FieldComponent additionalQuantityComponent = deliveredProductMultiPositionsFormComponent
-                        .findFieldComponentByName(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
-                additionalQuantityComponent.setFieldValue(numberService.formatWithMinimumFractionDigits(
-                        deliveredProductMultiPosition.getField(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY), 0));
-                additionalQuantityComponent.requestComponentUpdateState();
-            }
+            FieldComponent quantityComponent = deliveredProductMultiPositionsFormComponent
+                    .findFieldComponentByName(DeliveredProductMultiPositionFields.QUANTITY);
+            quantityComponent.setFieldValue(numberService.formatWithMinimumFractionDigits(
+                    deliveredProductMultiPosition.getField(DeliveredProductMultiPositionFields.QUANTITY), 0));
+            quantityComponent.requestComponentUpdateState();
 
+            FieldComponent additionalQuantityComponent = deliveredProductMultiPositionsFormComponent
+                    .findFieldComponentByName(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
+            additionalQuantityComponent.setFieldValue(numberService.formatWithMinimumFractionDigits(
+                    deliveredProductMultiPosition.getField(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY), 0));
+            additionalQuantityComponent.requestComponentUpdateState();
         }
-
     }
 
     public void productChanged(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        Entity delivery = extractDeliveryEntityFromView(view);
+        Optional<FormComponent> mayBeDeliveredProductMultiPositionsFormComponent = findChangedPositionFormComponent(view, state,
+                DeliveredProductMultiPositionFields.PRODUCT);
 
-        AwesomeDynamicListComponent deliveredProductMultiPositions = (AwesomeDynamicListComponent) view
-                .getComponentByReference(DeliveredProductMultiFields.DELIVERED_PRODUCT_MULTI_POSITIONS);
+        if (mayBeDeliveredProductMultiPositionsFormComponent.isPresent()) {
+            FormComponent deliveredProductMultiPositionsFormComponent = mayBeDeliveredProductMultiPositionsFormComponent.get();
 
-        List<FormComponent> deliveredProductMultiPositionsFormComponents = deliveredProductMultiPositions.getFormComponents();
-        for (FormComponent deliveredProductMultiPositionsFormComponent : deliveredProductMultiPositionsFormComponents) {
             Entity deliveredProductMultiPosition = deliveredProductMultiPositionsFormComponent.getEntity();
 
             Entity product = deliveredProductMultiPosition.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT);
             LookupComponent additionalCodeComponent = (LookupComponent) deliveredProductMultiPositionsFormComponent
                     .findFieldComponentByName(DeliveredProductMultiPositionFields.ADDITIONAL_CODE);
-            LookupComponent productComponent = (LookupComponent) deliveredProductMultiPositionsFormComponent
-                    .findFieldComponentByName(DeliveredProductMultiPositionFields.PRODUCT);
 
-            if (productComponent.getUuid().equals(state.getUuid())) {
-                deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.ADDITIONAL_CODE, null);
-                recalculateQuantities(delivery, deliveredProductMultiPosition);
+            deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.ADDITIONAL_CODE, null);
+            recalculateQuantities(extractDeliveryEntityFromView(view), deliveredProductMultiPosition);
 
-                deliveredProductAddMultiHooks.boldRequired(deliveredProductMultiPositionsFormComponent);
-                deliveredProductAddMultiHooks.filterAdditionalCode(product, additionalCodeComponent);
+            deliveredProductAddMultiHooks.boldRequired(deliveredProductMultiPositionsFormComponent);
+            deliveredProductAddMultiHooks.filterAdditionalCode(product, additionalCodeComponent);
 
-                if (product != null) {
-                    String unit = product.getStringField(ProductFields.UNIT);
-                    deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.UNIT, unit);
-                    String additionalUnit = product.getStringField(ProductFields.ADDITIONAL_UNIT);
+            if (product != null) {
+                String unit = product.getStringField(ProductFields.UNIT);
+                deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.UNIT, unit);
+                String additionalUnit = product.getStringField(ProductFields.ADDITIONAL_UNIT);
 
-                    FieldComponent conversionField = deliveredProductMultiPositionsFormComponent
-                            .findFieldComponentByName(DeliveredProductMultiPositionFields.CONVERSION);
+                FieldComponent conversionField = deliveredProductMultiPositionsFormComponent
+                        .findFieldComponentByName(DeliveredProductMultiPositionFields.CONVERSION);
 
-                    if (additionalUnit != null) {
-                        conversionField.setEnabled(true);
-                        deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.ADDITIONAL_UNIT,
-                                additionalUnit);
+                if (additionalUnit != null) {
+                    conversionField.setEnabled(true);
+                    deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.ADDITIONAL_UNIT, additionalUnit);
 
-                        BigDecimal conversion = getConversion(product, unit, additionalUnit);
-                        deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.CONVERSION, conversion);
-                    } else {
-                        conversionField.setEnabled(false);
-                        deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.ADDITIONAL_UNIT, unit);
-                        deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.CONVERSION, BigDecimal.ONE);
-                    }
+                    BigDecimal conversion = getConversion(product, unit, additionalUnit);
+                    deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.CONVERSION, conversion);
+                } else {
+                    conversionField.setEnabled(false);
+                    deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.ADDITIONAL_UNIT, unit);
+                    deliveredProductMultiPosition.setField(DeliveredProductMultiPositionFields.CONVERSION, BigDecimal.ONE);
+                }
+
+                deliveredProductMultiPositionsFormComponent.setEntity(deliveredProductMultiPosition);
+            }
+        }
+    }
+
+    private Optional<FormComponent> findChangedPositionFormComponent(final ViewDefinitionState view,
+            final ComponentState state, final String... fieldNames) {
+        AwesomeDynamicListComponent deliveredProductMultiPositions = (AwesomeDynamicListComponent) view
+                .getComponentByReference(DeliveredProductMultiFields.DELIVERED_PRODUCT_MULTI_POSITIONS);
+
+        for (FormComponent deliveredProductMultiPositionsFormComponent : deliveredProductMultiPositions.getFormComponents()) {
+            for (String fieldName : fieldNames) {
+                FieldComponent fieldComponent = deliveredProductMultiPositionsFormComponent.findFieldComponentByName(fieldName);
 
-                    deliveredProductMultiPositionsFormComponent.setEntity(deliveredProductMultiPosition);
+                if (state.getUuid().equals(fieldComponent.getUuid())) {
+                    return Optional.of(deliveredProductMultiPositionsFormComponent);
                 }
             }
         }
+
+        return Optional.empty();
     }
 
     private Entity extractDeliveryEntityFromView(final ViewDefinitionState view) {
@@ -457,73 +469,57 @@ public class DeliveredProductAddMultiListeners {
     }
 
     public void quantityChanged(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        AwesomeDynamicListComponent deliveredProductMultiPositions = (AwesomeDynamicListComponent) view
-                .getComponentByReference(DeliveredProductMultiFields.DELIVERED_PRODUCT_MULTI_POSITIONS);
+        Optional<FormComponent> mayBeDeliveredProductMultiPositionsFormComponent = findChangedPositionFormComponent(view, state,
+                DeliveredProductMultiPositionFields.QUANTITY, DeliveredProductMultiPositionFields.CONVERSION);
 
-        List<FormComponent> deliveredProductMultiPositionsFormComponents = deliveredProductMultiPositions.getFormComponents();
+        if (mayBeDeliveredProductMultiPositionsFormComponent.isPresent()) {
+            FormComponent deliveredProductMultiPositionsFormComponent = mayBeDeliveredProductMultiPositionsFormComponent.get();
 
-        for (FormComponent deliveredProductMultiPositionsFormComponent : deliveredProductMultiPositionsFormComponents) {
             Entity deliveredProductMultiPosition = deliveredProductMultiPositionsFormComponent
                     .getPersistedEntityWithIncludedFormValues();
 
-            boolean quantityComponentInForm = state.getUuid()
-                    .equals(deliveredProductMultiPositionsFormComponent.findFieldComponentByName("quantity").getUuid());
-            boolean conversionComponentInForm = state.getUuid()
-                    .equals(deliveredProductMultiPositionsFormComponent.findFieldComponentByName("conversion").getUuid());
-
-            if (quantityComponentInForm || conversionComponentInForm) {
-
-                Entity product = deliveredProductMultiPosition.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT);
-                BigDecimal quantity = deliveredProductMultiPosition.getDecimalField(DeliveredProductMultiPositionFields.QUANTITY);
-                BigDecimal conversion = deliveredProductMultiPosition
-                        .getDecimalField(DeliveredProductMultiPositionFields.CONVERSION);
-
-                if (conversion != null && quantity != null && product != null) {
-                    String additionalQuantityUnit = Optional.ofNullable(product.getStringField(ProductFields.ADDITIONAL_UNIT))
-                            .orElse(product.getStringField(ProductFields.UNIT));
-                    FieldComponent additionalQuantity = deliveredProductMultiPositionsFormComponent
-                            .findFieldComponentByName(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
-                    BigDecimal newAdditionalQuantity = deliveryPositionCalculationHelper.calculateAdditionalQuantity(quantity,
-                            conversion, additionalQuantityUnit);
-                    additionalQuantity.setFieldValue(numberService.formatWithMinimumFractionDigits(newAdditionalQuantity, 0));
-                    additionalQuantity.requestComponentUpdateState();
-                }
-                break;
+            Entity product = deliveredProductMultiPosition.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT);
+            BigDecimal quantity = deliveredProductMultiPosition.getDecimalField(DeliveredProductMultiPositionFields.QUANTITY);
+            BigDecimal conversion = deliveredProductMultiPosition.getDecimalField(DeliveredProductMultiPositionFields.CONVERSION);
+
+            if (conversion != null && quantity != null && product != null) {
+                String additionalQuantityUnit = Optional.ofNullable(product.getStringField(ProductFields.ADDITIONAL_UNIT))
+                        .orElse(product.getStringField(ProductFields.UNIT));
+                FieldComponent additionalQuantity = deliveredProductMultiPositionsFormComponent
+                        .findFieldComponentByName(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
+                BigDecimal newAdditionalQuantity = deliveryPositionCalculationHelper.calculateAdditionalQuantity(quantity,
+                        conversion, additionalQuantityUnit);
+                additionalQuantity.setFieldValue(numberService.formatWithMinimumFractionDigits(newAdditionalQuantity, 0));
+                additionalQuantity.requestComponentUpdateState();
             }
         }
     }
 
     public void additionalQuantityChanged(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        AwesomeDynamicListComponent deliveredProductMultiPositions = (AwesomeDynamicListComponent) view
-                .getComponentByReference(DeliveredProductMultiFields.DELIVERED_PRODUCT_MULTI_POSITIONS);
+        Optional<FormComponent> mayBeDeliveredProductMultiPositionsFormComponent = findChangedPositionFormComponent(view, state,
+                DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
 
-        List<FormComponent> deliveredProductMultiPositionsFormComponents = deliveredProductMultiPositions.getFormComponents();
+        if (mayBeDeliveredProductMultiPositionsFormComponent.isPresent()) {
+            FormComponent deliveredProductMultiPositionsFormComponent = mayBeDeliveredProductMultiPositionsFormComponent.get();
 
-        for (FormComponent deliveredProductMultiPositionsFormComponent : deliveredProductMultiPositionsFormComponents) {
             Entity deliveredProductMultiPosition = deliveredProductMultiPositionsFormComponent
                     .getPersistedEntityWithIncludedFormValues();
 
-            if (state.getUuid().equals(
-                    deliveredProductMultiPositionsFormComponent.findFieldComponentByName("additionalQuantity").getUuid())) {
-
-                Entity product = deliveredProductMultiPosition.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT);
-                BigDecimal additionalQuantity = deliveredProductMultiPosition
-                        .getDecimalField(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
-                BigDecimal conversion = deliveredProductMultiPosition
-                        .getDecimalField(DeliveredProductMultiPositionFields.CONVERSION);
+            Entity product = deliveredProductMultiPosition.getBelongsToField(DeliveredProductMultiPositionFields.PRODUCT);
+            BigDecimal additionalQuantity = deliveredProductMultiPosition
+                    .getDecimalField(DeliveredProductMultiPositionFields.ADDITIONAL_QUANTITY);
+            BigDecimal conversion = deliveredProductMultiPosition.getDecimalField(DeliveredProductMultiPositionFields.CONVERSION);
 
-                if (conversion != null && additionalQuantity != null) {
-                    String unit = product.getStringField(ProductFields.UNIT);
-                    FieldComponent quantity = deliveredProductMultiPositionsFormComponent
-                            .findFieldComponentByName(DeliveredProductMultiPositionFields.QUANTITY);
+            if (conversion != null && additionalQuantity != null) {
+                String unit = product.getStringField(ProductFields.UNIT);
+                FieldComponent quantity = deliveredProductMultiPositionsFormComponent
+                        .findFieldComponentByName(DeliveredProductMultiPositionFields.QUANTITY);
 
-                    BigDecimal newQuantity = deliveryPositionCalculationHelper.calculateQuantity(additionalQuantity, conversion,
-                            unit);
+                BigDecimal newQuantity = deliveryPositionCalculationHelper.calculateQuantity(additionalQuantity, conversion,
+                        unit);
 
-                    quantity.setFieldValue(numberService.formatWithMinimumFractionDigits(newQuantity, 0));
-                    quantity.requestComponentUpdateState();
-                }
-                break;
+                quantity.setFieldValue(numberService.formatWithMinimumFractionDigits(newQuantity, 0));
+                quantity.requestComponentUpdateState();
             }
         }
     }
@@ -265,16 +265,21 @@ public class DeliveryReportPdf extends ReportPdfView {
                         pdfHelper.getReportColumnWidths(REPORT_WIDTH, parameterService.getReportColumnWidths(), columnsName),
                         alignments);
 
-                for (DeliveryProduct deliveryProduct : deliveryProducts) {
-                    for (Entity columnForDeliveries : filteredColumnsForDeliveries) {
-                        String identifier = columnForDeliveries.getStringField(ColumnForDeliveriesFields.IDENTIFIER);
-                        String alignment = columnForDeliveries.getStringField(ColumnForDeliveriesFields.ALIGNMENT);
+                String[] identifiers = columnsName.toArray(new String[columnsName.size()]);
+                ColumnAlignment[] columnAlignments = new ColumnAlignment[identifiers.length];
+
+                for (int i = 0; i < identifiers.length; i++) {
+                    columnAlignments[i] = ColumnAlignment.parseString(filteredColumnsForDeliveries.get(i).getStringField(
+                            ColumnForDeliveriesFields.ALIGNMENT));
+                }
 
-                        String value = deliveryProductsColumnValues.get(deliveryProduct).get(identifier);
+                for (DeliveryProduct deliveryProduct : deliveryProducts) {
+                    Map<String, String> columnValues = deliveryProductsColumnValues.get(deliveryProduct);
 
-                        prepareProductColumnAlignment(productsTable.getDefaultCell(), ColumnAlignment.parseString(alignment));
+                    for (int i = 0; i < identifiers.length; i++) {
+                        prepareProductColumnAlignment(productsTable.getDefaultCell(), columnAlignments[i]);
 
-                        productsTable.addCell(new Phrase(value, FontUtils.getDejavuRegular7Dark()));
+                        productsTable.addCell(new Phrase(columnValues.get(identifiers[i]), FontUtils.getDejavuRegular7Dark()));
                     }
                 }
 
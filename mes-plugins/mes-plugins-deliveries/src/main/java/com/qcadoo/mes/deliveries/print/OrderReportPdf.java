@@ -266,26 +266,42 @@ import com.qcadoo.report.api.pdf.ReportPdfView;
                         alignments);
 
                 boolean showDrawingNumber = checkIfAnyDrawingNumberIsFill(orderedProducts);
+
+                String[] identifiers = columnsName.toArray(new String[columnsName.size()]);
+                ColumnAlignment[] columnAlignments = new ColumnAlignment[identifiers.length];
+                int productNameIndex = -1;
+
+                for (int i = 0; i < identifiers.length; i++) {
+                    Entity columnForOrders = filteredColumnsForOrders.get(i);
+
+                    columnAlignments[i] = ColumnAlignment.parseString(columnForOrders
+                            .getStringField(ColumnForOrdersFields.ALIGNMENT));
+
+                    if (showDrawingNumber && L_IDENTIFIER_PRODUCT_NAME.equals(identifiers[i])) {
+                        productNameIndex = i;
+
+                        PdfPCell cell = productsTable.getRow(0).getCells()[
+                                ((int) columnForOrders.getField(ColumnForDeliveriesFields.SUCCESSION)) - 1];
+                        cell.setPhrase(new Phrase(
+                                translationService.translate("deliveries.order.report.columnHeader.number", locale) + "\n"
+                                        + translationService
+                                        .translate("deliveries.order.report.columnHeader.drawingNumber", locale),
+                                FontUtils.getDejavuBold7Dark()));
+                    }
+                }
+
                 for (Entity orderedProduct : orderedProducts) {
-                    for (Entity columnForOrders : filteredColumnsForOrders) {
-                        String identifier = columnForOrders.getStringField(ColumnForOrdersFields.IDENTIFIER);
-                        String alignment = columnForOrders.getStringField(ColumnForOrdersFields.ALIGNMENT);
-
-                        String value = orderedProductsColumnValues.get(orderedProduct).get(identifier);
-
-                        if (showDrawingNumber && L_IDENTIFIER_PRODUCT_NAME.equals(identifier)) {
-                            PdfPCell cell = productsTable.getRow(0).getCells()[
-                                    ((int) columnForOrders.getField(ColumnForDeliveriesFields.SUCCESSION)) - 1];
-                            cell.setPhrase(new Phrase(
-                                    translationService.translate("deliveries.order.report.columnHeader.number", locale) + "\n"
-                                            + translationService
-                                            .translate("deliveries.order.report.columnHeader.drawingNumber", locale),
-                                    FontUtils.getDejavuBold7Dark()));
+                    Map<String, String> columnValues = orderedProductsColumnValues.get(orderedProduct);
+
+                    for (int i = 0; i < identifiers.length; i++) {
+                        String value = columnValues.get(identifiers[i]);
+
+                        if (i == productNameIndex) {
                             value += "\n" + Strings.nullToEmpty(orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT)
                                     .getStringField("drawingNumber"));
                         }
 
-                        prepareProductColumnAlignment(productsTable.getDefaultCell(), ColumnAlignment.parseString(alignment));
+                        prepareProductColumnAlignment(productsTable.getDefaultCell(), columnAlignments[i]);
 
                         productsTable.addCell(new Phrase(value, FontUtils.getDejavuRegular7Dark()));
                     }
@@ -23,12 +23,20 @@
  */
 package com.qcadoo.mes.ganttForOrders;
 
+import static com.qcadoo.model.api.search.SearchProjections.alias;
+import static com.qcadoo.model.api.search.SearchProjections.field;
+import static com.qcadoo.model.api.search.SearchProjections.id;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +46,8 @@ import org.springframework.transaction.annotation.Transactional;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.components.ganttChart.GanttChartItem;
 import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
@@ -45,45 +55,228 @@ import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
 @Service
 public class OrderGanttChartItemResolverImpl implements OrderGanttChartItemResolver {
 
+    private static final String L_ORDERS_BUCKET_LABEL = "ganttForOrders.ganttForOrders.window.mainTab.gantt.ordersBucket.label";
+
+    private static final long L_HOUR = 60L * 60L * 1000L;
+
+    // zoom levels are named after the time one column of the chart spans, e.g. H1, H6 or D1
+    private static final Pattern L_ZOOM_LEVEL_PATTERN = Pattern.compile("([HD])(\\d+)");
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private TranslationService translationService;
 
+    private final ConcurrentMap<String, String> stateLabels = new ConcurrentHashMap<String, String>();
+
     @Override
     @Transactional
     public Map<String, List<GanttChartItem>> resolve(final GanttChartScale scale, final JSONObject context, final Locale locale) {
-        List<Entity> orders = dataDefinitionService.get("orders", "order").find()
+        List<Entity> orders = dataDefinitionService
+                .get("orders", "order")
+                .find()
+                .setProjection(
+                        SearchProjections.list().add(alias(id(), "id")).add(alias(field("number"), "number"))
+                                .add(alias(field("name"), "name")).add(alias(field("state"), "state"))
+                                .add(alias(field("dateFrom"), "dateFrom")).add(alias(field("dateTo"), "dateTo"))
+                                .add(alias(field("effectiveDateFrom"), "effectiveDateFrom")))
                 .add(SearchRestrictions.ne("state", "04completed")).add(SearchRestrictions.lt("dateFrom", scale.getDateTo()))
-                .add(SearchRestrictions.gt("dateTo", scale.getDateFrom())).list().getEntities();
+                .add(SearchRestrictions.gt("dateTo", scale.getDateFrom())).addOrder(SearchOrders.asc("dateFrom")).list()
+                .getEntities();
+
+        long scaleFrom = scale.getDateFrom().getTime();
+        // orders shorter than one column of the current zoom level are collapsed into density buckets
+        long columnWidth = getColumnWidth(scale);
 
         List<GanttChartItem> items = new ArrayList<GanttChartItem>();
+        List<Lane> lanes = new ArrayList<Lane>();
+
+        List<OrderPeriod> orderPeriods = new ArrayList<OrderPeriod>();
 
         for (Entity order : orders) {
-            items.add(getItemForOrder(order, scale, locale));
+            orderPeriods.add(new OrderPeriod(order));
+        }
+
+        // effective dates may change order of periods, lanes are filled from the earliest one
+        Collections.sort(orderPeriods, (first, second) -> first.from.compareTo(second.from));
+
+        for (OrderPeriod orderPeriod : orderPeriods) {
+            Date from = orderPeriod.from;
+            Date to = orderPeriod.to;
+
+            boolean isShorterThanColumn = to.getTime() - from.getTime() < columnWidth;
+            long column = Math.max(0L, (from.getTime() - scaleFrom) / columnWidth);
+            Lane lane = getLane(lanes, from, column, isShorterThanColumn);
+
+            if (isShorterThanColumn) {
+                if ((lane.bucket == null) || (lane.bucket.column != column)) {
+                    addBucketItem(items, lane.closeBucket(), scale, locale);
+                    lane.bucket = new Bucket(orderPeriod.order, column, from, to);
+                } else {
+                    lane.bucket.add(from, to);
+                }
+                lane.to = lane.bucket.to;
+            } else {
+                addBucketItem(items, lane.closeBucket(), scale, locale);
+                addItem(items, scale.createGanttChartItem("", getOrderDescription(orderPeriod.order, locale),
+                        (Long) orderPeriod.order.getField("id"), from, to));
+                lane.to = to;
+            }
+        }
+
+        for (Lane lane : lanes) {
+            addBucketItem(items, lane.closeBucket(), scale, locale);
         }
 
         return Collections.singletonMap("", items);
     }
 
-    private GanttChartItem getItemForOrder(final Entity order, final GanttChartScale scale, final Locale locale) {
-        Date from = (Date) order.getField("dateFrom");
-        Date to = (Date) order.getField("dateTo");
+    private long getColumnWidth(final GanttChartScale scale) {
+        Matcher matcher = L_ZOOM_LEVEL_PATTERN.matcher(String.valueOf(scale.getZoomLevel()));
+
+        if (!matcher.matches()) {
+            return L_HOUR;
+        }
+
+        long columnHours = Long.parseLong(matcher.group(2));
+
+        return "D".equals(matcher.group(1)) ? columnHours * 24L * L_HOUR : columnHours * L_HOUR;
+    }
+
+    private Lane getLane(final List<Lane> lanes, final Date from, final long column, final boolean isShorterThanColumn) {
+        for (Lane lane : lanes) {
+            boolean bucketInColumn = isShorterThanColumn && (lane.bucket != null) && (lane.bucket.column == column);
 
-        if (order.getField("effectiveDateFrom") != null) {
-            long diff = to.getTime() - from.getTime();
-            from = (Date) order.getField("effectiveDateFrom");
-            to = new Date(from.getTime() + diff);
+            if (!lane.to.after(from) || bucketInColumn) {
+                return lane;
+            }
         }
 
-        return scale.createGanttChartItem("", getOrderDescription(order, locale), order.getId(), from, to);
+        Lane lane = new Lane(from);
+        lanes.add(lane);
+
+        return lane;
+    }
+
+    private void addBucketItem(final List<GanttChartItem> items, final Bucket bucket, final GanttChartScale scale,
+            final Locale locale) {
+        if (bucket == null) {
+            return;
+        }
+
+        if (bucket.count == 1) {
+            addItem(items, scale.createGanttChartItem("", getOrderDescription(bucket.firstOrder, locale),
+                    (Long) bucket.firstOrder.getField("id"), bucket.from, bucket.to));
+        } else {
+            addItem(items, scale.createGanttChartItem("",
+                    translationService.translate(L_ORDERS_BUCKET_LABEL, locale, String.valueOf(bucket.count)), null,
+                    bucket.from, bucket.to));
+        }
+    }
+
+    private void addItem(final List<GanttChartItem> items, final GanttChartItem item) {
+        if (item != null) {
+            items.add(item);
+        }
     }
 
     private String getOrderDescription(final Entity order, final Locale locale) {
         return order.getStringField("number") + " - " + order.getStringField("name") + "<br/>"
-                + translationService.translate("orders.order.state.label", locale) + ": "
-                + translationService.translate("orders.order.state.value." + order.getStringField("state"), locale);
+                + getStateLabel(order.getStringField("state"), locale);
+    }
+
+    private String getStateLabel(final String state, final Locale locale) {
+        String key = locale + "." + state;
+        String label = stateLabels.get(key);
+
+        if (label == null) {
+            label = translationService.translate("orders.order.state.label", locale) + ": "
+                    + translationService.translate("orders.order.state.value." + state, locale);
+            stateLabels.putIfAbsent(key, label);
+        }
+
+        return label;
+    }
+
+    private static final class OrderPeriod {
+
+        private final Entity order;
+
+        private final Date from;
+
+        private final Date to;
+
+        private OrderPeriod(final Entity order) {
+            Date from = (Date) order.getField("dateFrom");
+            Date to = (Date) order.getField("dateTo");
+
+            if (order.getField("effectiveDateFrom") != null) {
+                long diff = to.getTime() - from.getTime();
+                from = (Date) order.getField("effectiveDateFrom");
+                to = new Date(from.getTime() + diff);
+            }
+
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+    }
+
+    /**
+     * Row in which the chart stacks orders not overlapping each other, buckets never span more than one lane.
+     */
+    private static final class Lane {
+
+        private Date to;
+
+        private Bucket bucket;
+
+        private Lane(final Date to) {
+            this.to = to;
+        }
+
+        private Bucket closeBucket() {
+            Bucket closedBucket = bucket;
+            bucket = null;
+
+            return closedBucket;
+        }
+
+    }
+
+    private static final class Bucket {
+
+        private final Entity firstOrder;
+
+        private final long column;
+
+        private int count;
+
+        private Date from;
+
+        private Date to;
+
+        private Bucket(final Entity firstOrder, final long column, final Date from, final Date to) {
+            this.firstOrder = firstOrder;
+            this.column = column;
+            this.count = 1;
+            this.from = from;
+            this.to = to;
+        }
+
+        private void add(final Date from, final Date to) {
+            count++;
+
+            if (from.before(this.from)) {
+                this.from = from;
+            }
+            if (to.after(this.to)) {
+                this.to = to;
+            }
+        }
+
     }
 
 }
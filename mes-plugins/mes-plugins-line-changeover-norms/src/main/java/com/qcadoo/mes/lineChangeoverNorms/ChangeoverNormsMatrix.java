@@ -0,0 +1,183 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Immutable in-memory index of line changeover norms, keyed by (from, to) technology pair and by (from, to) technology group
+ * pair. Answers the same as the changeover norms query: norms for specific technologies first, then norms with production line
+ * defined, then the newest one.
+ */
+public final class ChangeoverNormsMatrix {
+
+    private static final Comparator<Norm> PRECEDENCE = Comparator.comparing(Norm::getChangeoverType)
+            .thenComparing(norm -> norm.getProductionLineId() == null)
+            .thenComparing(Comparator.comparing(Norm::getId).reversed());
+
+    private final ImmutableTable<Long, Long, List<Norm>> byTechnologies;
+
+    private final ImmutableTable<Long, Long, List<Norm>> byTechnologyGroups;
+
+    private ChangeoverNormsMatrix(final Table<Long, Long, List<Norm>> byTechnologies,
+            final Table<Long, Long, List<Norm>> byTechnologyGroups) {
+        this.byTechnologies = ImmutableTable.copyOf(byTechnologies);
+        this.byTechnologyGroups = ImmutableTable.copyOf(byTechnologyGroups);
+    }
+
+    public static ChangeoverNormsMatrix build(final Collection<Entity> changeoverNorms) {
+        Table<Long, Long, List<Norm>> byTechnologies = HashBasedTable.create();
+        Table<Long, Long, List<Norm>> byTechnologyGroups = HashBasedTable.create();
+
+        for (Entity changeoverNorm : changeoverNorms) {
+            Norm norm = new Norm(changeoverNorm);
+
+            put(byTechnologies, getId(changeoverNorm, LineChangeoverNormsFields.FROM_TECHNOLOGY),
+                    getId(changeoverNorm, LineChangeoverNormsFields.TO_TECHNOLOGY), norm);
+            put(byTechnologyGroups, getId(changeoverNorm, LineChangeoverNormsFields.FROM_TECHNOLOGY_GROUP),
+                    getId(changeoverNorm, LineChangeoverNormsFields.TO_TECHNOLOGY_GROUP), norm);
+        }
+
+        for (List<Norm> norms : byTechnologies.values()) {
+            Collections.sort(norms, PRECEDENCE);
+        }
+        for (List<Norm> norms : byTechnologyGroups.values()) {
+            Collections.sort(norms, PRECEDENCE);
+        }
+
+        return new ChangeoverNormsMatrix(byTechnologies, byTechnologyGroups);
+    }
+
+    private static void put(final Table<Long, Long, List<Norm>> table, final Long fromId, final Long toId, final Norm norm) {
+        if (fromId == null || toId == null) {
+            return;
+        }
+
+        List<Norm> norms = table.get(fromId, toId);
+
+        if (norms == null) {
+            norms = Lists.newArrayList();
+            table.put(fromId, toId, norms);
+        }
+
+        norms.add(norm);
+    }
+
+    private static Long getId(final Entity changeoverNorm, final String belongsToFieldName) {
+        Entity entity = changeoverNorm.getBelongsToField(belongsToFieldName);
+
+        if (entity == null) {
+            return null;
+        }
+
+        return entity.getId();
+    }
+
+    public Norm findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId) {
+        Norm forTechnologies = findFirstMatching(byTechnologies, fromTechnologyId, toTechnologyId, productionLineId);
+        Norm forTechnologyGroups = findFirstMatching(byTechnologyGroups, fromTechnologyGroupId, toTechnologyGroupId,
+                productionLineId);
+
+        if (forTechnologies == null) {
+            return forTechnologyGroups;
+        } else if (forTechnologyGroups == null) {
+            return forTechnologies;
+        }
+
+        if (PRECEDENCE.compare(forTechnologies, forTechnologyGroups) <= 0) {
+            return forTechnologies;
+        } else {
+            return forTechnologyGroups;
+        }
+    }
+
+    private Norm findFirstMatching(final Table<Long, Long, List<Norm>> table, final Long fromId, final Long toId,
+            final Long productionLineId) {
+        if (fromId == null || toId == null) {
+            return null;
+        }
+
+        List<Norm> norms = table.get(fromId, toId);
+
+        if (norms == null) {
+            return null;
+        }
+
+        for (Norm norm : norms) {
+            if (norm.getProductionLineId() == null || Objects.equals(norm.getProductionLineId(), productionLineId)) {
+                return norm;
+            }
+        }
+
+        return null;
+    }
+
+    public static final class Norm {
+
+        private final Long id;
+
+        private final String changeoverType;
+
+        private final Long productionLineId;
+
+        private final Integer duration;
+
+        private Norm(final Entity changeoverNorm) {
+            this.id = changeoverNorm.getId();
+            this.changeoverType = changeoverNorm.getStringField(LineChangeoverNormsFields.CHANGEOVER_TYPE);
+            this.productionLineId = getId(changeoverNorm, LineChangeoverNormsFields.PRODUCTION_LINE);
+            this.duration = changeoverNorm.getIntegerField(LineChangeoverNormsFields.DURATION);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getChangeoverType() {
+            return changeoverType;
+        }
+
+        public Long getProductionLineId() {
+            return productionLineId;
+        }
+
+        public Integer getDuration() {
+            return duration;
+        }
+
+    }
+
+}
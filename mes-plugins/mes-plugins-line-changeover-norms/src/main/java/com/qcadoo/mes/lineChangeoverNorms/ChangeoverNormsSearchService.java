@@ -33,10 +33,22 @@ public interface ChangeoverNormsSearchService {
     Entity findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
             final Long toTechnologyGroupId, final Long productionLineId);
 
+    /**
+     * Returns duration of the best matching changeover norm without loading it, or null if there is no matching norm.
+     */
+    Integer findBestMatchingDuration(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId);
+
     Entity searchMatchingChangeroverNormsForTechnologyWithLine(final Entity fromTechnology, final Entity toTechnology,
             final Entity productionLine);
 
     Entity searchMatchingChangeroverNormsForTechnologyGroupWithLine(final Entity fromTechnologyGroup,
             final Entity toTechnologyGroup, final Entity productionLine);
 
+    /**
+     * Drops changeover norms kept in memory, called by the line changeover norms model hooks. Norms are dropped once again
+     * after the transaction commits, so a snapshot loaded before the change became visible isn't kept.
+     */
+    void invalidate();
+
 }
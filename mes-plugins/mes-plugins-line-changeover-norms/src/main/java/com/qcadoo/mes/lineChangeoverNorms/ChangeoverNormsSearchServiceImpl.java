@@ -23,89 +23,108 @@
  */
 package com.qcadoo.mes.lineChangeoverNorms;
 
-import static com.qcadoo.model.api.search.SearchRestrictions.and;
-import static com.qcadoo.model.api.search.SearchRestrictions.eq;
-import static com.qcadoo.model.api.search.SearchRestrictions.isNull;
-import static com.qcadoo.model.api.search.SearchRestrictions.or;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Preconditions;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsConstants;
-import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchCriterion;
-import com.qcadoo.model.api.search.SearchDisjunction;
-import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class ChangeoverNormsSearchServiceImpl implements ChangeoverNormsSearchService {
 
-    private static final String DOT_ID = ".id";
-
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    private final Object lock = new Object();
+
+    private long version;
+
+    private ChangeoverNormsMatrix matrix;
+
     @Override
     public Entity findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
             final Long toTechnologyGroupId, final Long productionLineId) {
-        SearchCriteriaBuilder scb = getChangeoverDataDef().find();
+        ChangeoverNormsMatrix.Norm norm = findBestMatchingNorm(fromTechnologyId, fromTechnologyGroupId, toTechnologyId,
+                toTechnologyGroupId, productionLineId);
+
+        if (norm == null) {
+            return null;
+        }
 
-        scb.add(getTechnologiesRestrictions(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId));
-        scb.add(getProductionLineRestrictions(productionLineId));
+        return getChangeoverDataDef().get(norm.getId());
+    }
 
-        // for specific technologies first
-        scb.addOrder(SearchOrders.asc(LineChangeoverNormsFields.CHANGEOVER_TYPE));
-        // with production line defined first
-        scb.addOrder(SearchOrders.asc(LineChangeoverNormsFields.PRODUCTION_LINE));
-        // newest wins
-        scb.addOrder(SearchOrders.desc("id"));
+    @Override
+    public Integer findBestMatchingDuration(final Long fromTechnologyId, final Long fromTechnologyGroupId,
+            final Long toTechnologyId, final Long toTechnologyGroupId, final Long productionLineId) {
+        ChangeoverNormsMatrix.Norm norm = findBestMatchingNorm(fromTechnologyId, fromTechnologyGroupId, toTechnologyId,
+                toTechnologyGroupId, productionLineId);
 
-        return scb.setMaxResults(1).uniqueResult();
+        if (norm == null) {
+            return null;
+        }
+
+        return norm.getDuration();
     }
 
-    private SearchCriterion getProductionLineRestrictions(final Long productionLineId) {
-        SearchCriterion matchProductionLine = eq(LineChangeoverNormsFields.PRODUCTION_LINE + DOT_ID, productionLineId);
-        SearchCriterion productionLineIsNull = isNull(LineChangeoverNormsFields.PRODUCTION_LINE);
+    private ChangeoverNormsMatrix.Norm findBestMatchingNorm(final Long fromTechnologyId, final Long fromTechnologyGroupId,
+            final Long toTechnologyId, final Long toTechnologyGroupId, final Long productionLineId) {
+        Preconditions.checkArgument((fromTechnologyId != null && toTechnologyId != null)
+                || (fromTechnologyGroupId != null && toTechnologyGroupId != null),
+                "you have to provide pair of technologies or pair of technology groups.");
 
-        return or(matchProductionLine, productionLineIsNull);
+        return getMatrix().findBestMatching(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId,
+                productionLineId);
     }
 
-    private SearchCriterion getTechnologiesRestrictions(final Long fromTechnologyId, final Long fromTechnologyGroupId,
-            final Long toTechnologyId, final Long toTechnologyGroupId) {
-        SearchCriterion matchTechnologies = getPairRestriction(LineChangeoverNormsFields.FROM_TECHNOLOGY, fromTechnologyId,
-                LineChangeoverNormsFields.TO_TECHNOLOGY, toTechnologyId);
-        SearchCriterion matchTechnologyGroups = getPairRestriction(LineChangeoverNormsFields.FROM_TECHNOLOGY_GROUP,
-                fromTechnologyGroupId, LineChangeoverNormsFields.TO_TECHNOLOGY_GROUP, toTechnologyGroupId);
+    @Override
+    public void invalidate() {
+        clearMatrix();
 
-        Preconditions.checkArgument(matchTechnologies != null || matchTechnologyGroups != null,
-                "you have to provide pair of technologies or pair of technology groups.");
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
 
-        SearchDisjunction disjunction = SearchRestrictions.disjunction();
+                @Override
+                public void afterCommit() {
+                    clearMatrix();
+                }
 
-        if (matchTechnologies != null) {
-            disjunction.add(matchTechnologies);
+            });
         }
+    }
 
-        if (matchTechnologyGroups != null) {
-            disjunction.add(matchTechnologyGroups);
+    private void clearMatrix() {
+        synchronized (lock) {
+            version++;
+            matrix = null;
         }
-
-        return disjunction;
     }
 
-    private SearchCriterion getPairRestriction(final String leftFieldName, final Long leftId, final String rightFieldName,
-            final Long rightId) {
-        if (leftId == null || rightId == null) {
-            return null;
+    private ChangeoverNormsMatrix getMatrix() {
+        ChangeoverNormsMatrix loadedMatrix;
+        long loadedVersion;
+        synchronized (lock) {
+            loadedMatrix = matrix;
+            loadedVersion = version;
+        }
+        if (loadedMatrix != null) {
+            return loadedMatrix;
         }
 
-        return and(eq(leftFieldName + DOT_ID, leftId), eq(rightFieldName + DOT_ID, rightId));
+        loadedMatrix = ChangeoverNormsMatrix.build(getChangeoverDataDef().find().list().getEntities());
+
+        synchronized (lock) {
+            // norms could be modified while they were being loaded, such snapshot mustn't be cached
+            if (loadedVersion == version) {
+                matrix = loadedMatrix;
+            }
+        }
+        return loadedMatrix;
     }
 
     @Override
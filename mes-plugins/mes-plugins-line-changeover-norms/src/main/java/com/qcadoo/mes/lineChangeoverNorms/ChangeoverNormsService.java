@@ -23,6 +23,8 @@
  */
 package com.qcadoo.mes.lineChangeoverNorms;
 
+import java.util.List;
+
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.model.api.Entity;
@@ -31,4 +33,12 @@ import com.qcadoo.model.api.Entity;
 public interface ChangeoverNormsService {
 
     Entity getMatchingChangeoverNorms(final Entity technologyFrom, final Entity toTechnology, final Entity productionLine);
+
+    /**
+     * Returns changeover durations (in seconds) between consecutive technologies on given production line, answered from
+     * changeover norms kept in memory. Element i is the changeover from technology i to technology i + 1, null if there is no
+     * matching norm.
+     */
+    List<Integer> getChangeoverDurations(final List<Entity> technologies, final Entity productionLine);
+
 }
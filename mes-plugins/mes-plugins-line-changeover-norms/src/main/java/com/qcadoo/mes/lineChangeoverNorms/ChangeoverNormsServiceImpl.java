@@ -23,10 +23,13 @@
  */
 package com.qcadoo.mes.lineChangeoverNorms;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -48,6 +51,27 @@ public class ChangeoverNormsServiceImpl implements ChangeoverNormsService {
                 toTechnology.getId(), extractTechnologyGroupId(toTechnology), getIdOrNull(productionLine));
     }
 
+    @Override
+    public List<Integer> getChangeoverDurations(final List<Entity> technologies, final Entity productionLine) {
+        List<Integer> durations = Lists.newArrayList();
+        Long productionLineId = getIdOrNull(productionLine);
+
+        for (int i = 1; i < technologies.size(); i++) {
+            Entity fromTechnology = technologies.get(i - 1);
+            Entity toTechnology = technologies.get(i);
+
+            if (fromTechnology == null || toTechnology == null) {
+                durations.add(null);
+            } else {
+                durations.add(changeoverNormsSearchService.findBestMatchingDuration(fromTechnology.getId(),
+                        extractTechnologyGroupId(fromTechnology), toTechnology.getId(), extractTechnologyGroupId(toTechnology),
+                        productionLineId));
+            }
+        }
+
+        return durations;
+    }
+
     private Long extractTechnologyGroupId(final Entity technology) {
         Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
         return getIdOrNull(technologyGroup);
@@ -35,6 +35,7 @@ import java.util.Arrays;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsSearchService;
 import com.qcadoo.mes.lineChangeoverNorms.constants.ChangeoverType;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsConstants;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
@@ -54,6 +55,18 @@ public class LineChangeoverNormsHooks {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ChangeoverNormsSearchService changeoverNormsSearchService;
+
+    public void onSave(final DataDefinition changeoverNormDD, final Entity changeoverNorm) {
+        changeoverNormsSearchService.invalidate();
+    }
+
+    public boolean onDelete(final DataDefinition changeoverNormDD, final Entity changeoverNorm) {
+        changeoverNormsSearchService.invalidate();
+        return true;
+    }
+
     public boolean checkUniqueNorms(final DataDefinition changeoverNormDD, final Entity changeoverNorm) {
         SearchCriteriaBuilder searchCriteriaBuilder = dataDefinitionService
                 .get(LineChangeoverNormsConstants.PLUGIN_IDENTIFIER, LineChangeoverNormsConstants.MODEL_LINE_CHANGEOVER_NORMS)
@@ -0,0 +1,124 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static com.qcadoo.testing.model.EntityTestUtils.stubStringField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.lineChangeoverNorms.constants.ChangeoverType;
+import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
+import com.qcadoo.model.api.Entity;
+
+public class ChangeoverNormsMatrixTest {
+
+    private static final Long FROM_TECH_ID = 1L;
+
+    private static final Long TO_TECH_ID = 2L;
+
+    private static final Long FROM_TECH_GROUP_ID = 101L;
+
+    private static final Long TO_TECH_GROUP_ID = 202L;
+
+    private static final Long PRODUCTION_LINE_ID = 1001L;
+
+    private static final Long OTHER_PRODUCTION_LINE_ID = 1002L;
+
+    private Entity mockTechnologyNorm(final Long id, final Long productionLineId, final Integer duration) {
+        Entity norm = mockNorm(id, ChangeoverType.FOR_TECHNOLOGY, productionLineId, duration);
+        stubBelongsToField(norm, LineChangeoverNormsFields.FROM_TECHNOLOGY, mockEntity(FROM_TECH_ID));
+        stubBelongsToField(norm, LineChangeoverNormsFields.TO_TECHNOLOGY, mockEntity(TO_TECH_ID));
+        return norm;
+    }
+
+    private Entity mockTechnologyGroupNorm(final Long id, final Long productionLineId, final Integer duration) {
+        Entity norm = mockNorm(id, ChangeoverType.FOR_TECHNOLOGY_GROUP, productionLineId, duration);
+        stubBelongsToField(norm, LineChangeoverNormsFields.FROM_TECHNOLOGY_GROUP, mockEntity(FROM_TECH_GROUP_ID));
+        stubBelongsToField(norm, LineChangeoverNormsFields.TO_TECHNOLOGY_GROUP, mockEntity(TO_TECH_GROUP_ID));
+        return norm;
+    }
+
+    private Entity mockNorm(final Long id, final ChangeoverType changeoverType, final Long productionLineId,
+            final Integer duration) {
+        Entity norm = mockEntity(id);
+        stubStringField(norm, LineChangeoverNormsFields.CHANGEOVER_TYPE, changeoverType.getStringValue());
+        if (productionLineId != null) {
+            stubBelongsToField(norm, LineChangeoverNormsFields.PRODUCTION_LINE, mockEntity(productionLineId));
+        }
+        given(norm.getIntegerField(LineChangeoverNormsFields.DURATION)).willReturn(duration);
+        return norm;
+    }
+
+    @Test
+    public void shouldPreferNormsForTechnologiesOverNormsForTechnologyGroups() {
+        // given
+        ChangeoverNormsMatrix matrix = ChangeoverNormsMatrix.build(Lists.newArrayList(
+                mockTechnologyGroupNorm(3L, PRODUCTION_LINE_ID, 30), mockTechnologyNorm(1L, null, 10)));
+
+        // when
+        ChangeoverNormsMatrix.Norm norm = matrix.findBestMatching(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID,
+                TO_TECH_GROUP_ID, PRODUCTION_LINE_ID);
+
+        // then
+        assertEquals(Long.valueOf(1L), norm.getId());
+    }
+
+    @Test
+    public void shouldPreferNormsWithProductionLineAndThenNewestOnes() {
+        // given
+        ChangeoverNormsMatrix matrix = ChangeoverNormsMatrix.build(Lists.newArrayList(mockTechnologyNorm(1L, null, 10),
+                mockTechnologyNorm(2L, PRODUCTION_LINE_ID, 20), mockTechnologyNorm(3L, PRODUCTION_LINE_ID, 30),
+                mockTechnologyNorm(4L, OTHER_PRODUCTION_LINE_ID, 40), mockTechnologyNorm(5L, null, 50)));
+
+        // when
+        ChangeoverNormsMatrix.Norm onLine = matrix.findBestMatching(FROM_TECH_ID, null, TO_TECH_ID, null, PRODUCTION_LINE_ID);
+        ChangeoverNormsMatrix.Norm withoutLine = matrix.findBestMatching(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        // then
+        assertEquals(Long.valueOf(3L), onLine.getId());
+        assertEquals(Integer.valueOf(30), onLine.getDuration());
+        assertEquals(Long.valueOf(5L), withoutLine.getId());
+    }
+
+    @Test
+    public void shouldReturnNullIfNoNormMatches() {
+        // given
+        ChangeoverNormsMatrix matrix = ChangeoverNormsMatrix.build(Lists.newArrayList(mockTechnologyNorm(1L,
+                OTHER_PRODUCTION_LINE_ID, 10)));
+
+        // when
+        ChangeoverNormsMatrix.Norm norm = matrix.findBestMatching(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID,
+                TO_TECH_GROUP_ID, PRODUCTION_LINE_ID);
+
+        // then
+        assertNull(norm);
+    }
+
+}
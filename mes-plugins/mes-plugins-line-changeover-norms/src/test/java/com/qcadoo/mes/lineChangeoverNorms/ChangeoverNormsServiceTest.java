@@ -26,6 +26,9 @@ package com.qcadoo.mes.lineChangeoverNorms;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Before;
@@ -136,4 +139,18 @@ public class ChangeoverNormsServiceTest {
         // then
         Assert.assertNull(returnedChangeover);
     }
+
+    @Test
+    public void shouldReturnChangeoverDurationsBetweenConsecutiveTechnologies() {
+        // given
+        when(changeoverNormsSearchService.findBestMatchingDuration(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID, TO_TECH_GROUP_ID,
+                PRODUCTION_LINE_ID)).thenReturn(600);
+
+        // when
+        List<Integer> durations = changeoverNormsService.getChangeoverDurations(
+                Arrays.asList(fromTechnology, toTechnology, null, fromTechnology), productionLine);
+
+        // then
+        Assert.assertEquals(Arrays.asList(600, null, null), durations);
+    }
 }
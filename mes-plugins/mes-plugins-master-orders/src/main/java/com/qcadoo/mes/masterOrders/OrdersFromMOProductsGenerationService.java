@@ -1,6 +1,7 @@
 package com.qcadoo.mes.masterOrders;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ShiftsService;
@@ -37,8 +38,10 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static com.qcadoo.mes.orders.constants.OrderFields.PRODUCTION_LINE;
 import static com.qcadoo.model.api.BigDecimalUtils.convertNullToZero;
@@ -79,23 +82,70 @@ public class OrdersFromMOProductsGenerationService {
 
     public GenerationOrderResult generateOrders(List<Entity> masterOrderProducts, boolean generatePPS) {
         GenerationOrderResult result = new GenerationOrderResult(translationService);
-        boolean automaticPps = parameterService.getParameter().getBooleanField("ppsIsAutomatic");
-        masterOrderProducts.forEach(masterOrderProduct -> {
+        GenerationContext context = new GenerationContext(parameterService.getParameter());
+        boolean automaticPps = context.parameter.getBooleanField("ppsIsAutomatic");
+        List<Entity> masterOrderProductsToGenerate = masterOrderProducts.stream().map(masterOrderProduct -> {
             Optional<Entity> dtoEntity = Optional.ofNullable(masterOrderProduct.getDataDefinition().getMasterModelEntity(
                     masterOrderProduct.getId()));
-            if (dtoEntity.isPresent()) {
-                generateOrder(generatePPS, automaticPps, result, dtoEntity.get());
-            } else {
-                generateOrder(generatePPS, automaticPps, result, masterOrderProduct);
-            }
-        });
+            return dtoEntity.orElse(masterOrderProduct);
+        }).collect(Collectors.toList());
+
+        if (generatePPS && automaticPps) {
+            fillChangeoverDurations(masterOrderProductsToGenerate, context);
+        }
+
+        masterOrderProductsToGenerate.forEach(masterOrderProduct -> generateOrder(generatePPS, automaticPps, result,
+                masterOrderProduct, context));
 
         return result;
 
     }
 
-    private void generateOrder(boolean generatePPS, boolean automaticPps, GenerationOrderResult result, Entity masterOrderProduct) {
-        Entity order = createOrder(masterOrderProduct);
+    /**
+     * Orders generated in one run are planned one after another on their production lines, so changeover durations of the whole
+     * sequence are looked up at once for each line. Pairs which end up different, e.g. when an order fails to be generated, are
+     * still looked up one by one.
+     */
+    private void fillChangeoverDurations(final List<Entity> masterOrderProducts, final GenerationContext context) {
+        Map<Long, Entity> productionLines = Maps.newHashMap();
+        Map<Long, List<Entity>> technologiesByProductionLine = Maps.newLinkedHashMap();
+
+        for (Entity masterOrderProduct : masterOrderProducts) {
+            Entity technology = getTechnology(masterOrderProduct, context);
+            Entity productionLine = getProductionLine(technology, context);
+            Long productionLineId = getIdOrNull(productionLine);
+
+            if (!technologiesByProductionLine.containsKey(productionLineId)) {
+                Optional<Entity> previousOrder = findPreviousOrderOnProductionLine(productionLine, context);
+
+                productionLines.put(productionLineId, productionLine);
+                technologiesByProductionLine.put(productionLineId, Lists.newArrayList(previousOrder.map(
+                        order -> order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE)).orElse(null)));
+            }
+
+            technologiesByProductionLine.get(productionLineId).add(technology);
+        }
+
+        technologiesByProductionLine.forEach((productionLineId, technologies) -> {
+            List<Integer> durations = changeoverNormsService.getChangeoverDurations(technologies,
+                    productionLines.get(productionLineId));
+
+            for (int i = 0; i < durations.size(); i++) {
+                Entity fromTechnology = technologies.get(i);
+                Entity toTechnology = technologies.get(i + 1);
+
+                if (Objects.nonNull(fromTechnology) && Objects.nonNull(toTechnology)) {
+                    context.changeoverDurationsInMillis.put(
+                            Lists.newArrayList(fromTechnology.getId(), toTechnology.getId(), productionLineId),
+                            toMillis(durations.get(i)));
+                }
+            }
+        });
+    }
+
+    private void generateOrder(boolean generatePPS, boolean automaticPps, GenerationOrderResult result, Entity masterOrderProduct,
+            GenerationContext context) {
+        Entity order = createOrder(masterOrderProduct, context);
         order = getOrderDD().save(order);
         if (!order.isValid()) {
             MasterOrderProductErrorContainer productErrorContainer = new MasterOrderProductErrorContainer();
@@ -108,11 +158,12 @@ public class OrdersFromMOProductsGenerationService {
             result.addNotGeneratedProductError(productErrorContainer);
         } else {
             result.addGeneratedOrderNumber(order.getStringField(OrderFields.NUMBER));
+            context.updatePreviousOrder(order);
         }
 
         if (order.isValid() && generatePPS && automaticPps) {
             try {
-                tryGeneratePPS(order);
+                tryGeneratePPS(order, context);
             } catch (Exception ex) {
                 result.addOrderWithoutPps(order.getStringField(OrderFields.NUMBER));
             }
@@ -120,8 +171,8 @@ public class OrdersFromMOProductsGenerationService {
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    private void tryGeneratePPS(final Entity order) {
-        Date startDate = findStartDate(order);
+    private void tryGeneratePPS(final Entity order, final GenerationContext context) {
+        Date startDate = findStartDate(order, context);
         generateEmptyPpsForOrder(order);
         order.setField("generatePPS", true);
         order.setField(OrderFields.START_DATE, startDate);
@@ -130,6 +181,7 @@ public class OrdersFromMOProductsGenerationService {
         if (!storedOrder.isValid()) {
             throw new EntityRuntimeException(storedOrder);
         }
+        context.updatePreviousOrder(storedOrder);
     }
 
     private void generateEmptyPpsForOrder(Entity order) {
@@ -149,15 +201,15 @@ public class OrdersFromMOProductsGenerationService {
         productionPerShift.getDataDefinition().save(productionPerShift);
     }
 
-    private Date findStartDate(final Entity order) {
+    private Date findStartDate(final Entity order, final GenerationContext context) {
         if (Objects.nonNull(order.getDateField(OrderFields.START_DATE))) {
             return order.getDateField(OrderFields.START_DATE);
         }
 
-        Optional<Entity> previousOrder = findPreviousOrder(order);
+        Optional<Entity> previousOrder = findPreviousOrder(order, context);
         if (previousOrder.isPresent()) {
-            Integer changeoverDurationInMillis = getChangeoverDurationInMillis(previousOrder.get(), order);
-            List<Entity> shifts = getAllShifts();
+            Integer changeoverDurationInMillis = getChangeoverDurationInMillis(previousOrder.get(), order, context);
+            List<Entity> shifts = context.getShifts();
             Optional<DateTime> maybeDate = shiftsService.getNearestWorkingDate(
                     new DateTime(previousOrder.get().getDateField(OrderFields.FINISH_DATE)), shifts);
             if (maybeDate.isPresent()) {
@@ -174,8 +226,25 @@ public class OrdersFromMOProductsGenerationService {
         return finishDateTime.toDate();
     }
 
+    private Optional<Entity> findPreviousOrder(final Entity order, final GenerationContext context) {
+        return findPreviousOrderOnProductionLine(order.getBelongsToField(OrderFields.PRODUCTION_LINE), context);
+    }
+
+    private Optional<Entity> findPreviousOrderOnProductionLine(final Entity productionLine, final GenerationContext context) {
+        Long productionLineId = getIdOrNull(productionLine);
+
+        if (!context.previousOrders.containsKey(productionLineId)) {
+            context.previousOrders.put(productionLineId, findPreviousOrderOnProductionLine(productionLine));
+        }
+
+        return context.previousOrders.get(productionLineId);
+    }
+
     public Optional<Entity> findPreviousOrder(final Entity order) {
-        Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+        return findPreviousOrderOnProductionLine(order.getBelongsToField(OrderFields.PRODUCTION_LINE));
+    }
+
+    private Optional<Entity> findPreviousOrderOnProductionLine(final Entity productionLine) {
         Entity nextOrder = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
                 .add(SearchRestrictions.belongsTo(OrderFields.PRODUCTION_LINE, productionLine))
                 .add(SearchRestrictions.isNotNull(OrderFields.START_DATE)).addOrder(SearchOrders.desc(OrderFields.START_DATE))
@@ -183,26 +252,54 @@ public class OrdersFromMOProductsGenerationService {
         return Optional.ofNullable(nextOrder);
     }
 
+    private Integer getChangeoverDurationInMillis(final Entity previousOrder, final Entity nextOrder,
+            final GenerationContext context) {
+        List<Long> key = Lists.newArrayList(getIdOrNull(previousOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE)),
+                getIdOrNull(nextOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE)),
+                getIdOrNull(nextOrder.getBelongsToField(PRODUCTION_LINE)));
+
+        Integer changeoverDurationInMillis = context.changeoverDurationsInMillis.get(key);
+
+        if (changeoverDurationInMillis == null) {
+            changeoverDurationInMillis = getChangeoverDurationInMillis(previousOrder, nextOrder);
+
+            context.changeoverDurationsInMillis.put(key, changeoverDurationInMillis);
+        }
+
+        return changeoverDurationInMillis;
+    }
+
+    private Long getIdOrNull(final Entity entity) {
+        return Objects.isNull(entity) ? null : entity.getId();
+    }
+
     public Integer getChangeoverDurationInMillis(Entity previousOrder, final Entity nextOrder) {
         Entity fromTechnology = previousOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
         Entity toTechnology = nextOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
         Entity productionLine = nextOrder.getBelongsToField(PRODUCTION_LINE);
         Entity changeover = changeoverNormsService.getMatchingChangeoverNorms(fromTechnology, toTechnology, productionLine);
         if (changeover != null) {
-            Integer duration = changeover.getIntegerField(LineChangeoverNormsFields.DURATION);
-            if (duration == null) {
-                return 0;
-            }
-            return duration * 1000;
+            return toMillis(changeover.getIntegerField(LineChangeoverNormsFields.DURATION));
         }
         return 0;
     }
 
+    private Integer toMillis(final Integer durationInSeconds) {
+        if (durationInSeconds == null) {
+            return 0;
+        }
+        return durationInSeconds * 1000;
+    }
+
     public Entity createOrder(final Entity masterOrderProduct) {
-        Entity parameter = parameterService.getParameter();
+        return createOrder(masterOrderProduct, new GenerationContext(parameterService.getParameter()));
+    }
+
+    private Entity createOrder(final Entity masterOrderProduct, final GenerationContext context) {
+        Entity parameter = context.parameter;
         Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
         Entity product = masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT);
-        Entity technology = getTechnology(masterOrderProduct);
+        Entity technology = getTechnology(masterOrderProduct, context);
         Date masterOrderDeadline = masterOrder.getDateField(MasterOrderFields.DEADLINE);
         Date masterOrderStartDate = masterOrder.getDateField(MasterOrderFields.START_DATE);
         Date masterOrderFinishDate = masterOrder.getDateField(MasterOrderFields.FINISH_DATE);
@@ -214,7 +311,7 @@ public class OrdersFromMOProductsGenerationService {
         order.setField(OrderFields.ADDRESS, masterOrder.getBelongsToField(MasterOrderFields.ADDRESS));
         order.setField(OrderFields.PRODUCT, product);
         order.setField(OrderFields.TECHNOLOGY_PROTOTYPE, technology);
-        order.setField(OrderFields.PRODUCTION_LINE, getProductionLine(technology));
+        order.setField(OrderFields.PRODUCTION_LINE, getProductionLine(technology, context));
         order.setField(OrderFields.DATE_FROM, masterOrderStartDate);
         order.setField(OrderFields.DATE_TO, masterOrderFinishDate);
         order.setField(OrderFields.DEADLINE, masterOrderDeadline);
@@ -227,12 +324,8 @@ public class OrdersFromMOProductsGenerationService {
 
         order.setField("ignoreMissingComponents", parameter.getBooleanField("ignoreMissingComponents"));
 
-        boolean fillOrderDescriptionBasedOnTechnology = dataDefinitionService
-                .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER).find().setMaxResults(1).uniqueResult()
-                .getBooleanField(ParameterFieldsO.FILL_ORDER_DESCRIPTION_BASED_ON_TECHNOLOGY_DESCRIPTION);
-
         String orderDescription = orderService.buildOrderDescription(masterOrder, technology,
-                fillOrderDescriptionBasedOnTechnology);
+                context.isFillOrderDescriptionBasedOnTechnology());
         order.setField(OrderFields.DESCRIPTION, orderDescription);
         return order;
     }
@@ -256,6 +349,17 @@ public class OrdersFromMOProductsGenerationService {
                 masterOrder.getStringField(MasterOrderFields.NUMBER) + "-");
     }
 
+    private Entity getProductionLine(final Entity technology, final GenerationContext context) {
+        Entity productionLine = null;
+        if (Objects.nonNull(technology)) {
+            productionLine = technology.getBelongsToField("productionLine");
+        }
+        if (Objects.isNull(productionLine)) {
+            productionLine = context.getDefaultProductionLine();
+        }
+        return productionLine;
+    }
+
     public Entity getProductionLine(final Entity technology) {
         Entity productionLine = null;
         if (Objects.nonNull(technology)) {
@@ -267,12 +371,15 @@ public class OrdersFromMOProductsGenerationService {
         return productionLine;
     }
 
-    private Entity getTechnology(final Entity masterOrderProduct) {
+    private Entity getTechnology(final Entity masterOrderProduct, final GenerationContext context) {
         Entity technology;
         technology = masterOrderProduct.getBelongsToField(MasterOrderProductFields.TECHNOLOGY);
         if (Objects.isNull(technology)) {
             Entity product = masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT);
-            technology = technologyServiceO.getDefaultTechnology(product);
+            if (!context.defaultTechnologies.containsKey(product.getId())) {
+                context.defaultTechnologies.put(product.getId(), technologyServiceO.getDefaultTechnology(product));
+            }
+            technology = context.defaultTechnologies.get(product.getId());
         }
 
         return technology;
@@ -301,4 +408,69 @@ public class OrdersFromMOProductsGenerationService {
     private DataDefinition getShiftDataDefinition() {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
     }
+
+    /**
+     * Data shared by all orders generated in one run, so that it isn't queried again for every master order product. Previous
+     * orders are chained per production line in memory as the generated orders get their start dates.
+     */
+    private final class GenerationContext {
+
+        private final Entity parameter;
+
+        private Boolean fillOrderDescriptionBasedOnTechnology;
+
+        private Entity defaultProductionLine;
+
+        private List<Entity> shifts;
+
+        private final Map<Long, Entity> defaultTechnologies = Maps.newHashMap();
+
+        private final Map<Long, Optional<Entity>> previousOrders = Maps.newHashMap();
+
+        private final Map<List<Long>, Integer> changeoverDurationsInMillis = Maps.newHashMap();
+
+        private GenerationContext(final Entity parameter) {
+            this.parameter = parameter;
+        }
+
+        private boolean isFillOrderDescriptionBasedOnTechnology() {
+            if (fillOrderDescriptionBasedOnTechnology == null) {
+                fillOrderDescriptionBasedOnTechnology = dataDefinitionService
+                        .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER).find().setMaxResults(1)
+                        .uniqueResult().getBooleanField(ParameterFieldsO.FILL_ORDER_DESCRIPTION_BASED_ON_TECHNOLOGY_DESCRIPTION);
+            }
+            return fillOrderDescriptionBasedOnTechnology;
+        }
+
+        private Entity getDefaultProductionLine() {
+            if (defaultProductionLine == null) {
+                defaultProductionLine = orderService.getDefaultProductionLine();
+            }
+            return defaultProductionLine;
+        }
+
+        private List<Entity> getShifts() {
+            if (shifts == null) {
+                shifts = getAllShifts();
+            }
+            return shifts;
+        }
+
+        private void updatePreviousOrder(final Entity order) {
+            Date startDate = order.getDateField(OrderFields.START_DATE);
+            Long productionLineId = getIdOrNull(order.getBelongsToField(OrderFields.PRODUCTION_LINE));
+
+            if (Objects.isNull(startDate) || !previousOrders.containsKey(productionLineId)) {
+                return;
+            }
+
+            Optional<Entity> previousOrder = previousOrders.get(productionLineId);
+
+            if (!previousOrder.isPresent() || !startDate.before(previousOrder.get().getDateField(OrderFields.START_DATE))) {
+                previousOrders.put(productionLineId, Optional.of(order));
+            }
+        }
+
+    }
+
 }
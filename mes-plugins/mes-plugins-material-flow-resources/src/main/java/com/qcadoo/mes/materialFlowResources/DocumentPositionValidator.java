@@ -32,6 +32,7 @@ import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 
 @Service
 public class DocumentPositionValidator {
@@ -45,6 +46,9 @@ public class DocumentPositionValidator {
     @Autowired
     private DocumentPositionService documentPositionService;
 
+    @Autowired
+    private ResourceStockService resourceStockService;
+
     public Map<String, Object> validateAndTryMapBeforeCreate(DocumentPositionDTO documentPositionDTO) {
         return validateAndMap(documentPositionDTO);
     }
@@ -235,9 +239,6 @@ public class DocumentPositionValidator {
             }
         }
 
-        String query = "SELECT availableQuantity FROM materialflowresources_resourcestock "
-                + "WHERE product_id = :product_id AND location_id = :location_id";
-
         Map<String, Object> params = Maps.newHashMap();
 
         params.put("product_id", productId);
@@ -245,13 +246,7 @@ public class DocumentPositionValidator {
         params.put("position_id", positionId);
         params.put("resource_id", resourceId);
 
-        BigDecimal availableQuantity = jdbcTemplate.query(query, params, new ResultSetExtractor<BigDecimal>() {
-
-            @Override
-            public BigDecimal extractData(ResultSet rs) throws SQLException, DataAccessException {
-                return rs.next() ? rs.getBigDecimal("availableQuantity") : BigDecimal.ZERO;
-            }
-        });
+        BigDecimal availableQuantity = resourceStockService.getAvailableQuantity(productId, locationId);
 
         if (positionId != null && positionId != 0L) {
             String queryForOld = "SELECT product_id, quantity, resource_id FROM materialflowresources_position WHERE id = :position_id";
@@ -0,0 +1,189 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Candidate resources for all products of one document, loaded with a single query per warehouse and allocated in memory.
+ *
+ * Resources changed or deleted while posting the document have to be reported back through {@link #update(Entity)} and
+ * {@link #remove(Long)}, so positions processed later see the same state they would see querying the database.
+ */
+public class ResourceAllocationPool {
+
+    private static final Comparator<Entity> L_BY_TIME = Comparator.comparing(
+            (Entity resource) -> getDate(resource, ResourceFields.TIME), Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private static final Comparator<Entity> L_BY_EXPIRATION_DATE = Comparator.comparing(
+            (Entity resource) -> getDate(resource, ResourceFields.EXPIRATION_DATE), Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private static final Comparator<Entity> L_BY_AVAILABLE_QUANTITY = Comparator
+            .comparing((Entity resource) -> resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+
+    private static final Comparator<Entity> L_BY_ID = Comparator.comparing(Entity::getId);
+
+    private final DataDefinition resourceDD;
+
+    private final DataDefinition storageLocationDD;
+
+    private final Set<Long> productIds;
+
+    private final Map<Long, Map<Long, List<Entity>>> resourcesByWarehouseAndProduct = Maps.newHashMap();
+
+    private final Map<Long, Map<Long, Optional<Entity>>> storageLocationsByWarehouseAndProduct = Maps.newHashMap();
+
+    public ResourceAllocationPool(final DataDefinition resourceDD, final DataDefinition storageLocationDD,
+            final Collection<Long> productIds) {
+        this.resourceDD = resourceDD;
+        this.storageLocationDD = storageLocationDD;
+        this.productIds = Sets.newHashSet(productIds);
+    }
+
+    /**
+     * Returns resources of product in warehouse, in the order given warehouse algorithm consumes them. Resources with given
+     * additional code come first, the rest follows.
+     */
+    public List<Entity> getResources(final Entity warehouse, final Entity product, final Entity additionalCode,
+            final BigDecimal conversion, final WarehouseAlgorithm warehouseAlgorithm) {
+        List<Entity> resources = getResourcesForWarehouse(warehouse).getOrDefault(product.getId(), Lists.newArrayList()).stream()
+                .filter(resource -> BigDecimal.ZERO.compareTo(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)) < 0)
+                .filter(resource -> hasConversion(resource, conversion)).sorted(getComparator(warehouseAlgorithm))
+                .collect(Collectors.toList());
+
+        if (additionalCode != null) {
+            List<Entity> resourcesWithAdditionalCode = resources.stream()
+                    .filter(resource -> hasAdditionalCode(resource, additionalCode)).collect(Collectors.toList());
+
+            resources.removeAll(resourcesWithAdditionalCode);
+            resourcesWithAdditionalCode.addAll(resources);
+
+            return resourcesWithAdditionalCode;
+        }
+
+        return resources;
+    }
+
+    /**
+     * Returns pooled resource with given id, or fetches it when it is not a candidate for any pooled product.
+     */
+    public Entity getResource(final Long resourceId) {
+        return findResource(resourceId).orElseGet(() -> resourceDD.get(resourceId));
+    }
+
+    public Entity getStorageLocation(final Entity warehouse, final Entity product) {
+        return storageLocationsByWarehouseAndProduct.computeIfAbsent(warehouse.getId(), warehouseId -> Maps.newHashMap())
+                .computeIfAbsent(product.getId(), productId -> Optional.ofNullable(storageLocationDD.find()
+                        .add(SearchRestrictions.belongsTo(StorageLocationFields.LOCATION, warehouse))
+                        .add(SearchRestrictions.belongsTo(StorageLocationFields.PRODUCT, product)).setMaxResults(1)
+                        .uniqueResult()))
+                .orElse(null);
+    }
+
+    public void update(final Entity resource) {
+        resourcesByWarehouseAndProduct.values().stream().flatMap(resourcesByProduct -> resourcesByProduct.values().stream())
+                .forEach(resources -> resources.replaceAll(pooled -> pooled.getId().equals(resource.getId()) ? resource : pooled));
+    }
+
+    public void remove(final Long resourceId) {
+        resourcesByWarehouseAndProduct.values().stream().flatMap(resourcesByProduct -> resourcesByProduct.values().stream())
+                .forEach(resources -> resources.removeIf(pooled -> pooled.getId().equals(resourceId)));
+    }
+
+    private Optional<Entity> findResource(final Long resourceId) {
+        return resourcesByWarehouseAndProduct.values().stream()
+                .flatMap(resourcesByProduct -> resourcesByProduct.values().stream()).flatMap(List::stream)
+                .filter(pooled -> pooled.getId().equals(resourceId)).findFirst();
+    }
+
+    private Map<Long, List<Entity>> getResourcesForWarehouse(final Entity warehouse) {
+        return resourcesByWarehouseAndProduct.computeIfAbsent(warehouse.getId(), warehouseId -> loadResources(warehouse));
+    }
+
+    private Map<Long, List<Entity>> loadResources(final Entity warehouse) {
+        if (productIds.isEmpty()) {
+            return Maps.newHashMap();
+        }
+
+        List<Entity> resources = resourceDD.find().add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                .add(SearchRestrictions.in(ResourceFields.PRODUCT + ".id", productIds))
+                .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO)).list().getEntities();
+
+        return resources.stream().collect(Collectors.groupingBy(
+                resource -> resource.getBelongsToField(ResourceFields.PRODUCT).getId(), Collectors.toList()));
+    }
+
+    private boolean hasConversion(final Entity resource, final BigDecimal conversion) {
+        BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+
+        return Objects.nonNull(conversion) && Objects.nonNull(resourceConversion) && conversion.compareTo(resourceConversion) == 0;
+    }
+
+    private boolean hasAdditionalCode(final Entity resource, final Entity additionalCode) {
+        Entity resourceAdditionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+        return Objects.nonNull(resourceAdditionalCode) && resourceAdditionalCode.getId().equals(additionalCode.getId());
+    }
+
+    /**
+     * Mirrors the database ordering of the per position queries: ascending dates go with nulls last, descending ones with nulls
+     * first.
+     */
+    private Comparator<Entity> getComparator(final WarehouseAlgorithm warehouseAlgorithm) {
+        switch (warehouseAlgorithm) {
+            case LIFO:
+                return L_BY_TIME.reversed().thenComparing(L_BY_ID);
+            case FEFO:
+                return L_BY_EXPIRATION_DATE.thenComparing(L_BY_AVAILABLE_QUANTITY).thenComparing(L_BY_ID);
+            case LEFO:
+                return L_BY_EXPIRATION_DATE.reversed().thenComparing(L_BY_AVAILABLE_QUANTITY).thenComparing(L_BY_ID);
+            default:
+                return L_BY_TIME.thenComparing(L_BY_ID);
+        }
+    }
+
+    private static Date getDate(final Entity resource, final String fieldName) {
+        return (Date) resource.getField(fieldName);
+    }
+
+}
@@ -30,6 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,7 +50,6 @@ import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConst
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
-import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
 import com.qcadoo.mes.materialFlowResources.exceptions.InvalidResourceException;
 import com.qcadoo.model.api.DataDefinition;
@@ -126,8 +127,19 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         Object date = document.getField(DocumentFields.TIME);
 
+        DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+
+        Entity user = document.getBelongsToField(DocumentFields.USER);
+        Entity delivery = document.getBelongsToField(ResourceFields.DELIVERY);
+
+        String userName = user.getStringField(_FIRST_NAME) + " " + user.getStringField(L_LAST_NAME);
+        String deliveryNumber = delivery != null ? delivery.getStringField("number") : null;
+
+        ResourceStockChanges resourceStockChanges = new ResourceStockChanges();
+
         for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
-            createResource(document, warehouse, position, date);
+            createResource(resourceDD, userName, deliveryNumber, warehouse, position, date, resourceStockChanges);
 
             position = position.getDataDefinition().save(position);
 
@@ -139,21 +151,19 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                         .forEach(e -> document.addGlobalError(e.getMessage(), e.getAutoClose(), e.getVars()));
             }
         }
-    }
 
-    private Entity createResource(final Entity document, final Entity warehouse, final Entity position, final Object date) {
-        DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+        resourceStockService.applyResourceStockChanges(resourceStockChanges);
+    }
 
+    private Entity createResource(final DataDefinition resourceDD, final String userName, final String deliveryNumber,
+            final Entity warehouse, final Entity position, final Object date, final ResourceStockChanges resourceStockChanges) {
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
         Entity resource = resourceDD.create();
-        Entity user = document.getBelongsToField(DocumentFields.USER);
-        Entity delivery = document.getBelongsToField(ResourceFields.DELIVERY);
 
-        resource.setField(ResourceFields.USER_NAME, user.getStringField(_FIRST_NAME) + " " + user.getStringField(L_LAST_NAME));
+        resource.setField(ResourceFields.USER_NAME, userName);
         resource.setField(ResourceFields.TIME, date);
         resource.setField(ResourceFields.LOCATION, warehouse);
-        resource.setField(ResourceFields.PRODUCT, position.getBelongsToField(PositionFields.PRODUCT));
+        resource.setField(ResourceFields.PRODUCT, product);
         resource.setField(ResourceFields.QUANTITY, position.getField(PositionFields.QUANTITY));
         resource.setField(ResourceFields.RESERVED_QUANTITY, BigDecimal.ZERO);
         resource.setField(ResourceFields.AVAILABLE_QUANTITY, position.getDecimalField(PositionFields.QUANTITY));
@@ -167,8 +177,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         resource.setField(ResourceFields.TYPE_OF_PALLET, position.getField(PositionFields.TYPE_OF_PALLET));
         resource.setField(ResourceFields.WASTE, position.getField(PositionFields.WASTE));
 
-        if (delivery != null) {
-            resource.setField(ResourceFields.DELIVERY_NUMBER, delivery.getStringField("number"));
+        if (deliveryNumber != null) {
+            resource.setField(ResourceFields.DELIVERY_NUMBER, deliveryNumber);
         }
 
         if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
@@ -181,7 +191,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             resource.setField(ResourceFields.CONVERSION, position.getField(PositionFields.CONVERSION));
         }
 
-        resourceStockService.addResourceStock(resource);
+        resourceStockChanges.add(product, warehouse, resource.getDecimalField(ResourceFields.QUANTITY));
 
         resource = resourceDD.save(resource);
 
@@ -195,7 +205,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private Entity createResource(final Entity position, final Entity warehouse, final Entity resource, final BigDecimal quantity,
-            Object date) {
+            final Object date, final ResourceAllocationPool resourceAllocationPool,
+            final ResourceStockChanges resourceStockChanges) {
         DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_RESOURCE);
 
@@ -223,7 +234,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         newResource.setField(ResourceFields.EXPIRATION_DATE, resource.getField(PositionFields.EXPIRATION_DATE));
         newResource.setField(ResourceFields.PRODUCTION_DATE, resource.getField(PositionFields.PRODUCTION_DATE));
         newResource.setField(ResourceFields.STORAGE_LOCATION,
-                findStorageLocationForProduct(warehouse, resource.getBelongsToField(ResourceFields.PRODUCT)));
+                resourceAllocationPool.getStorageLocation(warehouse, resource.getBelongsToField(ResourceFields.PRODUCT)));
         newResource.setField(ResourceFields.PALLET_NUMBER, null);
         newResource.setField(ResourceFields.TYPE_OF_PALLET, null);
         newResource.setField(ResourceFields.ADDITIONAL_CODE, resource.getField(ResourceFields.ADDITIONAL_CODE));
@@ -235,7 +246,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         newResource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-        resourceStockService.addResourceStock(newResource);
+        resourceStockChanges.add(resource.getBelongsToField(ResourceFields.PRODUCT), warehouse, quantity);
 
         return resourceDD.save(newResource);
     }
@@ -250,19 +261,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return numberService.setScale(quantity.multiply(conversion));
     }
 
-    private Entity findStorageLocationForProduct(final Entity warehouse, final Entity product) {
-        List<Entity> storageLocations = dataDefinitionService
-                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_STORAGE_LOCATION)
-                .find().add(SearchRestrictions.belongsTo(StorageLocationFields.LOCATION, warehouse))
-                .add(SearchRestrictions.belongsTo(StorageLocationFields.PRODUCT, product)).list().getEntities();
-
-        if (storageLocations.isEmpty()) {
-            return null;
-        } else {
-            return storageLocations.get(0);
-        }
-    }
-
     private SearchCriteriaBuilder getSearchCriteriaForResourceForProductAndWarehouse(final Entity product,
             final Entity warehouse) {
         return dataDefinitionService
@@ -394,6 +392,18 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return map;
     }
 
+    private ResourceAllocationPool createResourceAllocationPool(final Entity document) {
+        Set<Long> productIds = document.getHasManyField(DocumentFields.POSITIONS).stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toSet());
+
+        return new ResourceAllocationPool(
+                dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                        MaterialFlowResourcesConstants.MODEL_RESOURCE),
+                dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                        MaterialFlowResourcesConstants.MODEL_STORAGE_LOCATION),
+                productIds);
+    }
+
     private BigDecimal getQuantityOfProductFromMultimap(final Multimap<Long, BigDecimal> quantitiesForWarehouse,
             final Entity product) {
         List<BigDecimal> quantities = Lists.newArrayList(quantitiesForWarehouse.get(product.getId()));
@@ -414,13 +424,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         Multimap<Long, BigDecimal> quantitiesForWarehouse = ArrayListMultimap.create();
 
+        ResourceAllocationPool resourceAllocationPool = createResourceAllocationPool(document);
+        ResourceStockChanges resourceStockChanges = new ResourceStockChanges();
+
         for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
             Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
 
             if (resource != null && resource.getId() != null) {
-                resource = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                        MaterialFlowResourcesConstants.MODEL_RESOURCE).get(resource.getId());
+                resource = resourceAllocationPool.getResource(resource.getId());
             }
 
             if (resource != null) {
@@ -431,7 +443,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 warehouseAlgorithm = WarehouseAlgorithm.parseString(warehouse.getStringField(LocationFieldsMFR.ALGORITHM));
             }
 
-            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm);
+            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm, resourceAllocationPool,
+                    resourceStockChanges);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -468,6 +481,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourceStockService.applyResourceStockChanges(resourceStockChanges);
+
         if (!enoughResources) {
             addDocumentError(document, warehouse, errorMessage);
         }
@@ -501,7 +516,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         position.setField(PositionFields.GIVEN_QUANTITY, newPosition.getField(PositionFields.GIVEN_QUANTITY));
     }
 
-    private List<Entity> updateResources(final Entity warehouse, final Entity position, final WarehouseAlgorithm warehouseAlgorithm) {
+    private List<Entity> updateResources(final Entity warehouse, final Entity position, final WarehouseAlgorithm warehouseAlgorithm,
+            final ResourceAllocationPool resourceAllocationPool, final ResourceStockChanges resourceStockChanges) {
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
 
@@ -509,11 +525,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm,
+                resourceAllocationPool);
 
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
 
-        resourceStockService.removeResourceStock(product, warehouse, quantity);
+        resourceStockChanges.remove(product, warehouse, quantity);
 
         for (Entity resource : resources) {
             BigDecimal resourceQuantity = resource.getDecimalField(ResourceFields.QUANTITY);
@@ -542,6 +559,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
 
                     resource.getDataDefinition().delete(resource.getId());
+                    resourceAllocationPool.remove(resource.getId());
 
                     newPosition.setField(PositionFields.RESOURCE, null);
 
@@ -562,6 +580,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    resourceAllocationPool.update(savedResource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScale(resourceAvailableQuantity));
@@ -600,6 +620,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                resourceAllocationPool.update(savedResource);
+
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScale(quantity));
 
                 BigDecimal givenQuantity = convertToGivenUnit(quantity, position);
@@ -642,10 +664,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         Multimap<Long, BigDecimal> quantitiesForWarehouse = ArrayListMultimap.create();
 
+        ResourceAllocationPool resourceAllocationPool = createResourceAllocationPool(document);
+        ResourceStockChanges resourceStockChanges = new ResourceStockChanges();
+
         for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm);
+            moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm, resourceAllocationPool,
+                    resourceStockChanges);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -680,6 +706,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourceStockService.applyResourceStockChanges(resourceStockChanges);
+
         if (!enoughResources) {
             addDocumentError(document, warehouseFrom, errorMessage);
         }
@@ -711,18 +739,19 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private void moveResources(final Entity warehouseFrom, final Entity warehouseTo, final Entity position, final Object date,
-            final WarehouseAlgorithm warehouseAlgorithm) {
+            final WarehouseAlgorithm warehouseAlgorithm, final ResourceAllocationPool resourceAllocationPool,
+            final ResourceStockChanges resourceStockChanges) {
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
         List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position,
-                warehouseAlgorithm);
+                warehouseAlgorithm, resourceAllocationPool);
 
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
 
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
 
-        resourceStockService.removeResourceStock(product, warehouseFrom, quantity);
+        resourceStockChanges.remove(product, warehouseFrom, quantity);
 
         for (Entity resource : resources) {
             BigDecimal resourceQuantity = resource.getDecimalField(QUANTITY);
@@ -735,6 +764,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
 
                     resource.getDataDefinition().delete(resource.getId());
+                    resourceAllocationPool.remove(resource.getId());
                     position.setField(PositionFields.RESOURCE, null);
 
                     palletNumberDisposalService.tryToDispose(palletNumberToDispose);
@@ -750,10 +780,11 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
                             numberService.setScale(quantityInAdditionalUnit));
 
-                    resource.getDataDefinition().save(resource);
+                    updateResource(resource, resourceAllocationPool);
                 }
 
-                Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date);
+                Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date,
+                        resourceAllocationPool, resourceStockChanges);
 
                 if (BigDecimal.ZERO.compareTo(quantity) == 0) {
                     if (newResource.isValid()) {
@@ -777,9 +808,10 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScale(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                resource.getDataDefinition().save(resource);
+                updateResource(resource, resourceAllocationPool);
 
-                Entity newResource = createResource(position, warehouseTo, resource, quantity, date);
+                Entity newResource = createResource(position, warehouseTo, resource, quantity, date, resourceAllocationPool,
+                        resourceStockChanges);
 
                 if (newResource.isValid()) {
                     return;
@@ -796,6 +828,16 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 "materialFlow.error.position.quantity.notEnough");
     }
 
+    private void updateResource(final Entity resource, final ResourceAllocationPool resourceAllocationPool) {
+        Entity savedResource = resource.getDataDefinition().save(resource);
+
+        if (savedResource.isValid()) {
+            resourceAllocationPool.update(savedResource);
+        } else {
+            resourceAllocationPool.update(resource.getDataDefinition().get(resource.getId()));
+        }
+    }
+
     @Override
     public List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity warehouse, final Entity product, final Entity position,
             final WarehouseAlgorithm warehouseAlgorithm) {
@@ -837,6 +879,39 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return resources;
     }
 
+    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity warehouse, final Entity product,
+            final Entity position, final WarehouseAlgorithm warehouseAlgorithm,
+            final ResourceAllocationPool resourceAllocationPool) {
+        Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+        if (resource != null && resource.getId() != null) {
+            resource = resourceAllocationPool.getResource(resource.getId());
+        }
+
+        if (resource != null) {
+            Entity reservation = reservationsService.getReservationForPosition(position);
+
+            if (reservation != null) {
+                BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
+                BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
+            }
+
+            return Lists.newArrayList(resource);
+        }
+
+        Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+
+        BigDecimal conversion = BigDecimal.ONE;
+
+        if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            conversion = position.getDecimalField(PositionFields.CONVERSION);
+        }
+
+        return resourceAllocationPool.getResources(warehouse, product, additionalCode, conversion, warehouseAlgorithm);
+    }
+
     private List<Entity> getResourcesForLocationAndProductMANUAL(final Entity warehouse, final Entity product,
             final Entity additionalCode, final Entity position) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
@@ -0,0 +1,74 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Resource stock quantity changes collected while posting a document, grouped by location and product, so they can be written
+ * in one batch instead of one read-modify-write per position.
+ */
+public class ResourceStockChanges {
+
+    private final Map<Long, Map<Long, BigDecimal>> addedQuantities = Maps.newLinkedHashMap();
+
+    private final Map<Long, Map<Long, BigDecimal>> removedQuantities = Maps.newLinkedHashMap();
+
+    public void add(final Entity product, final Entity location, final BigDecimal quantity) {
+        merge(addedQuantities, product, location, quantity);
+    }
+
+    public void remove(final Entity product, final Entity location, final BigDecimal quantity) {
+        merge(removedQuantities, product, location, quantity);
+    }
+
+    private void merge(final Map<Long, Map<Long, BigDecimal>> quantities, final Entity product, final Entity location,
+            final BigDecimal quantity) {
+        quantities.computeIfAbsent(location.getId(), locationId -> Maps.newLinkedHashMap()).merge(product.getId(), quantity,
+                BigDecimal::add);
+    }
+
+    /**
+     * @return quantities to add, keyed by location id and product id
+     */
+    public Map<Long, Map<Long, BigDecimal>> getAddedQuantities() {
+        return addedQuantities;
+    }
+
+    /**
+     * @return quantities to remove, keyed by location id and product id
+     */
+    public Map<Long, Map<Long, BigDecimal>> getRemovedQuantities() {
+        return removedQuantities;
+    }
+
+    public boolean isEmpty() {
+        return addedQuantities.isEmpty() && removedQuantities.isEmpty();
+    }
+
+}
@@ -16,8 +16,12 @@ public interface ResourceStockService {
 
     void removeResourceStock(final Entity product, final Entity location, final BigDecimal quantity);
 
+    void applyResourceStockChanges(final ResourceStockChanges resourceStockChanges);
+
     Optional<Entity> getResourceStockForProductAndLocation(final Entity product, final Entity location);
 
+    BigDecimal getAvailableQuantity(final Long productId, final Long locationId);
+
     void updateResourceStock(Map<String, Object> params, BigDecimal quantityToAdd);
 
     void updateResourceStock(Entity position, BigDecimal quantityToAdd);
@@ -1,13 +1,18 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
@@ -18,9 +23,46 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
+/**
+ * Resource stock rows are changed with single UPDATE statements computing new quantities from the current row, instead of a
+ * read-modify-write through the data definition, so row locks are held only from the statement to the end of the transaction
+ * and concurrent changes are applied in the order in which they lock the row, as before. Batches are written in location and
+ * product order, so postings touching the same rows lock them in the same order.
+ * 
+ * Postings touching the same product and location still wait for each other until commit. An append-only delta journal would
+ * remove that wait, but stock views and validations read the stock row directly and would lag behind until the journal is
+ * folded, so it's not used.
+ */
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
+    private static final String L_ADD_QUANTITY_QUERY = "UPDATE materialflowresources_resourcestock "
+            + "SET quantity = COALESCE(quantity, 0) + :quantity, availablequantity = COALESCE(availablequantity, 0) + :quantity "
+            + "WHERE product_id = :product_id AND location_id = :location_id";
+
+    private static final String L_INSERT_QUANTITY_QUERY = "INSERT INTO materialflowresources_resourcestock "
+            + "(location_id, product_id, quantity, reservedquantity, availablequantity) "
+            + "SELECT :location_id, :product_id, :quantity, 0, :quantity WHERE NOT EXISTS "
+            + "(SELECT 1 FROM materialflowresources_resourcestock WHERE product_id = :product_id AND location_id = :location_id)";
+
+    private static final String L_REMOVE_QUANTITY_QUERY = "UPDATE materialflowresources_resourcestock SET "
+            + "quantity = CASE WHEN quantity - :quantity <= 0 THEN 0 ELSE quantity - :quantity END, "
+            + "availablequantity = CASE WHEN quantity - :quantity <= 0 THEN 0 ELSE availablequantity - :quantity END "
+            + "WHERE product_id = :product_id AND location_id = :location_id";
+
+    private static final String L_RESERVE_QUANTITY_FOR_DOCUMENT_QUERY = "UPDATE materialflowresources_resourcestock "
+            + "SET reservedquantity = reservedquantity + :quantity_to_add, "
+            + "availablequantity = availablequantity - :quantity_to_add WHERE product_id = :product_id AND "
+            + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id)";
+
+    private static final String L_RESERVE_QUANTITY_IF_IN_STOCK_QUERY = "UPDATE materialflowresources_resourcestock SET "
+            + "reservedquantity = CASE WHEN quantity = 0 THEN 0 ELSE reservedquantity + :quantity END, "
+            + "availablequantity = CASE WHEN quantity = 0 THEN 0 ELSE availablequantity - :quantity END "
+            + "WHERE product_id = :product_id AND location_id = :location_id";
+
+    private static final String L_AVAILABLE_QUANTITY_QUERY = "SELECT availablequantity FROM materialflowresources_resourcestock "
+            + "WHERE product_id = :product_id AND location_id = :location_id LIMIT 1";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -39,20 +81,11 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Override
     public void addResourceStock(Entity product, Entity location, BigDecimal quantity) {
-        Entity resourceStock;
-        Optional<Entity> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeStock.isPresent()) {
-            resourceStock = maybeStock.get();
-            BigDecimal oldQuantity = Optional.ofNullable(resourceStock.getDecimalField(ResourceStockFields.QUANTITY)).orElse(
-                    BigDecimal.ZERO);
-            BigDecimal oldAvailableQuantity = Optional.ofNullable(
-                    resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY)).orElse(BigDecimal.ZERO);
-            resourceStock.setField(ResourceStockFields.QUANTITY, oldQuantity.add(quantity));
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, oldAvailableQuantity.add(quantity));
-        } else {
-            resourceStock = createResourceStock(product, location, quantity);
+        SqlParameterSource parameters = getParameters(product.getId(), location.getId(), quantity);
+
+        if (jdbcTemplate.update(L_ADD_QUANTITY_QUERY, parameters) == 0) {
+            jdbcTemplate.update(L_INSERT_QUANTITY_QUERY, parameters);
         }
-        getResourceStockDataDefinition().save(resourceStock);
     }
 
     @Override
@@ -65,23 +98,49 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Override
     public void removeResourceStock(Entity product, Entity location, BigDecimal quantity) {
-        Optional<Entity> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeStock.isPresent()) {
-            Entity resourceStock = maybeStock.get();
-            BigDecimal oldQuantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            BigDecimal oldAvailableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            BigDecimal newQuantity = oldQuantity.subtract(quantity);
-            BigDecimal newAvailableQuantity = oldAvailableQuantity.subtract(quantity);
-            if (newQuantity.compareTo(BigDecimal.ZERO) <= 0) {
-                newQuantity = BigDecimal.ZERO;
-                newAvailableQuantity = BigDecimal.ZERO;
+        jdbcTemplate.update(L_REMOVE_QUANTITY_QUERY, getParameters(product.getId(), location.getId(), quantity));
+    }
+
+    @Override
+    public void applyResourceStockChanges(final ResourceStockChanges resourceStockChanges) {
+        if (!resourceStockChanges.getRemovedQuantities().isEmpty()) {
+            jdbcTemplate.batchUpdate(L_REMOVE_QUANTITY_QUERY, getBatchParameters(resourceStockChanges.getRemovedQuantities()));
+        }
+
+        if (!resourceStockChanges.getAddedQuantities().isEmpty()) {
+            SqlParameterSource[] batchParameters = getBatchParameters(resourceStockChanges.getAddedQuantities());
+
+            int[] updatedRows = jdbcTemplate.batchUpdate(L_ADD_QUANTITY_QUERY, batchParameters);
+
+            List<SqlParameterSource> missingStocks = Lists.newArrayList();
+
+            for (int index = 0; index < updatedRows.length; index++) {
+                if (updatedRows[index] == 0) {
+                    missingStocks.add(batchParameters[index]);
+                }
+            }
+
+            if (!missingStocks.isEmpty()) {
+                jdbcTemplate.batchUpdate(L_INSERT_QUANTITY_QUERY,
+                        missingStocks.toArray(new SqlParameterSource[missingStocks.size()]));
             }
-            resourceStock.setField(ResourceStockFields.QUANTITY, newQuantity);
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, newAvailableQuantity);
-            getResourceStockDataDefinition().save(resourceStock);
         }
     }
 
+    private SqlParameterSource[] getBatchParameters(final Map<Long, Map<Long, BigDecimal>> quantities) {
+        List<SqlParameterSource> batchParameters = Lists.newArrayList();
+
+        Maps.newTreeMap(quantities).forEach((locationId, quantitiesForLocation) -> Maps.newTreeMap(quantitiesForLocation)
+                .forEach((productId, quantity) -> batchParameters.add(getParameters(productId, locationId, quantity))));
+
+        return batchParameters.toArray(new SqlParameterSource[batchParameters.size()]);
+    }
+
+    private MapSqlParameterSource getParameters(final Long productId, final Long locationId, final BigDecimal quantity) {
+        return new MapSqlParameterSource().addValue("location_id", locationId).addValue("product_id", productId)
+                .addValue("quantity", quantity);
+    }
+
     @Override
     public Optional<Entity> getResourceStockForProductAndLocation(Entity product, Entity location) {
         Entity existingResourceStock = getResourceStockDataDefinition().find()
@@ -90,14 +149,16 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         return Optional.ofNullable(existingResourceStock);
     }
 
-    private Entity createResourceStock(final Entity product, final Entity location, final BigDecimal quantity) {
-        Entity stock = getResourceStockDataDefinition().create();
-        stock.setField(ResourceStockFields.LOCATION, location);
-        stock.setField(ResourceStockFields.PRODUCT, product);
-        stock.setField(ResourceStockFields.QUANTITY, quantity);
-        stock.setField(ResourceStockFields.AVAILABLE_QUANTITY, quantity);
-        stock.setField(ResourceStockFields.RESERVED_QUANTITY, BigDecimal.ZERO);
-        return stock;
+    @Override
+    public BigDecimal getAvailableQuantity(final Long productId, final Long locationId) {
+        List<BigDecimal> availableQuantities = jdbcTemplate.queryForList(L_AVAILABLE_QUANTITY_QUERY,
+                getParameters(productId, locationId, null), BigDecimal.class);
+
+        if (availableQuantities.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+
+        return Optional.ofNullable(availableQuantities.get(0)).orElse(BigDecimal.ZERO);
     }
 
     private DataDefinition getResourceStockDataDefinition() {
@@ -107,10 +168,7 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     public void updateResourceStock(Map<String, Object> params, BigDecimal quantityToAdd) {
         params.put("quantity_to_add", quantityToAdd);
-        String query = "UPDATE materialflowresources_resourcestock SET reservedquantity = reservedquantity + :quantity_to_add, "
-                + "availablequantity = availablequantity - :quantity_to_add WHERE product_id = :product_id AND "
-                + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id)";
-        jdbcTemplate.update(query, params);
+        jdbcTemplate.update(L_RESERVE_QUANTITY_FOR_DOCUMENT_QUERY, params);
     }
 
     public void updateResourceStock(Entity position, BigDecimal quantityToAdd) {
@@ -120,23 +178,7 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     }
 
     public void updateResourceStock(Entity product, Entity location, BigDecimal quantityToAdd) {
-        Optional<Entity> maybeResourceStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeResourceStock.isPresent()) {
-            Entity resourceStock = maybeResourceStock.get();
-            BigDecimal reservedQuantity = resourceStock.getDecimalField(ResourceStockFields.RESERVED_QUANTITY);
-            BigDecimal availableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            BigDecimal quantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            if (quantity.compareTo(BigDecimal.ZERO) == 0) {
-                reservedQuantity = BigDecimal.ZERO;
-                availableQuantity = BigDecimal.ZERO;
-            } else {
-                availableQuantity = availableQuantity.subtract(quantityToAdd);
-                reservedQuantity = reservedQuantity.add(quantityToAdd);
-            }
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, availableQuantity);
-            resourceStock.setField(ResourceStockFields.RESERVED_QUANTITY, reservedQuantity);
-            resourceStock.getDataDefinition().save(resourceStock);
-        }
-
+        jdbcTemplate.update(L_RESERVE_QUANTITY_IF_IN_STOCK_QUERY,
+                getParameters(product.getId(), location.getId(), quantityToAdd));
     }
 }
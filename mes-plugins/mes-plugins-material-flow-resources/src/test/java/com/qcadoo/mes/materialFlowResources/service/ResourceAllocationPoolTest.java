@@ -0,0 +1,179 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class ResourceAllocationPoolTest {
+
+    private static final Long L_PRODUCT_ID = 1L;
+
+    private static final Long L_WAREHOUSE_ID = 2L;
+
+    private ResourceAllocationPool resourceAllocationPool;
+
+    @Mock
+    private DataDefinition resourceDD;
+
+    @Mock
+    private DataDefinition storageLocationDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity product, warehouse, additionalCode, otherAdditionalCode;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        given(product.getId()).willReturn(L_PRODUCT_ID);
+        given(warehouse.getId()).willReturn(L_WAREHOUSE_ID);
+        given(additionalCode.getId()).willReturn(10L);
+        given(otherAdditionalCode.getId()).willReturn(11L);
+
+        given(resourceDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+
+        resourceAllocationPool = new ResourceAllocationPool(resourceDD, storageLocationDD, Lists.newArrayList(L_PRODUCT_ID));
+    }
+
+    private Entity mockResource(final Long id, final Date time, final Date expirationDate, final BigDecimal availableQuantity,
+            final Entity additionalCode) {
+        Entity resource = mock(Entity.class);
+
+        given(resource.getId()).willReturn(id);
+        given(resource.getField(ResourceFields.TIME)).willReturn(time);
+        given(resource.getField(ResourceFields.EXPIRATION_DATE)).willReturn(expirationDate);
+        given(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(availableQuantity);
+        given(resource.getDecimalField(ResourceFields.CONVERSION)).willReturn(BigDecimal.ONE);
+        given(resource.getBelongsToField(ResourceFields.PRODUCT)).willReturn(product);
+        given(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+
+        return resource;
+    }
+
+    @Test
+    public final void shouldOrderResourcesByTimeForFifoAndLifo() {
+        // given
+        Entity older = mockResource(1L, new Date(1000L), null, BigDecimal.TEN, null);
+        Entity newer = mockResource(2L, new Date(2000L), null, BigDecimal.TEN, null);
+
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(newer, older));
+
+        // when
+        List<Entity> fifo = resourceAllocationPool.getResources(warehouse, product, null, BigDecimal.ONE, WarehouseAlgorithm.FIFO);
+        List<Entity> lifo = resourceAllocationPool.getResources(warehouse, product, null, BigDecimal.ONE, WarehouseAlgorithm.LIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(older, newer), fifo);
+        assertEquals(Lists.newArrayList(newer, older), lifo);
+    }
+
+    @Test
+    public final void shouldOrderResourcesByExpirationDateWithNullsLastForFefo() {
+        // given
+        Entity withoutExpirationDate = mockResource(1L, new Date(1000L), null, BigDecimal.ONE, null);
+        Entity expiringLater = mockResource(2L, new Date(1000L), new Date(5000L), BigDecimal.ONE, null);
+        Entity expiringSoonerBigger = mockResource(3L, new Date(1000L), new Date(3000L), BigDecimal.TEN, null);
+        Entity expiringSoonerSmaller = mockResource(4L, new Date(1000L), new Date(3000L), BigDecimal.ONE, null);
+
+        given(searchResult.getEntities()).willReturn(
+                Lists.newArrayList(withoutExpirationDate, expiringLater, expiringSoonerBigger, expiringSoonerSmaller));
+
+        // when
+        List<Entity> fefo = resourceAllocationPool.getResources(warehouse, product, null, BigDecimal.ONE, WarehouseAlgorithm.FEFO);
+        List<Entity> lefo = resourceAllocationPool.getResources(warehouse, product, null, BigDecimal.ONE, WarehouseAlgorithm.LEFO);
+
+        // then
+        assertEquals(Lists.newArrayList(expiringSoonerSmaller, expiringSoonerBigger, expiringLater, withoutExpirationDate), fefo);
+        assertEquals(Lists.newArrayList(withoutExpirationDate, expiringLater, expiringSoonerSmaller, expiringSoonerBigger), lefo);
+    }
+
+    @Test
+    public final void shouldPutResourcesWithAdditionalCodeFirst() {
+        // given
+        Entity withoutCode = mockResource(1L, new Date(1000L), null, BigDecimal.TEN, null);
+        Entity withOtherCode = mockResource(2L, new Date(2000L), null, BigDecimal.TEN, otherAdditionalCode);
+        Entity withCode = mockResource(3L, new Date(3000L), null, BigDecimal.TEN, additionalCode);
+
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(withoutCode, withOtherCode, withCode));
+
+        // when
+        List<Entity> resources = resourceAllocationPool.getResources(warehouse, product, additionalCode, BigDecimal.ONE,
+                WarehouseAlgorithm.FIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(withCode, withoutCode, withOtherCode), resources);
+    }
+
+    @Test
+    public final void shouldSkipConsumedAndRemovedResources() {
+        // given
+        Entity consumed = mockResource(1L, new Date(1000L), null, BigDecimal.ZERO, null);
+        Entity removed = mockResource(2L, new Date(2000L), null, BigDecimal.TEN, null);
+        Entity available = mockResource(3L, new Date(3000L), null, BigDecimal.TEN, null);
+        Entity otherConversion = mockResource(4L, new Date(4000L), null, BigDecimal.TEN, null);
+
+        given(otherConversion.getDecimalField(ResourceFields.CONVERSION)).willReturn(BigDecimal.TEN);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(consumed, removed, available, otherConversion));
+
+        // when
+        resourceAllocationPool.getResources(warehouse, product, null, BigDecimal.ONE, WarehouseAlgorithm.FIFO);
+        resourceAllocationPool.remove(2L);
+
+        List<Entity> resources = resourceAllocationPool.getResources(warehouse, product, null, BigDecimal.ONE,
+                WarehouseAlgorithm.FIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(available), resources);
+    }
+
+}
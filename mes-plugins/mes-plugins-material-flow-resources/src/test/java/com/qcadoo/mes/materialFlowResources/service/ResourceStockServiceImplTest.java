@@ -0,0 +1,161 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.model.api.Entity;
+
+public class ResourceStockServiceImplTest {
+
+    private ResourceStockServiceImpl resourceStockService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity firstProduct, secondProduct, firstLocation, secondLocation;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceStockService = new ResourceStockServiceImpl();
+
+        ReflectionTestUtils.setField(resourceStockService, "jdbcTemplate", jdbcTemplate);
+
+        given(firstProduct.getId()).willReturn(1L);
+        given(secondProduct.getId()).willReturn(2L);
+        given(firstLocation.getId()).willReturn(10L);
+        given(secondLocation.getId()).willReturn(20L);
+    }
+
+    @Test
+    public void shouldApplyChangesInLocationAndProductOrder() {
+        // given
+        ResourceStockChanges resourceStockChanges = new ResourceStockChanges();
+
+        resourceStockChanges.add(secondProduct, secondLocation, BigDecimal.ONE);
+        resourceStockChanges.add(secondProduct, firstLocation, BigDecimal.ONE);
+        resourceStockChanges.add(firstProduct, firstLocation, BigDecimal.ONE);
+        resourceStockChanges.add(firstProduct, firstLocation, BigDecimal.TEN);
+
+        given(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).willReturn(new int[] { 1, 1, 1 });
+
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        // when
+        resourceStockService.applyResourceStockChanges(resourceStockChanges);
+
+        // then
+        verify(jdbcTemplate).batchUpdate(anyString(), parametersCaptor.capture());
+
+        SqlParameterSource[] parameters = parametersCaptor.getValue();
+
+        assertEquals(3, parameters.length);
+        assertParameters(parameters[0], 10L, 1L, BigDecimal.valueOf(11L));
+        assertParameters(parameters[1], 10L, 2L, BigDecimal.ONE);
+        assertParameters(parameters[2], 20L, 2L, BigDecimal.ONE);
+    }
+
+    @Test
+    public void shouldInsertOnlyMissingStocks() {
+        // given
+        ResourceStockChanges resourceStockChanges = new ResourceStockChanges();
+
+        resourceStockChanges.add(firstProduct, firstLocation, BigDecimal.ONE);
+        resourceStockChanges.add(secondProduct, firstLocation, BigDecimal.TEN);
+
+        given(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).willReturn(new int[] { 1, 0 });
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        // when
+        resourceStockService.applyResourceStockChanges(resourceStockChanges);
+
+        // then
+        verify(jdbcTemplate, times(2)).batchUpdate(queryCaptor.capture(), parametersCaptor.capture());
+
+        assertTrue(queryCaptor.getAllValues().get(1).startsWith("INSERT"));
+
+        SqlParameterSource[] insertedParameters = parametersCaptor.getAllValues().get(1);
+
+        assertEquals(1, insertedParameters.length);
+        assertParameters(insertedParameters[0], 10L, 2L, BigDecimal.TEN);
+    }
+
+    @Test
+    public void shouldNotWriteAnythingForEmptyChanges() {
+        // when
+        resourceStockService.applyResourceStockChanges(new ResourceStockChanges());
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+        verify(jdbcTemplate, never()).update(anyString(), any(SqlParameterSource.class));
+    }
+
+    @Test
+    public void shouldInsertStockWhenNoRowWasUpdated() {
+        // given
+        given(jdbcTemplate.update(anyString(), any(SqlParameterSource.class))).willReturn(0);
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        // when
+        resourceStockService.addResourceStock(firstProduct, firstLocation, BigDecimal.ONE);
+
+        // then
+        verify(jdbcTemplate, times(2)).update(queryCaptor.capture(), any(SqlParameterSource.class));
+
+        assertTrue(queryCaptor.getAllValues().get(0).startsWith("UPDATE"));
+        assertTrue(queryCaptor.getAllValues().get(1).startsWith("INSERT"));
+    }
+
+    private void assertParameters(final SqlParameterSource parameters, final Long locationId, final Long productId,
+            final BigDecimal quantity) {
+        assertEquals(locationId, parameters.getValue("location_id"));
+        assertEquals(productId, parameters.getValue("product_id"));
+        assertEquals(0, quantity.compareTo((BigDecimal) parameters.getValue("quantity")));
+    }
+
+}
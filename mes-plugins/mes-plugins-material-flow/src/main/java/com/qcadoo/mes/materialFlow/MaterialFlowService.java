@@ -28,7 +28,6 @@ import static com.qcadoo.mes.basic.constants.ProductFields.UNIT;
 import static com.qcadoo.mes.materialFlow.constants.LocationFields.EXTERNAL_NUMBER;
 import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIALS_IN_LOCATION_COMPONENTS;
 import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIAL_FLOW_FOR_DATE;
-import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.FOUND;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.LOCATION;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.PRODUCT;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.SHOULD_BE;
@@ -36,22 +35,26 @@ import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.STOCK_
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_FROM;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.NUMBER;
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.QUANTITY;
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TYPE;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.CONSUMPTION;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.constants.BasicConstants;
@@ -95,13 +98,21 @@ public class MaterialFlowService {
 
     private static final String L_LOC_LOCATION_ID = "loc.location.id";
 
-    private static final String L_LOCATION_ID = "location.id";
-
-    private static final String L_LOCATION_FROM_ID = "locationFrom.id";
-
-    private static final String L_LOCATION_TO_ID = "locationTo.id";
-
-    private static final String L_PRODUCT_ID = "product.id";
+    private static final String L_SHOULD_BE_IN_LOCATIONS_QUERY = "WITH lastcorrection AS (SELECT DISTINCT ON "
+            + "(location_id, product_id) location_id, product_id, stockcorrectiondate, found FROM materialflow_stockcorrection "
+            + "WHERE location_id IN (:locationIds) AND product_id IN (:productIds) "
+            + "ORDER BY location_id, product_id, stockcorrectiondate DESC), "
+            + "movement AS (SELECT m.location_id, m.product_id, SUM(m.quantity) AS quantity "
+            + "FROM (SELECT locationto_id AS location_id, product_id, time, quantity FROM materialflow_transfer "
+            + "WHERE locationto_id IN (:locationIds) AND product_id IN (:productIds) AND time <= :forDate "
+            + "UNION ALL SELECT locationfrom_id AS location_id, product_id, time, - quantity FROM materialflow_transfer "
+            + "WHERE locationfrom_id IN (:locationIds) AND product_id IN (:productIds) AND time <= :forDate) m "
+            + "LEFT JOIN lastcorrection lc ON lc.location_id = m.location_id AND lc.product_id = m.product_id "
+            + "WHERE lc.stockcorrectiondate IS NULL OR m.time > lc.stockcorrectiondate GROUP BY m.location_id, m.product_id) "
+            + "SELECT COALESCE(lc.location_id, mv.location_id) AS locationId, "
+            + "COALESCE(lc.product_id, mv.product_id) AS productId, "
+            + "COALESCE(lc.found, 0) + COALESCE(mv.quantity, 0) AS quantity FROM lastcorrection lc "
+            + "FULL OUTER JOIN movement mv ON mv.location_id = lc.location_id AND mv.product_id = lc.product_id";
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
@@ -115,69 +126,62 @@ public class MaterialFlowService {
     @Autowired
     private NumberService numberService;
 
-    public BigDecimal calculateShouldBeInLocation(final Long locationId, final Long productId, final Date forDate) {
-        BigDecimal countProductIn = BigDecimal.ZERO;
-        BigDecimal countProductOut = BigDecimal.ZERO;
-        BigDecimal countProduct = BigDecimal.ZERO;
-        Date lastCorrectionDate = null;
-        DataDefinition transferDataCorrection = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_STOCK_CORRECTION);
-        DataDefinition transferTo = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-        DataDefinition transferFrom = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-
-        Entity resultDataCorrection = transferDataCorrection.find().add(SearchRestrictions.eq(L_LOCATION_ID, locationId))
-                .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).addOrder(SearchOrders.desc(STOCK_CORRECTION_DATE))
-                .setMaxResults(1).uniqueResult();
-
-        if (resultDataCorrection != null) {
-            lastCorrectionDate = (Date) resultDataCorrection.getField(STOCK_CORRECTION_DATE);
-            countProduct = (BigDecimal) resultDataCorrection.getField(FOUND);
-        }
-
-        SearchResult resultTo = null;
-        SearchResult resultFrom = null;
-
-        if (lastCorrectionDate == null) {
-            resultTo = transferTo.find().add(SearchRestrictions.eq(L_LOCATION_TO_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate)).list();
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
-            resultFrom = transferFrom.find().add(SearchRestrictions.eq(L_LOCATION_FROM_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate)).list();
+    public BigDecimal calculateShouldBeInLocation(final Long locationId, final Long productId, final Date forDate) {
+        return calculateShouldBeInLocations(Collections.singleton(locationId), Collections.singleton(productId), forDate).get(
+                locationId).get(productId);
+    }
 
-        } else {
-            resultTo = transferTo.find().add(SearchRestrictions.eq(L_LOCATION_TO_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate))
-                    .add(SearchRestrictions.gt(TIME, lastCorrectionDate)).list();
+    /**
+     * Calculates quantities, which should be in given locations for given date, for every pair of location and product.
+     * Quantity is the found quantity of the last stock correction plus transfers to location minus transfers from location
+     * registered after that correction, so whole matrix is computed in one query instead of one per location and product.
+     * 
+     * @param locationIds
+     *            ids of locations
+     * @param productIds
+     *            ids of products
+     * @param forDate
+     *            date
+     * @return map of location id to map of product id to quantity, filled with zeros for products without transfers
+     */
+    public Map<Long, Map<Long, BigDecimal>> calculateShouldBeInLocations(final Collection<Long> locationIds,
+            final Collection<Long> productIds, final Date forDate) {
+        Map<Long, Map<Long, BigDecimal>> quantities = Maps.newHashMap();
+
+        for (Long locationId : locationIds) {
+            Map<Long, BigDecimal> quantitiesInLocation = Maps.newHashMap();
+
+            for (Long productId : productIds) {
+                quantitiesInLocation.put(productId, BigDecimal.ZERO);
+            }
 
-            resultFrom = transferFrom.find().add(SearchRestrictions.eq(L_LOCATION_FROM_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate))
-                    .add(SearchRestrictions.gt(TIME, lastCorrectionDate)).list();
+            quantities.put(locationId, quantitiesInLocation);
         }
 
-        for (Entity e : resultTo.getEntities()) {
-            BigDecimal quantity = (BigDecimal) e.getField(QUANTITY);
-            countProductIn = countProductIn.add(quantity, numberService.getMathContext());
+        if (locationIds.isEmpty() || productIds.isEmpty()) {
+            return quantities;
         }
 
-        for (Entity e : resultFrom.getEntities()) {
-            BigDecimal quantity = (BigDecimal) e.getField(QUANTITY);
-            countProductOut = countProductOut.add(quantity, numberService.getMathContext());
-        }
+        Map<String, Object> params = Maps.newHashMap();
 
-        if (lastCorrectionDate == null) {
-            countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
-        } else {
-            countProductIn = countProductIn.add(countProduct, numberService.getMathContext());
-            countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
-        }
+        params.put("locationIds", locationIds);
+        params.put("productIds", productIds);
+        params.put("forDate", forDate);
 
-        if (countProductIn.compareTo(BigDecimal.ZERO) == -1) {
-            countProductIn = BigDecimal.ZERO;
-        }
+        RowCallbackHandler rowCallbackHandler = resultSet -> {
+            BigDecimal quantity = resultSet.getBigDecimal("quantity");
+
+            if (quantity.compareTo(BigDecimal.ZERO) > 0) {
+                quantities.get(resultSet.getLong("locationId")).put(resultSet.getLong("productId"), quantity);
+            }
+        };
 
-        return countProductIn;
+        jdbcTemplate.query(L_SHOULD_BE_IN_LOCATIONS_QUERY, params, rowCallbackHandler);
+
+        return quantities;
     }
 
     public void refreshShouldBeInStockCorrectionDetails(final ViewDefinitionState state, final ComponentState componentState,
@@ -322,8 +326,11 @@ public class MaterialFlowService {
 
             Date forDate = ((Date) materialsInLocation.getField(MATERIAL_FLOW_FOR_DATE));
 
+            Map<Long, BigDecimal> quantitiesInLocation = calculateShouldBeInLocations(Collections.singleton(location.getId()),
+                    products.stream().map(Entity::getId).collect(Collectors.toSet()), forDate).get(location.getId());
+
             for (Entity product : products) {
-                BigDecimal quantity = calculateShouldBeInLocation(location.getId(), product.getId(), forDate);
+                BigDecimal quantity = quantitiesInLocation.get(product.getId());
 
                 if (reportData.containsKey(product)) {
                     reportData.put(product, reportData.get(product).add(quantity, numberService.getMathContext()));
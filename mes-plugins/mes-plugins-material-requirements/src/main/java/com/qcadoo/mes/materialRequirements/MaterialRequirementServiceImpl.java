@@ -31,6 +31,7 @@ import org.springframework.stereotype.Service;
 import com.lowagie.text.DocumentException;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
+import com.qcadoo.mes.materialRequirements.print.MaterialRequirementDataService;
 import com.qcadoo.mes.materialRequirements.print.pdf.MaterialRequirementPdfService;
 import com.qcadoo.mes.materialRequirements.print.xls.MaterialRequirementXlsService;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
@@ -51,6 +52,9 @@ public class MaterialRequirementServiceImpl implements MaterialRequirementServic
     @Autowired
     private MaterialRequirementXlsService materialRequirementXlsService;
 
+    @Autowired
+    private MaterialRequirementDataService materialRequirementDataService;
+
     @Autowired
     private BasicProductionCountingService basicProductionCountingService;
 
@@ -88,8 +92,14 @@ public class MaterialRequirementServiceImpl implements MaterialRequirementServic
         Entity materialRequirementWithFileName = fileService.updateReportFileName(materialRequirement,
                 MaterialRequirementFields.DATE, "materialRequirements.materialRequirement.report.fileName");
 
-        materialRequirementPdfService.generateDocument(materialRequirementWithFileName, state.getLocale());
-        materialRequirementXlsService.generateDocument(materialRequirementWithFileName, state.getLocale());
+        materialRequirementDataService.prepareMaterialRequirementData(materialRequirementWithFileName);
+
+        try {
+            materialRequirementPdfService.generateDocument(materialRequirementWithFileName, state.getLocale());
+            materialRequirementXlsService.generateDocument(materialRequirementWithFileName, state.getLocale());
+        } finally {
+            materialRequirementDataService.releaseMaterialRequirementData(materialRequirementWithFileName);
+        }
     }
 
 }
@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirements.print;
+
+import java.math.BigDecimal;
+
+/**
+ * Needed product quantities of a material requirement, kept column by column in the order in which they are printed.
+ */
+public final class MaterialRequirementData {
+
+    private final String[] productNumbers;
+
+    private final String[] productNames;
+
+    private final String[] productUnits;
+
+    private final BigDecimal[] quantities;
+
+    MaterialRequirementData(final String[] productNumbers, final String[] productNames, final String[] productUnits,
+            final BigDecimal[] quantities) {
+        this.productNumbers = productNumbers;
+        this.productNames = productNames;
+        this.productUnits = productUnits;
+        this.quantities = quantities;
+    }
+
+    public int size() {
+        return quantities.length;
+    }
+
+    public String getProductNumber(final int index) {
+        return productNumbers[index];
+    }
+
+    public String getProductName(final int index) {
+        return productNames[index];
+    }
+
+    public String getProductUnit(final int index) {
+        return productUnits[index];
+    }
+
+    public BigDecimal getQuantity(final int index) {
+        return quantities[index];
+    }
+
+}
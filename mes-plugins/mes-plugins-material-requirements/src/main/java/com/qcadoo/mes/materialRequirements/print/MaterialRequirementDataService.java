@@ -0,0 +1,155 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirements.print;
+
+import static com.qcadoo.model.api.search.SearchProjections.alias;
+import static com.qcadoo.model.api.search.SearchProjections.field;
+import static com.qcadoo.model.api.search.SearchProjections.id;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+@Service
+public class MaterialRequirementDataService {
+
+    private static final String L_ID = "id";
+
+    private static final int PRODUCTS_BATCH_SIZE = 1000;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private BasicProductionCountingService basicProductionCountingService;
+
+    private final ConcurrentMap<Long, MaterialRequirementData> preparedMaterialRequirementData = new ConcurrentHashMap<>();
+
+    /**
+     * Calculates material requirement data once, so that all documents generated until
+     * {@link #releaseMaterialRequirementData(Entity)} share the same result
+     * 
+     * @param materialRequirement
+     *            material requirement
+     */
+    public void prepareMaterialRequirementData(final Entity materialRequirement) {
+        preparedMaterialRequirementData.put(materialRequirement.getId(), calculateMaterialRequirementData(materialRequirement));
+    }
+
+    public void releaseMaterialRequirementData(final Entity materialRequirement) {
+        preparedMaterialRequirementData.remove(materialRequirement.getId());
+    }
+
+    /**
+     * Gets prepared material requirement data or calculates it if it wasn't prepared
+     * 
+     * @param materialRequirement
+     *            material requirement
+     * 
+     * @return needed product quantities with product number, name and unit
+     */
+    public MaterialRequirementData getMaterialRequirementData(final Entity materialRequirement) {
+        MaterialRequirementData materialRequirementData = preparedMaterialRequirementData.get(materialRequirement.getId());
+
+        if (materialRequirementData == null) {
+            materialRequirementData = calculateMaterialRequirementData(materialRequirement);
+        }
+
+        return materialRequirementData;
+    }
+
+    private MaterialRequirementData calculateMaterialRequirementData(final Entity materialRequirement) {
+        List<Entity> orders = materialRequirement.getManyToManyField(MaterialRequirementFields.ORDERS);
+        MrpAlgorithm algorithm = MrpAlgorithm.parseString(materialRequirement
+                .getStringField(MaterialRequirementFields.MRP_ALGORITHM));
+
+        Map<Long, BigDecimal> neededProductQuantities = basicProductionCountingService.getNeededProductQuantities(orders,
+                algorithm);
+
+        Map<Long, Entity> products = getProducts(Lists.newArrayList(neededProductQuantities.keySet()));
+
+        int size = neededProductQuantities.size();
+
+        String[] productNumbers = new String[size];
+        String[] productNames = new String[size];
+        String[] productUnits = new String[size];
+        BigDecimal[] quantities = new BigDecimal[size];
+
+        int index = 0;
+
+        for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
+            Entity product = products.get(neededProductQuantity.getKey());
+
+            productNumbers[index] = product.getStringField(ProductFields.NUMBER);
+            productNames[index] = product.getStringField(ProductFields.NAME);
+            productUnits[index] = product.getStringField(ProductFields.UNIT);
+            quantities[index] = neededProductQuantity.getValue();
+
+            index++;
+        }
+
+        return new MaterialRequirementData(productNumbers, productNames, productUnits, quantities);
+    }
+
+    private Map<Long, Entity> getProducts(final List<Long> productIds) {
+        Map<Long, Entity> products = Maps.newHashMapWithExpectedSize(productIds.size());
+
+        for (List<Long> productIdsBatch : Lists.partition(productIds, PRODUCTS_BATCH_SIZE)) {
+            List<Entity> productsBatch = dataDefinitionService
+                    .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)
+                    .find()
+                    .setProjection(
+                            SearchProjections.list().add(alias(id(), L_ID))
+                                    .add(alias(field(ProductFields.NUMBER), ProductFields.NUMBER))
+                                    .add(alias(field(ProductFields.NAME), ProductFields.NAME))
+                                    .add(alias(field(ProductFields.UNIT), ProductFields.UNIT)))
+                    .add(SearchRestrictions.in(L_ID, productIdsBatch)).list().getEntities();
+
+            for (Entity product : productsBatch) {
+                products.put((Long) product.getField(L_ID), product);
+            }
+        }
+
+        return products;
+    }
+
+}
@@ -28,7 +28,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,12 +43,11 @@ import com.lowagie.text.Phrase;
 import com.lowagie.text.pdf.PdfPTable;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
+import com.qcadoo.mes.materialRequirements.print.MaterialRequirementData;
+import com.qcadoo.mes.materialRequirements.print.MaterialRequirementDataService;
 import com.qcadoo.mes.materialRequirements.util.EntityOrderNumberComparator;
 import com.qcadoo.mes.orders.constants.OrderFields;
-import com.qcadoo.mes.technologies.ProductQuantitiesService;
-import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.report.api.FontUtils;
@@ -64,9 +62,6 @@ public final class MaterialRequirementPdfService extends PdfDocumentService {
 
     private final int[] defaultOrderHeaderColumnWidth = new int[] { 37, 37, 13, 13 };
 
-    @Autowired
-    private ProductQuantitiesService productQuantitiesService;
-
     @Autowired
     private TranslationService translationService;
 
@@ -77,7 +72,7 @@ public final class MaterialRequirementPdfService extends PdfDocumentService {
     private PdfHelper pdfHelper;
 
     @Autowired
-    private BasicProductionCountingService basicProductionCountingService;
+    private MaterialRequirementDataService materialRequirementDataService;
 
     @Override
     protected void buildPdfContent(final Document document, final Entity materialRequirement, final Locale locale)
@@ -147,25 +142,21 @@ public final class MaterialRequirementPdfService extends PdfDocumentService {
 
     private void addTechnologySeries(final Document document, final Entity materialRequirement,
             final Map<String, HeaderAlignment> headersWithAlignments) throws DocumentException {
-        List<Entity> orders = materialRequirement.getManyToManyField(MaterialRequirementFields.ORDERS);
-        MrpAlgorithm algorithm = MrpAlgorithm.parseString(materialRequirement
-                .getStringField(MaterialRequirementFields.MRP_ALGORITHM));
-
-        Map<Long, BigDecimal> neededProductQuantities = basicProductionCountingService.getNeededProductQuantities(orders,
-                algorithm);
+        MaterialRequirementData materialRequirementData = materialRequirementDataService
+                .getMaterialRequirementData(materialRequirement);
 
         List<String> headers = Lists.newLinkedList(headersWithAlignments.keySet());
         PdfPTable table = pdfHelper.createTableWithHeader(headersWithAlignments.size(), headers, true,
                 defaultOrderHeaderColumnWidth, headersWithAlignments);
 
-        for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
-            table.addCell(new Phrase(product.getStringField(ProductFields.NUMBER), FontUtils.getDejavuRegular7Dark()));
-            table.addCell(new Phrase(product.getStringField(ProductFields.NAME), FontUtils.getDejavuRegular7Dark()));
+        for (int index = 0; index < materialRequirementData.size(); index++) {
+            table.addCell(new Phrase(materialRequirementData.getProductNumber(index), FontUtils.getDejavuRegular7Dark()));
+            table.addCell(new Phrase(materialRequirementData.getProductName(index), FontUtils.getDejavuRegular7Dark()));
             table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(new Phrase(numberService.format(neededProductQuantity.getValue()), FontUtils.getDejavuBold7Dark()));
+            table.addCell(new Phrase(numberService.format(materialRequirementData.getQuantity(index)), FontUtils
+                    .getDejavuBold7Dark()));
             table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_LEFT);
-            String unit = product.getStringField(ProductFields.UNIT);
+            String unit = materialRequirementData.getProductUnit(index);
             if (unit == null) {
                 table.addCell(new Phrase("", FontUtils.getDejavuRegular7Dark()));
             } else {
@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirements.print;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class MaterialRequirementDataServiceTest {
+
+    private MaterialRequirementDataService materialRequirementDataService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private BasicProductionCountingService basicProductionCountingService;
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity materialRequirement, order, firstProductRow, secondProductRow;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        materialRequirementDataService = new MaterialRequirementDataService();
+
+        ReflectionTestUtils.setField(materialRequirementDataService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(materialRequirementDataService, "basicProductionCountingService",
+                basicProductionCountingService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(productDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setProjection(any(SearchProjection.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+    }
+
+    @Test
+    public void shouldBuildMaterialRequirementDataFromProjectedProductRows() {
+        // given
+        List<Entity> orders = Lists.newArrayList(order);
+
+        given(materialRequirement.getId()).willReturn(1L);
+        given(materialRequirement.getManyToManyField(MaterialRequirementFields.ORDERS)).willReturn(orders);
+        given(materialRequirement.getStringField(MaterialRequirementFields.MRP_ALGORITHM)).willReturn(
+                MrpAlgorithm.ONLY_COMPONENTS.getStringValue());
+
+        Map<Long, BigDecimal> neededProductQuantities = Maps.newLinkedHashMap();
+        neededProductQuantities.put(11L, new BigDecimal("2.5"));
+        neededProductQuantities.put(12L, new BigDecimal("7"));
+
+        given(basicProductionCountingService.getNeededProductQuantities(orders, MrpAlgorithm.ONLY_COMPONENTS)).willReturn(
+                neededProductQuantities);
+
+        // projection rows carry their id only as a field
+        stubProductRow(secondProductRow, 12L, "P2", "Product 2", "kg");
+        stubProductRow(firstProductRow, 11L, "P1", "Product 1", "szt");
+
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(secondProductRow, firstProductRow));
+
+        // when
+        MaterialRequirementData materialRequirementData = materialRequirementDataService
+                .getMaterialRequirementData(materialRequirement);
+
+        // then
+        assertEquals(2, materialRequirementData.size());
+
+        assertEquals("P1", materialRequirementData.getProductNumber(0));
+        assertEquals("Product 1", materialRequirementData.getProductName(0));
+        assertEquals("szt", materialRequirementData.getProductUnit(0));
+        assertEquals(new BigDecimal("2.5"), materialRequirementData.getQuantity(0));
+
+        assertEquals("P2", materialRequirementData.getProductNumber(1));
+        assertEquals("Product 2", materialRequirementData.getProductName(1));
+        assertEquals("kg", materialRequirementData.getProductUnit(1));
+        assertEquals(new BigDecimal("7"), materialRequirementData.getQuantity(1));
+    }
+
+    private void stubProductRow(final Entity productRow, final Long id, final String number, final String name,
+            final String unit) {
+        given(productRow.getId()).willReturn(null);
+        given(productRow.getField("id")).willReturn(id);
+        given(productRow.getStringField(ProductFields.NUMBER)).willReturn(number);
+        given(productRow.getStringField(ProductFields.NAME)).willReturn(name);
+        given(productRow.getStringField(ProductFields.UNIT)).willReturn(unit);
+    }
+
+}
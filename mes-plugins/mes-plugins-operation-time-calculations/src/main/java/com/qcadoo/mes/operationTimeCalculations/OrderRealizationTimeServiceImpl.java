@@ -42,8 +42,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
@@ -85,15 +87,8 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     @Transactional
     public int estimateOperationTimeConsumption(final EntityTreeNode operationComponent, final BigDecimal plannedQuantity,
             final boolean includeTpz, final boolean includeAdditionalTime, final Entity productionLine) {
-        Entity technology = operationComponent.getBelongsToField(TECHNOLOGY);
-
-        Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
-
-        OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
-                .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
-
-        return evaluateOperationTime(operationComponent, includeTpz, includeAdditionalTime,
-                operationRunsFromProductionQuantities, productionLine, false, productComponentQuantities);
+        return estimateOperationTimeConsumption(operationComponent, plannedQuantity, includeTpz, includeAdditionalTime,
+                productionLine, false, new EvaluationContext());
     }
 
     @Override
@@ -101,6 +96,13 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     public int estimateMaxOperationTimeConsumptionForWorkstation(final EntityTreeNode operationComponent,
             final BigDecimal plannedQuantity, final boolean includeTpz, final boolean includeAdditionalTime,
             final Entity productionLine) {
+        return estimateOperationTimeConsumption(operationComponent, plannedQuantity, includeTpz, includeAdditionalTime,
+                productionLine, true, new EvaluationContext());
+    }
+
+    private int estimateOperationTimeConsumption(final EntityTreeNode operationComponent, final BigDecimal plannedQuantity,
+            final boolean includeTpz, final boolean includeAdditionalTime, final Entity productionLine,
+            final boolean maxForWorkstation, final EvaluationContext context) {
         Entity technology = operationComponent.getBelongsToField(TECHNOLOGY);
 
         Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
@@ -109,7 +111,7 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
                 .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
 
         return evaluateOperationTime(operationComponent, includeTpz, includeAdditionalTime,
-                operationRunsFromProductionQuantities, productionLine, true, productComponentQuantities);
+                operationRunsFromProductionQuantities, productionLine, maxForWorkstation, productComponentQuantities, context);
     }
 
     @Override
@@ -182,7 +184,8 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
 
     private int evaluateOperationTime(final Entity operationComponent, final boolean includeTpz,
             final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns, final Entity productionLine,
-            final boolean maxForWorkstation, final OperationProductComponentWithQuantityContainer productComponentQuantities) {
+            final boolean maxForWorkstation, final OperationProductComponentWithQuantityContainer productComponentQuantities,
+            final EvaluationContext context) {
         String entityType = operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE);
 
         if (TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(entityType)) {
@@ -191,23 +194,23 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
                     .getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
 
             return evaluateOperationTime(actualOperationComponent, includeTpz, includeAdditionalTime, operationRuns,
-                    productionLine, maxForWorkstation, productComponentQuantities);
+                    productionLine, maxForWorkstation, productComponentQuantities, context);
         } else if (TechnologyOperationComponentEntityType.OPERATION.getStringValue().equals(entityType)) {
             int operationTime = evaluateSingleOperationTime(operationComponent, includeTpz, includeAdditionalTime, operationRuns,
-                    productionLine, maxForWorkstation);
+                    productionLine, maxForWorkstation, context);
             int offset = 0;
 
             List<Entity> childs = Lists.newArrayList(operationComponent.getHasManyField("children"));
             for (Entity child : childs) {
                 int childTime = evaluateOperationTime(child, includeTpz, includeAdditionalTime, operationRuns, productionLine,
-                        maxForWorkstation, productComponentQuantities);
+                        maxForWorkstation, productComponentQuantities, context);
 
                 if ("02specified".equals(child.getStringField("nextOperationAfterProducedType"))) {
 
                     int childTimeTotal = evaluateSingleOperationTime(child, includeTpz, includeAdditionalTime, operationRuns,
-                            productionLine, true);
+                            productionLine, true, context);
                     int childTimeForQuantity = evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(child,
-                            includeTpz, false, operationRuns, productionLine, true, productComponentQuantities);
+                            includeTpz, false, operationRuns, productionLine, true, productComponentQuantities, context);
 
                     int difference = childTimeTotal - childTimeForQuantity;
                     childTime -= difference;
@@ -255,31 +258,43 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     }
 
     @Override
-    public int evaluateSingleOperationTime(Entity operationComponent, final boolean includeTpz,
+    public int evaluateSingleOperationTime(final Entity operationComponent, final boolean includeTpz,
             final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns, final Entity productionLine,
             final boolean maxForWorkstation) {
-        operationComponent = operationComponent.getDataDefinition().get(operationComponent.getId());
+        return evaluateSingleOperationTime(operationComponent, includeTpz, includeAdditionalTime, operationRuns, productionLine,
+                maxForWorkstation, new EvaluationContext());
+    }
+
+    private int evaluateSingleOperationTime(final Entity operationComponentNode, final boolean includeTpz,
+            final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns, final Entity productionLine,
+            final boolean maxForWorkstation, final EvaluationContext context) {
+        Entity operationComponent = context.getOperationComponent(operationComponentNode);
 
         BigDecimal cycles = operationRuns.get(operationComponent.getId());
         if (cycles == null) {
-            Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
-
-            OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
-                    .getProductComponentQuantities(operationComponent
-                            .getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY),
-                            new BigDecimal("56", numberService.getMathContext()), operationRunsFromProductionQuantities);
-            cycles = operationRunsFromProductionQuantities.get(operationComponent.getId());
+            cycles = getTechnologyQuantities(operationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY),
+                    new BigDecimal("56", numberService.getMathContext()), context).getOperationRuns().get(
+                    operationComponent.getId());
         }
         return evaluateOperationDurationOutOfCycles(cycles, operationComponent, productionLine, maxForWorkstation, includeTpz,
                 includeAdditionalTime);
     }
 
     @Override
-    public int evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(Entity operationComponent,
+    public int evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(final Entity operationComponent,
             final boolean includeTpz, final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns,
             final Entity productionLine, final boolean maxForWorkstation,
             final OperationProductComponentWithQuantityContainer productComponentQuantities) {
-        operationComponent = operationComponent.getDataDefinition().get(operationComponent.getId());
+        return evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(operationComponent, includeTpz,
+                includeAdditionalTime, operationRuns, productionLine, maxForWorkstation, productComponentQuantities,
+                new EvaluationContext());
+    }
+
+    private int evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(final Entity operationComponentNode,
+            final boolean includeTpz, final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns,
+            final Entity productionLine, final boolean maxForWorkstation,
+            final OperationProductComponentWithQuantityContainer productComponentQuantities, final EvaluationContext context) {
+        Entity operationComponent = context.getOperationComponent(operationComponentNode);
         BigDecimal cycles = BigDecimal.ONE;
         BigDecimal nextOperationAfterProducedQuantity = BigDecimalUtils.convertNullToZero(operationComponent
                 .getDecimalField("nextOperationAfterProducedQuantity"));
@@ -288,7 +303,7 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
 
         if (nextOperationAfterProducedQuantity.compareTo(productComponentQuantity) != 1) {
             cycles = getQuantityCyclesNeededToProducedNextOperationAfterProducedQuantity(technologyOperationComponent,
-                    nextOperationAfterProducedQuantity);
+                    nextOperationAfterProducedQuantity, context);
         } else {
             cycles = operationRuns.get(technologyOperationComponent.getId());
         }
@@ -305,17 +320,15 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     }
 
     private BigDecimal getQuantityCyclesNeededToProducedNextOperationAfterProducedQuantity(final Entity operationComponent,
-            final BigDecimal nextOperationAfterProducedQuantity) {
+            final BigDecimal nextOperationAfterProducedQuantity, final EvaluationContext context) {
         MathContext mc = numberService.getMathContext();
         Entity technology = operationComponent.getBelongsToField("technology");
 
-        Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
-
-        OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesService
-                .getProductComponentQuantities(technology, BigDecimal.ONE, operationRunsFromProductionQuantities);
+        TechnologyQuantities technologyQuantities = getTechnologyQuantities(technology, BigDecimal.ONE, context);
 
-        BigDecimal operationsRunsForOneMainProduct = operationRunsFromProductionQuantities.get(operationComponent.getId());
-        BigDecimal quantityOutputProductProduced = productQuantities.get(getOutputProduct(operationComponent));
+        BigDecimal operationsRunsForOneMainProduct = technologyQuantities.getOperationRuns().get(operationComponent.getId());
+        BigDecimal quantityOutputProductProduced = technologyQuantities.getProductComponentQuantities().get(
+                getOutputProduct(operationComponent));
         BigDecimal cycles = operationsRunsForOneMainProduct.multiply(nextOperationAfterProducedQuantity, mc).divide(
                 quantityOutputProductProduced, mc);
 
@@ -355,6 +368,24 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
         return operationTime;
     }
 
+    private TechnologyQuantities getTechnologyQuantities(final Entity technology, final BigDecimal plannedQuantity,
+            final EvaluationContext context) {
+        TechnologyQuantities technologyQuantities = context.technologyQuantities.get(technology.getId(), plannedQuantity);
+
+        if (technologyQuantities == null) {
+            Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+
+            OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
+                    .getProductComponentQuantities(technology, plannedQuantity, operationRuns);
+
+            technologyQuantities = new TechnologyQuantities(productComponentQuantities, operationRuns);
+
+            context.technologyQuantities.put(technology.getId(), plannedQuantity, technologyQuantities);
+        }
+
+        return technologyQuantities;
+    }
+
     @Override
     public BigDecimal getBigDecimalFromField(final Object value, final Locale locale) {
         try {
@@ -375,4 +406,54 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
             Entity productionLine) {
         return estimateOperationTimeConsumption(operationComponent, plannedQuantity, true, true, productionLine);
     }
+
+    /**
+     * Memoizes data which doesn't depend on the evaluated quantity, so that it's loaded or calculated once per estimation
+     * instead of once per visited operation.
+     * 
+     * It's deliberately not kept between estimations - norms of operation components and product quantities of technologies
+     * can be changed without any hook which could invalidate it, and evaluation saves techOperCompTimeCalculation anyway.
+     */
+    private static final class EvaluationContext {
+
+        private final Map<Long, Entity> operationComponents = Maps.newHashMap();
+
+        private final Table<Long, BigDecimal, TechnologyQuantities> technologyQuantities = HashBasedTable.create();
+
+        private Entity getOperationComponent(final Entity operationComponent) {
+            Entity reloadedOperationComponent = operationComponents.get(operationComponent.getId());
+
+            if (reloadedOperationComponent == null) {
+                reloadedOperationComponent = operationComponent.getDataDefinition().get(operationComponent.getId());
+
+                operationComponents.put(operationComponent.getId(), reloadedOperationComponent);
+            }
+
+            return reloadedOperationComponent;
+        }
+
+    }
+
+    private static final class TechnologyQuantities {
+
+        private final OperationProductComponentWithQuantityContainer productComponentQuantities;
+
+        private final Map<Long, BigDecimal> operationRuns;
+
+        private TechnologyQuantities(final OperationProductComponentWithQuantityContainer productComponentQuantities,
+                final Map<Long, BigDecimal> operationRuns) {
+            this.productComponentQuantities = productComponentQuantities;
+            this.operationRuns = operationRuns;
+        }
+
+        private OperationProductComponentWithQuantityContainer getProductComponentQuantities() {
+            return productComponentQuantities;
+        }
+
+        private Map<Long, BigDecimal> getOperationRuns() {
+            return operationRuns;
+        }
+
+    }
+
 }
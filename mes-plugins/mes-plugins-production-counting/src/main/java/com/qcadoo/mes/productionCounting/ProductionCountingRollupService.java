@@ -0,0 +1,259 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingRollupFields;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Keeps productionCountingRollup rows - sums of accepted production trackings per order, operation and product - up to date.
+ * Trackings are added when accepted and subtracted when declined or corrected, so readers don't have to aggregate all trackings
+ * of an order. Rows are upserted against a unique index on (order, operation, product), so concurrent acceptances of trackings
+ * registering the same product can't create duplicate rows.
+ */
+@Service
+public class ProductionCountingRollupService {
+
+    private static final String L_UNIQUE_INDEX_NAME = "productioncountingrollup_order_toc_product_idx";
+
+    private static final String L_UNIQUE_INDEX_EXISTS_QUERY = "SELECT EXISTS (SELECT 1 FROM pg_indexes "
+            + "WHERE tablename = 'productioncounting_productioncountingrollup' AND indexname = :index_name)";
+
+    private static final String L_CLEAR_QUERY = "DELETE FROM productioncounting_productioncountingrollup";
+
+    private static final String L_CREATE_UNIQUE_INDEX_QUERY = "CREATE UNIQUE INDEX IF NOT EXISTS " + L_UNIQUE_INDEX_NAME
+            + " ON productioncounting_productioncountingrollup "
+            + "(order_id, COALESCE(technologyoperationcomponent_id, 0), product_id)";
+
+    private static final String L_UPSERT_QUERY = "INSERT INTO productioncounting_productioncountingrollup "
+            + "(order_id, technologyoperationcomponent_id, product_id, usedquantity, producedquantity, wastesquantity, "
+            + "trackingsnumber) VALUES (:order_id, :toc_id, :product_id, :used_quantity, :produced_quantity, "
+            + ":wastes_quantity, :trackings_number) "
+            + "ON CONFLICT (order_id, COALESCE(technologyoperationcomponent_id, 0), product_id) DO UPDATE SET "
+            + "usedquantity = productioncounting_productioncountingrollup.usedquantity + EXCLUDED.usedquantity, "
+            + "producedquantity = productioncounting_productioncountingrollup.producedquantity + EXCLUDED.producedquantity, "
+            + "wastesquantity = productioncounting_productioncountingrollup.wastesquantity + EXCLUDED.wastesquantity, "
+            + "trackingsnumber = productioncounting_productioncountingrollup.trackingsnumber + EXCLUDED.trackingsnumber";
+
+    private static final String L_IS_EMPTY_QUERY = "SELECT NOT EXISTS "
+            + "(SELECT 1 FROM productioncounting_productioncountingrollup) "
+            + "AND EXISTS (SELECT 1 FROM productioncounting_productiontracking WHERE state = '02accepted')";
+
+    private static final String L_REBUILD_QUERY = "INSERT INTO productioncounting_productioncountingrollup "
+            + "(order_id, technologyoperationcomponent_id, product_id, usedquantity, producedquantity, wastesquantity, "
+            + "trackingsnumber) "
+            + "SELECT c.order_id, c.toc_id, c.product_id, SUM(c.used), SUM(c.produced), SUM(c.wastes), SUM(c.number) "
+            + "FROM (SELECT pt.order_id, pt.technologyoperationcomponent_id AS toc_id, topic.product_id, "
+            + "COALESCE(SUM(topic.usedquantity), 0) AS used, 0 AS produced, 0 AS wastes, COUNT(*) AS number "
+            + "FROM productioncounting_trackingoperationproductincomponent topic "
+            + "JOIN productioncounting_productiontracking pt ON pt.id = topic.productiontracking_id "
+            + "WHERE pt.state = '02accepted' GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topic.product_id "
+            + "UNION ALL SELECT pt.order_id, pt.technologyoperationcomponent_id AS toc_id, topoc.product_id, 0 AS used, "
+            + "COALESCE(SUM(topoc.usedquantity), 0) AS produced, COALESCE(SUM(topoc.wastesquantity), 0) AS wastes, "
+            + "COUNT(*) AS number FROM productioncounting_trackingoperationproductoutcomponent topoc "
+            + "JOIN productioncounting_productiontracking pt ON pt.id = topoc.productiontracking_id "
+            + "WHERE pt.state = '02accepted' GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topoc.product_id) c "
+            + "GROUP BY c.order_id, c.toc_id, c.product_id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void onAccept(final Entity productionTracking) {
+        update(productionTracking, BigDecimal.ONE);
+    }
+
+    public void onDeclineOrCorrect(final Entity productionTracking) {
+        update(productionTracking, BigDecimal.ONE.negate());
+    }
+
+    /**
+     * Creates unique index the rollup is upserted against. Rows written before the index existed may be duplicated, so they are
+     * removed and rebuilt by {@link #rebuildIfEmpty()}.
+     */
+    public void createUniqueIndexIfNotExists() {
+        if (!jdbcTemplate.queryForObject(L_UNIQUE_INDEX_EXISTS_QUERY,
+                new MapSqlParameterSource("index_name", L_UNIQUE_INDEX_NAME), Boolean.class)) {
+            jdbcTemplate.update(L_CLEAR_QUERY, new MapSqlParameterSource());
+            jdbcTemplate.update(L_CREATE_UNIQUE_INDEX_QUERY, new MapSqlParameterSource());
+        }
+    }
+
+    /**
+     * Fills rollup from already accepted trackings, if it's empty - e.g. right after it was introduced.
+     */
+    public void rebuildIfEmpty() {
+        if (jdbcTemplate.queryForObject(L_IS_EMPTY_QUERY, new MapSqlParameterSource(), Boolean.class)) {
+            jdbcTemplate.update(L_REBUILD_QUERY, new MapSqlParameterSource());
+        }
+    }
+
+    private void update(final Entity productionTracking, final BigDecimal sign) {
+        Long orderId = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER).getId();
+        Entity technologyOperationComponent = productionTracking
+                .getBelongsToField(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT);
+        Long technologyOperationComponentId = (technologyOperationComponent == null) ? null : technologyOperationComponent
+                .getId();
+
+        List<SqlParameterSource> batchParameters = Lists.newArrayList();
+
+        for (Entity trackingOperationProductInComponent : productionTracking
+                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS)) {
+            MapSqlParameterSource productParameters = getParameters(orderId, technologyOperationComponentId,
+                    trackingOperationProductInComponent.getBelongsToField(TrackingOperationProductInComponentFields.PRODUCT)
+                            .getId(), sign);
+
+            productParameters.addValue("used_quantity", multiply(
+                    trackingOperationProductInComponent.getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY),
+                    sign));
+
+            batchParameters.add(productParameters);
+        }
+
+        for (Entity trackingOperationProductOutComponent : productionTracking
+                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS)) {
+            MapSqlParameterSource productParameters = getParameters(orderId, technologyOperationComponentId,
+                    trackingOperationProductOutComponent.getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCT)
+                            .getId(), sign);
+
+            productParameters.addValue("produced_quantity", multiply(trackingOperationProductOutComponent
+                    .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY), sign));
+            productParameters.addValue("wastes_quantity", multiply(trackingOperationProductOutComponent
+                    .getDecimalField(TrackingOperationProductOutComponentFields.WASTES_QUANTITY), sign));
+
+            batchParameters.add(productParameters);
+        }
+
+        if (!batchParameters.isEmpty()) {
+            jdbcTemplate.batchUpdate(L_UPSERT_QUERY, batchParameters.toArray(new SqlParameterSource[batchParameters.size()]));
+        }
+    }
+
+    private MapSqlParameterSource getParameters(final Long orderId, final Long technologyOperationComponentId,
+            final Long productId, final BigDecimal sign) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("order_id", orderId);
+        parameters.addValue("toc_id", technologyOperationComponentId, Types.BIGINT);
+        parameters.addValue("product_id", productId);
+        parameters.addValue("used_quantity", BigDecimal.ZERO);
+        parameters.addValue("produced_quantity", BigDecimal.ZERO);
+        parameters.addValue("wastes_quantity", BigDecimal.ZERO);
+        parameters.addValue("trackings_number", sign.signum());
+
+        return parameters;
+    }
+
+    private BigDecimal multiply(final BigDecimal value, final BigDecimal sign) {
+        return (value == null) ? BigDecimal.ZERO : value.multiply(sign);
+    }
+
+    public BigDecimal getProducedQuantity(final Entity order, final Entity technologyOperationComponent, final Entity product) {
+        return sum(getRollups(order, technologyOperationComponent, product), ProductionCountingRollupFields.PRODUCED_QUANTITY);
+    }
+
+    public BigDecimal getWastesQuantity(final Entity order, final Entity technologyOperationComponent, final Entity product) {
+        return sum(getRollups(order, technologyOperationComponent, product), ProductionCountingRollupFields.WASTES_QUANTITY);
+    }
+
+    /**
+     * Returns used quantity of product registered for operation component in all orders or null, if no accepted tracking
+     * registered it yet.
+     */
+    public BigDecimal getUsedQuantityForOperationProduct(final Entity technologyOperationComponent, final Entity product) {
+        return sumIfRegistered(getRollups(null, technologyOperationComponent, product),
+                ProductionCountingRollupFields.USED_QUANTITY);
+    }
+
+    /**
+     * Returns produced quantity of product registered for operation component in all orders or null, if no accepted tracking
+     * registered it yet.
+     */
+    public BigDecimal getProducedQuantityForOperationProduct(final Entity technologyOperationComponent, final Entity product) {
+        return sumIfRegistered(getRollups(null, technologyOperationComponent, product),
+                ProductionCountingRollupFields.PRODUCED_QUANTITY);
+    }
+
+    private List<Entity> getRollups(final Entity order, final Entity technologyOperationComponent, final Entity product) {
+        SearchCriteriaBuilder searchCriteriaBuilder = getProductionCountingRollupDD().find().add(
+                SearchRestrictions.belongsTo(ProductionCountingRollupFields.PRODUCT, product));
+
+        if (order != null) {
+            searchCriteriaBuilder.add(SearchRestrictions.belongsTo(ProductionCountingRollupFields.ORDER, order));
+        }
+        if (technologyOperationComponent != null) {
+            searchCriteriaBuilder.add(SearchRestrictions.belongsTo(ProductionCountingRollupFields.TECHNOLOGY_OPERATION_COMPONENT,
+                    technologyOperationComponent));
+        }
+
+        return searchCriteriaBuilder.list().getEntities();
+    }
+
+    private BigDecimal sum(final List<Entity> rollups, final String fieldName) {
+        BigDecimal sum = BigDecimal.ZERO;
+
+        for (Entity rollup : rollups) {
+            sum = sum.add(rollup.getDecimalField(fieldName));
+        }
+
+        return sum;
+    }
+
+    private BigDecimal sumIfRegistered(final List<Entity> rollups, final String fieldName) {
+        boolean registered = false;
+
+        for (Entity rollup : rollups) {
+            registered |= rollup.getIntegerField(ProductionCountingRollupFields.TRACKINGS_NUMBER) > 0;
+        }
+
+        return registered ? sum(rollups, fieldName) : null;
+    }
+
+    private DataDefinition getProductionCountingRollupDD() {
+        return dataDefinitionService.get(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_COUNTING_ROLLUP);
+    }
+
+}
@@ -45,8 +45,6 @@ import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingReportFields;
-import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
-import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
 import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
 import com.qcadoo.mes.productionCounting.print.utils.EntityProductionTrackingComparator;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
@@ -58,7 +56,6 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -97,6 +94,9 @@ public class ProductionCountingServiceImpl implements ProductionCountingService
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private ProductionCountingRollupService productionCountingRollupService;
+
     @Override
     public Entity getProductionTrackingReport(final Long productionTrackingReportId) {
         return getProductionTrackingReportDD().get(productionTrackingReportId);
@@ -431,75 +431,29 @@ public class ProductionCountingServiceImpl implements ProductionCountingService
 
     @Override
     public BigDecimal getRegisteredProductValueForOperationProductIn(final Entity operationProduct, final BigDecimal planed) {
-        BigDecimal value = null;
         Entity toc = operationProduct.getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT);
         Entity product = operationProduct.getBelongsToField(OperationProductInComponentFields.PRODUCT);
 
-        List<Entity> tracings = getProductionTrackingDD().find()
-                .add(SearchRestrictions.belongsTo(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT, toc))
-                .add(SearchRestrictions.eq(ProductionTrackingFields.STATE, ProductionTrackingStateStringValues.ACCEPTED)).list()
-                .getEntities();
-        for (Entity tracking : tracings) {
-            Entity topIN = getTrackingOperationProductInComponentDD().find()
-                    .add(SearchRestrictions.belongsTo(TrackingOperationProductInComponentFields.PRODUCTION_TRACKING, tracking))
-                    .add(SearchRestrictions.belongsTo(TrackingOperationProductInComponentFields.PRODUCT, product))
-                    .setMaxResults(1).uniqueResult();
-            if (topIN != null) {
-                if (value == null) {
-                    value = new BigDecimal(0l);
-                }
-                BigDecimal usedQuantity = topIN.getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
-                if (usedQuantity != null) {
-                    value = value.add(usedQuantity, numberService.getMathContext());
-                }
-            }
-        }
-        if (value != null) {
-            value = planed.subtract(value, numberService.getMathContext());
-        } else {
-            return value;
-        }
-
-        if (value.compareTo(new BigDecimal(0l)) == -1) {
-            value = new BigDecimal(0l);
-        }
-
-        return value;
+        return getRemainingValue(planed, productionCountingRollupService.getUsedQuantityForOperationProduct(toc, product));
     }
 
     @Override
     public BigDecimal getRegisteredProductValueForOperationProductOut(final Entity operationProduct, final BigDecimal planed) {
-        BigDecimal value = null;
         Entity toc = operationProduct.getBelongsToField(OperationProductOutComponentFields.OPERATION_COMPONENT);
         Entity product = operationProduct.getBelongsToField(OperationProductOutComponentFields.PRODUCT);
 
-        List<Entity> tracings = getProductionTrackingDD().find()
-                .add(SearchRestrictions.belongsTo(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT, toc))
-                .add(SearchRestrictions.eq(ProductionTrackingFields.STATE, ProductionTrackingStateStringValues.ACCEPTED)).list()
-                .getEntities();
-        for (Entity tracking : tracings) {
-            Entity topIN = getTrackingOperationProductOutComponentDD().find()
-                    .add(SearchRestrictions.belongsTo(TrackingOperationProductOutComponentFields.PRODUCTION_TRACKING, tracking))
-                    .add(SearchRestrictions.belongsTo(TrackingOperationProductOutComponentFields.PRODUCT, product))
-                    .setMaxResults(1).uniqueResult();
-            if (topIN != null) {
-                if (value == null) {
-                    value = new BigDecimal(0l);
-                }
-                BigDecimal usedQuantity = topIN.getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY);
-                if (usedQuantity != null) {
-                    value = value.add(usedQuantity, numberService.getMathContext());
-                }
-            }
-        }
-        if (value != null) {
-            value = planed.subtract(value, numberService.getMathContext());
-        } else {
-            return value;
+        return getRemainingValue(planed, productionCountingRollupService.getProducedQuantityForOperationProduct(toc, product));
+    }
+
+    private BigDecimal getRemainingValue(final BigDecimal planed, final BigDecimal registered) {
+        if (registered == null) {
+            return null;
         }
 
-        if (value.compareTo(new BigDecimal(0l)) == -1) {
-            value = new BigDecimal(0l);
+        BigDecimal value = planed.subtract(registered, numberService.getMathContext());
+
+        if (value.compareTo(BigDecimal.ZERO) == -1) {
+            value = BigDecimal.ZERO;
         }
 
         return value;
@@ -507,35 +461,12 @@ public class ProductionCountingServiceImpl implements ProductionCountingService
 
     @Override
     public BigDecimal getWastesSumForProduct(Entity product, Entity order, Entity operation) {
-        return getFieldSum(product, order, operation, TrackingOperationProductOutComponentFields.WASTES_QUANTITY);
+        return productionCountingRollupService.getWastesQuantity(order, operation, product);
     }
 
     @Override
     public BigDecimal getUsedQuantitySumForProduct(Entity product, Entity order, Entity operation) {
-        return getFieldSum(product, order, operation, TrackingOperationProductOutComponentFields.USED_QUANTITY);
+        return productionCountingRollupService.getProducedQuantity(order, operation, product);
     }
 
-    private BigDecimal getFieldSum(final Entity product, final Entity order, final Entity operation, String fieldToSum) {
-
-        DataDefinition trackingOpocDD = getTrackingOperationProductOutComponentDD();
-        String hql = "SELECT coalesce(SUM(opoc." + fieldToSum + "), 0) AS sum "
-                + "FROM #productionCounting_trackingOperationProductOutComponent opoc " + "JOIN opoc.productionTracking AS pt "
-                + "WHERE pt.order = :order_id AND opoc.product = :product_id AND pt.state = '02accepted' AND " + fieldToSum
-                + " IS NOT NULL ";
-        if (operation != null) {
-            hql = hql + "AND pt.technologyOperationComponent = :toc_id ";
-        }
-        SearchQueryBuilder scb = trackingOpocDD.find(hql);
-        scb.setLong("order_id", order.getId());
-        scb.setLong("product_id", product.getId());
-        if (operation != null) {
-            scb.setLong("toc_id", operation.getId());
-        }
-        Entity result = scb.setMaxResults(1).uniqueResult();
-        if (result == null) {
-            return BigDecimal.ZERO;
-        }
-        return result.getDecimalField("sum");
-
-    }
 }
@@ -51,6 +51,8 @@ public final class ProductionCountingConstants {
 
     public static final String MODEL_PRODUCTION_TRACKING_REPORT = "productionTrackingReport";
 
+    public static final String MODEL_PRODUCTION_COUNTING_ROLLUP = "productionCountingRollup";
+
     public static final String MODEL_OPERATION_TIME_COMPONENT = "operationTimeComponent";
 
     public static final String MODEL_OPERATION_PIECEWORK_COMPONENT = "operationPieceworkComponent";
@@ -47,6 +47,7 @@ import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceType;
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.print.ProductionBalancePdfService;
+import com.qcadoo.mes.productionCounting.xls.ProductionBalanceXlsController;
 import com.qcadoo.mes.productionCounting.xls.ProductionBalanceXlsService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
@@ -63,6 +64,8 @@ public class ProductionBalanceDetailsListeners {
 
     private static final String L_EMPTY_NUMBER = "";
 
+    private static final String L_XLS = "xls";
+
     @Autowired
     private TranslationService translationService;
 
@@ -199,6 +202,16 @@ public class ProductionBalanceDetailsListeners {
     }
 
     public void printProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        if (L_XLS.equals(args[0])) {
+            Entity productionBalance = productionCountingService.getProductionBalance((Long) state.getFieldValue());
+
+            if ((productionBalance != null) && productionBalanceXlsService.hasDocument(productionBalance)) {
+                view.redirectTo(ProductionBalanceXlsController.PATH + "?id=" + productionBalance.getId(), true, false);
+
+                return;
+            }
+        }
+
         reportService.printGeneratedReport(view, state, new String[] { args[0], ProductionCountingConstants.PLUGIN_IDENTIFIER,
                 ProductionCountingConstants.MODEL_PRODUCTION_BALANCE, args[1] });
     }
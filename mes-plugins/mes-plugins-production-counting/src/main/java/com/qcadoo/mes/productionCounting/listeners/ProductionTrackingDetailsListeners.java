@@ -33,6 +33,8 @@ import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.StaffFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.basic.constants.WorkstationFields;
+import com.qcadoo.mes.newstates.BulkStateChangeProgress;
+import com.qcadoo.mes.newstates.BulkStateExecutorService;
 import com.qcadoo.mes.newstates.StateExecutorService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionCounting.ProductionTrackingService;
@@ -42,6 +44,7 @@ import com.qcadoo.mes.productionCounting.newstates.ProductionTrackingStateServic
 import com.qcadoo.mes.productionCounting.utils.ProductionTrackingDocumentsHelper;
 import com.qcadoo.mes.productionCounting.utils.StaffTimeCalculator;
 import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.NumberService;
@@ -73,6 +76,8 @@ public class ProductionTrackingDetailsListeners {
 
     private static final String L_GRID = "grid";
 
+    private static final int L_BULK_STATE_CHANGE_THRESHOLD = 50;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(ProductionTrackingDetailsListeners.class);
 
     @Autowired
@@ -90,6 +95,12 @@ public class ProductionTrackingDetailsListeners {
     @Autowired
     private StateExecutorService stateExecutorService;
 
+    @Autowired
+    private BulkStateExecutorService bulkStateExecutorService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
     @Autowired
     private ParameterService parameterService;
 
@@ -188,10 +199,27 @@ public class ProductionTrackingDetailsListeners {
                 view.openModal(url, parameters);
             }
         } else {
-            stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, view, args);
+            Optional<GridComponent> maybeGrid = view.tryFindComponentByReference(L_GRID);
+
+            if (maybeGrid.isPresent() && (maybeGrid.get().getSelectedEntitiesIds().size() > L_BULK_STATE_CHANGE_THRESHOLD)) {
+                changeTrackingsStateInBackground(view, maybeGrid.get(), args[0]);
+            } else {
+                stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, view, args);
+            }
         }
     }
 
+    private void changeTrackingsStateInBackground(final ViewDefinitionState view, final GridComponent grid,
+            final String targetState) {
+        BulkStateChangeProgress progress = bulkStateExecutorService.changeState(ProductionTrackingStateServiceMarker.class,
+                dataDefinitionService.get(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                        ProductionCountingConstants.MODEL_PRODUCTION_TRACKING),
+                Lists.newArrayList(grid.getSelectedEntitiesIds()), targetState, ProductionTrackingFields.ORDER);
+
+        view.addMessage("productionCounting.productionTrackingsList.message.stateChangeStartedInBackground",
+                ComponentState.MessageType.INFO, false, String.valueOf(progress.getTotal()), progress.getId());
+    }
+
     public void calcTotalLaborTime(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         FormComponent productionTrackingForm = (FormComponent) view.getComponentByReference(L_FORM);
 
@@ -43,6 +43,7 @@ import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
+import com.qcadoo.mes.productionCounting.ProductionCountingRollupService;
 import com.qcadoo.mes.productionCounting.ProductionCountingService;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
@@ -89,6 +90,9 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private ProductionCountingRollupService productionCountingRollupService;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -108,12 +112,14 @@ public final class ProductionTrackingListenerService {
     public void onAccept(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Addition());
         setOrderDoneAndWastesQuantity(productionTracking, new Addition());
+        productionCountingRollupService.onAccept(productionTracking);
         closeOrder(productionTracking);
     }
 
     public void onChangeFromAcceptedToDeclined(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
+        productionCountingRollupService.onDeclineOrCorrect(productionTracking);
     }
 
     private void checkIfRecordOperationProductComponentsWereFilled(final Entity productionTracking) {
@@ -333,6 +339,7 @@ public final class ProductionTrackingListenerService {
     public void onCorrected(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
+        productionCountingRollupService.onDeclineOrCorrect(productionTracking);
     }
 
     private interface Operation {
@@ -1,11 +1,17 @@
 package com.qcadoo.mes.productionCounting.xls;
 
 import java.util.List;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -27,10 +33,37 @@ class ProductionBalanceRepository {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProductionBalanceRepository.class);
 
+    private static final int FETCH_SIZE = 500;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    List<ProducedQuantity> getProducedQuantities(final List<Long> ordersIds) {
+    private NamedParameterJdbcTemplate cursorJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        JdbcTemplate cursorJdbcOperations = new JdbcTemplate(((JdbcTemplate) jdbcTemplate.getJdbcOperations()).getDataSource());
+
+        // with fetch size set, postgres driver reads rows through a forward-only cursor instead of loading them all at once,
+        // as long as the query runs within a transaction
+        cursorJdbcOperations.setFetchSize(FETCH_SIZE);
+
+        cursorJdbcTemplate = new NamedParameterJdbcTemplate(cursorJdbcOperations);
+    }
+
+    private <T> void stream(final String query, final List<Long> ordersIds, final Class<T> rowClass,
+            final Consumer<T> consumer) {
+        RowMapper<T> rowMapper = BeanPropertyRowMapper.newInstance(rowClass);
+
+        cursorJdbcTemplate.query(query, new MapSqlParameterSource("ordersIds", ordersIds),
+                (RowCallbackHandler) resultSet -> consumer.accept(rowMapper.mapRow(resultSet, resultSet.getRow())));
+    }
+
+    void streamProducedQuantities(final List<Long> ordersIds, final Consumer<ProducedQuantity> consumer) {
+        stream(buildProducedQuantitiesQuery(), ordersIds, ProducedQuantity.class, consumer);
+    }
+
+    private String buildProducedQuantitiesQuery() {
         StringBuilder query = new StringBuilder();
 
         query.append("SELECT ");
@@ -60,8 +93,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, productNumber, productName, productUnit, prodWaste.producedWastes");
         // FIXME KAMA kiedy będzie 2 odpady ilosc wyprodukowana wzrośnie 2 krotnie ?
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProducedQuantity.class));
+        return query.toString();
     }
 
     private void appendProducedQuantity(StringBuilder query) {
@@ -72,7 +104,11 @@ class ProductionBalanceRepository {
         query.append("WHERE o.id IN (:ordersIds) ");
     }
 
-    List<MaterialCost> getMaterialCosts(Entity entity, List<Long> ordersIds) {
+    void streamMaterialCosts(Entity entity, List<Long> ordersIds, Consumer<MaterialCost> consumer) {
+        stream(buildMaterialCostsQuery(entity), ordersIds, MaterialCost.class, consumer);
+    }
+
+    private String buildMaterialCostsQuery(Entity entity) {
         StringBuilder query = new StringBuilder();
         appendCumulatedPlannedQuantities(query);
         appendMaterialCostsSelectionClause(query);
@@ -95,8 +131,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY o.number, op.number, p.number, p.name, p.unit, topic.wasteunit) ");
         query.append("ORDER BY orderNumber, operationNumber, productNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(MaterialCost.class));
+        return query.toString();
     }
 
     private void appendForEachPlannedQuantities(StringBuilder query) {
@@ -217,7 +252,11 @@ class ProductionBalanceRepository {
         query.append("COALESCE(SUM(topic.usedquantity), 0) ");
     }
 
-    List<PieceworkDetails> getPieceworkDetails(List<Long> ordersIds) {
+    void streamPieceworkDetails(List<Long> ordersIds, Consumer<PieceworkDetails> consumer) {
+        stream(buildPieceworkDetailsQuery(), ordersIds, PieceworkDetails.class, consumer);
+    }
+
+    private String buildPieceworkDetailsQuery() {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -231,11 +270,14 @@ class ProductionBalanceRepository {
         query.append("AND o.typeofproductionrecording = '03forEach' ");
         query.append("GROUP BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(PieceworkDetails.class));
+        return query.toString();
     }
 
-    List<LaborTimeDetails> getLaborTimeDetails(List<Long> ordersIds) {
+    void streamLaborTimeDetails(List<Long> ordersIds, Consumer<LaborTimeDetails> consumer) {
+        stream(buildLaborTimeDetailsQuery(), ordersIds, LaborTimeDetails.class, consumer);
+    }
+
+    private String buildLaborTimeDetailsQuery() {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -253,11 +295,14 @@ class ProductionBalanceRepository {
         appendWhereClause(query);
         query.append("GROUP BY orderNumber, operationNumber, staffNumber, staffName, staffSurname ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTimeDetails.class));
+        return query.toString();
+    }
+
+    void streamProductionCosts(Entity entity, List<Long> ordersIds, Consumer<ProductionCost> consumer) {
+        stream(buildProductionCostsQuery(entity), ordersIds, ProductionCost.class, consumer);
     }
 
-    List<ProductionCost> getProductionCosts(Entity entity, List<Long> ordersIds) {
+    private String buildProductionCostsQuery(Entity entity) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -376,8 +421,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber ");
         query.append("ORDER BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProductionCost.class));
+        return query.toString();
     }
 
     private void appendRealMachineTime(StringBuilder query) {
@@ -484,7 +528,11 @@ class ProductionBalanceRepository {
     }
 
     // FIXME KRNA use appropriate values from previous queries after refactor
-    List<OrderBalance> getOrdersBalance(Entity entity, List<Long> ordersIds) {
+    void streamOrdersBalance(Entity entity, List<Long> ordersIds, Consumer<OrderBalance> consumer) {
+        stream(buildOrdersBalanceQuery(entity), ordersIds, OrderBalance.class, consumer);
+    }
+
+    private String buildOrdersBalanceQuery(Entity entity) {
         StringBuilder query = new StringBuilder();
         appendOrdersBalanceSelectionClause(entity, query);
         appendMaterialCostsForOrdersBalance(entity, query);
@@ -574,8 +622,7 @@ class ProductionBalanceRepository {
 
         LOGGER.info("---------" + query.toString());
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(OrderBalance.class));
+        return query.toString();
     }
 
     private void appendOrdersBalanceSelectionClause(Entity entity, StringBuilder query) {
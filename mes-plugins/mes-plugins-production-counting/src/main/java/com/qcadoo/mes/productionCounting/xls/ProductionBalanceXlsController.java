@@ -0,0 +1,55 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.qcadoo.mes.productionCounting.ProductionCountingService;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+public class ProductionBalanceXlsController {
+
+    public static final String PATH = "/productionCounting/productionBalance.xlsx";
+
+    private static final String L_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    @Autowired
+    private ProductionCountingService productionCountingService;
+
+    @Autowired
+    private ProductionBalanceXlsService productionBalanceXlsService;
+
+    @RequestMapping(value = PATH, method = RequestMethod.GET)
+    public void printProductionBalance(@RequestParam("id") final Long productionBalanceId, final HttpServletResponse response)
+            throws IOException {
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        if ((productionBalance == null) || !productionBalanceXlsService.hasDocument(productionBalance)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File file = productionBalanceXlsService.getDocumentFile(productionBalance);
+        String fileName = file.getName();
+
+        response.setContentType(L_CONTENT_TYPE);
+        response.setHeader("Content-disposition", "attachment; filename=\"" + fileName.replace("\"", "") + "\"; filename*=UTF-8''"
+                + URLEncoder.encode(fileName, "UTF-8").replace("+", "%20"));
+
+        Files.copy(file.toPath(), response.getOutputStream());
+
+        response.flushBuffer();
+    }
+
+}
@@ -1,36 +1,46 @@
 package com.qcadoo.mes.productionCounting.xls;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
 import java.util.stream.Collectors;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.IndexedColors;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
-import com.qcadoo.mes.productionCounting.xls.dto.LaborTimeDetails;
-import com.qcadoo.mes.productionCounting.xls.dto.MaterialCost;
-import com.qcadoo.mes.productionCounting.xls.dto.OrderBalance;
-import com.qcadoo.mes.productionCounting.xls.dto.PieceworkDetails;
-import com.qcadoo.mes.productionCounting.xls.dto.ProducedQuantity;
-import com.qcadoo.mes.productionCounting.xls.dto.ProductionCost;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.report.api.xls.XlsDocumentService;
 
+/**
+ * Writes production balance straight into a streaming xlsx workbook, sheet by sheet. Rows are read through a database cursor and
+ * only a small window of them is kept in memory, the rest is flushed to a temporary file, so memory use doesn't depend on the
+ * number of orders and trackings covered by the balance.
+ */
 @Service
-public class ProductionBalanceXlsService extends XlsDocumentService {
+public class ProductionBalanceXlsService {
+
+    public static final String XLSX_EXTENSION = "xlsx";
+
+    private static final int ROWS_IN_MEMORY = 100;
+
+    private static final int MAX_COLUMN_WIDTH = 60;
+
+    private static final int NUMERIC_COLUMN_WIDTH = 14;
 
     @Autowired
     private TranslationService translationService;
@@ -41,510 +51,327 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     private static final List<String> PRODUCTION_QUANTITIES_HEADERS = Lists.newArrayList("orderNumber", "productNumber",
             "productName", "plannedQuantity", "producedQuantity", "wastesQuantity", "producedWastes", "deviation", "productUnit");
 
-    @Override
-    protected void addHeader(HSSFSheet sheet, Locale locale, Entity entity) {
-
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        HSSFRow headerRow = sheet.createRow(0);
-        int columnIndex = 0;
-        for (String key : PRODUCTION_QUANTITIES_HEADERS) {
-            createHeaderCell(stylesContainer, headerRow,
-                    translationService.translate("productionCounting.productionBalance.report.xls.header." + key, locale),
-                    columnIndex, HSSFCellStyle.ALIGN_LEFT);
-            columnIndex++;
-        }
+    private static final List<String> MATERIAL_COSTS_HEADERS = Lists.newArrayList("orderNumber", "operationNumber",
+            "productNumber", "productName", "plannedQuantity", "usedQuantity", "quantitativeDeviation", "unit", "plannedCost",
+            "realCost", "valueDeviation", "usedWasteQuantity", "unit");
+
+    private static final List<String> PRODUCTION_COSTS_HEADERS = Lists.newArrayList("orderNumber", "operationNumber",
+            "plannedStaffTime", "realStaffTime", "plannedMachineTime", "realMachineTime", "plannedStaffCosts", "realStaffCosts",
+            "staffCostsDeviation", "plannedMachineCosts", "realMachineCosts", "machineCostsDeviation", "plannedPieceworkCosts",
+            "realPieceworkCosts", "plannedCostsSum", "realCostsSum", "sumCostsDeviation");
+
+    private static final List<String> ORDERS_BALANCE_HEADERS = Lists.newArrayList("orderNumber", "productNumber", "productName",
+            "producedQuantity", "materialCosts", "productionCosts", "technicalProductionCosts", "materialCostMargin",
+            "materialCostMarginValue", "productionCostMargin", "productionCostMarginValue", "additionalOverhead",
+            "directAdditionalCost", "totalCosts", "registrationPrice", "registrationPriceOverhead",
+            "registrationPriceOverheadValue", "realProductionCosts", "profit", "profitValue", "sellPrice");
+
+    public String getReportTitle(final Locale locale) {
+        return translationService.translate("productionCounting.productionBalance.report.xls.sheet.producedQuantities", locale);
     }
 
-    @Override
-    protected void addSeries(HSSFSheet sheet, Entity entity) {
-        List<Long> ordersIds = getOrdersIds(entity);
+    public File getDocumentFile(final Entity productionBalance) {
+        return new File(productionBalance.getStringField(ProductionBalanceFields.FILE_NAME) + "." + XLSX_EXTENSION);
+    }
 
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        createProducedQuantitiesSheet(sheet, ordersIds, stylesContainer);
+    public boolean hasDocument(final Entity productionBalance) {
+        return (productionBalance.getStringField(ProductionBalanceFields.FILE_NAME) != null)
+                && getDocumentFile(productionBalance).exists();
     }
 
-    @Override
-    public String getReportTitle(Locale locale) {
-        return translationService.translate("productionCounting.productionBalance.report.xls.sheet.producedQuantities", locale);
+    @Transactional
+    public void generateDocument(final Entity productionBalance, final Locale locale) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(getDocumentFile(productionBalance))) {
+            generateDocument(productionBalance, locale, outputStream);
+        }
     }
 
-    @Override
-    protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
-        List<Long> ordersIds = getOrdersIds(entity);
-        createMaterialCostsSheet(entity,
-                createSheet(workbook, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
-                ordersIds, locale);
-        createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        createProductionCostsSheet(entity,
-                createSheet(workbook, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
-                ordersIds, locale);
-        createOrdersBalanceSheet(entity,
-                createSheet(workbook, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
-                ordersIds, locale);
+    @Transactional
+    public void generateDocument(final Entity productionBalance, final Locale locale, final OutputStream outputStream)
+            throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROWS_IN_MEMORY);
+
+        try {
+            StylesContainer stylesContainer = new StylesContainer(workbook, new FontsContainer(workbook));
+            List<Long> ordersIds = getOrdersIds(productionBalance);
+
+            createProducedQuantitiesSheet(createSheet(workbook, stylesContainer, getReportTitle(locale)), ordersIds, locale);
+            createMaterialCostsSheet(createSheet(workbook, stylesContainer,
+                    translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
+                    productionBalance, ordersIds, locale);
+            createLaborTimeSheet(createSheet(workbook, stylesContainer,
+                    translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)), ordersIds, locale);
+            createPieceworkSheet(createSheet(workbook, stylesContainer,
+                    translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)), ordersIds, locale);
+            createProductionCostsSheet(createSheet(workbook, stylesContainer,
+                    translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
+                    productionBalance, ordersIds, locale);
+            createOrdersBalanceSheet(createSheet(workbook, stylesContainer,
+                    translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
+                    productionBalance, ordersIds, locale);
+
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+        }
     }
 
-    private List<Long> getOrdersIds(final Entity productionBalance) {
+    private SheetWriter createSheet(final SXSSFWorkbook workbook, final StylesContainer stylesContainer, final String title) {
+        return new SheetWriter(workbook.createSheet(title), stylesContainer);
+    }
 
+    private List<Long> getOrdersIds(final Entity productionBalance) {
         List<Entity> orders = productionBalance.getHasManyField(ProductionBalanceFields.ORDERS);
+
         return orders.stream().map(Entity::getId).collect(Collectors.toList());
     }
 
-    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
-        List<ProducedQuantity> producedQuantities = productionBalanceRepository.getProducedQuantities(ordersIds);
-        int rowIndex = 1;
-        for (ProducedQuantity producedQuantity : producedQuantities) {
-            HSSFRow row = sheet.createRow(rowIndex);
-            createRegularCell(stylesContainer, row, 0, producedQuantity.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, producedQuantity.getProductNumber());
-            createRegularCell(stylesContainer, row, 2, producedQuantity.getProductName());
-            createNumericCell(stylesContainer, row, 3, producedQuantity.getPlannedQuantity());
-            createNumericCell(stylesContainer, row, 4, producedQuantity.getProducedQuantity());
-            createNumericCell(stylesContainer, row, 5, producedQuantity.getWastesQuantity());
-            createNumericCell(stylesContainer, row, 6, producedQuantity.getProducedWastes());
-            createNumericCell(stylesContainer, row, 7, producedQuantity.getDeviation());
-            createRegularCell(stylesContainer, row, 8, producedQuantity.getProductUnit());
-            rowIndex++;
-        }
+    private void createProducedQuantitiesSheet(final SheetWriter sheet, final List<Long> ordersIds, final Locale locale) {
+        sheet.header(translateHeaders("productionCounting.productionBalance.report.xls.header.", PRODUCTION_QUANTITIES_HEADERS,
+                locale));
+
+        productionBalanceRepository.streamProducedQuantities(ordersIds, producedQuantity -> {
+            sheet.row();
+            sheet.text(producedQuantity.getOrderNumber());
+            sheet.text(producedQuantity.getProductNumber());
+            sheet.text(producedQuantity.getProductName());
+            sheet.number(producedQuantity.getPlannedQuantity());
+            sheet.number(producedQuantity.getProducedQuantity());
+            sheet.number(producedQuantity.getWastesQuantity());
+            sheet.number(producedQuantity.getProducedWastes());
+            sheet.number(producedQuantity.getDeviation());
+            sheet.text(producedQuantity.getProductUnit());
+        });
+
+        sheet.finish();
+    }
 
-        for (int i = 0; i < PRODUCTION_QUANTITIES_HEADERS.size(); i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createMaterialCostsSheet(final SheetWriter sheet, final Entity productionBalance, final List<Long> ordersIds,
+            final Locale locale) {
+        sheet.header(translateHeaders("productionCounting.productionBalance.report.xls.sheet.materialCosts.",
+                MATERIAL_COSTS_HEADERS, locale));
+
+        productionBalanceRepository.streamMaterialCosts(productionBalance, ordersIds, materialCost -> {
+            sheet.row();
+            sheet.text(materialCost.getOrderNumber());
+            sheet.text(materialCost.getOperationNumber());
+            sheet.text(materialCost.getProductNumber());
+            sheet.text(materialCost.getProductName());
+            sheet.number(materialCost.getPlannedQuantity());
+            sheet.number(materialCost.getUsedQuantity());
+            sheet.number(materialCost.getQuantitativeDeviation());
+            sheet.text(materialCost.getProductUnit());
+            sheet.number(materialCost.getPlannedCost());
+            sheet.number(materialCost.getRealCost());
+            sheet.number(materialCost.getValueDeviation());
+            sheet.number(materialCost.getUsedWasteQuantity());
+            sheet.text(materialCost.getUsedWasteUnit());
+        });
+
+        sheet.finish();
     }
 
-    private void createMaterialCostsSheet(Entity entity, HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.operationNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.productNumber", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.productName", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.plannedQuantity", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.usedQuantity", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.materialCosts.quantitativeDeviation", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.unit", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.plannedCost", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.realCost", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.valueDeviation", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.materialCosts.usedWasteQuantity", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.unit", locale),
-                12, CellStyle.ALIGN_LEFT);
-        List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
-        int rowCounter = 0;
-        for (MaterialCost materialCost : materialCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, materialCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, materialCost.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, materialCost.getProductNumber());
-            createRegularCell(stylesContainer, row, 3, materialCost.getProductName());
-            createNumericCell(stylesContainer, row, 4, materialCost.getPlannedQuantity());
-            createNumericCell(stylesContainer, row, 5, materialCost.getUsedQuantity());
-            createNumericCell(stylesContainer, row, 6, materialCost.getQuantitativeDeviation());
-            createRegularCell(stylesContainer, row, 7, materialCost.getProductUnit());
-            createNumericCell(stylesContainer, row, 8, materialCost.getPlannedCost());
-            createNumericCell(stylesContainer, row, 9, materialCost.getRealCost());
-            createNumericCell(stylesContainer, row, 10, materialCost.getValueDeviation());
-            createNumericCell(stylesContainer, row, 11, materialCost.getUsedWasteQuantity());
-            createRegularCell(stylesContainer, row, 12, materialCost.getUsedWasteUnit());
-            rowCounter++;
-        }
-        for (int i = 0; i <= 12; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createPieceworkSheet(final SheetWriter sheet, final List<Long> ordersIds, final Locale locale) {
+        sheet.header(Lists.newArrayList(translationService.translate(PieceworkSheetConstants.ORDER_NUMBER, locale),
+                translationService.translate(PieceworkSheetConstants.OPERATION_NUMBER, locale),
+                translationService.translate(PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES, locale)));
+
+        productionBalanceRepository.streamPieceworkDetails(ordersIds, pieceworkDetails -> {
+            sheet.row();
+            sheet.text(pieceworkDetails.getOrderNumber());
+            sheet.text(pieceworkDetails.getOperationNumber());
+            sheet.number(pieceworkDetails.getTotalExecutedOperationCycles());
+        });
+
+        sheet.finish();
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.ORDER_NUMBER, locale), 0,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.OPERATION_NUMBER, locale), 1,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES, locale), 2,
-                CellStyle.ALIGN_LEFT);
-
-        List<PieceworkDetails> pieceworkDetailsList = productionBalanceRepository.getPieceworkDetails(ordersIds);
-        int rowCounter = 0;
-        for (PieceworkDetails pieceworkDetails : pieceworkDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, pieceworkDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, pieceworkDetails.getOperationNumber());
-            createNumericCell(stylesContainer, row, 2, pieceworkDetails.getTotalExecutedOperationCycles());
-            rowCounter++;
-        }
-        for (int i = 0; i <= 2; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createLaborTimeSheet(final SheetWriter sheet, final List<Long> ordersIds, final Locale locale) {
+        sheet.header(Lists.newArrayList(translationService.translate(LaborTimeSheetConstants.ORDER_NUMBER, locale),
+                translationService.translate(LaborTimeSheetConstants.OPERATION_NUMBER, locale),
+                translationService.translate(LaborTimeSheetConstants.STAFF_NUMBER, locale),
+                translationService.translate(LaborTimeSheetConstants.STAFF_NAME, locale),
+                translationService.translate(LaborTimeSheetConstants.STAFF_SURNAME, locale),
+                translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale)));
+
+        productionBalanceRepository.streamLaborTimeDetails(ordersIds, laborTimeDetails -> {
+            sheet.row();
+            sheet.text(laborTimeDetails.getOrderNumber());
+            sheet.text(laborTimeDetails.getOperationNumber());
+            sheet.text(laborTimeDetails.getStaffNumber());
+            sheet.text(laborTimeDetails.getStaffName());
+            sheet.text(laborTimeDetails.getStaffSurname());
+            sheet.time(laborTimeDetails.getLaborTime());
+        });
+
+        sheet.finish();
+    }
+
+    private void createProductionCostsSheet(final SheetWriter sheet, final Entity productionBalance, final List<Long> ordersIds,
+            final Locale locale) {
+        sheet.header(translateHeaders("productionCounting.productionBalance.report.xls.sheet.productionCosts.",
+                PRODUCTION_COSTS_HEADERS, locale));
+
+        productionBalanceRepository.streamProductionCosts(productionBalance, ordersIds, productionCost -> {
+            sheet.row();
+            sheet.text(productionCost.getOrderNumber());
+            sheet.text(productionCost.getOperationNumber());
+            sheet.time(productionCost.getPlannedStaffTime());
+            sheet.time(productionCost.getRealStaffTime());
+            sheet.time(productionCost.getPlannedMachineTime());
+            sheet.time(productionCost.getRealMachineTime());
+            sheet.number(productionCost.getPlannedStaffCosts());
+            sheet.number(productionCost.getRealStaffCosts());
+            sheet.number(productionCost.getStaffCostsDeviation());
+            sheet.number(productionCost.getPlannedMachineCosts());
+            sheet.number(productionCost.getRealMachineCosts());
+            sheet.number(productionCost.getMachineCostsDeviation());
+            sheet.number(productionCost.getPlannedPieceworkCosts());
+            sheet.number(productionCost.getRealPieceworkCosts());
+            sheet.number(productionCost.getPlannedCostsSum());
+            sheet.number(productionCost.getRealCostsSum());
+            sheet.number(productionCost.getSumCostsDeviation());
+        });
+
+        sheet.finish();
+    }
+
+    private void createOrdersBalanceSheet(final SheetWriter sheet, final Entity productionBalance, final List<Long> ordersIds,
+            final Locale locale) {
+        sheet.header(translateHeaders("productionCounting.productionBalance.report.xls.sheet.ordersBalance.",
+                ORDERS_BALANCE_HEADERS, locale));
+
+        productionBalanceRepository.streamOrdersBalance(productionBalance, ordersIds, orderBalance -> {
+            sheet.row();
+            sheet.text(orderBalance.getOrderNumber());
+            sheet.text(orderBalance.getProductNumber());
+            sheet.text(orderBalance.getProductName());
+            sheet.number(orderBalance.getProducedQuantity());
+            sheet.number(orderBalance.getMaterialCosts());
+            sheet.number(orderBalance.getProductionCosts());
+            sheet.number(orderBalance.getTechnicalProductionCosts());
+            sheet.number(orderBalance.getMaterialCostMargin());
+            sheet.number(orderBalance.getMaterialCostMarginValue());
+            sheet.number(orderBalance.getProductionCostMargin());
+            sheet.number(orderBalance.getProductionCostMarginValue());
+            sheet.number(orderBalance.getAdditionalOverhead());
+            sheet.number(orderBalance.getDirectAdditionalCost());
+            sheet.number(orderBalance.getTotalCosts());
+            sheet.number(orderBalance.getRegistrationPrice());
+            sheet.number(orderBalance.getRegistrationPriceOverhead());
+            sheet.number(orderBalance.getRegistrationPriceOverheadValue());
+            sheet.number(orderBalance.getRealProductionCosts());
+            sheet.number(orderBalance.getProfit());
+            sheet.number(orderBalance.getProfitValue());
+            sheet.number(orderBalance.getSellPrice());
+        });
+
+        sheet.finish();
+    }
+
+    private List<String> translateHeaders(final String prefix, final List<String> headers, final Locale locale) {
+        return headers.stream().map(header -> translationService.translate(prefix + header, locale))
+                .collect(Collectors.toList());
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.ORDER_NUMBER, locale), 0,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.OPERATION_NUMBER, locale), 1,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_NUMBER, locale), 2,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_NAME, locale), 3,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_SURNAME, locale), 4,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale), 5,
-                CellStyle.ALIGN_LEFT);
-
-        List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(ordersIds);
-        int rowCounter = 0;
-        for (LaborTimeDetails laborTimeDetails : laborTimeDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTimeDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, laborTimeDetails.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, laborTimeDetails.getStaffNumber());
-            createRegularCell(stylesContainer, row, 3, laborTimeDetails.getStaffName());
-            createRegularCell(stylesContainer, row, 4, laborTimeDetails.getStaffSurname());
-            createTimeCell(stylesContainer, row, 5, laborTimeDetails.getLaborTime());
-            rowCounter++;
+    /**
+     * Appends rows to a streamed sheet. Flushed rows can't be read back, so instead of auto sizing columns at the end, widths
+     * are tracked while the cells are written.
+     */
+    private static class SheetWriter {
+
+        private final Sheet sheet;
+
+        private final StylesContainer stylesContainer;
+
+        private final List<Integer> columnWidths = Lists.newArrayList();
+
+        private Row row;
+
+        private int rowIndex = 0;
+
+        private int columnIndex = 0;
+
+        SheetWriter(final Sheet sheet, final StylesContainer stylesContainer) {
+            this.sheet = sheet;
+            this.stylesContainer = stylesContainer;
         }
-        for (int i = 0; i <= 5; i++) {
-            sheet.autoSizeColumn(i, false);
+
+        private void header(final List<String> headers) {
+            row();
+
+            for (String header : headers) {
+                cell(header.length(), stylesContainer.headerStyle).setCellValue(header);
+            }
         }
-    }
 
-    private void createProductionCostsSheet(Entity entity, HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.operationNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedStaffTime", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.realStaffTime", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedMachineTime", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realMachineTime", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedStaffCosts", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realStaffCosts", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.staffCostsDeviation", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedMachineCosts", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realMachineCosts", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.machineCostsDeviation", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedPieceworkCosts", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realPieceworkCosts", locale),
-                13, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedCostsSum", locale),
-                14, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.realCostsSum", locale),
-                15, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.sumCostsDeviation", locale),
-                16, CellStyle.ALIGN_LEFT);
-
-        List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
-        int rowCounter = 0;
-        for (ProductionCost productionCost : productionCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, productionCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, productionCost.getOperationNumber());
-            createTimeCell(stylesContainer, row, 2, productionCost.getPlannedStaffTime());
-            createTimeCell(stylesContainer, row, 3, productionCost.getRealStaffTime());
-            createTimeCell(stylesContainer, row, 4, productionCost.getPlannedMachineTime());
-            createTimeCell(stylesContainer, row, 5, productionCost.getRealMachineTime());
-            createNumericCell(stylesContainer, row, 6, productionCost.getPlannedStaffCosts());
-            createNumericCell(stylesContainer, row, 7, productionCost.getRealStaffCosts());
-            createNumericCell(stylesContainer, row, 8, productionCost.getStaffCostsDeviation());
-            createNumericCell(stylesContainer, row, 9, productionCost.getPlannedMachineCosts());
-            createNumericCell(stylesContainer, row, 10, productionCost.getRealMachineCosts());
-            createNumericCell(stylesContainer, row, 11, productionCost.getMachineCostsDeviation());
-            createNumericCell(stylesContainer, row, 12, productionCost.getPlannedPieceworkCosts());
-            createNumericCell(stylesContainer, row, 13, productionCost.getRealPieceworkCosts());
-            createNumericCell(stylesContainer, row, 14, productionCost.getPlannedCostsSum());
-            createNumericCell(stylesContainer, row, 15, productionCost.getRealCostsSum());
-            createNumericCell(stylesContainer, row, 16, productionCost.getSumCostsDeviation());
-            rowCounter++;
+        private void row() {
+            row = sheet.createRow(rowIndex++);
+            columnIndex = 0;
         }
-        for (int i = 0; i <= 16; i++) {
-            sheet.autoSizeColumn(i, false);
+
+        private void text(final String content) {
+            cell((content == null) ? 0 : content.length(), stylesContainer.regularStyle).setCellValue(content);
         }
-    }
 
-    private void createOrdersBalanceSheet(Entity entity, HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productName", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.producedQuantity", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCosts", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCosts", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.technicalProductionCosts", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCostMargin", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCostMarginValue", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCostMargin", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCostMarginValue", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.additionalOverhead", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.directAdditionalCost", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.totalCosts", locale),
-                13, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPrice", locale),
-                14, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPriceOverhead", locale),
-                15, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPriceOverheadValue",
-                        locale),
-                16, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.realProductionCosts", locale),
-                17, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.profit", locale),
-                18, CellStyle.ALIGN_LEFT);
-
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.profitValue", locale),
-                19, CellStyle.ALIGN_LEFT);
-
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.sellPrice", locale),
-                20, CellStyle.ALIGN_LEFT);
-
-        List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds);
-        int rowCounter = 0;
-        for (OrderBalance orderBalance : ordersBalance) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, orderBalance.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, orderBalance.getProductNumber());
-            createRegularCell(stylesContainer, row, 2, orderBalance.getProductName());
-            createNumericCell(stylesContainer, row, 3, orderBalance.getProducedQuantity());
-            createNumericCell(stylesContainer, row, 4, orderBalance.getMaterialCosts());
-            createNumericCell(stylesContainer, row, 5, orderBalance.getProductionCosts());
-            createNumericCell(stylesContainer, row, 6, orderBalance.getTechnicalProductionCosts());
-            createNumericCell(stylesContainer, row, 7, orderBalance.getMaterialCostMargin());
-            createNumericCell(stylesContainer, row, 8, orderBalance.getMaterialCostMarginValue());
-            createNumericCell(stylesContainer, row, 9, orderBalance.getProductionCostMargin());
-            createNumericCell(stylesContainer, row, 10, orderBalance.getProductionCostMarginValue());
-            createNumericCell(stylesContainer, row, 11, orderBalance.getAdditionalOverhead());
-            createNumericCell(stylesContainer, row, 12, orderBalance.getDirectAdditionalCost());
-            createNumericCell(stylesContainer, row, 13, orderBalance.getTotalCosts());
-            createNumericCell(stylesContainer, row, 14, orderBalance.getRegistrationPrice());
-            createNumericCell(stylesContainer, row, 15, orderBalance.getRegistrationPriceOverhead());
-            createNumericCell(stylesContainer, row, 16, orderBalance.getRegistrationPriceOverheadValue());
-            createNumericCell(stylesContainer, row, 17, orderBalance.getRealProductionCosts());
-            createNumericCell(stylesContainer, row, 18, orderBalance.getProfit());
-            createNumericCell(stylesContainer, row, 19, orderBalance.getProfitValue());
-            createNumericCell(stylesContainer, row, 20, orderBalance.getSellPrice());
-            rowCounter++;
+        private void number(final BigDecimal value) {
+            cell(NUMERIC_COLUMN_WIDTH, stylesContainer.numberStyle).setCellValue(value.setScale(5).doubleValue());
         }
-        for (int i = 0; i <= 20; i++) {
-            sheet.autoSizeColumn(i, false);
+
+        private void time(final Integer value) {
+            cell(NUMERIC_COLUMN_WIDTH, stylesContainer.timeStyle).setCellValue((value == null) ? 0d : value / 86400d);
         }
-    }
 
-    private HSSFCell createRegularCell(StylesContainer stylesContainer, HSSFRow row, int column, String content) {
-        HSSFCell cell = row.createCell(column);
-        cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.regularStyle, HSSFCellStyle.ALIGN_LEFT));
-        return cell;
-    }
+        private Cell cell(final int width, final CellStyle style) {
+            if (columnWidths.size() <= columnIndex) {
+                columnWidths.add(0);
+            }
 
-    private HSSFCell createNumericCell(StylesContainer stylesContainer, HSSFRow row, int column, BigDecimal value) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
-        cell.setCellValue(value.setScale(5).doubleValue());
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberStyle, HSSFCellStyle.ALIGN_RIGHT));
-        return cell;
-    }
+            columnWidths.set(columnIndex, Math.max(columnWidths.get(columnIndex), Math.min(width, MAX_COLUMN_WIDTH)));
 
-    private HSSFCell createTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Integer value) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
-        cell.setCellValue(value == null ? 0d : value / 86400d);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeStyle, HSSFCellStyle.ALIGN_RIGHT));
-        return cell;
-    }
+            Cell cell = row.createCell(columnIndex++);
+            cell.setCellStyle(style);
+
+            return cell;
+        }
+
+        private void finish() {
+            for (int i = 0; i < columnWidths.size(); i++) {
+                sheet.setColumnWidth(i, (columnWidths.get(i) + 2) * 256);
+            }
+        }
 
-    private HSSFCell createHeaderCell(StylesContainer stylesContainer, HSSFRow row, String content, int column, short align) {
-        HSSFCell cell = row.createCell(column);
-        cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.headerStyle, align));
-        return cell;
     }
 
     private static class StylesContainer {
 
-        private final HSSFCellStyle regularStyle;
+        private final CellStyle regularStyle;
 
-        private final HSSFCellStyle headerStyle;
+        private final CellStyle headerStyle;
 
-        private final HSSFCellStyle timeStyle;
+        private final CellStyle timeStyle;
 
-        private final HSSFCellStyle numberStyle;
+        private final CellStyle numberStyle;
 
-        StylesContainer(HSSFWorkbook workbook, FontsContainer fontsContainer) {
+        StylesContainer(final Workbook workbook, final FontsContainer fontsContainer) {
             regularStyle = workbook.createCellStyle();
-            regularStyle.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+            regularStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+            regularStyle.setAlignment(CellStyle.ALIGN_LEFT);
 
             headerStyle = workbook.createCellStyle();
             headerStyle.setFont(fontsContainer.headerFont);
-            headerStyle.setFillPattern(XSSFCellStyle.SOLID_FOREGROUND);
+            headerStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
             headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setBorderBottom(XSSFCellStyle.BORDER_MEDIUM);
+            headerStyle.setBorderBottom(CellStyle.BORDER_MEDIUM);
+            headerStyle.setAlignment(CellStyle.ALIGN_LEFT);
 
             timeStyle = workbook.createCellStyle();
             timeStyle.setDataFormat(workbook.createDataFormat().getFormat("[HH]:MM:SS"));
+            timeStyle.setAlignment(CellStyle.ALIGN_RIGHT);
 
             numberStyle = workbook.createCellStyle();
             numberStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00###"));
-        }
-
-        private static HSSFCellStyle aligned(HSSFCellStyle style, short align) {
-            style.setAlignment(align);
-            return style;
+            numberStyle.setAlignment(CellStyle.ALIGN_RIGHT);
         }
 
     }
@@ -553,10 +380,11 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
         private final Font headerFont;
 
-        FontsContainer(HSSFWorkbook workbook) {
-
+        FontsContainer(final Workbook workbook) {
             headerFont = workbook.createFont();
             headerFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
         }
+
     }
+
 }
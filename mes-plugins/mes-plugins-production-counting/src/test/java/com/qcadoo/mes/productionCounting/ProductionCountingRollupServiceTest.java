@@ -0,0 +1,179 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class ProductionCountingRollupServiceTest {
+
+    private ProductionCountingRollupService productionCountingRollupService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity productionTracking, order, technologyOperationComponent, inProduct, outProduct,
+            trackingOperationProductInComponent, trackingOperationProductOutComponent;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionCountingRollupService = new ProductionCountingRollupService();
+
+        ReflectionTestUtils.setField(productionCountingRollupService, "jdbcTemplate", jdbcTemplate);
+
+        given(order.getId()).willReturn(1L);
+        given(technologyOperationComponent.getId()).willReturn(2L);
+        given(inProduct.getId()).willReturn(3L);
+        given(outProduct.getId()).willReturn(4L);
+
+        given(productionTracking.getBelongsToField(ProductionTrackingFields.ORDER)).willReturn(order);
+        given(productionTracking.getBelongsToField(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT)).willReturn(
+                technologyOperationComponent);
+
+        given(trackingOperationProductInComponent.getBelongsToField(TrackingOperationProductInComponentFields.PRODUCT))
+                .willReturn(inProduct);
+        given(trackingOperationProductInComponent.getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY))
+                .willReturn(new BigDecimal("5"));
+
+        given(trackingOperationProductOutComponent.getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCT))
+                .willReturn(outProduct);
+        given(trackingOperationProductOutComponent.getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY))
+                .willReturn(new BigDecimal("7"));
+        given(trackingOperationProductOutComponent.getDecimalField(TrackingOperationProductOutComponentFields.WASTES_QUANTITY))
+                .willReturn(null);
+    }
+
+    @Test
+    public void shouldIncrementRollupWhenTrackingIsAccepted() {
+        // given
+        stubComponents();
+
+        // when
+        productionCountingRollupService.onAccept(productionTracking);
+
+        // then
+        SqlParameterSource[] parameters = captureBatchParameters();
+
+        assertEquals(2, parameters.length);
+        assertParameters(parameters[0], 3L, new BigDecimal("5"), BigDecimal.ZERO, BigDecimal.ZERO, 1);
+        assertParameters(parameters[1], 4L, BigDecimal.ZERO, new BigDecimal("7"), BigDecimal.ZERO, 1);
+    }
+
+    @Test
+    public void shouldDecrementRollupWhenTrackingIsDeclinedOrCorrected() {
+        // given
+        stubComponents();
+
+        // when
+        productionCountingRollupService.onDeclineOrCorrect(productionTracking);
+
+        // then
+        SqlParameterSource[] parameters = captureBatchParameters();
+
+        assertEquals(2, parameters.length);
+        assertParameters(parameters[0], 3L, new BigDecimal("-5"), BigDecimal.ZERO, BigDecimal.ZERO, -1);
+        assertParameters(parameters[1], 4L, BigDecimal.ZERO, new BigDecimal("-7"), BigDecimal.ZERO, -1);
+    }
+
+    @Test
+    public void shouldUseNullOperationForCumulatedTracking() {
+        // given
+        stubComponents();
+
+        given(productionTracking.getBelongsToField(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT)).willReturn(null);
+
+        // when
+        productionCountingRollupService.onAccept(productionTracking);
+
+        // then
+        SqlParameterSource[] parameters = captureBatchParameters();
+
+        assertEquals(null, parameters[0].getValue("toc_id"));
+        assertEquals(null, parameters[1].getValue("toc_id"));
+    }
+
+    private void stubComponents() {
+        EntityList trackingOperationProductInComponents = mockEntityList(Collections
+                .singletonList(trackingOperationProductInComponent));
+        EntityList trackingOperationProductOutComponents = mockEntityList(Collections
+                .singletonList(trackingOperationProductOutComponent));
+
+        given(productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS)).willReturn(
+                trackingOperationProductInComponents);
+        given(productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(trackingOperationProductOutComponents);
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willReturn(entities.iterator());
+
+        return entityList;
+    }
+
+    private SqlParameterSource[] captureBatchParameters() {
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(anyString(), parametersCaptor.capture());
+
+        return parametersCaptor.getValue();
+    }
+
+    private void assertParameters(final SqlParameterSource parameters, final Long productId, final BigDecimal usedQuantity,
+            final BigDecimal producedQuantity, final BigDecimal wastesQuantity, final int trackingsNumber) {
+        assertEquals(1L, parameters.getValue("order_id"));
+        assertEquals(productId, parameters.getValue("product_id"));
+        assertEquals(0, usedQuantity.compareTo((BigDecimal) parameters.getValue("used_quantity")));
+        assertEquals(0, producedQuantity.compareTo((BigDecimal) parameters.getValue("produced_quantity")));
+        assertEquals(0, wastesQuantity.compareTo((BigDecimal) parameters.getValue("wastes_quantity")));
+        assertEquals(trackingsNumber, parameters.getValue("trackings_number"));
+    }
+
+}
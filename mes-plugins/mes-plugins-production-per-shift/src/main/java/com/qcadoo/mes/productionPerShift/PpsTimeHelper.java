@@ -30,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
@@ -38,6 +39,7 @@ import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftsFactory;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
 import com.qcadoo.model.api.Entity;
@@ -45,12 +47,15 @@ import com.qcadoo.model.api.Entity;
 @Service
 public class PpsTimeHelper {
 
+    @Autowired
+    private ShiftsFactory shiftsFactory;
+
     public Date findFinishDate(final Entity dailyProgress, Date dateOfDay, Entity order) {
         DateTime endDate = null;
         DateTime dateOfDayDT = new DateTime(dateOfDay, DateTimeZone.getDefault());
         DateTime orderStartDate = new DateTime(order.getDateField(OrderFields.START_DATE), DateTimeZone.getDefault());
         Entity shiftEntity = dailyProgress.getBelongsToField(DailyProgressFields.SHIFT);
-        Shift shift = new Shift(shiftEntity);
+        Shift shift = shiftsFactory.buildFromStored(shiftEntity);
         int time = dailyProgress.getIntegerField(DailyProgressFields.EFFICIENCY_TIME);
         List<TimeRange> shiftWorkTime = Lists.newArrayList();
         List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
@@ -65,7 +70,7 @@ public class PpsTimeHelper {
             }
         }
 
-        shiftWorkDateTime = manageExceptions(shiftWorkDateTime, shift.getEntity(), dateOfDay);
+        shiftWorkDateTime = manageExceptions(shiftWorkDateTime, shift, dateOfDay);
 
         for (DateTimeRange range : shiftWorkDateTime) {
             if (range.durationInMins() >= time && time > 0) {
@@ -80,7 +85,16 @@ public class PpsTimeHelper {
     }
 
     public List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, Entity shiftEntity, Date dateOfDay) {
-        List<Entity> exceptions = Lists.newArrayList(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS));
+        return manageExceptions(shiftWorkDateTime, shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS), dateOfDay);
+    }
+
+    public List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, Shift shift, Date dateOfDay) {
+        return manageExceptions(shiftWorkDateTime, shift.getTimetableExceptions(), dateOfDay);
+    }
+
+    private List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, List<Entity> timetableExceptions,
+            Date dateOfDay) {
+        List<Entity> exceptions = Lists.newArrayList(timetableExceptions);
         if (!exceptions.isEmpty()) {
             trimWorkExceptions(exceptions, dateOfDay);
 
@@ -43,4 +43,6 @@ public final class ProductionPerShiftFields {
 
     public static final String TECHNOLOGY = "technology";
 
+    public static final String INPUT_FINGERPRINT = "inputFingerprint";
+
 }
@@ -1,12 +1,14 @@
 package com.qcadoo.mes.productionPerShift.domain;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import org.joda.time.DateTime;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 public class ProgressForDaysContainer {
 
@@ -34,6 +36,10 @@ public class ProgressForDaysContainer {
 
     private BigDecimal alreadyRegisteredQuantity = BigDecimal.ZERO;
 
+    private BigDecimal standardPerformanceNorm;
+
+    private final Map<String, Integer> workersOnLine = Maps.newHashMap();
+
     public void addError(ErrorMessage errorMessage) {
         errors.add(errorMessage);
     }
@@ -133,4 +139,19 @@ public class ProgressForDaysContainer {
     public void setPlanForOrderCompleted(boolean planForOrderCompleted) {
         this.planForOrderCompleted = planForOrderCompleted;
     }
+
+    public BigDecimal getStandardPerformanceNorm() {
+        return standardPerformanceNorm;
+    }
+
+    public void setStandardPerformanceNorm(BigDecimal standardPerformanceNorm) {
+        this.standardPerformanceNorm = standardPerformanceNorm;
+    }
+
+    /**
+     * Workers on line calculated during this calculation, by shift and day, so they are queried once per shift and day.
+     */
+    public Map<String, Integer> getWorkersOnLine() {
+        return workersOnLine;
+    }
 }
@@ -35,6 +35,7 @@ import com.qcadoo.mes.productionPerShift.dates.ProgressDatesService;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.mes.productionPerShift.services.AutomaticPpsExecutorService;
 import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.productionPerShift.services.PpsInputFingerprintService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -74,6 +75,9 @@ public class OrderHooksPPS {
     @Autowired
     private AutomaticPpsParametersService automaticPpsParametersService;
 
+    @Autowired
+    private PpsInputFingerprintService ppsInputFingerprintService;
+
     public void onUpdate(final DataDefinition orderDD, final Entity order) {
         setUpPpsDaysAndDatesFor(order);
         regenerateProductionPerShift(orderDD, order);
@@ -112,6 +116,15 @@ public class OrderHooksPPS {
             if (productionPerShift != null && automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
                 boolean shouldBeCorrected = OrderState.of(order).compareTo(OrderState.PENDING) != 0;
                 if (!productionPerShift.getHasManyField(ProductionPerShiftFields.PROGRES_FOR_DAYS).isEmpty() || generate) {
+                    String inputFingerprint = ppsInputFingerprintService.getFingerprint(order, shouldBeCorrected);
+
+                    // explicitly requested plan is always generated again, the fingerprint only spares automatic regeneration
+                    if (!generate && !isInputChanged(productionPerShift, inputFingerprint)) {
+                        updateOrderData(order);
+
+                        return;
+                    }
+
                     BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
                     if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
                         plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
@@ -157,6 +170,7 @@ public class OrderHooksPPS {
                     }
 
                     productionPerShift.setField(ProductionPerShiftFields.PROGRES_FOR_DAYS, progressForDays);
+                    productionPerShift.setField(ProductionPerShiftFields.INPUT_FINGERPRINT, inputFingerprint);
                     productionPerShift.getDataDefinition().save(productionPerShift);
                 }
             }
@@ -165,6 +179,11 @@ public class OrderHooksPPS {
         updateOrderData(order);
     }
 
+    private boolean isInputChanged(final Entity productionPerShift, final String inputFingerprint) {
+        return (inputFingerprint == null)
+                || !inputFingerprint.equals(productionPerShift.getStringField(ProductionPerShiftFields.INPUT_FINGERPRINT));
+    }
+
     private boolean canGenerate(Entity order, Entity orderFromDB, Entity productionPerShift) {
         boolean generate = false;
         if (order.getBooleanField("generatePPS")) {
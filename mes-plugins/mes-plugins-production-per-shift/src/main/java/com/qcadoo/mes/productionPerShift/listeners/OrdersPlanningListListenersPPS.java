@@ -0,0 +1,81 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.listeners;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class OrdersPlanningListListenersPPS {
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    public void regenerateProductionPerShift(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        if (!automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            view.addMessage("productionPerShift.automaticAlgorithm.error.ppsOff", ComponentState.MessageType.FAILURE);
+            return;
+        }
+
+        GridComponent ordersGrid = (GridComponent) state;
+        DataDefinition orderDD = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+        List<String> notRegeneratedOrders = Lists.newArrayList();
+
+        // plans are regenerated by order hook, explicitly requested plan is generated again even if its inputs didn't change
+        for (Long orderId : ordersGrid.getSelectedEntitiesIds()) {
+            Entity order = orderDD.get(orderId);
+            order.setField("generatePPS", true);
+            order = orderDD.save(order);
+
+            if (!order.isValid()) {
+                notRegeneratedOrders.add(order.getStringField(OrderFields.NUMBER));
+            }
+        }
+
+        if (notRegeneratedOrders.isEmpty()) {
+            view.addMessage("productionPerShift.ordersPlanningList.regenerateProductionPerShift.success",
+                    ComponentState.MessageType.SUCCESS);
+        } else {
+            view.addMessage("productionPerShift.ordersPlanningList.regenerateProductionPerShift.failure",
+                    ComponentState.MessageType.FAILURE, false, String.join(", ", notRegeneratedOrders));
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftsFactory;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
@@ -48,7 +49,8 @@ public abstract class PpsBaseAlgorithmService {
     @Autowired
     private ParameterService parameterService;
 
-    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
+    @Autowired
+    private ShiftsFactory shiftsFactory;
 
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
         Entity order = productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER);
@@ -84,7 +86,8 @@ public abstract class PpsBaseAlgorithmService {
         if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
             plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
         }
-        calculateRegisteredQuantity(progressForDaysContainer, order, productionPerShift, plannedQuantity);
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = calculateRegisteredQuantity(progressForDaysContainer,
+                productionPerShift, plannedQuantity);
 
         BigDecimal alreadyPlannedQuantity = BigDecimal.ZERO;
         List<Entity> progressForDays = Lists.newLinkedList();
@@ -99,7 +102,7 @@ public abstract class PpsBaseAlgorithmService {
 
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
                     productionPerShift, order, shifts, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
-                    alreadyPlannedQuantity, allowIncompleteUnits);
+                    alreadyPlannedQuantity, allowIncompleteUnits, dailyProgressesWithTrackingRecords);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -119,7 +122,8 @@ public abstract class PpsBaseAlgorithmService {
 
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
             Entity productionPerShift, Entity order, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
-            boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity, boolean allowIncompleteUnits) {
+            boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity, boolean allowIncompleteUnits,
+            Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords) {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
 
@@ -193,7 +197,7 @@ public abstract class PpsBaseAlgorithmService {
             shiftWorkDateTime.add(new DateTimeRange(dateOfDayDT, range));
         }
 
-        shiftWorkDateTime = ppsTimeHelper.manageExceptions(shiftWorkDateTime, shift.getEntity(), dateOfDay.toDate());
+        shiftWorkDateTime = ppsTimeHelper.manageExceptions(shiftWorkDateTime, shift, dateOfDay.toDate());
 
         return shiftWorkDateTime;
     }
@@ -221,13 +225,14 @@ public abstract class PpsBaseAlgorithmService {
 
             @Override
             public Shift apply(final Entity shiftEntity) {
-                return new Shift(shiftEntity);
+                return shiftsFactory.buildFromStored(shiftEntity);
             }
         }).toList();
     }
 
-    private BigDecimal calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer, final Entity order,
+    private Map<DailyProgressKey, Entity> calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer,
             final Entity pps, BigDecimal plannedQuantity) {
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = null;
         BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
         if (pps != null) {
             dailyProgressesWithTrackingRecords = dailyProgressService.getDailyProgressesWithTrackingRecords(pps);
@@ -236,12 +241,10 @@ public abstract class PpsBaseAlgorithmService {
                 alreadyRegisteredQuantity = alreadyRegisteredQuantity.add(entry.getKey().getQuantity());
             }
             progressForDaysContainer.setAlreadyRegisteredQuantity(alreadyRegisteredQuantity);
-        } else {
-            dailyProgressesWithTrackingRecords = null;
         }
         progressForDaysContainer.setPlannedQuantity(plannedQuantity.subtract(alreadyRegisteredQuantity,
                 numberService.getMathContext()));
-        return progressForDaysContainer.getPlannedQuantity();
+        return dailyProgressesWithTrackingRecords;
     }
 
     protected abstract ShiftEfficiencyCalculationHolder calculateShiftEfficiency(
@@ -0,0 +1,158 @@
+package com.qcadoo.mes.productionPerShift.services;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionPerShift.constants.ParameterFieldsPPS;
+import com.qcadoo.mes.productionPerShift.constants.PpsAlgorithm;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Calculates fingerprint of everything automatic PPS algorithms read: order dates and quantity, technology norm, shifts of
+ * production line with their exceptions, registered production and - for algorithm using workers - staff assignments on line.
+ * When it's equal to the fingerprint stored with last generated plan, the plan doesn't have to be generated again.
+ */
+@Service
+public class PpsInputFingerprintService {
+
+    private static final String L_TRACKINGS_QUERY = "SELECT count(topoc.id) AS number, sum(topoc.usedQuantity) AS quantity, "
+            + "sum(productionTracking.id) AS idsSum FROM #productionCounting_trackingOperationProductOutComponent topoc "
+            + "JOIN topoc.productionTracking AS productionTracking "
+            + "WHERE productionTracking.order.id = :orderId AND productionTracking.state = '02accepted'";
+
+    private static final String L_ASSIGNMENTS_QUERY = "SELECT md5(string_agg(concat_ws(',', staffAssignmentToShift.id, "
+            + "staffAssignmentToShift.worker_id, staffAssignmentToShift.occupationtype, staffAssignmentToShift.state, "
+            + "assignmentToShift.id, assignmentToShift.startdate, assignmentToShift.shift_id, assignmentToShift.state, "
+            + "assignmentToShift.active), ';' ORDER BY staffAssignmentToShift.id)) "
+            + "FROM assignmenttoshift_staffassignmenttoshift staffAssignmentToShift "
+            + "LEFT JOIN assignmenttoshift_assignmenttoshift assignmentToShift "
+            + "ON assignmentToShift.id = staffAssignmentToShift.assignmenttoshift_id "
+            + "WHERE staffAssignmentToShift.productionline_id = :productionLineId";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Autowired
+    private BasicProductionCountingService basicProductionCountingService;
+
+    /**
+     * Returns fingerprint of inputs of automatic plan for order or null, if it can't be calculated (user algorithm or missing
+     * order data).
+     */
+    public String getFingerprint(final Entity order, final boolean shouldBeCorrected) {
+        PpsAlgorithm algorithm = automaticPpsParametersService.getPpsAlgorithm();
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+
+        if ((PpsAlgorithm.USER == algorithm) || (order.getId() == null) || (technology == null) || (productionLine == null)) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.md5().newHasher();
+
+        putValue(hasher, algorithm.getStringValue());
+        putValue(hasher, shouldBeCorrected);
+        putValue(hasher, parameterService.getParameter().getBooleanField(ParameterFieldsPPS.ALLOW_INCOMPLITE_UNITS));
+        putValue(hasher, order.getDateField(OrderFields.START_DATE));
+        putValue(hasher, getPlannedQuantity(order));
+        putValue(hasher, technology.getId());
+        putValue(hasher, technology.getDataDefinition().get(technology.getId())
+                .getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY));
+        putValue(hasher, productionLine.getId());
+
+        List<Entity> shifts = Lists.newArrayList(productionLine.getManyToManyField(ProductionLineFields.SHIFTS));
+        Collections.sort(shifts, (p1, p2) -> p1.getId().compareTo(p2.getId()));
+
+        for (Entity shift : shifts) {
+            putFields(hasher, shift);
+
+            for (Entity timetableException : shift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)) {
+                putFields(hasher, timetableException);
+            }
+        }
+
+        putFields(hasher, dataDefinitionService
+                .get(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                        ProductionCountingConstants.MODEL_TRACKING_OPERATION_PRODUCT_OUT_COMPONENT).find(L_TRACKINGS_QUERY)
+                .setLong("orderId", order.getId()).setMaxResults(1).uniqueResult());
+
+        if (PpsAlgorithm.STANDARD_TECHNOLOGY_AND_AMOUNT_OF_CHANGE == algorithm) {
+            putValue(hasher, jdbcTemplate.queryForObject(L_ASSIGNMENTS_QUERY,
+                    new MapSqlParameterSource("productionLineId", productionLine.getId()), String.class));
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private BigDecimal getPlannedQuantity(final Entity order) {
+        if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
+            return basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
+        }
+
+        return order.getDecimalField(OrderFields.PLANNED_QUANTITY);
+    }
+
+    private void putFields(final Hasher hasher, final Entity entity) {
+        if (entity == null) {
+            putValue(hasher, null);
+
+            return;
+        }
+
+        putValue(hasher, entity.getId());
+
+        List<String> fieldNames = Lists.newArrayList(entity.getFields().keySet());
+        Collections.sort(fieldNames);
+
+        for (String fieldName : fieldNames) {
+            Object value = entity.getField(fieldName);
+
+            if (!(value instanceof Entity) && !(value instanceof Collection)) {
+                putValue(hasher, fieldName);
+                putValue(hasher, value);
+            }
+        }
+    }
+
+    private void putValue(final Hasher hasher, final Object value) {
+        if (value instanceof BigDecimal) {
+            hasher.putString(((BigDecimal) value).stripTrailingZeros().toPlainString(), Charsets.UTF_8);
+        } else if (value instanceof Date) {
+            hasher.putLong(((Date) value).getTime());
+        } else {
+            hasher.putString(String.valueOf(value), Charsets.UTF_8);
+        }
+
+        hasher.putChar('|');
+    }
+
+}
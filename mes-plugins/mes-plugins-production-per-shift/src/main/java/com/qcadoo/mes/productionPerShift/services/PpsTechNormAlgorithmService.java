@@ -56,12 +56,16 @@ public class PpsTechNormAlgorithmService extends PpsBaseAlgorithmService {
     }
 
     protected BigDecimal getStandardPerformanceNorm(ProgressForDaysContainer progressForDaysContainer, Entity order) {
+        if (progressForDaysContainer.getStandardPerformanceNorm() != null) {
+            return progressForDaysContainer.getStandardPerformanceNorm();
+        }
         BigDecimal norm = order.getBelongsToField(OrderFields.TECHNOLOGY).getDecimalField("standardPerformanceTechnology");
         if (norm == null) {
             progressForDaysContainer.addError(new ErrorMessage(
                     "productionPerShift.automaticAlgorithm.technology.standardPerformanceTechnologyRequired", false));
             throw new IllegalStateException("No standard performance norm in technology");
         }
+        progressForDaysContainer.setStandardPerformanceNorm(norm);
         return norm;
 
     }
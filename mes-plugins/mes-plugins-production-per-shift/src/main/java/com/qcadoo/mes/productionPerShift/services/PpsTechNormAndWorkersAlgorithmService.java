@@ -29,8 +29,7 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
             Entity productionPerShift, Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency,
             int progressForDayQuantity, boolean allowIncompleteUnits) {
         ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
-        int workersOnLine = workersOnLineService.getWorkersOnLine(order.getBelongsToField(OrderFields.PRODUCTION_LINE),
-                shift.getEntity(), range.getFrom());
+        int workersOnLine = getWorkersOnLine(progressForDaysContainer, order, shift, range);
         if (workersOnLine == 0) {
             progressForDaysContainer.addError(new ErrorMessage("productionPerShift.automaticAlgorithm.noAssignmentForShift",
                     false, order.getBelongsToField(OrderFields.PRODUCTION_LINE).getStringField(ProductionLineFields.NUMBER)));
@@ -49,6 +48,17 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
         return calculationHolder;
     }
 
+    private int getWorkersOnLine(ProgressForDaysContainer progressForDaysContainer, Entity order, Shift shift,
+            DateTimeRange range) {
+        // assignments are searched by date only, so workers don't change within one day of shift
+        String key = shift.getId() + "_" + range.getFrom().toLocalDate();
+
+        return progressForDaysContainer.getWorkersOnLine().computeIfAbsent(
+                key,
+                k -> workersOnLineService.getWorkersOnLine(order.getBelongsToField(OrderFields.PRODUCTION_LINE),
+                        shift.getEntity(), range.getFrom()));
+    }
+
     protected void calculateEfficiencyTime(ShiftEfficiencyCalculationHolder calculationHolder, BigDecimal shiftEfficiency,
             int workersOnLine, BigDecimal scaledNorm) {
         BigDecimal ratio = scaledNorm.multiply(new BigDecimal(workersOnLine), numberService.getMathContext());
@@ -68,6 +78,9 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
     }
 
     protected BigDecimal getStandardPerformanceNorm(ProgressForDaysContainer progressForDaysContainer, Entity order) {
+        if (progressForDaysContainer.getStandardPerformanceNorm() != null) {
+            return progressForDaysContainer.getStandardPerformanceNorm();
+        }
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY).getDataDefinition()
                 .get(order.getBelongsToField(OrderFields.TECHNOLOGY).getId());
         BigDecimal norm = technology.getDecimalField("standardPerformanceTechnology");
@@ -76,6 +89,7 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
                     "productionPerShift.automaticAlgorithm.technology.standardPerformanceTechnologyRequired", false));
             throw new IllegalStateException("No standard performance norm in technology");
         }
+        progressForDaysContainer.setStandardPerformanceNorm(norm);
         return norm;
     }
 
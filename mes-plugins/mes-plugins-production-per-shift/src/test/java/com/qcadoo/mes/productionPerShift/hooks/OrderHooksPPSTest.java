@@ -0,0 +1,161 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.hooks;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsExecutorService;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.productionPerShift.services.PpsInputFingerprintService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+
+public class OrderHooksPPSTest {
+
+    private static final String L_FINGERPRINT = "fingerprint";
+
+    private OrderHooksPPS orderHooksPPS;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Mock
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Mock
+    private PpsInputFingerprintService ppsInputFingerprintService;
+
+    @Mock
+    private DataDefinition orderDD, productionPerShiftDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private Entity order, orderFromDB, productionPerShift;
+
+    @Mock
+    private EntityList progressForDays;
+
+    @Before
+    public void init() {
+        orderHooksPPS = new OrderHooksPPS();
+
+        MockitoAnnotations.initMocks(this);
+
+        ReflectionTestUtils.setField(orderHooksPPS, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(orderHooksPPS, "automaticPpsExecutorService", automaticPpsExecutorService);
+        ReflectionTestUtils.setField(orderHooksPPS, "automaticPpsParametersService", automaticPpsParametersService);
+        ReflectionTestUtils.setField(orderHooksPPS, "ppsInputFingerprintService", ppsInputFingerprintService);
+
+        given(order.getId()).willReturn(1L);
+        given(orderDD.get(1L)).willReturn(orderFromDB);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.PENDING);
+
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)).willReturn(productionPerShiftDD);
+        given(productionPerShiftDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setMaxResults(1)).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(productionPerShift);
+
+        given(productionPerShift.getDataDefinition()).willReturn(productionPerShiftDD);
+        given(productionPerShift.getHasManyField(ProductionPerShiftFields.PROGRES_FOR_DAYS)).willReturn(progressForDays);
+        given(progressForDays.isEmpty()).willReturn(false);
+        given(productionPerShift.getStringField(ProductionPerShiftFields.INPUT_FINGERPRINT)).willReturn(L_FINGERPRINT);
+
+        given(automaticPpsParametersService.isAutomaticPlanForShiftOn()).willReturn(true);
+        given(ppsInputFingerprintService.getFingerprint(order, false)).willReturn(L_FINGERPRINT);
+    }
+
+    @Test
+    public void shouldNotRegenerateExistingPlanWhenInputIsUnchanged() throws Exception {
+        // given
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(BigDecimal.TEN);
+        given(orderFromDB.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(BigDecimal.ONE);
+
+        // when
+        orderHooksPPS.regenerateProductionPerShift(orderDD, order);
+
+        // then
+        verify(automaticPpsExecutorService, never()).generateProgressForDays(any(ProgressForDaysContainer.class),
+                any(Entity.class));
+        verify(productionPerShiftDD, never()).save(productionPerShift);
+    }
+
+    @Test
+    public void shouldRegenerateExistingPlanWhenInputHasChanged() throws Exception {
+        // given
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(BigDecimal.TEN);
+        given(orderFromDB.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(BigDecimal.ONE);
+        given(productionPerShift.getStringField(ProductionPerShiftFields.INPUT_FINGERPRINT)).willReturn("previousFingerprint");
+
+        // when
+        orderHooksPPS.regenerateProductionPerShift(orderDD, order);
+
+        // then
+        verify(automaticPpsExecutorService).generateProgressForDays(any(ProgressForDaysContainer.class),
+                any(Entity.class));
+        verify(productionPerShift).setField(ProductionPerShiftFields.INPUT_FINGERPRINT, L_FINGERPRINT);
+        verify(productionPerShiftDD).save(productionPerShift);
+    }
+
+    @Test
+    public void shouldRegenerateExplicitlyRequestedPlanEvenIfInputIsUnchanged() throws Exception {
+        // given
+        given(order.getBooleanField("generatePPS")).willReturn(true);
+
+        // when
+        orderHooksPPS.regenerateProductionPerShift(orderDD, order);
+
+        // then
+        verify(automaticPpsExecutorService).generateProgressForDays(any(ProgressForDaysContainer.class),
+                any(Entity.class));
+        verify(productionPerShiftDD).save(productionPerShift);
+    }
+
+}
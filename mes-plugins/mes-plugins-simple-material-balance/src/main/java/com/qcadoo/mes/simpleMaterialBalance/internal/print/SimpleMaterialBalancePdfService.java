@@ -32,11 +32,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
@@ -175,6 +177,9 @@ public final class SimpleMaterialBalancePdfService extends PdfDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        Map<Long, Map<Long, BigDecimal>> quantitiesInLocations = getQuantitiesInLocations(simpleMaterialBalance,
+                simpleMaterialBalanceLocationComponents, neededProductQuantities.keySet());
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
             Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
 
@@ -183,9 +188,8 @@ public final class SimpleMaterialBalancePdfService extends PdfDocumentService {
             table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_RIGHT);
             table.addCell(new Phrase(numberService.format(neededProductQuantity.getValue()), FontUtils.getDejavuRegular7Dark()));
             BigDecimal available = BigDecimal.ZERO;
-            for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)));
+            for (Map<Long, BigDecimal> quantitiesInLocation : quantitiesInLocations.values()) {
+                available = available.add(quantitiesInLocation.get(product.getId()));
             }
             table.addCell(new Phrase(numberService.format(available), FontUtils.getDejavuRegular7Dark()));
             table.addCell(new Phrase(numberService.format(available.subtract(neededProductQuantity.getValue(),
@@ -250,4 +254,16 @@ public final class SimpleMaterialBalancePdfService extends PdfDocumentService {
         return translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.title", locale);
     }
 
+    private Map<Long, Map<Long, BigDecimal>> getQuantitiesInLocations(final Entity simpleMaterialBalance,
+            final List<Entity> simpleMaterialBalanceLocationComponents, final Set<Long> productIds) {
+        Set<Long> locationIds = Sets.newHashSet();
+
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            locationIds.add(simpleMaterialBalanceLocationComponent.getBelongsToField(L_LOCATION).getId());
+        }
+
+        return materialFlowService.calculateShouldBeInLocations(locationIds, productIds,
+                (Date) simpleMaterialBalance.getField(L_DATE));
+    }
+
 }
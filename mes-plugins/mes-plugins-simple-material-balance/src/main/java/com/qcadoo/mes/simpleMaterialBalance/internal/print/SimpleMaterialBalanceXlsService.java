@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFRow;
@@ -36,6 +37,7 @@ import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.materialFlow.MaterialFlowService;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
@@ -118,6 +120,9 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        Map<Long, Map<Long, BigDecimal>> quantitiesInLocations = getQuantitiesInLocations(simpleMaterialBalance,
+                simpleMaterialBalanceLocationComponents, neededProductQuantities.keySet());
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
             Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
 
@@ -127,10 +132,8 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
             row.createCell(2).setCellValue(product.getField(L_UNIT).toString());
             row.createCell(3).setCellValue(numberService.format(neededProductQuantity.getValue()));
             BigDecimal available = BigDecimal.ZERO;
-            for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)),
-                        numberService.getMathContext());
+            for (Map<Long, BigDecimal> quantitiesInLocation : quantitiesInLocations.values()) {
+                available = available.add(quantitiesInLocation.get(product.getId()), numberService.getMathContext());
             }
             row.createCell(4).setCellValue(numberService.format(available));
             row.createCell(5)
@@ -146,6 +149,18 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
         sheet.autoSizeColumn((short) 5);
     }
 
+    private Map<Long, Map<Long, BigDecimal>> getQuantitiesInLocations(final Entity simpleMaterialBalance,
+            final List<Entity> simpleMaterialBalanceLocationComponents, final Set<Long> productIds) {
+        Set<Long> locationIds = Sets.newHashSet();
+
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            locationIds.add(simpleMaterialBalanceLocationComponent.getBelongsToField(L_LOCATION).getId());
+        }
+
+        return materialFlowService.calculateShouldBeInLocations(locationIds, productIds,
+                (Date) simpleMaterialBalance.getField(L_DATE));
+    }
+
     @Override
     public String getReportTitle(final Locale locale) {
         return translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.title", locale);
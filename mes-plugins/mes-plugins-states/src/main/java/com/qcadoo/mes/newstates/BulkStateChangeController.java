@@ -0,0 +1,32 @@
+package com.qcadoo.mes.newstates;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public final class BulkStateChangeController {
+
+    @Autowired
+    private BulkStateExecutorService bulkStateExecutorService;
+
+    @ResponseBody
+    @RequestMapping(value = "/states/bulkChange/{progressId}", method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkStateChangeProgress> getProgress(@PathVariable("progressId") final String progressId) {
+        BulkStateChangeProgress progress = bulkStateExecutorService.getProgress(progressId);
+
+        if (progress == null) {
+            return new ResponseEntity<BulkStateChangeProgress>(HttpStatus.NOT_FOUND);
+        }
+
+        return new ResponseEntity<BulkStateChangeProgress>(progress, HttpStatus.OK);
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+/**
+ * Progress of state change of many entities started by {@link BulkStateExecutorService}. It's updated by worker threads after
+ * each entity, so it can be polled while the change is still running.
+ */
+public final class BulkStateChangeProgress {
+
+    private final String id;
+
+    private final String targetState;
+
+    private final int total;
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private final List<Long> successfulIds = new CopyOnWriteArrayList<>();
+
+    private final Map<Long, List<ErrorMessage>> failures = new ConcurrentHashMap<>();
+
+    private volatile long finishTime;
+
+    BulkStateChangeProgress(final String id, final String targetState, final int total) {
+        this.id = id;
+        this.targetState = targetState;
+        this.total = total;
+
+        if (total == 0) {
+            finishTime = System.currentTimeMillis();
+        }
+    }
+
+    void success(final Long entityId) {
+        successfulIds.add(entityId);
+        markProcessed();
+    }
+
+    void failure(final Long entityId, final List<ErrorMessage> errorMessages) {
+        failures.put(entityId, errorMessages);
+        markProcessed();
+    }
+
+    private void markProcessed() {
+        if (processed.incrementAndGet() >= total) {
+            finishTime = System.currentTimeMillis();
+        }
+    }
+
+    boolean isExpired(final long now, final long timeToLive) {
+        return isDone() && (now - finishTime > timeToLive);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTargetState() {
+        return targetState;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public boolean isDone() {
+        return finishTime > 0;
+    }
+
+    public List<Long> getSuccessfulIds() {
+        return Collections.unmodifiableList(successfulIds);
+    }
+
+    public Map<Long, List<ErrorMessage>> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+}
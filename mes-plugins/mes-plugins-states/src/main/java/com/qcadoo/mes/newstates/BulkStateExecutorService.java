@@ -0,0 +1,245 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+/**
+ * Changes state of many entities in a bounded pool of worker threads, so accepting or completing hundreds of entities selected
+ * in a grid doesn't block the request thread. Every entity goes through all state change phases in its own transaction, using
+ * the same {@link StateExecutorService} logic as single change, including the check for another change in progress.
+ */
+@Service
+public class BulkStateExecutorService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkStateExecutorService.class);
+
+    private static final int WORKERS_NUMBER = 4;
+
+    private static final String L_STATE = "state";
+
+    private static final String L_ID = "id";
+
+    private static final String L_GROUP_ID = "groupId";
+
+    private static final String L_INTERNAL_SERVER_ERROR = "states.messages.change.failure.internalServerErrorWithCause";
+
+    private static final long PROGRESS_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(30);
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private final Map<String, BulkStateChangeProgress> progresses = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executorService;
+
+    @PostConstruct
+    public void init() {
+        executorService = Executors.newScheduledThreadPool(WORKERS_NUMBER, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("bulk-state-executor-%d").build());
+        executorService.scheduleWithFixedDelay(() -> evictExpiredProgresses(System.currentTimeMillis()),
+                PROGRESS_TIME_TO_LIVE, PROGRESS_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Starts changing state of entities with given ids and returns immediately. Duplicated ids are changed only once.
+     * 
+     * @param serviceMarker
+     *            marker of state services used for the change, like in {@link StateExecutorService#changeState}
+     * @param dataDefinition
+     *            data definition of changed entities
+     * @param ids
+     *            ids of changed entities
+     * @param targetState
+     *            target state
+     * @return progress of change, which can be also fetched later using {@link #getProgress(String)}
+     */
+    public <M extends StateService> BulkStateChangeProgress changeState(final Class<M> serviceMarker,
+            final DataDefinition dataDefinition, final List<Long> ids, final String targetState) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+
+        List<List<Long>> idGroups = Lists.newArrayList();
+
+        for (Long id : uniqueIds) {
+            idGroups.add(Lists.newArrayList(id));
+        }
+
+        return changeState(serviceMarker, dataDefinition, idGroups, uniqueIds.size(), targetState);
+    }
+
+    /**
+     * Starts changing state of entities with given ids and returns immediately. Duplicated ids are changed only once.
+     * Entities pointing to the same record by given belongs-to field are changed one after another by the same worker, so
+     * state services updating that record, like the order of production records, never do it concurrently.
+     * 
+     * @param serviceMarker
+     *            marker of state services used for the change, like in {@link StateExecutorService#changeState}
+     * @param dataDefinition
+     *            data definition of changed entities
+     * @param ids
+     *            ids of changed entities
+     * @param targetState
+     *            target state
+     * @param groupingFieldName
+     *            name of belongs-to field of changed entities, which points to the record shared by them
+     * @return progress of change, which can be also fetched later using {@link #getProgress(String)}
+     */
+    public <M extends StateService> BulkStateChangeProgress changeState(final Class<M> serviceMarker,
+            final DataDefinition dataDefinition, final List<Long> ids, final String targetState,
+            final String groupingFieldName) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+
+        Map<Long, List<Long>> idsByGroup = new LinkedHashMap<>();
+
+        if (!uniqueIds.isEmpty()) {
+            List<Entity> rows = dataDefinition.find().createAlias(groupingFieldName, groupingFieldName, JoinType.LEFT)
+                    .add(SearchRestrictions.in("id", uniqueIds))
+                    .setProjection(SearchProjections.list().add(SearchProjections.alias(SearchProjections.id(), L_ID))
+                            .add(SearchProjections.alias(SearchProjections.field(groupingFieldName + ".id"), L_GROUP_ID)))
+                    .list().getEntities();
+
+            for (Entity row : rows) {
+                Long groupId = (Long) row.getField(L_GROUP_ID);
+
+                if (groupId != null) {
+                    idsByGroup.computeIfAbsent(groupId, key -> Lists.newArrayList()).add((Long) row.getField(L_ID));
+                }
+            }
+        }
+
+        List<List<Long>> idGroups = Lists.newArrayList(idsByGroup.values());
+
+        Set<Long> groupedIds = new HashSet<>();
+        idsByGroup.values().forEach(groupedIds::addAll);
+
+        for (Long id : uniqueIds) {
+            if (!groupedIds.contains(id)) {
+                idGroups.add(Lists.newArrayList(id));
+            }
+        }
+
+        return changeState(serviceMarker, dataDefinition, idGroups, uniqueIds.size(), targetState);
+    }
+
+    private <M extends StateService> BulkStateChangeProgress changeState(final Class<M> serviceMarker,
+            final DataDefinition dataDefinition, final List<List<Long>> idGroups, final int total, final String targetState) {
+        BulkStateChangeProgress progress = new BulkStateChangeProgress(UUID.randomUUID().toString(), targetState, total);
+
+        progresses.put(progress.getId(), progress);
+
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        for (List<Long> groupIds : idGroups) {
+            // failure messages are collected by executor, so each worker task needs its own
+            StateExecutorService stateExecutorService = applicationContext.getAutowireCapableBeanFactory().createBean(
+                    StateExecutorService.class);
+
+            executorService.submit(() -> {
+                SecurityContextHolder.setContext(securityContext);
+
+                try {
+                    for (Long id : groupIds) {
+                        changeState(stateExecutorService, serviceMarker, dataDefinition, id, progress);
+                    }
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            });
+        }
+
+        return progress;
+    }
+
+    /**
+     * Returns progress of bulk state change. Finished changes are forgotten 30 minutes after their last
+     * entity has been processed, whether they have been fetched or not.
+     * 
+     * @param progressId
+     *            id of progress returned by {@link #changeState}
+     * @return progress or null, if there is no such change
+     */
+    public BulkStateChangeProgress getProgress(final String progressId) {
+        evictExpiredProgresses(System.currentTimeMillis());
+
+        return progresses.get(progressId);
+    }
+
+    void evictExpiredProgresses(final long now) {
+        progresses.values().removeIf(progress -> progress.isExpired(now, PROGRESS_TIME_TO_LIVE));
+    }
+
+    private <M extends StateService> void changeState(final StateExecutorService stateExecutorService,
+            final Class<M> serviceMarker, final DataDefinition dataDefinition, final Long id,
+            final BulkStateChangeProgress progress) {
+        try {
+            changeStateInNewTransaction(stateExecutorService, serviceMarker, dataDefinition, id, progress);
+        } catch (Exception exception) {
+            LOG.warn(String.format("Can't perform state change. Entity name : %S id : %d. Target state : %S",
+                    dataDefinition.getName(), id, progress.getTargetState()), exception);
+
+            List<ErrorMessage> errorMessages = Lists.newArrayList(new ErrorMessage(L_INTERNAL_SERVER_ERROR,
+                    String.valueOf(exception.getMessage())));
+            errorMessages.addAll(stateExecutorService.pollFailureMessages());
+
+            progress.failure(id, errorMessages);
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    private <M extends StateService> void changeStateInNewTransaction(final StateExecutorService stateExecutorService,
+            final Class<M> serviceMarker, final DataDefinition dataDefinition, final Long id,
+            final BulkStateChangeProgress progress) {
+        Entity entity = dataDefinition.getMasterModelEntity(id);
+
+        entity = stateExecutorService.changeState(serviceMarker, entity, progress.getTargetState());
+
+        // another change in progress or not allowed transition leave no errors on entity, only failure messages
+        List<ErrorMessage> failureMessages = stateExecutorService.pollFailureMessages();
+
+        if (entity.isValid() && progress.getTargetState().equals(entity.getStringField(L_STATE))) {
+            progress.success(id);
+        } else {
+            List<ErrorMessage> errorMessages = Lists.newArrayList(entity.getGlobalErrors());
+            errorMessages.addAll(entity.getErrors().values());
+            errorMessages.addAll(failureMessages);
+
+            progress.failure(id, errorMessages);
+        }
+    }
+
+}
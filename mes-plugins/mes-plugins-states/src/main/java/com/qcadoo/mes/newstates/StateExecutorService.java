@@ -61,6 +61,8 @@ public class StateExecutorService {
 
     private ComponentMessagesHolder componentMessagesHolder;
 
+    private final List<ErrorMessage> failureMessages = Lists.newArrayList();
+
     private static final Logger LOGGER = Logger.getLogger(StateExecutorService.class);
 
     public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
@@ -352,9 +354,24 @@ public class StateExecutorService {
     private void message(String msg, ComponentState.MessageType messageType) {
         if (componentMessagesHolder != null) {
             componentMessagesHolder.addMessage(msg, messageType);
+        } else if (ComponentState.MessageType.FAILURE.equals(messageType)) {
+            failureMessages.add(new ErrorMessage(msg));
         }
     }
 
+    /**
+     * Returns failure messages of state changes performed without a view, like another change in progress or not allowed
+     * transition, and forgets them.
+     * 
+     * @return failure messages collected since the last call
+     */
+    public List<ErrorMessage> pollFailureMessages() {
+        List<ErrorMessage> messages = Lists.newArrayList(failureMessages);
+        failureMessages.clear();
+
+        return messages;
+    }
+
     private void checkForUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
         final String ownerFieldName = describer.getOwnerFieldName();
         final String statusFieldName = describer.getStatusFieldName();
@@ -0,0 +1,252 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+public class BulkStateExecutorServiceTest {
+
+    private static final String L_TARGET_STATE = "02accepted";
+
+    private BulkStateExecutorService bulkStateExecutorService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Mock
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private DataDefinition dataDefinition;
+
+    @Mock
+    private Entity firstEntity, secondEntity;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        bulkStateExecutorService = new BulkStateExecutorService();
+
+        ReflectionTestUtils.setField(bulkStateExecutorService, "applicationContext", applicationContext);
+
+        given(applicationContext.getAutowireCapableBeanFactory()).willReturn(beanFactory);
+        given(beanFactory.createBean(StateExecutorService.class)).willReturn(stateExecutorService);
+
+        stubEntity(1L, firstEntity);
+        stubEntity(2L, secondEntity);
+
+        bulkStateExecutorService.init();
+    }
+
+    @After
+    public void destroy() {
+        bulkStateExecutorService.destroy();
+    }
+
+    private void stubEntity(final Long id, final Entity entity) {
+        given(dataDefinition.getMasterModelEntity(id)).willReturn(entity);
+        given(entity.isValid()).willReturn(true);
+        given(entity.getStringField("state")).willReturn(L_TARGET_STATE);
+    }
+
+    @Test
+    public final void shouldChangeStateOfEachEntityOnce() throws InterruptedException {
+        // given
+        given(stateExecutorService.changeState(StateService.class, firstEntity, L_TARGET_STATE)).willReturn(firstEntity);
+        given(stateExecutorService.changeState(StateService.class, secondEntity, L_TARGET_STATE)).willReturn(secondEntity);
+
+        // when
+        BulkStateChangeProgress progress = bulkStateExecutorService.changeState(StateService.class, dataDefinition,
+                Lists.newArrayList(1L, 2L, 1L), L_TARGET_STATE);
+
+        awaitDone(progress);
+
+        // then
+        assertEquals(2, progress.getTotal());
+        assertEquals(2, progress.getProcessed());
+        assertTrue(progress.getSuccessfulIds().containsAll(Lists.newArrayList(1L, 2L)));
+        assertTrue(progress.getFailures().isEmpty());
+
+        verify(stateExecutorService, times(1)).changeState(StateService.class, firstEntity, L_TARGET_STATE);
+        verify(stateExecutorService, times(1)).changeState(StateService.class, secondEntity, L_TARGET_STATE);
+    }
+
+    @Test
+    public final void shouldRecordMessageOfUnexpectedException() throws InterruptedException {
+        // given
+        given(stateExecutorService.changeState(StateService.class, firstEntity, L_TARGET_STATE)).willThrow(
+                new IllegalStateException("connection lost"));
+
+        // when
+        BulkStateChangeProgress progress = bulkStateExecutorService.changeState(StateService.class, dataDefinition,
+                Lists.newArrayList(1L), L_TARGET_STATE);
+
+        awaitDone(progress);
+
+        // then
+        List<ErrorMessage> errorMessages = progress.getFailures().get(1L);
+
+        assertEquals(1, errorMessages.size());
+        assertEquals("states.messages.change.failure.internalServerErrorWithCause", errorMessages.get(0).getMessage());
+        assertEquals("connection lost", errorMessages.get(0).getVars()[0]);
+    }
+
+    @Test
+    public final void shouldRecordFailureMessagesOfRejectedChange() throws InterruptedException {
+        // given
+        given(firstEntity.getStringField("state")).willReturn("01pending");
+        given(stateExecutorService.changeState(StateService.class, firstEntity, L_TARGET_STATE)).willReturn(firstEntity);
+        given(stateExecutorService.pollFailureMessages()).willReturn(
+                Lists.newArrayList(new ErrorMessage("states.messages.change.failure.anotherChangeInProgress")));
+
+        // when
+        BulkStateChangeProgress progress = bulkStateExecutorService.changeState(StateService.class, dataDefinition,
+                Lists.newArrayList(1L), L_TARGET_STATE);
+
+        awaitDone(progress);
+
+        // then
+        List<ErrorMessage> errorMessages = progress.getFailures().get(1L);
+
+        assertEquals(1, errorMessages.size());
+        assertEquals("states.messages.change.failure.anotherChangeInProgress", errorMessages.get(0).getMessage());
+    }
+
+    @Test
+    public final void shouldChangeStateOfEntitiesFromOneGroupByOneWorker() throws InterruptedException {
+        // given
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+        Entity firstRow = mockRow(1L, 10L);
+        Entity secondRow = mockRow(2L, 10L);
+
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.createAlias("order", "order", JoinType.LEFT)).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setProjection(any(SearchProjection.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(firstRow, secondRow));
+
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+
+        given(stateExecutorService.changeState(StateService.class, firstEntity, L_TARGET_STATE)).willAnswer(
+                invocation -> recordThreadName(threadNames, firstEntity));
+        given(stateExecutorService.changeState(StateService.class, secondEntity, L_TARGET_STATE)).willAnswer(
+                invocation -> recordThreadName(threadNames, secondEntity));
+
+        // when
+        BulkStateChangeProgress progress = bulkStateExecutorService.changeState(StateService.class, dataDefinition,
+                Lists.newArrayList(1L, 2L), L_TARGET_STATE, "order");
+
+        awaitDone(progress);
+
+        // then
+        assertEquals(Lists.newArrayList(1L, 2L), progress.getSuccessfulIds());
+        assertEquals(2, threadNames.size());
+        assertEquals(threadNames.get(0), threadNames.get(1));
+    }
+
+    private Entity mockRow(final Long id, final Long groupId) {
+        Entity row = mock(Entity.class);
+
+        given(row.getField("id")).willReturn(id);
+        given(row.getField("groupId")).willReturn(groupId);
+
+        return row;
+    }
+
+    private Entity recordThreadName(final List<String> threadNames, final Entity entity) {
+        threadNames.add(Thread.currentThread().getName());
+
+        return entity;
+    }
+
+    @Test
+    public final void shouldEvictFinishedProgressAfterTimeToLive() throws InterruptedException {
+        // given
+        given(stateExecutorService.changeState(StateService.class, firstEntity, L_TARGET_STATE)).willReturn(firstEntity);
+
+        BulkStateChangeProgress progress = bulkStateExecutorService.changeState(StateService.class, dataDefinition,
+                Lists.newArrayList(1L), L_TARGET_STATE);
+
+        awaitDone(progress);
+
+        // when
+        bulkStateExecutorService.evictExpiredProgresses(System.currentTimeMillis());
+
+        BulkStateChangeProgress fetchedProgress = bulkStateExecutorService.getProgress(progress.getId());
+
+        bulkStateExecutorService.evictExpiredProgresses(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        // then
+        assertNotNull(fetchedProgress);
+        assertNull(bulkStateExecutorService.getProgress(progress.getId()));
+    }
+
+    private void awaitDone(final BulkStateChangeProgress progress) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+
+        while (!progress.isDone() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(progress.isDone());
+    }
+
+}
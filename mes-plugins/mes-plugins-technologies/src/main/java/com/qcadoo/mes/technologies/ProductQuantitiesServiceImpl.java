@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -66,6 +67,10 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
 
     private static final String L_QUANTITY = "quantity";
 
+    private static final int MAX_CACHED_PLANS = 1000;
+
+    private final ConcurrentMap<Long, TechnologyQuantitiesPlan> technologyQuantitiesPlans = Maps.newConcurrentMap();
+
     @Autowired
     private NumberService numberService;
 
@@ -207,29 +212,46 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     public OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForTechnology(final Entity technology,
             final BigDecimal givenQuantity, final Map<Long, BigDecimal> operationRuns,
             final Set<OperationProductComponentHolder> nonComponents) {
-        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+        return getTechnologyQuantitiesPlan(technology).evaluate(givenQuantity, numberService.getMathContext(), operationRuns,
+                nonComponents);
+    }
 
-        EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
-        Entity root = operationComponents.getRoot();
+    private TechnologyQuantitiesPlan getTechnologyQuantitiesPlan(final Entity technology) {
+        Long technologyId = technology.getId();
 
-        if (root != null) {
-            preloadProductQuantitiesAndOperationRuns(operationComponents, operationProductComponentWithQuantityContainer,
-                    operationRuns);
-            traverseProductQuantitiesAndOperationRuns(technology, givenQuantity, root, null,
-                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
+        if (technologyId != null) {
+            TechnologyQuantitiesPlan technologyQuantitiesPlan = technologyQuantitiesPlans.get(technologyId);
+
+            if (technologyQuantitiesPlan != null) {
+                return technologyQuantitiesPlan;
+            }
         }
 
-        return operationProductComponentWithQuantityContainer;
-    }
+        TechnologyQuantitiesPlan technologyQuantitiesPlan = TechnologyQuantitiesPlan.compile(technology);
 
-    private EntityTree getOperationComponentsFromTechnology(final Entity technology) {
-        return technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        // only accepted and outdated technologies can't change anymore, so only their plans may be reused
+        if ((technologyId != null) && technologyQuantitiesPlan.isImmutable()) {
+            if (technologyQuantitiesPlans.size() >= MAX_CACHED_PLANS) {
+                technologyQuantitiesPlans.clear();
+            }
+
+            technologyQuantitiesPlans.put(technologyId, technologyQuantitiesPlan);
+        }
+
+        return technologyQuantitiesPlan;
     }
 
+    /**
+     * Expands each distinct technology of given orders only once and evaluates its plan for each order. Quantities of orders
+     * aren't summed up before evaluation, as components are rounded up after each operation, so the needs wouldn't match the
+     * sum of needs of single orders. This method is overridden by basic production counting for orders, which already have their
+     * production counting quantities.
+     */
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
             final boolean onTheFly) {
         Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
+        Map<Long, TechnologyQuantitiesPlan> technologyQuantitiesPlansForOrders = Maps.newHashMap();
 
         for (Entity order : orders) {
             BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
@@ -240,8 +262,16 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
                 throw new IllegalStateException("Order doesn't contain technology.");
             }
 
-            productComponentWithQuantitiesForOrders.put(order.getId(),
-                    getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity, operationRuns, nonComponents));
+            TechnologyQuantitiesPlan technologyQuantitiesPlan = technologyQuantitiesPlansForOrders.get(technology.getId());
+
+            if (technologyQuantitiesPlan == null) {
+                technologyQuantitiesPlan = getTechnologyQuantitiesPlan(technology);
+
+                technologyQuantitiesPlansForOrders.put(technology.getId(), technologyQuantitiesPlan);
+            }
+
+            productComponentWithQuantitiesForOrders.put(order.getId(), technologyQuantitiesPlan.evaluate(plannedQuantity,
+                    numberService.getMathContext(), operationRuns, nonComponents));
         }
 
         return groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
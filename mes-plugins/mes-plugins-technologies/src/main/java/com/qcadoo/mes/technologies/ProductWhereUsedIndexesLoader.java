@@ -0,0 +1,67 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.qcadoo.mes.basic.DatabaseIndexesHelper;
+
+/**
+ * Creates indexes on the foreign keys followed by where-used queries of {@link ProductWhereUsedService}, so that finding
+ * technologies using a product doesn't scan whole product components tables.
+ */
+@Component
+public class ProductWhereUsedIndexesLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductWhereUsedIndexesLoader.class);
+
+    private static final String[][] WHERE_USED_INDEXES = {
+            { "technologies_opic_product_id_idx", "technologies_operationproductincomponent", "product_id" },
+            { "technologies_opic_operationcomponent_id_idx", "technologies_operationproductincomponent",
+                    "operationcomponent_id" },
+            { "technologies_toc_technology_id_idx", "technologies_technologyoperationcomponent", "technology_id" },
+            { "technologies_toc_referencetechnology_id_idx", "technologies_technologyoperationcomponent",
+                    "referencetechnology_id" } };
+
+    @Autowired
+    private DatabaseIndexesHelper databaseIndexesHelper;
+
+    public void loadWhereUsedIndexes() {
+        if (!databaseIndexesHelper.indexesCanBeCreated()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("CREATE INDEX IF NOT EXISTS is not supported, where-used indexes won't be created");
+            }
+
+            return;
+        }
+
+        for (String[] index : WHERE_USED_INDEXES) {
+            databaseIndexesHelper.createIndexIfNotExists(index[0], index[1], String.format("(%s)", index[2]));
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.dto.TechnologyUsageDTO;
+
+/**
+ * Answers where-used questions for products: which pattern technologies consume the product, directly or through technologies
+ * of the products made from it (and technologies referencing them as sub-technologies). Each level is resolved with a single
+ * query over the product and technology foreign keys, indexed by {@link ProductWhereUsedIndexesLoader}.
+ */
+@Service
+public class ProductWhereUsedService {
+
+    private static final String L_PRODUCT_IDS = "productIds";
+
+    private static final String L_TECHNOLOGY_IDS = "technologyIds";
+
+    private static final String L_PATTERN_TECHNOLOGY = "t.technologytype IS NULL AND t.active = true";
+
+    private static final String L_TECHNOLOGIES_USING_PRODUCTS_QUERY = "SELECT DISTINCT t.id, t.product_id "
+            + "FROM technologies_technology t "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = t.id "
+            + "JOIN technologies_operationproductincomponent opic ON opic.operationcomponent_id = toc.id "
+            + "WHERE " + L_PATTERN_TECHNOLOGY + " AND opic.product_id IN (:productIds)";
+
+    private static final String L_TECHNOLOGIES_REFERENCING_TECHNOLOGIES_QUERY = "SELECT DISTINCT t.id, t.product_id "
+            + "FROM technologies_technology t "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.technology_id = t.id "
+            + "WHERE " + L_PATTERN_TECHNOLOGY + " AND toc.referencetechnology_id IN (:technologyIds)";
+
+    private static final String L_TECHNOLOGY_USAGES_QUERY = "SELECT t.id, t.number, t.name, t.state, "
+            + "p.number AS productNumber, usages.level "
+            + "FROM unnest(string_to_array(:technologyIds, ',')::bigint[], string_to_array(:levels, ',')::integer[]) "
+            + "AS usages(id, level) JOIN technologies_technology t ON t.id = usages.id "
+            + "LEFT JOIN basic_product p ON p.id = t.product_id "
+            + "ORDER BY usages.level, t.number, t.id LIMIT :limit OFFSET :first";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * @param productId
+     *            id of the product
+     * @return ids of pattern technologies using the product, mapped to the level of use (1 - the product is consumed
+     *         directly), in the order of levels
+     */
+    public Map<Long, Integer> findTechnologyLevels(final Long productId) {
+        Map<Long, Integer> technologyLevels = Maps.newLinkedHashMap();
+
+        Set<Long> visitedProductIds = Sets.newHashSet(productId);
+        Set<Long> productIds = Sets.newHashSet(productId);
+        Set<Long> technologyIds = Sets.newHashSet();
+
+        int level = 1;
+
+        while (!productIds.isEmpty() || !technologyIds.isEmpty()) {
+            Set<Long> nextProductIds = Sets.newHashSet();
+            Set<Long> nextTechnologyIds = Sets.newHashSet();
+
+            for (Map<String, Object> row : findTechnologiesUsing(productIds, technologyIds)) {
+                Long technologyId = ((Number) row.get("id")).longValue();
+
+                if (technologyLevels.containsKey(technologyId)) {
+                    continue;
+                }
+
+                technologyLevels.put(technologyId, level);
+                nextTechnologyIds.add(technologyId);
+
+                Number technologyProductId = (Number) row.get("product_id");
+
+                if ((technologyProductId != null) && visitedProductIds.add(technologyProductId.longValue())) {
+                    nextProductIds.add(technologyProductId.longValue());
+                }
+            }
+
+            productIds = nextProductIds;
+            technologyIds = nextTechnologyIds;
+            level++;
+        }
+
+        return technologyLevels;
+    }
+
+    /**
+     * @param productId
+     *            id of the product
+     * @param first
+     *            index of the first usage to return, not negative
+     * @param limit
+     *            max number of usages to return, not negative
+     * @return page of pattern technologies using the product, ordered by level of use and technology number
+     */
+    public List<TechnologyUsageDTO> getTechnologyUsages(final Long productId, final int first, final int limit) {
+        Preconditions.checkArgument((first >= 0) && (limit >= 0), "first and limit mustn't be negative");
+
+        Map<Long, Integer> technologyLevels = findTechnologyLevels(productId);
+
+        if (technologyLevels.isEmpty() || (first >= technologyLevels.size()) || (limit == 0)) {
+            return Collections.emptyList();
+        }
+
+        // only the requested page of technologies is loaded, levels are passed along with their ids
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue(L_TECHNOLOGY_IDS, Joiner.on(',').join(technologyLevels.keySet()));
+        parameters.addValue("levels", Joiner.on(',').join(technologyLevels.values()));
+        parameters.addValue("first", first);
+        parameters.addValue("limit", limit);
+
+        return jdbcTemplate.query(L_TECHNOLOGY_USAGES_QUERY, parameters,
+                BeanPropertyRowMapper.newInstance(TechnologyUsageDTO.class));
+    }
+
+    private List<Map<String, Object>> findTechnologiesUsing(final Set<Long> productIds, final Set<Long> technologyIds) {
+        List<String> queries = Lists.newArrayList();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        if (!productIds.isEmpty()) {
+            queries.add(L_TECHNOLOGIES_USING_PRODUCTS_QUERY);
+            parameters.addValue(L_PRODUCT_IDS, productIds);
+        }
+        if (!technologyIds.isEmpty()) {
+            queries.add(L_TECHNOLOGIES_REFERENCING_TECHNOLOGIES_QUERY);
+            parameters.addValue(L_TECHNOLOGY_IDS, technologyIds);
+        }
+
+        return jdbcTemplate.queryForList(String.join(" UNION ", queries), parameters);
+    }
+
+}
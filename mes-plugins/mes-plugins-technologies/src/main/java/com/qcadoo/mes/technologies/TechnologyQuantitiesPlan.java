@@ -0,0 +1,348 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+
+/**
+ * Technology's operation tree compiled into flat arrays, with reference technologies inlined.
+ * 
+ * Operations are kept in the same pre-order in which ProductQuantitiesServiceImpl used to traverse the tree, each of them with
+ * the component quantities it scales and the (input, output) quantity pairs its multiplier is computed from. Evaluating the plan
+ * for a given quantity is a single pass over these arrays, without touching any entity.
+ */
+public final class TechnologyQuantitiesPlan {
+
+    private static final int SCALE = 5;
+
+    private static final int GIVEN_QUANTITY = -1;
+
+    private final OperationProductComponentHolder[] components;
+
+    private final BigDecimal[] quantities;
+
+    private final Long[] preloadedOperationIds;
+
+    private final Long[] operationIds;
+
+    private final boolean[] productQuantitiesDivisible;
+
+    private final boolean[] tjDivisible;
+
+    private final int[][] inComponents;
+
+    private final int[][] outComponents;
+
+    // pairs of (needed quantity component or GIVEN_QUANTITY, actual quantity component)
+    private final int[][] multipliers;
+
+    private final Set<OperationProductComponentHolder> nonComponents;
+
+    private final boolean immutable;
+
+    private TechnologyQuantitiesPlan(final Compiler compiler) {
+        this.components = compiler.components.toArray(new OperationProductComponentHolder[compiler.components.size()]);
+        this.quantities = compiler.quantities.toArray(new BigDecimal[compiler.quantities.size()]);
+        this.preloadedOperationIds = compiler.preloadedOperationIds.toArray(new Long[compiler.preloadedOperationIds.size()]);
+        this.operationIds = compiler.operationIds.toArray(new Long[compiler.operationIds.size()]);
+        this.productQuantitiesDivisible = toArray(compiler.productQuantitiesDivisible);
+        this.tjDivisible = toArray(compiler.tjDivisible);
+        this.inComponents = compiler.inComponents.toArray(new int[compiler.inComponents.size()][]);
+        this.outComponents = compiler.outComponents.toArray(new int[compiler.outComponents.size()][]);
+        this.multipliers = compiler.multipliers.toArray(new int[compiler.multipliers.size()][]);
+        this.nonComponents = Collections.unmodifiableSet(compiler.nonComponents);
+        this.immutable = compiler.immutable;
+    }
+
+    private static boolean[] toArray(final List<Boolean> values) {
+        boolean[] array = new boolean[values.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
+
+    public static TechnologyQuantitiesPlan compile(final Entity technology) {
+        Compiler compiler = new Compiler();
+
+        EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        Entity root = operationComponents.getRoot();
+
+        compiler.checkImmutable(technology);
+
+        if (root != null) {
+            compiler.preload(operationComponents);
+            compiler.compile(technology, root, null);
+        }
+
+        return new TechnologyQuantitiesPlan(compiler);
+    }
+
+    /**
+     * Returns true if technology and all technologies it references can't be modified anymore, so the plan may be reused.
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public OperationProductComponentWithQuantityContainer evaluate(final BigDecimal givenQuantity, final MathContext mathContext,
+            final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents) {
+        BigDecimal[] values = Arrays.copyOf(quantities, quantities.length);
+
+        for (Long operationId : preloadedOperationIds) {
+            operationRuns.put(operationId, BigDecimal.ONE);
+        }
+
+        for (int operation = 0; operation < operationIds.length; operation++) {
+            int[] operationMultipliers = multipliers[operation];
+
+            for (int i = 0; i < operationMultipliers.length; i += 2) {
+                BigDecimal needed = (operationMultipliers[i] == GIVEN_QUANTITY) ? givenQuantity
+                        : values[operationMultipliers[i]];
+                BigDecimal actual = values[operationMultipliers[i + 1]];
+
+                BigDecimal multiplier = needed.divide(actual, mathContext);
+
+                if (!productQuantitiesDivisible[operation]) {
+                    // It's intentional to round up the operation runs
+                    multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+                }
+
+                BigDecimal runs = multiplier;
+
+                if (!tjDivisible[operation]) {
+                    runs = multiplier.setScale(0, RoundingMode.CEILING);
+                }
+
+                operationRuns.put(operationIds[operation], runs);
+
+                multiply(values, inComponents[operation], multiplier, mathContext);
+                multiply(values, outComponents[operation], multiplier, mathContext);
+            }
+        }
+
+        OperationProductComponentWithQuantityContainer container = new OperationProductComponentWithQuantityContainer();
+
+        for (int component = 0; component < components.length; component++) {
+            container.put(components[component], values[component]);
+        }
+
+        nonComponents.addAll(this.nonComponents);
+
+        return container;
+    }
+
+    private void multiply(final BigDecimal[] values, final int[] operationComponents, final BigDecimal multiplier,
+            final MathContext mathContext) {
+        for (int component : operationComponents) {
+            values[component] = values[component].multiply(multiplier, mathContext).setScale(SCALE, RoundingMode.CEILING);
+        }
+    }
+
+    private static final class Compiler {
+
+        private final Map<OperationProductComponentHolder, Integer> componentIndexes = Maps.newHashMap();
+
+        private final List<OperationProductComponentHolder> components = Lists.newArrayList();
+
+        private final List<BigDecimal> quantities = Lists.newArrayList();
+
+        private final List<Long> preloadedOperationIds = Lists.newArrayList();
+
+        private final List<Long> operationIds = Lists.newArrayList();
+
+        private final List<Boolean> productQuantitiesDivisible = Lists.newArrayList();
+
+        private final List<Boolean> tjDivisible = Lists.newArrayList();
+
+        private final List<int[]> inComponents = Lists.newArrayList();
+
+        private final List<int[]> outComponents = Lists.newArrayList();
+
+        private final List<int[]> multipliers = Lists.newArrayList();
+
+        private final Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        private boolean immutable = true;
+
+        private void checkImmutable(final Entity technology) {
+            String state = technology.getStringField(TechnologyFields.STATE);
+
+            immutable &= TechnologyStateStringValues.ACCEPTED.equals(state)
+                    || TechnologyStateStringValues.OUTDATED.equals(state);
+        }
+
+        private void preload(final EntityTree operationComponents) {
+            for (Entity operationComponent : operationComponents) {
+                if (isReferenceTechnology(operationComponent)) {
+                    Entity referenceTechnology = operationComponent
+                            .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY);
+
+                    checkImmutable(referenceTechnology);
+                    preload(referenceTechnology.getTreeField(TechnologyFields.OPERATION_COMPONENTS));
+
+                    continue;
+                }
+
+                preload(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS));
+                preload(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS));
+
+                preloadedOperationIds.add(operationComponent.getId());
+            }
+        }
+
+        private void preload(final List<Entity> operationProductComponents) {
+            for (Entity operationProductComponent : operationProductComponents) {
+                quantities.set(indexOf(operationProductComponent),
+                        operationProductComponent.getDecimalField(OperationProductInComponentFields.QUANTITY));
+            }
+        }
+
+        private int indexOf(final Entity operationProductComponent) {
+            OperationProductComponentHolder holder = new OperationProductComponentHolder(operationProductComponent);
+            Integer index = componentIndexes.get(holder);
+
+            if (index == null) {
+                index = components.size();
+
+                componentIndexes.put(holder, index);
+                components.add(holder);
+                quantities.add(null);
+            }
+
+            return index;
+        }
+
+        private int[] indexesOf(final List<Entity> operationProductComponents) {
+            List<Integer> indexes = Lists.newArrayList();
+
+            for (Entity operationProductComponent : operationProductComponents) {
+                indexes.add(indexOf(operationProductComponent));
+            }
+
+            return toIntArray(indexes);
+        }
+
+        private void compile(final Entity technology, final Entity operationComponent, final Entity previousOperationComponent) {
+            if (isReferenceTechnology(operationComponent)) {
+                Entity referenceTechnology = operationComponent
+                        .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY);
+                EntityTree referenceOperationComponents = referenceTechnology
+                        .getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+
+                compile(referenceTechnology, referenceOperationComponents.getRoot(), previousOperationComponent);
+
+                return;
+            }
+
+            List<Entity> operationProductOutComponents = operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS);
+            List<Integer> operationMultipliers = Lists.newArrayList();
+
+            if (previousOperationComponent == null) {
+                Long technologyProductId = technology.getBelongsToField(TechnologyFields.PRODUCT).getId();
+
+                for (Entity operationProductOutComponent : operationProductOutComponents) {
+                    if (getProductId(operationProductOutComponent).equals(technologyProductId)) {
+                        operationMultipliers.add(GIVEN_QUANTITY);
+                        operationMultipliers.add(indexOf(operationProductOutComponent));
+
+                        break;
+                    }
+                }
+            } else {
+                for (Entity operationProductInComponent : previousOperationComponent
+                        .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)) {
+                    for (Entity operationProductOutComponent : operationProductOutComponents) {
+                        if (getProductId(operationProductOutComponent).equals(getProductId(operationProductInComponent))) {
+                            operationMultipliers.add(indexOf(operationProductInComponent));
+                            operationMultipliers.add(indexOf(operationProductOutComponent));
+
+                            nonComponents.add(new OperationProductComponentHolder(operationProductInComponent));
+
+                            break;
+                        }
+                    }
+                }
+            }
+
+            operationIds.add(operationComponent.getId());
+            productQuantitiesDivisible.add(operationComponent
+                    .getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE));
+            tjDivisible.add(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE));
+            inComponents.add(indexesOf(operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)));
+            outComponents.add(indexesOf(operationProductOutComponents));
+            multipliers.add(toIntArray(operationMultipliers));
+
+            for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+                compile(technology, child, operationComponent);
+            }
+        }
+
+        private Long getProductId(final Entity operationProductComponent) {
+            return operationProductComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT).getId();
+        }
+
+        private int[] toIntArray(final List<Integer> values) {
+            int[] array = new int[values.size()];
+
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+
+            return array;
+        }
+
+        private boolean isReferenceTechnology(final Entity operationComponent) {
+            return TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(
+                    operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE));
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.mes.technologies.ProductWhereUsedService;
+import com.qcadoo.mes.technologies.dto.TechnologyUsageDTO;
+
+@Controller
+public final class TechnologiesApiController {
+
+    private static final String L_DEFAULT_PAGE_SIZE = "100";
+
+    @Autowired
+    private ProductWhereUsedService productWhereUsedService;
+
+    @ResponseBody
+    @RequestMapping(value = "/technologies/whereUsed", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<TechnologyUsageDTO>> getTechnologyUsages(@RequestParam("productId") Long productId,
+            @RequestParam(value = "first", defaultValue = "0") int first,
+            @RequestParam(value = "limit", defaultValue = L_DEFAULT_PAGE_SIZE) int limit) {
+        if ((first < 0) || (limit < 0)) {
+            return new ResponseEntity<List<TechnologyUsageDTO>>(HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<List<TechnologyUsageDTO>>(productWhereUsedService.getTechnologyUsages(productId, first, limit),
+                HttpStatus.OK);
+    }
+
+}
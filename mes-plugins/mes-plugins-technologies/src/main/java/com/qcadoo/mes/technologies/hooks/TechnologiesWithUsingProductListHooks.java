@@ -23,11 +23,14 @@
  */
 package com.qcadoo.mes.technologies.hooks;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.technologies.ProductWhereUsedService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.GridComponent;
 
 @Service
@@ -37,8 +40,12 @@ public class TechnologiesWithUsingProductListHooks {
 
     private static final String L_FORM = "form";
 
+    @Autowired
+    private ProductWhereUsedService productWhereUsedService;
+
     public void beforeRender(final ViewDefinitionState viewDefinitionState) {
         showInfoIfNotUsed(viewDefinitionState);
+        showInfoIfUsedIndirectly(viewDefinitionState);
     }
 
     private void showInfoIfNotUsed(final ViewDefinitionState viewDefinitionState) {
@@ -49,4 +56,26 @@ public class TechnologiesWithUsingProductListHooks {
         }
     }
 
+    private void showInfoIfUsedIndirectly(final ViewDefinitionState viewDefinitionState) {
+        // walking usages takes a query per level, so it's done once when the view is opened, not on every grid event
+        if (!viewDefinitionState.isViewAfterRedirect()) {
+            return;
+        }
+
+        FormComponent form = (FormComponent) viewDefinitionState.getComponentByReference(L_FORM);
+        Long productId = form.getEntityId();
+
+        if (productId == null) {
+            return;
+        }
+
+        long indirectlyUsingTechnologies = productWhereUsedService.findTechnologyLevels(productId).values().stream()
+                .filter(level -> level > 1).count();
+
+        if (indirectlyUsingTechnologies > 0) {
+            form.addMessage("technologies.product.info.usedIndirectly", MessageType.INFO, false,
+                    String.valueOf(indirectlyUsingTechnologies));
+        }
+    }
+
 }
@@ -26,11 +26,18 @@ package com.qcadoo.mes.technologies.tree;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
@@ -39,6 +46,8 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 import com.qcadoo.view.api.ComponentState.MessageType;
@@ -61,9 +70,7 @@ public class ProductStructureTreeService {
 
     private static final String L_NUMBER = "number";
 
-    private static final String L_OPERATION_PRODUCT_OUT_COMPONENTS = "operationProductOutComponents";
-
-    private static final String L_OPERATION_PRODUCT_IN_COMPONENTS = "operationProductInComponents";
+    private static final String L_OPERATION_COMPONENT = "operationComponent";
 
     private static final String L_FINAL_PRODUCT = "finalProduct";
 
@@ -93,29 +100,24 @@ public class ProductStructureTreeService {
         tree.add(child);
     }
 
-    private Entity findOperationForProductAndTechnology(final Entity product, final Entity technology) {
-        DataDefinition operationComponentsDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
-        List<Entity> operations = operationComponentsDD.find().add(SearchRestrictions.belongsTo(L_TECHNOLOGY, technology)).list()
-                .getEntities();
-        for (Entity operation : operations) {
+    private Entity findOperationForProductAndTechnology(final Entity product, final Entity technology,
+            final ProductStructureContext context) {
+        TechnologyOperations technologyOperations = context.getTechnologyOperations(technology);
 
-            Entity isResult = operation.getHasManyField(L_OPERATION_PRODUCT_OUT_COMPONENTS).find()
-                    .add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1).uniqueResult();
-            if (isResult != null) {
+        for (Entity operation : technologyOperations.getOperations()) {
+            if (technologyOperations.isProducedIn(product, operation)) {
                 return operation;
             }
         }
         return null;
     }
 
-    private Entity findOperationForProductWithinChildren(final Entity product, final Entity toc) {
-        List<Entity> operations = toc.getHasManyField(TechnologyOperationComponentFields.CHILDREN);
-        for (Entity operation : operations) {
+    private Entity findOperationForProductWithinChildren(final Entity product, final Entity toc, final Entity technology,
+            final ProductStructureContext context) {
+        TechnologyOperations technologyOperations = context.getTechnologyOperations(technology);
 
-            Entity isResult = operation.getHasManyField(L_OPERATION_PRODUCT_OUT_COMPONENTS).find()
-                    .add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1).uniqueResult();
-            if (isResult != null) {
+        for (Entity operation : technologyOperations.getChildren(toc)) {
+            if (technologyOperations.isProducedIn(product, operation)) {
                 return operation;
             }
         }
@@ -149,39 +151,28 @@ public class ProductStructureTreeService {
         return result;
     }
 
-    private BigDecimal findQuantityOfProductInOperation(final Entity product, final Entity operation) {
-        EntityList outProducts = operation.getHasManyField(L_OPERATION_PRODUCT_OUT_COMPONENTS);
-
-        Entity productComponent = outProducts.find().add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-        if (productComponent != null) {
-            return productComponent.getDecimalField(L_QUANTITY);
-        }
-        EntityList inProducts = operation.getHasManyField(L_OPERATION_PRODUCT_IN_COMPONENTS);
-        productComponent = inProducts.find().add(SearchRestrictions.belongsTo(L_PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-        if (productComponent != null) {
-            return productComponent.getDecimalField(L_QUANTITY);
-        }
-        return null;
+    private BigDecimal findQuantityOfProductInOperation(final Entity product, final Entity operation, final Entity technology,
+            final ProductStructureContext context) {
+        return context.getTechnologyOperations(technology).getQuantity(product, operation);
     }
 
     private void generateTreeForSubproducts(final Entity operation, final Entity technology, final List<Entity> tree,
-            final Entity parent, final ViewDefinitionState view, final List<Long> usedTechnologies) {
-        EntityList productInComponents = operation.getHasManyField(L_OPERATION_PRODUCT_IN_COMPONENTS);
+            final Entity parent, final ViewDefinitionState view, final List<Long> usedTechnologies,
+            final ProductStructureContext context) {
+        List<Entity> productInComponents = context.getTechnologyOperations(technology).getProductInComponents(operation);
         DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
         for (Entity productInComp : productInComponents) {
             Entity child = treeNodeDD.create();
             Entity product = productInComp.getBelongsToField(L_PRODUCT);
-            Entity subOperation = findOperationForProductWithinChildren(product, operation);
-            BigDecimal quantity = findQuantityOfProductInOperation(product, operation);
-            Entity subTechnology = findTechnologyForProduct(product);
+            Entity subOperation = findOperationForProductWithinChildren(product, operation, technology, context);
+            BigDecimal quantity = findQuantityOfProductInOperation(product, operation, technology, context);
+            Entity subTechnology = context.getTechnologyForProduct(product);
 
             if (subTechnology != null) {
                 if (!usedTechnologies.contains(subTechnology.getId())) {
                     if (subOperation == null) {
-                        Entity operationForTechnology = findOperationForProductAndTechnology(product, subTechnology);
+                        Entity operationForTechnology = findOperationForProductAndTechnology(product, subTechnology, context);
                         Entity technologyGroup = subTechnology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
                         BigDecimal standardPerformanceTechnology = subTechnology
                                 .getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
@@ -196,7 +187,8 @@ public class ProductStructureTreeService {
                         child.setField(L_STANDARD_PERFORMANCE_TECHNOLOGY, standardPerformanceTechnology);
                         addChild(tree, child, parent, L_COMPONENT);
                         usedTechnologies.add(subTechnology.getId());
-                        generateTreeForSubproducts(operationForTechnology, subTechnology, tree, child, view, usedTechnologies);
+                        generateTreeForSubproducts(operationForTechnology, subTechnology, tree, child, view, usedTechnologies,
+                                context);
                     } else {
 
                         child.setField(L_TECHNOLOGY, technology);
@@ -214,7 +206,7 @@ public class ProductStructureTreeService {
                                             MessageType.INFO, false,
                                             product.getStringField("number") + " " + product.getStringField("name"));
                         }
-                        generateTreeForSubproducts(subOperation, technology, tree, child, view, usedTechnologies);
+                        generateTreeForSubproducts(subOperation, technology, tree, child, view, usedTechnologies, context);
                     }
                 } else if (view != null) {
                     FormComponent productStructureForm = (FormComponent) view.getComponentByReference("productStructureForm");
@@ -239,7 +231,7 @@ public class ProductStructureTreeService {
                     child.setField(L_DIVISION, subOperation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
 
                     addChild(tree, child, parent, L_INTERMEDIATE);
-                    generateTreeForSubproducts(subOperation, technology, tree, child, view, usedTechnologies);
+                    generateTreeForSubproducts(subOperation, technology, tree, child, view, usedTechnologies, context);
                 } else {
                     child.setField(L_OPERATION, operation);
                     child.setField(L_DIVISION, operation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
@@ -254,12 +246,14 @@ public class ProductStructureTreeService {
     }
 
     public EntityTree generateProductStructureTree(final ViewDefinitionState view, final Entity technology) {
+        ProductStructureContext context = new ProductStructureContext();
+
         DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
         Entity root = treeNodeDD.create();
         Entity product = technology.getBelongsToField(L_PRODUCT);
-        Entity operation = findOperationForProductAndTechnology(product, technology);
-        BigDecimal quantity = findQuantityOfProductInOperation(product, operation);
+        Entity operation = findOperationForProductAndTechnology(product, technology, context);
+        BigDecimal quantity = findQuantityOfProductInOperation(product, operation, technology, context);
         Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
         BigDecimal standardPerformanceTechnology = technology.getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
         root.setField(L_TECHNOLOGY, technology);
@@ -276,7 +270,7 @@ public class ProductStructureTreeService {
         List<Long> usedTechnologies = new ArrayList<>();
         usedTechnologies.add(technology.getId());
 
-        generateTreeForSubproducts(operation, technology, productStructureList, root, view, usedTechnologies);
+        generateTreeForSubproducts(operation, technology, productStructureList, root, view, usedTechnologies, context);
         EntityTree productStructureTree = EntityTreeUtilsService.getDetachedEntityTree(productStructureList);
 
         return productStructureTree;
@@ -338,4 +332,113 @@ public class ProductStructureTreeService {
         tree.add(child);
         return child;
     }
+
+    private TechnologyOperations loadTechnologyOperations(final Entity technology) {
+        List<Entity> operations = dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).find()
+                .add(SearchRestrictions.belongsTo(L_TECHNOLOGY, technology)).list().getEntities();
+
+        return new TechnologyOperations(operations,
+                findProductComponents(TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT, technology),
+                findProductComponents(TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT, technology));
+    }
+
+    private List<Entity> findProductComponents(final String model, final Entity technology) {
+        return dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, model).find()
+                .createAlias(L_OPERATION_COMPONENT, L_OPERATION_COMPONENT, JoinType.INNER)
+                .add(SearchRestrictions.belongsTo(L_OPERATION_COMPONENT + "." + L_TECHNOLOGY, technology))
+                .addOrder(SearchOrders.asc("id")).list().getEntities();
+    }
+
+    private final class ProductStructureContext {
+
+        private final Map<Long, Optional<Entity>> technologiesForProducts = Maps.newHashMap();
+
+        private final Map<Long, TechnologyOperations> technologiesOperations = Maps.newHashMap();
+
+        private Entity getTechnologyForProduct(final Entity product) {
+            return technologiesForProducts
+                    .computeIfAbsent(product.getId(), productId -> Optional.ofNullable(findTechnologyForProduct(product)))
+                    .orElse(null);
+        }
+
+        private TechnologyOperations getTechnologyOperations(final Entity technology) {
+            return technologiesOperations.computeIfAbsent(technology.getId(),
+                    technologyId -> loadTechnologyOperations(technology));
+        }
+
+    }
+
+    private static final class TechnologyOperations {
+
+        private final List<Entity> operations;
+
+        private final ListMultimap<Long, Entity> children = ArrayListMultimap.create();
+
+        private final ListMultimap<Long, Entity> productInComponents = ArrayListMultimap.create();
+
+        private final Table<Long, Long, Optional<BigDecimal>> outQuantities = HashBasedTable.create();
+
+        private final Table<Long, Long, Optional<BigDecimal>> inQuantities = HashBasedTable.create();
+
+        private TechnologyOperations(final List<Entity> operations, final List<Entity> productOutComponents,
+                final List<Entity> productInComponents) {
+            this.operations = operations;
+
+            for (Entity operation : operations) {
+                Entity parent = operation.getBelongsToField(TechnologyOperationComponentFields.PARENT);
+
+                if (parent != null) {
+                    children.put(parent.getId(), operation);
+                }
+            }
+            for (Entity productOutComponent : productOutComponents) {
+                putQuantity(outQuantities, productOutComponent);
+            }
+            for (Entity productInComponent : productInComponents) {
+                putQuantity(inQuantities, productInComponent);
+
+                this.productInComponents.put(productInComponent.getBelongsToField(L_OPERATION_COMPONENT).getId(),
+                        productInComponent);
+            }
+        }
+
+        private static void putQuantity(final Table<Long, Long, Optional<BigDecimal>> quantities, final Entity productComponent) {
+            Long operationId = productComponent.getBelongsToField(L_OPERATION_COMPONENT).getId();
+            Long productId = productComponent.getBelongsToField(L_PRODUCT).getId();
+
+            if (!quantities.contains(operationId, productId)) {
+                quantities.put(operationId, productId,
+                        Optional.ofNullable(productComponent.getDecimalField(L_QUANTITY)));
+            }
+        }
+
+        private List<Entity> getOperations() {
+            return operations;
+        }
+
+        private List<Entity> getChildren(final Entity operation) {
+            return children.get(operation.getId());
+        }
+
+        private List<Entity> getProductInComponents(final Entity operation) {
+            return productInComponents.get(operation.getId());
+        }
+
+        private boolean isProducedIn(final Entity product, final Entity operation) {
+            return outQuantities.contains(operation.getId(), product.getId());
+        }
+
+        private BigDecimal getQuantity(final Entity product, final Entity operation) {
+            Optional<BigDecimal> quantity = outQuantities.get(operation.getId(), product.getId());
+
+            if (quantity == null) {
+                quantity = inQuantities.get(operation.getId(), product.getId());
+            }
+
+            return quantity != null ? quantity.orElse(null) : null;
+        }
+
+    }
+
 }
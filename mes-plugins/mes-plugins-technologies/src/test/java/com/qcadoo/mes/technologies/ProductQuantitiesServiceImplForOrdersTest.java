@@ -0,0 +1,168 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.NumberService;
+
+public class ProductQuantitiesServiceImplForOrdersTest {
+
+    private ProductQuantitiesService productQuantitiesService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private Entity firstOrder, secondOrder, thirdOrder, technology;
+
+    @Mock
+    private EntityTreeNode operationComponent;
+
+    @Mock
+    private Entity product, material, productOutComponent, materialInComponent;
+
+    @Mock
+    private DataDefinition productDD, inComponentDD, outComponentDD;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+
+        ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+
+        given(inComponentDD.getName())
+                .willReturn(OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT.getStringValue());
+        given(outComponentDD.getName()).willReturn(
+                OperationProductComponentEntityType.OPERATION_PRODUCT_OUT_COMPONENT.getStringValue());
+
+        given(product.getId()).willReturn(1L);
+        given(material.getId()).willReturn(2L);
+        given(material.getDataDefinition()).willReturn(productDD);
+        given(productDD.get(2L)).willReturn(material);
+
+        given(operationComponent.getId()).willReturn(11L);
+        given(technology.getId()).willReturn(21L);
+
+        // one third of material is needed per piece, so each order's need is rounded up at the 5th decimal place
+        mockComponent(productOutComponent, outComponentDD, product, "3");
+        mockComponent(materialInComponent, inComponentDD, material, "1");
+
+        given(operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE)).willReturn(
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willAnswer(invocation -> mockEntityList(Lists.newArrayList(materialInComponent)));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willAnswer(invocation -> mockEntityList(Lists.newArrayList(productOutComponent)));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)).willAnswer(
+                invocation -> mockEntityList(Collections.<Entity> emptyList()));
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE))
+                .willReturn(true);
+
+        EntityTree operationComponents = mock(EntityTree.class);
+
+        given(operationComponents.iterator()).willAnswer(
+                invocation -> Lists.<Entity> newArrayList(operationComponent).iterator());
+        given(operationComponents.getRoot()).willReturn(operationComponent);
+
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+        given(technology.getBelongsToField(TechnologyFields.PRODUCT)).willReturn(product);
+
+        mockOrder(firstOrder, "1");
+        mockOrder(secondOrder, "1");
+        mockOrder(thirdOrder, "2");
+    }
+
+    private void mockComponent(final Entity component, final DataDefinition dataDefinition, final Entity product,
+            final String quantity) {
+        given(component.getDataDefinition()).willReturn(dataDefinition);
+        given(component.getBelongsToField("product")).willReturn(product);
+        given(component.getBelongsToField("operationComponent")).willReturn(operationComponent);
+        given(component.getDecimalField("quantity")).willReturn(new BigDecimal(quantity));
+    }
+
+    private void mockOrder(final Entity order, final String plannedQuantity) {
+        given(order.getBelongsToField("technology")).willReturn(technology);
+        given(order.getDecimalField("plannedQuantity")).willReturn(new BigDecimal(plannedQuantity));
+    }
+
+    private static EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+
+        return entityList;
+    }
+
+    @Test
+    public final void shouldReturnSumOfNeedsOfSingleOrdersForOrdersSharingTechnology() {
+        // given
+        List<Entity> orders = Lists.newArrayList(firstOrder, secondOrder, thirdOrder);
+
+        BigDecimal sumOfNeeds = BigDecimal.ZERO;
+
+        for (Entity order : orders) {
+            sumOfNeeds = sumOfNeeds.add(productQuantitiesService.getNeededProductQuantities(order, MrpAlgorithm.ONLY_COMPONENTS)
+                    .get(2L));
+        }
+
+        // when
+        Map<Long, BigDecimal> neededProductQuantities = productQuantitiesService.getNeededProductQuantities(orders,
+                MrpAlgorithm.ONLY_COMPONENTS, false);
+
+        // then
+        assertEquals(0, new BigDecimal("1.33335").compareTo(sumOfNeeds));
+        assertEquals(0, sumOfNeeds.compareTo(neededProductQuantities.get(2L)));
+    }
+
+}
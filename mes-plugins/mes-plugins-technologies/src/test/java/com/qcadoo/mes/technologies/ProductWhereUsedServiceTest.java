@@ -0,0 +1,150 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ProductWhereUsedServiceTest {
+
+    private ProductWhereUsedService productWhereUsedService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    // technology id -> product made by the technology
+    private final Map<Long, Long> technologyProducts = Maps.newHashMap();
+
+    // technology id -> products consumed by the technology's operations
+    private final Map<Long, Collection<Long>> technologyComponents = Maps.newHashMap();
+
+    // technology id -> technologies referenced by the technology's operations
+    private final Map<Long, Collection<Long>> technologyReferences = Maps.newHashMap();
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productWhereUsedService = new ProductWhereUsedService();
+        ReflectionTestUtils.setField(productWhereUsedService, "jdbcTemplate", jdbcTemplate);
+
+        given(jdbcTemplate.queryForList(anyString(), any(MapSqlParameterSource.class))).willAnswer(
+                invocation -> findTechnologiesUsing((MapSqlParameterSource) invocation.getArguments()[1]));
+    }
+
+    private List<Map<String, Object>> findTechnologiesUsing(final MapSqlParameterSource parameters) {
+        Collection<?> productIds = parameters.hasValue("productIds") ? (Collection<?>) parameters.getValue("productIds")
+                : Collections.emptySet();
+        Collection<?> technologyIds = parameters.hasValue("technologyIds") ? (Collection<?>) parameters
+                .getValue("technologyIds") : Collections.emptySet();
+
+        List<Map<String, Object>> rows = Lists.newArrayList();
+
+        for (Long technologyId : technologyProducts.keySet()) {
+            boolean usesProduct = technologyComponents.getOrDefault(technologyId, Collections.emptySet()).stream()
+                    .anyMatch(productIds::contains);
+            boolean referencesTechnology = technologyReferences.getOrDefault(technologyId, Collections.emptySet()).stream()
+                    .anyMatch(technologyIds::contains);
+
+            if (usesProduct || referencesTechnology) {
+                Map<String, Object> row = Maps.newHashMap();
+                row.put("id", technologyId);
+                row.put("product_id", technologyProducts.get(technologyId));
+                rows.add(row);
+            }
+        }
+
+        return rows;
+    }
+
+    private void addTechnology(final Long technologyId, final Long productId, final Collection<Long> componentIds,
+            final Collection<Long> referenceTechnologyIds) {
+        technologyProducts.put(technologyId, productId);
+        technologyComponents.put(technologyId, componentIds);
+        technologyReferences.put(technologyId, referenceTechnologyIds);
+    }
+
+    @Test
+    public final void shouldWalkUsagesLevelByLevel() {
+        // given
+        addTechnology(1L, 20L, ImmutableSet.of(10L), ImmutableSet.of());
+        addTechnology(2L, 30L, ImmutableSet.of(20L), ImmutableSet.of());
+        addTechnology(3L, 40L, ImmutableSet.of(30L), ImmutableSet.of());
+        addTechnology(4L, 50L, ImmutableSet.of(99L), ImmutableSet.of(2L));
+        addTechnology(5L, 60L, ImmutableSet.of(99L), ImmutableSet.of());
+
+        // when
+        Map<Long, Integer> technologyLevels = productWhereUsedService.findTechnologyLevels(10L);
+
+        // then
+        assertEquals(ImmutableMap.of(1L, 1, 2L, 2, 3L, 3, 4L, 3), technologyLevels);
+    }
+
+    @Test
+    public final void shouldStopWalkingUsagesOnCycle() {
+        // given
+        addTechnology(1L, 20L, ImmutableSet.of(10L), ImmutableSet.of(3L));
+        addTechnology(2L, 30L, ImmutableSet.of(20L), ImmutableSet.of());
+        addTechnology(3L, 10L, ImmutableSet.of(30L), ImmutableSet.of());
+
+        // when
+        Map<Long, Integer> technologyLevels = productWhereUsedService.findTechnologyLevels(10L);
+
+        // then
+        assertEquals(ImmutableMap.of(1L, 1, 2L, 2, 3L, 3), technologyLevels);
+    }
+
+    @Test
+    public final void shouldReturnNoUsagesForUnusedProduct() {
+        // given
+        addTechnology(1L, 20L, ImmutableSet.of(10L), ImmutableSet.of());
+
+        // when
+        Map<Long, Integer> technologyLevels = productWhereUsedService.findTechnologyLevels(20L);
+
+        // then
+        assertEquals(Collections.emptyMap(), technologyLevels);
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.EntityTreeNode;
+
+public class TechnologyQuantitiesPlanTest {
+
+    @Mock
+    private Entity technology, operationComponent2;
+
+    @Mock
+    private EntityTreeNode operationComponent1;
+
+    @Mock
+    private Entity product, intermediate, material;
+
+    @Mock
+    private Entity productOutComponent, intermediateInComponent, intermediateOutComponent, materialInComponent;
+
+    @Mock
+    private DataDefinition inComponentDD, outComponentDD;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        given(inComponentDD.getName())
+                .willReturn(OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT.getStringValue());
+        given(outComponentDD.getName()).willReturn(
+                OperationProductComponentEntityType.OPERATION_PRODUCT_OUT_COMPONENT.getStringValue());
+
+        given(product.getId()).willReturn(1L);
+        given(intermediate.getId()).willReturn(2L);
+        given(material.getId()).willReturn(3L);
+
+        given(operationComponent1.getId()).willReturn(11L);
+        given(operationComponent2.getId()).willReturn(12L);
+
+        mockComponent(productOutComponent, outComponentDD, product, operationComponent1, "1");
+        mockComponent(intermediateInComponent, inComponentDD, intermediate, operationComponent1, "2");
+        mockComponent(intermediateOutComponent, outComponentDD, intermediate, operationComponent2, "4");
+        mockComponent(materialInComponent, inComponentDD, material, operationComponent2, "3");
+
+        mockOperationComponent(operationComponent1, Lists.newArrayList(intermediateInComponent),
+                Lists.newArrayList(productOutComponent), Lists.newArrayList(operationComponent2));
+        mockOperationComponent(operationComponent2, Lists.newArrayList(materialInComponent),
+                Lists.newArrayList(intermediateOutComponent), Collections.<Entity> emptyList());
+
+        EntityTree operationComponents = mock(EntityTree.class);
+
+        given(operationComponents.iterator()).willAnswer(
+                invocation -> Lists.<Entity> newArrayList(operationComponent1, operationComponent2).iterator());
+        given(operationComponents.getRoot()).willReturn(operationComponent1);
+
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+        given(technology.getBelongsToField(TechnologyFields.PRODUCT)).willReturn(product);
+    }
+
+    private void mockComponent(final Entity component, final DataDefinition dataDefinition, final Entity product,
+            final Entity operationComponent, final String quantity) {
+        given(component.getDataDefinition()).willReturn(dataDefinition);
+        given(component.getBelongsToField("product")).willReturn(product);
+        given(component.getBelongsToField("operationComponent")).willReturn(operationComponent);
+        given(component.getDecimalField("quantity")).willReturn(new BigDecimal(quantity));
+    }
+
+    private void mockOperationComponent(final Entity operationComponent, final List<Entity> inComponents,
+            final List<Entity> outComponents, final List<Entity> children) {
+        EntityList in = mockEntityList(inComponents);
+        EntityList out = mockEntityList(outComponents);
+        EntityList childrenList = mockEntityList(children);
+
+        given(operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE)).willReturn(
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willReturn(in);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(out);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)).willReturn(childrenList);
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE))
+                .willReturn(true);
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE)).willReturn(false);
+    }
+
+    private static EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+
+        return entityList;
+    }
+
+    @Test
+    public final void shouldEvaluateQuantitiesAndOperationRuns() {
+        // given
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        // when
+        OperationProductComponentWithQuantityContainer container = TechnologyQuantitiesPlan.compile(technology).evaluate(
+                new BigDecimal("10"), MathContext.DECIMAL64, operationRuns, nonComponents);
+
+        // then
+        assertEquals(0, new BigDecimal("10").compareTo(container.get(productOutComponent)));
+        assertEquals(0, new BigDecimal("20").compareTo(container.get(intermediateInComponent)));
+        assertEquals(0, new BigDecimal("20").compareTo(container.get(intermediateOutComponent)));
+        assertEquals(0, new BigDecimal("15").compareTo(container.get(materialInComponent)));
+
+        assertEquals(0, new BigDecimal("10").compareTo(operationRuns.get(11L)));
+        assertEquals(0, new BigDecimal("5").compareTo(operationRuns.get(12L)));
+
+        assertEquals(1, nonComponents.size());
+        assertTrue(nonComponents.contains(new OperationProductComponentHolder(intermediateInComponent)));
+    }
+
+    @Test
+    public final void shouldReusePlanForDifferentQuantities() {
+        // given
+        TechnologyQuantitiesPlan technologyQuantitiesPlan = TechnologyQuantitiesPlan.compile(technology);
+
+        // when
+        technologyQuantitiesPlan.evaluate(new BigDecimal("10"), MathContext.DECIMAL64, Maps.<Long, BigDecimal> newHashMap(),
+                Sets.<OperationProductComponentHolder> newHashSet());
+        OperationProductComponentWithQuantityContainer container = technologyQuantitiesPlan.evaluate(new BigDecimal("2"),
+                MathContext.DECIMAL64, Maps.<Long, BigDecimal> newHashMap(), Sets.<OperationProductComponentHolder> newHashSet());
+
+        // then
+        assertEquals(0, new BigDecimal("3").compareTo(container.get(materialInComponent)));
+    }
+
+    @Test
+    public final void shouldBeImmutableOnlyForAcceptedOrOutdatedTechnology() {
+        // given
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.ACCEPTED);
+
+        // when & then
+        assertTrue(TechnologyQuantitiesPlan.compile(technology).isImmutable());
+
+        // given
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.DRAFT);
+
+        // when & then
+        assertFalse(TechnologyQuantitiesPlan.compile(technology).isImmutable());
+    }
+
+}
@@ -86,13 +86,16 @@ public class WorkPlanPdfForDivision {
         ListMultimap<String, OrderOperationComponent> titleToOperationComponent = groupingContainer
                 .getTitleToOperationComponent();
 
+        MaterialComponentsCache materialComponentsCache = new MaterialComponentsCache();
+
         for (String title : titleToOperationComponent.keySet()) {
             addWorkPlanTitle(document, workPlan, title, locale);
             List<OrderOperationComponent> components = titleToOperationComponent.get(title);
             List<OrderOperationComponent> sorted = sortOrderOperationComponents(components);
             addMainOrders(document, sorted, locale);
             for (OrderOperationComponent orderOperationComponent : sorted) {
-                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, locale);
+                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, materialComponentsCache,
+                        locale);
 
             }
             document.newPage();
@@ -137,7 +140,8 @@ public class WorkPlanPdfForDivision {
     }
 
     private void addOperationTable(PdfWriter pdfWriter, GroupingContainer groupingContainer, Document document,
-            OrderOperationComponent orderOperationComponent, Locale locale) throws DocumentException {
+            OrderOperationComponent orderOperationComponent, MaterialComponentsCache materialComponentsCache, Locale locale)
+            throws DocumentException {
 
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> outputProductsMap = groupingContainer
                 .getOperationComponentIdProductOutColumnToAlignment();
@@ -172,7 +176,8 @@ public class WorkPlanPdfForDivision {
 
         addOrderSummary(headerCell, order, product, operationComponent);
 
-        addOperationProductsTable(inputCell, addMaterialComponents(operationProductInComponents(operationComponent), order),
+        addOperationProductsTable(inputCell,
+                addMaterialComponents(operationProductInComponents(operationComponent), order, materialComponentsCache),
                 inputProductColumnAlignmentMap, ProductDirection.IN, locale);
         addOperationProductsTable(outputCell, operationProductOutComponents(operationComponent), outputProductColumnAlignmentMap,
                 ProductDirection.OUT, locale);
@@ -294,25 +299,15 @@ public class WorkPlanPdfForDivision {
         cell.addElement(table);
     }
 
-    private List<Entity> addMaterialComponents(List<Entity> productComponents, Entity order) {
+    private List<Entity> addMaterialComponents(List<Entity> productComponents, Entity order,
+            MaterialComponentsCache materialComponentsCache) {
         for (Entity productComponent : productComponents) {
             if (productComponent.getBooleanField(OperationProductInComponentFieldsWP.SHOW_MATERIAL_COMPONENT)) {
                 Entity product = productComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT);
 
-                Entity technology = getTechnologyForComponent(productComponent, order);
+                Entity technology = getTechnologyForComponent(productComponent, order, materialComponentsCache);
                 if (technology != null) {
-                    Set<String> distinctProductNames = new HashSet<>();
-                    EntityList operationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
-                    for (Entity operationComponent : operationComponents) {
-                        EntityList operationProductsInComponents = operationComponent
-                                .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
-                        List<String> ProductNames = operationProductsInComponents.stream()
-                                .filter(opic -> !technologyService.isIntermediateProduct(opic))
-                                .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT))
-                                .map(p -> p.getStringField(ProductFields.NAME)).collect(Collectors.toList());
-
-                        distinctProductNames.addAll(ProductNames);
-                    }
+                    Set<String> distinctProductNames = getMaterialProductNames(technology, materialComponentsCache);
                     if (!distinctProductNames.isEmpty()) {
                         String name = product.getStringField(ProductFields.NAME) + "\n- "
                                 + String.join("\n- ", distinctProductNames);
@@ -325,18 +320,56 @@ public class WorkPlanPdfForDivision {
         return productComponents;
     }
 
-    private Entity getTechnologyForComponent(Entity productComponent, Entity order) {
+    private Set<String> getMaterialProductNames(Entity technology, MaterialComponentsCache materialComponentsCache) {
+        Set<String> distinctProductNames = materialComponentsCache.productNamesByTechnologyId.get(technology.getId());
+        if (distinctProductNames == null) {
+            distinctProductNames = new HashSet<>();
+            EntityList operationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
+            for (Entity operationComponent : operationComponents) {
+                EntityList operationProductsInComponents = operationComponent
+                        .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
+                List<String> ProductNames = operationProductsInComponents.stream()
+                        .filter(opic -> !technologyService.isIntermediateProduct(opic))
+                        .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT))
+                        .map(p -> p.getStringField(ProductFields.NAME)).collect(Collectors.toList());
+
+                distinctProductNames.addAll(ProductNames);
+            }
+            materialComponentsCache.productNamesByTechnologyId.put(technology.getId(), distinctProductNames);
+        }
+        return distinctProductNames;
+    }
+
+    private Entity getTechnologyForComponent(Entity productComponent, Entity order,
+            MaterialComponentsCache materialComponentsCache) {
         Entity product = productComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT);
-        List<Entity> productOrders = order.getDataDefinition().find().add(SearchRestrictions.belongsTo("parent", order))
-                .add(SearchRestrictions.belongsTo("product", product)).list().getEntities();
-        if (productOrders != null && !productOrders.isEmpty()) {
-            return productOrders.get(0).getBelongsToField(OrderFields.TECHNOLOGY);
-        } else {
+
+        Map<Long, Entity> childOrderTechnologies = materialComponentsCache.childOrderTechnologiesByOrderId.get(order.getId());
+        if (childOrderTechnologies == null) {
+            childOrderTechnologies = new HashMap<>();
+            List<Entity> childOrders = order.getDataDefinition().find().add(SearchRestrictions.belongsTo(L_PARENT, order))
+                    .list().getEntities();
+            for (Entity childOrder : childOrders) {
+                Entity childOrderProduct = childOrder.getBelongsToField(OrderFields.PRODUCT);
+                if (childOrderProduct != null && !childOrderTechnologies.containsKey(childOrderProduct.getId())) {
+                    childOrderTechnologies.put(childOrderProduct.getId(), childOrder.getBelongsToField(OrderFields.TECHNOLOGY));
+                }
+            }
+            materialComponentsCache.childOrderTechnologiesByOrderId.put(order.getId(), childOrderTechnologies);
+        }
+
+        if (childOrderTechnologies.containsKey(product.getId())) {
+            return childOrderTechnologies.get(product.getId());
+        }
+
+        if (!materialComponentsCache.masterTechnologiesByProductId.containsKey(product.getId())) {
             DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                     TechnologiesConstants.MODEL_TECHNOLOGY);
-            return technologyDD.find().add(SearchRestrictions.belongsTo(TechnologyFields.PRODUCT, product))
-                    .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).setMaxResults(1).uniqueResult();
+            materialComponentsCache.masterTechnologiesByProductId.put(product.getId(),
+                    technologyDD.find().add(SearchRestrictions.belongsTo(TechnologyFields.PRODUCT, product))
+                            .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).setMaxResults(1).uniqueResult());
         }
+        return materialComponentsCache.masterTechnologiesByProductId.get(product.getId());
     }
 
     private List<Entity> operationProductOutComponents(Entity operationComponent) {
@@ -456,4 +489,15 @@ public class WorkPlanPdfForDivision {
         return sorted;
     }
 
+    // lookups repeated for every operation of every order, valid during printing of a single work plan
+    private static final class MaterialComponentsCache {
+
+        private final Map<Long, Map<Long, Entity>> childOrderTechnologiesByOrderId = new HashMap<>();
+
+        private final Map<Long, Entity> masterTechnologiesByProductId = new HashMap<>();
+
+        private final Map<Long, Set<String>> productNamesByTechnologyId = new HashMap<>();
+
+    }
+
 }
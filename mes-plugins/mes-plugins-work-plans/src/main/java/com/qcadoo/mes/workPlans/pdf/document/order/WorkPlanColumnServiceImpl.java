@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.workPlans.pdf.document.order;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -47,7 +48,6 @@ import com.qcadoo.mes.workPlans.pdf.document.order.column.OrderColumn;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityTree;
 import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 
 @Service
 public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
@@ -58,15 +58,11 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
 
     private final ApplicationContext applicationContext;
 
-    private final EntityTreeUtilsService entityTreeUtilsService;
-
     private final ParameterService parameterService;
 
     @Autowired
-    public WorkPlanColumnServiceImpl(final ApplicationContext applicationContext,
-            final EntityTreeUtilsService entityTreeUtilsService, final ParameterService parameterService) {
+    public WorkPlanColumnServiceImpl(final ApplicationContext applicationContext, final ParameterService parameterService) {
         this.applicationContext = applicationContext;
-        this.entityTreeUtilsService = entityTreeUtilsService;
         this.parameterService = parameterService;
     }
 
@@ -109,38 +105,42 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> operationComponentIdWithOperationProductColumnAndAlignment = Maps
                 .newHashMap();
 
-        Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
-                .getBeansOfType(OperationProductColumn.class);
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Collections
+                .unmodifiableMap(getOperationProductColumnWithAlignment(productDirection));
 
         List<Entity> orders = getWorkPlanOrders(workPlan);
 
         for (Entity order : orders) {
             Entity technology = getOrderTechnology(order);
 
-            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
+            for (Entity operationComponent : getTechnologyOperationComponents(technology)) {
+                operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
+                        operationProductColumnWithAlignment);
+            }
+        }
 
-            for (Entity operationComponent : operationComponents) {
-                List<Entity> columns = getOperationProductColumns(productDirection);
+        return operationComponentIdWithOperationProductColumnAndAlignment;
+    }
 
-                Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
+    private Map<OperationProductColumn, ColumnAlignment> getOperationProductColumnWithAlignment(
+            final ProductDirection productDirection) {
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
 
-                for (Entity column : columns) {
-                    String identifier = getIdentifier(column);
-                    ColumnAlignment alignment = getColumnAlignment(column);
+        Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
+                .getBeansOfType(OperationProductColumn.class);
 
-                    OperationProductColumn key = identifierOperationProductColumn.get(identifier);
+        for (Entity column : getOperationProductColumns(productDirection)) {
+            String identifier = getIdentifier(column);
+            ColumnAlignment alignment = getColumnAlignment(column);
 
-                    if (key != null) {
-                        operationProductColumnWithAlignment.put(key, alignment);
-                    }
-                }
+            OperationProductColumn key = identifierOperationProductColumn.get(identifier);
 
-                operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
-                        operationProductColumnWithAlignment);
+            if (key != null) {
+                operationProductColumnWithAlignment.put(key, alignment);
             }
         }
 
-        return operationComponentIdWithOperationProductColumnAndAlignment;
+        return operationProductColumnWithAlignment;
     }
 
     private List<Entity> getWorkPlanOrderColumns(final Entity workPlan) {
@@ -160,10 +160,6 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
         return order.getBelongsToField(OrderFields.TECHNOLOGY);
     }
 
-    private List<Entity> getSortedTechnologyOperationComponents(final Entity technology) {
-        return entityTreeUtilsService.getSortedEntities(getTechnologyOperationComponents(technology));
-    }
-
     private EntityTree getTechnologyOperationComponents(final Entity technology) {
         return technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
     }
@@ -29,6 +29,7 @@ import java.util.Locale;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ListMultimap;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
@@ -86,8 +87,11 @@ public class WorkPlanForDivisionPdfService extends PdfDocumentWithWriterService
             OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesServiceImpl
                     .getProductComponentQuantities(order);
             removeAlreadyExistsMergesForOrder(order);
+            ListMultimap<Long, Entity> productionCountingQuantities = workPlanPdfService
+                    .getProductionCountingQuantitiesByOperationComponentId(order);
             for (Entity operationComponent : operationComponents(technology(order))) {
-                Entity updatedComponent = workPlanPdfService.updateOperationProductComponents(order, operationComponent);
+                Entity updatedComponent = workPlanPdfService.updateOperationProductComponents(order, operationComponent,
+                        productionCountingQuantities.get(operationComponent.getId()));
                 groupingContainer.add(order, updatedComponent, productQuantities);
             }
         }
@@ -32,12 +32,15 @@ import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -96,14 +99,18 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
     public void buildPdfContent(final PdfWriter writer, final Document document, final Entity workPlan, final Locale locale)
             throws DocumentException {
 
+        // container is built for the whole plan, because its sections group operations of all orders by division or workstation
         GroupingContainer groupingContainer = groupingContainerFactory.create(workPlan, locale);
 
         for (Entity order : orders(workPlan)) {
             OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesServiceImpl
                     .getProductComponentQuantities(order);
             removeAlreadyExistsMergesForOrder(order);
+            ListMultimap<Long, Entity> productionCountingQuantities = getProductionCountingQuantitiesByOperationComponentId(
+                    order);
             for (Entity operationComponent : operationComponents(technology(order))) {
-                Entity updatedComponent = updateOperationProductComponents(order, operationComponent);
+                Entity updatedComponent = updateOperationProductComponents(order, operationComponent,
+                        productionCountingQuantities.get(operationComponent.getId()));
                 groupingContainer.add(order, updatedComponent, productQuantities);
             }
         }
@@ -114,9 +121,35 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
 
     public Entity updateOperationProductComponents(final Entity order, final Entity operationComponent) {
         if (!OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
-            List<Entity> productionCountingQuantities = basicProductionCountingService
-                    .getMaterialsForOperationFromProductionCountingQuantities(order, operationComponent);
+            return updateOperationProductComponents(order, operationComponent,
+                    basicProductionCountingService.getMaterialsForOperationFromProductionCountingQuantities(order,
+                            operationComponent));
+        }
+        return operationComponent;
+    }
 
+    /**
+     * Loads production counting quantities of given order at once, grouped by their technology operation component id, so
+     * they don't have to be queried for every operation. Returns empty multimap for pending orders.
+     */
+    public ListMultimap<Long, Entity> getProductionCountingQuantitiesByOperationComponentId(final Entity order) {
+        ListMultimap<Long, Entity> productionCountingQuantities = ArrayListMultimap.create();
+        if (OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
+            return productionCountingQuantities;
+        }
+        for (Entity pcq : order.getHasManyField(OrderFieldsBPC.PRODUCTION_COUNTING_QUANTITIES)) {
+            Entity operationComponent = pcq
+                    .getBelongsToField(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT);
+            if (operationComponent != null) {
+                productionCountingQuantities.put(operationComponent.getId(), pcq);
+            }
+        }
+        return productionCountingQuantities;
+    }
+
+    public Entity updateOperationProductComponents(final Entity order, final Entity operationComponent,
+            final List<Entity> productionCountingQuantities) {
+        if (!OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
             List<Entity> inComponents = updateOperationProductComponents(operationComponent, productionCountingQuantities,
                     TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
                     ProductionCountingQuantityRole.USED.getStringValue(), dataDefinitionService.get(